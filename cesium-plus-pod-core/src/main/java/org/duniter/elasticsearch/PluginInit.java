@@ -32,6 +32,7 @@ import org.duniter.core.util.StringUtils;
 import org.duniter.elasticsearch.dao.*;
 import org.duniter.elasticsearch.rest.security.RestSecurityController;
 import org.duniter.elasticsearch.service.*;
+import org.duniter.elasticsearch.service.changes.ChangeService;
 import org.duniter.elasticsearch.synchro.SynchroService;
 import org.duniter.elasticsearch.threadpool.ScheduledActionFuture;
 import org.duniter.elasticsearch.threadpool.ThreadPool;
@@ -126,7 +127,7 @@ public class PluginInit extends AbstractLifecycleComponent<PluginInit> {
 
     @Override
     protected void doClose() {
-
+        injector.getInstance(ChangeService.class).close();
     }
 
 
@@ -43,6 +43,9 @@ import org.duniter.elasticsearch.i18n.I18nInitializer;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.nuiton.config.ApplicationConfig;
 import org.nuiton.config.ApplicationConfigHelper;
 import org.nuiton.config.ApplicationConfigProvider;
@@ -326,6 +329,38 @@ public class PluginSettings extends AbstractLifecycleComponent<PluginSettings> {
         return settings.getAsInt("duniter.p2p.bulk.size", Math.min(getIndexBulkSize(), 250));
     }
 
+    public int getSynchroScrollPrefetch() {
+        return Math.max(1, settings.getAsInt("duniter.p2p.scroll.prefetch", 2));
+    }
+
+    public int getSynchroPeerThreads() {
+        return Math.max(1, settings.getAsInt("duniter.p2p.peers.threads", EsExecutors.boundedNumberOfProcessors(settings)));
+    }
+
+    public int getSynchroActionThreads() {
+        return Math.max(1, settings.getAsInt("duniter.p2p.actions.threads", 2));
+    }
+
+    public int getSynchroMaxConcurrentBulk() {
+        return Math.max(1, settings.getAsInt("duniter.p2p.bulk.maxConcurrent", EsExecutors.boundedNumberOfProcessors(settings)));
+    }
+
+    public int getSynchroSignatureThreads() {
+        return Math.max(1, settings.getAsInt("duniter.p2p.signature.threads", EsExecutors.boundedNumberOfProcessors(settings)));
+    }
+
+    public int getSignatureCacheMaxSize() {
+        return settings.getAsInt("duniter.signature.cache.maxSize", 100000);
+    }
+
+    public int getBlockchainDownloadThreads() {
+        return Math.max(1, settings.getAsInt("duniter.blockchain.download.threads", 1));
+    }
+
+    public boolean enableBlockchainDownloadFromPeers() {
+        return settings.getAsBoolean("duniter.blockchain.download.peers.enable", false);
+    }
+
     public int getNodeForkResyncWindow() {
         return settings.getAsInt("duniter.fork.resync.window", 100);
     }
@@ -377,6 +412,25 @@ public class PluginSettings extends AbstractLifecycleComponent<PluginSettings> {
         return Configuration.instance().getTempDirectory();
     }
 
+    /**
+     * Directory used to store plugin data (e.g. WoT members snapshot).
+     * Default: '{path.data}/duniter'
+     */
+    public File getDataDirectory() {
+        String dataDir = settings.get("duniter.data.directory");
+        if (StringUtils.isNotBlank(dataDir)) return new File(dataDir);
+
+        String[] esDataDirs = settings.getAsArray("path.data");
+        File esDataDir = (esDataDirs != null && esDataDirs.length > 0) ?
+                new File(esDataDirs[0]) :
+                new File(settings.get("path.home"), "data");
+        return new File(esDataDir, "duniter");
+    }
+
+    public boolean enableWotMembersSnapshot() {
+        return settings.getAsBoolean("duniter.wot.members.snapshot.enable", true);
+    }
+
     public int getNetworkTimeout()  {
         return settings.getAsInt("duniter.network.timeout", 20000 /*20s*/);
     }
@@ -552,6 +606,10 @@ public class PluginSettings extends AbstractLifecycleComponent<PluginSettings> {
         return settings.getAsBoolean("duniter.security.quota.enable", enableSecurity());
     }
 
+    public int getQuotaMaxIpCount() {
+        return Math.max(1, settings.getAsInt("duniter.security.quota.maxIps", 100000));
+    }
+
     public String[] getIpWhiteList() {
         return settings.getAsArray("duniter.security.whitelist", new String[] {"127.0.0.1", "::1"});
     }
@@ -602,10 +660,38 @@ public class PluginSettings extends AbstractLifecycleComponent<PluginSettings> {
         return settings.getAsArray("duniter.ws.changes.listenSource", new String[]{"*"});
     }
 
+    public long getImageCacheMaxSize() {
+        return settings.getAsBytesSize("duniter.image.cache.maxSize", new ByteSizeValue(64, ByteSizeUnit.MB)).bytes();
+    }
+
+    public int getImageCacheTimeToLive() {
+        return settings.getAsInt("duniter.image.cache.timeToLiveInSec", 3600 /*1h*/);
+    }
+
+    public int getImageHttpCacheMaxAge() {
+        return settings.getAsInt("duniter.image.http.maxAge", 300 /*5min*/);
+    }
+
+    public long getShareCacheMaxSize() {
+        return settings.getAsLong("duniter.share.cache.maxSize", 1000L);
+    }
+
+    public int getShareCacheTimeToLive() {
+        return settings.getAsInt("duniter.share.cache.timeToLiveInSec", 3600 /*1h*/);
+    }
+
     public boolean enableDocStats() {
         return settings.getAsBoolean("duniter.stats.enable", true);
     }
 
+    public boolean enableDocStatsIncremental() {
+        return settings.getAsBoolean("duniter.stats.incremental.enable", false);
+    }
+
+    public int getDocStatsReconcileInterval() {
+        return settings.getAsInt("duniter.stats.incremental.reconcileIntervalInSec", 86400 /*1 day*/);
+    }
+
     /* protected methods */
 
     protected void initI18n() throws IOException {
@@ -34,15 +34,18 @@ import org.elasticsearch.action.ListenableActionFuture;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.search.SearchHit;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.stream.Stream;
 
 /**
  * Created by blavenie on 03/04/17.
@@ -59,6 +62,10 @@ public interface Duniter4jClient extends Bean, Client {
 
     Map<String, Object> getFieldsById(String index, String type, String docId, String... fieldNames);
 
+    Map<String, Map<String, Object>> getFieldsByIds(String index, String type, Collection<String> ids, String... fieldNames);
+
+    Map<String, Map<String, Object>> getFieldsByIds(String index, String type, Collection<String> ids, Set<String> failedIds, String... fieldNames);
+
     <T> T getTypedFieldById(String index, String type, String docId, String fieldName);
 
     Map<String, Object> getMandatoryFieldsById(String index, String type, String docId, String... fieldNames);
@@ -118,6 +125,19 @@ public interface Duniter4jClient extends Bean, Client {
                                             int bulkSize,
                                             boolean flushAll);
 
+    /**
+     * Read all hits of a search, as a lazy stream backed by a scroll (only one page is loaded at a time).
+     * Close the stream (e.g. try-with-resources) to release the scroll, when not fully consumed.
+     * @param request the search request (sort on '_doc' when hits order does not matter)
+     * @param pageSize number of hits fetched by each round trip
+     */
+    Stream<SearchHit> scan(SearchRequestBuilder request, int pageSize);
+
+    /**
+     * Same as scan(request, pageSize), with the max time between two pages read (default: 1 min)
+     */
+    Stream<SearchHit> scan(SearchRequestBuilder request, int pageSize, TimeValue keepAlive);
+
     <T extends ActionResponse> Optional<T> safeExecuteRequest(ActionRequestBuilder<?, T, ?> request, boolean wait);
 
     <T extends ActionResponse> ListenableActionFuture<T> safeExecuteRequest(ActionRequestBuilder<?, T, ?> request);
@@ -93,6 +93,7 @@ import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
@@ -102,6 +103,8 @@ import org.elasticsearch.threadpool.ThreadPool;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Created by Benoit on 08/04/2015.
@@ -302,6 +305,55 @@ public class Duniter4jClientImpl implements Duniter4jClient {
         }
     }
 
+    /**
+     * Retrieve some fields of many documents, using a single (realtime) multi-get request
+     * @param index
+     * @param type
+     * @param ids
+     * @param fieldNames
+     * @return fields, by document id. Missing documents are not in the map
+     */
+    @Override
+    public Map<String, Map<String, Object>> getFieldsByIds(String index, String type, Collection<String> ids, String... fieldNames) {
+        return getFieldsByIds(index, type, ids, null, fieldNames);
+    }
+
+    /**
+     * Same as getFieldsByIds(), but a failed item is only logged, and its id added to failedIds (if not null)
+     * @return fields, by document id. Missing and failed documents are not in the map
+     */
+    @Override
+    public Map<String, Map<String, Object>> getFieldsByIds(String index, String type, Collection<String> ids, Set<String> failedIds, String... fieldNames) {
+        if (CollectionUtils.isEmpty(ids)) return new HashMap<>();
+
+        // Prepare request
+        MultiGetRequestBuilder request = client.prepareMultiGet();
+        ids.forEach(id -> request.add(new MultiGetRequest.Item(index, type, id).fields(fieldNames)));
+
+        // Execute query
+        MultiGetResponse response = request.execute().actionGet();
+
+        Map<String, Map<String, Object>> result = new HashMap<>(ids.size());
+        for (MultiGetItemResponse item: response.getResponses()) {
+            if (item.isFailed()) {
+                logger.warn(String.format("[%s/%s] Unable to retrieve fields [%s] for id [%s]: %s",
+                        index, type,
+                        Joiner.on(',').join(fieldNames),
+                        item.getId(),
+                        item.getFailure().getMessage()));
+                if (failedIds != null) failedIds.add(item.getId());
+                continue;
+            }
+            GetResponse getResponse = item.getResponse();
+            if (getResponse == null || !getResponse.isExists()) continue;
+
+            Map<String, Object> fields = new HashMap<>();
+            getResponse.getFields().forEach((fieldName, field) -> fields.put(fieldName, field.getValue()));
+            result.put(getResponse.getId(), fields);
+        }
+        return result;
+    }
+
     /**
      * Retrieve a field from a document id
      * @param docId
@@ -621,23 +673,16 @@ public class Duniter4jClientImpl implements Duniter4jClient {
         // Execute query, while there is some data
         try {
 
-            int counter = 0;
-            boolean loop = true;
-            searchRequest.setSize(bulkSize);
-            SearchResponse response = searchRequest.execute().actionGet();
-
-            // Execute query, while there is some data
-            do {
-
-                // Read response
-                SearchHit[] searchHits = response.getHits().getHits();
-                for (SearchHit searchHit : searchHits) {
+            // Scan all hits (a scroll is not affected by the deletions)
+            try (Stream<SearchHit> searchHits = scan(searchRequest, bulkSize)) {
+                Iterator<SearchHit> iterator = searchHits.iterator();
+                while (iterator.hasNext()) {
+                    SearchHit searchHit = iterator.next();
 
                     // Add deletion to bulk
                     bulkRequest.add(
                             client.prepareDelete(index, type, searchHit.getId())
                     );
-                    counter++;
 
                     // Flush the bulk if not empty
                     if ((bulkRequest.numberOfActions() % bulkSize) == 0) {
@@ -645,17 +690,7 @@ public class Duniter4jClientImpl implements Duniter4jClient {
                         bulkRequest = client.prepareBulk();
                     }
                 }
-
-                // Prepare next iteration
-                if (counter == 0 || counter >= response.getHits().getTotalHits()) {
-                    loop = false;
-                }
-                // Prepare next iteration
-                else {
-                    searchRequest.setFrom(counter);
-                    response = searchRequest.execute().actionGet();
-                }
-            } while(loop);
+            }
 
             // last flush
             if (flushAll && (bulkRequest.numberOfActions() % bulkSize) != 0) {
@@ -670,6 +705,22 @@ public class Duniter4jClientImpl implements Duniter4jClient {
         return bulkRequest;
     }
 
+    @Override
+    public Stream<SearchHit> scan(SearchRequestBuilder request, int pageSize) {
+        return scan(request, pageSize, SearchHitScanIterator.DEFAULT_KEEP_ALIVE);
+    }
+
+    @Override
+    public Stream<SearchHit> scan(SearchRequestBuilder request, int pageSize, TimeValue keepAlive) {
+        Preconditions.checkNotNull(request);
+        Preconditions.checkArgument(pageSize > 0);
+        Preconditions.checkNotNull(keepAlive);
+
+        SearchHitScanIterator iterator = new SearchHitScanIterator(this, logger, request, pageSize, keepAlive);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
     /* delegate methods */
 
     @Override
@@ -0,0 +1,114 @@
+package org.duniter.elasticsearch.client;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.duniter.core.util.StringUtils;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterate over all hits of a search, using a scroll (one page in memory at a time).
+ * The scroll is cleared when all hits has been read, or on close.
+ */
+class SearchHitScanIterator implements Iterator<SearchHit>, Closeable {
+
+    static final TimeValue DEFAULT_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+
+    private final Duniter4jClient client;
+    private final ESLogger logger;
+    private final TimeValue keepAlive;
+    private SearchRequestBuilder request;
+    private String scrollId;
+    private SearchHit[] hits;
+    private int hitIndex;
+    private boolean finished = false;
+
+    /**
+     * @param keepAlive max time between two pages read
+     */
+    SearchHitScanIterator(Duniter4jClient client, ESLogger logger, SearchRequestBuilder request, int pageSize, TimeValue keepAlive) {
+        this.client = client;
+        this.logger = logger;
+        this.keepAlive = keepAlive;
+        this.request = request
+                .setScroll(keepAlive)
+                .setSize(pageSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (finished) return false;
+        if (hits != null && hitIndex < hits.length) return true;
+
+        // Fetch the next page (lazily)
+        SearchResponse response;
+        if (request != null) {
+            response = client.safeExecuteRequest(request).actionGet();
+            request = null;
+        }
+        else {
+            response = client.safeExecuteRequest(client.prepareSearchScroll(scrollId)
+                    .setScroll(keepAlive)).actionGet();
+        }
+        scrollId = response.getScrollId();
+        hits = response.getHits().getHits();
+        hitIndex = 0;
+
+        if (hits.length == 0) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public SearchHit next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return hits[hitIndex++];
+    }
+
+    @Override
+    public void close() {
+        if (finished) return;
+        finished = true;
+        hits = null;
+
+        if (StringUtils.isNotBlank(scrollId)) {
+            try {
+                client.prepareClearScroll().addScrollId(scrollId).execute();
+            }
+            catch (Exception e) {
+                // Will expire anyway
+                logger.debug(String.format("Unable to clear scroll: %s", e.getMessage()));
+            }
+            scrollId = null;
+        }
+    }
+}
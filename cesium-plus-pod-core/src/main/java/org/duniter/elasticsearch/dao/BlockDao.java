@@ -26,12 +26,14 @@ import org.duniter.core.beans.Bean;
 import org.duniter.core.client.model.bma.BlockchainBlock;
 import org.duniter.core.client.model.bma.BlockchainParameters;
 import org.duniter.core.client.model.local.Member;
+import org.duniter.elasticsearch.model.BlockMemberships;
 import org.elasticsearch.common.bytes.BytesReference;
 
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Created by blavenie on 03/04/17.
@@ -84,5 +86,16 @@ public interface BlockDao extends Bean, TypeDao<BlockDao> {
 
     List<Member> getMembers(BlockchainParameters parameters);
 
+    /**
+     * Visit blocks with membership events (joiners, actives, excluded, leavers or revoked), in ascending number order
+     * @param currencyName
+     * @param fromMedianTime minimal median time (inclusive)
+     * @param afterNumber visit blocks after this number (exclusive)
+     * @param toNumber visit blocks until this number (inclusive)
+     * @param consumer
+     * @return the number of visited blocks
+     */
+    long forEachMembershipBlock(String currencyName, long fromMedianTime, int afterNumber, int toNumber, Consumer<BlockMemberships> consumer);
+
     Set<String> getUniqueIssuersBetween(String currencyName, int startNumber, int endNumber);
 }
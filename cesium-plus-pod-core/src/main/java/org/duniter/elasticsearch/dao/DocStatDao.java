@@ -24,9 +24,11 @@ package org.duniter.elasticsearch.dao;
 
 import org.duniter.elasticsearch.model.DocStat;
 import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 
 import javax.annotation.Nullable;
+import java.util.List;
 
 /**
  * Created by blavenie on 13/09/17.
@@ -44,6 +46,19 @@ public interface DocStatDao extends IndexTypeDao<DocStatDao>{
 
     long countDoc(String index, @Nullable String type, QueryBuilder queryBuilder);
 
+    SearchRequestBuilder prepareCountDoc(String index, @Nullable String type, @Nullable QueryBuilder queryBuilder);
+
+    /**
+     * Execute many count requests, in one multi search
+     * @return counts (same order as requests), or null if a request failed
+     */
+    Long[] countDocs(List<SearchRequestBuilder> requests);
+
+    /**
+     * Refresh indices, to make all indexed documents searchable (missing indices are ignored)
+     */
+    void refreshIndices(String... indices);
+
     IndexRequestBuilder prepareIndex(DocStat stat);
 
 }
@@ -24,8 +24,10 @@ package org.duniter.elasticsearch.dao.impl;
 
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.apache.commons.lang3.mutable.MutableLong;
 import org.duniter.core.client.model.bma.BlockchainBlock;
 import org.duniter.core.client.model.bma.BlockchainParameters;
 import org.duniter.core.client.model.local.Member;
@@ -36,6 +38,7 @@ import org.duniter.core.util.StringUtils;
 import org.duniter.core.util.json.JsonSyntaxException;
 import org.duniter.elasticsearch.dao.AbstractDao;
 import org.duniter.elasticsearch.dao.BlockDao;
+import org.duniter.elasticsearch.model.BlockMemberships;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequestBuilder;
@@ -58,6 +61,8 @@ import org.elasticsearch.search.sort.SortOrder;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import java.util.stream.Collectors;
 
 /**
@@ -297,8 +302,6 @@ public class BlockDaoImpl extends AbstractDao implements BlockDao {
 
         SearchRequestBuilder req = client.prepareSearch(parameters.getCurrency())
                 .setTypes(BlockDao.TYPE)
-                .setSize(size)
-                .setRequestCache(true)
                 .addFields(BlockchainBlock.PROPERTY_JOINERS,
                         BlockchainBlock.PROPERTY_ACTIVES,
                         BlockchainBlock.PROPERTY_EXCLUDED,
@@ -308,13 +311,10 @@ public class BlockDaoImpl extends AbstractDao implements BlockDao {
                 .addSort(BlockchainBlock.PROPERTY_NUMBER, SortOrder.ASC)
                 .setFetchSource(false);
 
-        long total = -1;
-        int from = 0;
+        final MutableLong total = new MutableLong(0);
         Map<String, String> results = Maps.newHashMap();
-        do {
-
-            SearchResponse response = req.execute().actionGet();
-            toStream(response).forEach(hit -> {
+        try (Stream<SearchHit> hits = client.scan(req, size)) {
+            hits.forEach(hit -> {
                 Map<String, SearchHitField> fields = hit.getFields();
                 // membership IN
                 updateMembershipsMap(results, fields.get(BlockchainBlock.PROPERTY_JOINERS), true);
@@ -323,18 +323,15 @@ public class BlockDaoImpl extends AbstractDao implements BlockDao {
                 updateMembershipsMap(results, fields.get(BlockchainBlock.PROPERTY_EXCLUDED), false);
                 updateMembershipsMap(results, fields.get(BlockchainBlock.PROPERTY_LEAVERS), false);
                 updateMembershipsMap(results, fields.get(BlockchainBlock.PROPERTY_REVOKED), false);
+                total.increment();
             });
-
-            from += size;
-            req.setFrom(from);
-            if (total == -1) total = response.getHits().getTotalHits();
-        } while(from<total);
+        }
 
         if (logger.isDebugEnabled()) {
             logger.debug(String.format("[%s] WoT has {%s} members, computed from {%s} blocks reading in %s ms.",
                     parameters.getCurrency(),
                     results.size(),
-                    total,
+                    total.getValue(),
                     System.currentTimeMillis() - now));
             if (logger.isTraceEnabled()) {
                 logger.trace(String.format("[%s] Wot members are: %s", parameters.getCurrency(), results));
@@ -350,6 +347,63 @@ public class BlockDaoImpl extends AbstractDao implements BlockDao {
     }
 
 
+    @Override
+    public long forEachMembershipBlock(String currencyName, long fromMedianTime, int afterNumber, int toNumber, Consumer<BlockMemberships> consumer) {
+        Preconditions.checkNotNull(currencyName);
+        Preconditions.checkNotNull(consumer);
+
+        int size = pluginSettings.getIndexBulkSize();
+
+        QueryBuilder withEvents = QueryBuilders.boolQuery()
+                .minimumNumberShouldMatch(1)
+                .should(QueryBuilders.existsQuery(BlockchainBlock.PROPERTY_JOINERS))
+                .should(QueryBuilders.existsQuery(BlockchainBlock.PROPERTY_ACTIVES))
+                .should(QueryBuilders.existsQuery(BlockchainBlock.PROPERTY_EXCLUDED))
+                .should(QueryBuilders.existsQuery(BlockchainBlock.PROPERTY_LEAVERS))
+                .should(QueryBuilders.existsQuery(BlockchainBlock.PROPERTY_REVOKED));
+
+        QueryBuilder timeQuery = QueryBuilders.rangeQuery(BlockchainBlock.PROPERTY_MEDIAN_TIME)
+                .gte(fromMedianTime);
+
+        final ObjectMapper objectMapper = getObjectMapper();
+        long count = 0;
+        int lastNumber = afterNumber;
+        boolean hasMore;
+        do {
+            // Keyset pagination (on block number) - avoid deep 'from'
+            QueryBuilder numberQuery = QueryBuilders.rangeQuery(BlockchainBlock.PROPERTY_NUMBER)
+                    .gt(lastNumber)
+                    .lte(toNumber);
+
+            SearchResponse response = client.prepareSearch(currencyName)
+                    .setTypes(BlockDao.TYPE)
+                    .setSize(size)
+                    .setQuery(QueryBuilders.constantScoreQuery(QueryBuilders.boolQuery()
+                            .filter(withEvents)
+                            .filter(timeQuery)
+                            .filter(numberQuery)))
+                    .addSort(BlockchainBlock.PROPERTY_NUMBER, SortOrder.ASC)
+                    .setFetchSource(BlockMemberships.PROPERTIES, null)
+                    .execute().actionGet();
+
+            SearchHit[] hits = response.getHits().getHits();
+            for (SearchHit hit: hits) {
+                try {
+                    BlockMemberships block = objectMapper.readValue(hit.getSourceRef().streamInput(), BlockMemberships.class);
+                    consumer.accept(block);
+                    lastNumber = block.getNumber();
+                    count++;
+                }
+                catch (IOException e) {
+                    throw new TechnicalException(String.format("[%s] Unable to parse block #%s", currencyName, hit.getId()), e);
+                }
+            }
+            hasMore = hits.length == size;
+        } while (hasMore);
+
+        return count;
+    }
+
     /**
      * Delete blocks from a start number (using bulk)
      * @param currencyName
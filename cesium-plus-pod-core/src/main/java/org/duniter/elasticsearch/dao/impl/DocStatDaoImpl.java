@@ -31,8 +31,11 @@ import org.duniter.elasticsearch.PluginSettings;
 import org.duniter.elasticsearch.dao.*;
 import org.duniter.elasticsearch.model.DocStat;
 import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -40,6 +43,7 @@ import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.index.query.QueryBuilder;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Created by Benoit on 30/03/2015.
@@ -61,6 +65,12 @@ public class DocStatDaoImpl extends AbstractIndexTypeDao<DocStatDao> implements
 
     @Override
     public long countDoc(String index, String type, QueryBuilder query) {
+        SearchResponse response = prepareCountDoc(index, type, query).execute().actionGet();
+        return response.getHits().getTotalHits();
+    }
+
+    @Override
+    public SearchRequestBuilder prepareCountDoc(String index, String type, QueryBuilder query) {
         Preconditions.checkArgument(StringUtils.isNotBlank(index));
 
         SearchRequestBuilder searchRequest = client.prepareSearch(index)
@@ -76,8 +86,36 @@ public class DocStatDaoImpl extends AbstractIndexTypeDao<DocStatDao> implements
             searchRequest.setQuery(query);
         }
 
-        SearchResponse response = searchRequest.execute().actionGet();
-        return response.getHits().getTotalHits();
+        return searchRequest;
+    }
+
+    @Override
+    public Long[] countDocs(List<SearchRequestBuilder> requests) {
+        Preconditions.checkNotNull(requests);
+        Long[] result = new Long[requests.size()];
+        if (requests.isEmpty()) return result;
+
+        MultiSearchRequestBuilder multiSearch = client.prepareMultiSearch();
+        requests.forEach(multiSearch::add);
+
+        MultiSearchResponse.Item[] items = multiSearch.execute().actionGet().getResponses();
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].isFailure()) {
+                logger.error(String.format("Failed to count documents: %s", items[i].getFailureMessage()));
+            }
+            else {
+                result[i] = items[i].getResponse().getHits().getTotalHits();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void refreshIndices(String... indices) {
+        if (indices == null || indices.length == 0) return;
+        client.admin().indices().prepareRefresh(indices)
+                .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                .get();
     }
 
     @Override
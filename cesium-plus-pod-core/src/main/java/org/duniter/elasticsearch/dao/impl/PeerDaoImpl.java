@@ -52,11 +52,13 @@ import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.bucket.SingleBucketAggregation;
 import org.elasticsearch.search.aggregations.metrics.max.Max;
+import org.elasticsearch.search.sort.SortOrder;
 
 import java.io.IOException;
 import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Created by blavenie on 29/12/15.
@@ -321,54 +323,36 @@ public class PeerDaoImpl extends AbstractDao implements PeerDao {
                     .filter(QueryBuilders.termQuery(Peer.PROPERTY_STATS + "." + Peer.Stats.PROPERTY_STATUS, Peer.PeerStatus.UP.name())));
         query.must(statsQuery);
 
-        searchRequest.setQuery(QueryBuilders.constantScoreQuery(query));
+        searchRequest.setQuery(QueryBuilders.constantScoreQuery(query))
+                .addSort("_doc", SortOrder.ASC);
 
-        BulkRequestBuilder bulkRequest = client.prepareBulk();
-
-
-        // Execute query, while there is some data
-        try {
+        // Scan all matching peers (a scroll is not affected by the updates below)
+        try (Stream<SearchHit> hits = client.scan(searchRequest, pluginSettings.getIndexBulkSize())) {
 
             int counter = 0;
-            boolean loop = true;
             int bulkSize = pluginSettings.getIndexBulkSize();
-            searchRequest.setSize(bulkSize);
-            SearchResponse response = searchRequest.execute().actionGet();
-
-            // Execute query, while there is some data
-            do {
-
-                // Read response
-                SearchHit[] searchHits = response.getHits().getHits();
-                for (SearchHit searchHit : searchHits) {
-
-                    // Add update operation to bulk
-                    bulkRequest.add(
-                            client.prepareUpdate(currencyName, TYPE, searchHit.getId())
-                            .setDoc(String.format("{\"%s\": {\"%s\": \"%s\", \"%s\": %s}}", Peer.PROPERTY_STATS,
-                                    Peer.Stats.PROPERTY_STATUS, Peer.PeerStatus.DOWN.name(),
-                                    Peer.Stats.PROPERTY_FIRST_DOWN_TIME, firstDownTime
-                            ).getBytes())
-                    );
-                    counter++;
-
-                    // Flush the bulk if not empty
-                    if ((bulkRequest.numberOfActions() % bulkSize) == 0) {
-                        client.flushBulk(bulkRequest);
-                        bulkRequest = client.prepareBulk();
-                    }
-                }
-
-                // Prepare next iteration
-                if (counter == 0 || counter >= response.getHits().getTotalHits()) {
-                    loop = false;
+            BulkRequestBuilder bulkRequest = client.prepareBulk();
+
+            Iterator<SearchHit> iterator = hits.iterator();
+            while (iterator.hasNext()) {
+                SearchHit searchHit = iterator.next();
+
+                // Add update operation to bulk
+                bulkRequest.add(
+                        client.prepareUpdate(currencyName, TYPE, searchHit.getId())
+                        .setDoc(String.format("{\"%s\": {\"%s\": \"%s\", \"%s\": %s}}", Peer.PROPERTY_STATS,
+                                Peer.Stats.PROPERTY_STATUS, Peer.PeerStatus.DOWN.name(),
+                                Peer.Stats.PROPERTY_FIRST_DOWN_TIME, firstDownTime
+                        ).getBytes())
+                );
+                counter++;
+
+                // Flush the bulk if not empty
+                if ((bulkRequest.numberOfActions() % bulkSize) == 0) {
+                    client.flushBulk(bulkRequest);
+                    bulkRequest = client.prepareBulk();
                 }
-                // Prepare next iteration
-                else {
-                    searchRequest.setFrom(counter);
-                    response = searchRequest.execute().actionGet();
-                }
-            } while(loop);
+            }
 
             // last flush
             if ((bulkRequest.numberOfActions() % bulkSize) != 0) {
@@ -383,8 +367,6 @@ public class PeerDaoImpl extends AbstractDao implements PeerDao {
             // Failed or no item on index
             logger.error(String.format("Error while update peer status to DOWN: %s.", e.getMessage()), e);
         }
-
-
     }
 
     @Override
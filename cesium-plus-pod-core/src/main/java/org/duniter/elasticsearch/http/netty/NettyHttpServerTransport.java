@@ -1,11 +1,14 @@
 package org.duniter.elasticsearch.http.netty;
 
-
+import com.google.common.collect.ImmutableSet;
+import org.duniter.elasticsearch.http.netty.websocket.NettyWebSocketSession;
 import org.duniter.elasticsearch.http.netty.websocket.WebSocketEndpoint;
+import org.duniter.elasticsearch.http.netty.websocket.WebSocketEndpointStats;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.network.NetworkService;
 import org.elasticsearch.common.path.PathTrie;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.http.netty.NettyHttpChannel;
 import org.elasticsearch.http.netty.NettyHttpRequest;
@@ -17,13 +20,29 @@ import org.elasticsearch.rest.support.RestUtils;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Add Websocket capabilities to ES transport layer
  * WS call are detected by path (e.g. /ws). {@see org.duniter.elasticsearch.http.netty.HttpRequestHandler} for details
  */
 public class NettyHttpServerTransport extends  org.elasticsearch.http.netty.NettyHttpServerTransport {
 
+    public static final String SETTING_WS_SESSION_MAX_QUEUED_BYTES = "duniter.ws.session.maxQueuedBytes";
+    public static final String SETTING_WS_COMPRESSION_ENABLE = "duniter.ws.compression.enable";
+    public static final String SETTING_WS_COMPRESSION_LEVEL = "duniter.ws.compression.level";
+    public static final String SETTING_WS_COMPRESSION_THRESHOLD = "duniter.ws.compression.threshold";
+    public static final String SETTING_WS_COMPRESSION_CONTEXT_TAKEOVER_ENDPOINTS = "duniter.ws.compression.contextTakeover.endpoints";
+
     private final PathTrie<Class<? extends WebSocketEndpoint>> websocketEndpoints;
+    private final Map<Class<? extends WebSocketEndpoint>, String> websocketEndpointPaths = new ConcurrentHashMap<>();
+    private final long websocketMaxQueuedBytes;
+    private final boolean websocketCompression;
+    private final WebSocketDeflateHandler.Options websocketDeflateOptions;
+    private final WebSocketDeflateHandler.Options websocketDeflateContextTakeoverOptions;
+    private final Set<String> websocketContextTakeoverEndpoints;
 
     @Inject
     public NettyHttpServerTransport(Settings settings,
@@ -31,6 +50,22 @@ public class NettyHttpServerTransport extends  org.elasticsearch.http.netty.Nett
                                     BigArrays bigArrays) {
         super(settings, networkService, bigArrays);
         this.websocketEndpoints = new PathTrie(RestUtils.REST_DECODER);
+        this.websocketMaxQueuedBytes = settings.getAsBytesSize(SETTING_WS_SESSION_MAX_QUEUED_BYTES,
+                new ByteSizeValue(NettyWebSocketSession.DEFAULT_MAX_QUEUED_BYTES)).bytes();
+
+        // Websocket compression (permessage-deflate)
+        this.websocketCompression = settings.getAsBoolean(SETTING_WS_COMPRESSION_ENABLE, true);
+        this.websocketDeflateOptions = new WebSocketDeflateHandler.Options();
+        this.websocketDeflateOptions.level = settings.getAsInt(SETTING_WS_COMPRESSION_LEVEL, 6);
+        this.websocketDeflateOptions.threshold = (int)settings.getAsBytesSize(SETTING_WS_COMPRESSION_THRESHOLD, new ByteSizeValue(512)).bytes();
+        this.websocketDeflateOptions.contextTakeover = false;
+
+        // Keep the compression context only on some endpoints ('*' for all)
+        this.websocketDeflateContextTakeoverOptions = new WebSocketDeflateHandler.Options();
+        this.websocketDeflateContextTakeoverOptions.level = websocketDeflateOptions.level;
+        this.websocketDeflateContextTakeoverOptions.threshold = websocketDeflateOptions.threshold;
+        this.websocketDeflateContextTakeoverOptions.contextTakeover = true;
+        this.websocketContextTakeoverEndpoints = ImmutableSet.copyOf(settings.getAsArray(SETTING_WS_COMPRESSION_CONTEXT_TAKEOVER_ENDPOINTS, new String[0]));
     }
 
     @Override
@@ -60,6 +95,7 @@ public class NettyHttpServerTransport extends  org.elasticsearch.http.netty.Nett
 
     public <T extends WebSocketEndpoint> void addEndpoint(String path, Class<T> handler) {
         websocketEndpoints.insert(path, handler);
+        websocketEndpointPaths.put(handler, path);
     }
 
     @Override
@@ -72,11 +108,23 @@ public class NettyHttpServerTransport extends  org.elasticsearch.http.netty.Nett
         WebSocketEndpoint wsEndpoint = createWebsocketEndpoint(request);
         if (wsEndpoint != null) {
 
-            WebSocketRequestHandler channelHandler = new WebSocketRequestHandler(wsEndpoint);
+            String endpointName = websocketEndpointPaths.getOrDefault(wsEndpoint.getClass(), wsEndpoint.getClass().getSimpleName());
+            WebSocketRequestHandler channelHandler = new WebSocketRequestHandler(wsEndpoint, endpointName, websocketMaxQueuedBytes);
 
             // Replacing the new handler to the existing pipeline to handle
             request.getChannel().getPipeline().replace("handler", "websocketHandler", channelHandler);
 
+            // Add compression, if client support it
+            if (websocketCompression) {
+                WebSocketDeflateHandler.Options options = isContextTakeoverEndpoint(endpointName) ?
+                        websocketDeflateContextTakeoverOptions : websocketDeflateOptions;
+                WebSocketDeflateHandler deflateHandler = WebSocketDeflateHandler.negotiate(request.request(), options,
+                        WebSocketEndpointStats.get(endpointName));
+                if (deflateHandler != null) {
+                    request.getChannel().getPipeline().addBefore("websocketHandler", "websocketDeflate", deflateHandler);
+                }
+            }
+
             // Execute the handshake
             channelHandler.handleHandshake(request);
 
@@ -91,6 +139,10 @@ public class NettyHttpServerTransport extends  org.elasticsearch.http.netty.Nett
 
     /* -- protected method -- */
 
+    protected boolean isContextTakeoverEndpoint(String endpointName) {
+        return websocketContextTakeoverEndpoints.contains(endpointName) || websocketContextTakeoverEndpoints.contains("*");
+    }
+
     protected <T extends WebSocketEndpoint> T createWebsocketEndpoint(RestRequest request) {
         String path = request.rawPath();
         Class<? extends WebSocketEndpoint> clazz = websocketEndpoints != null ? websocketEndpoints.retrieve(path, request.params()) : null;
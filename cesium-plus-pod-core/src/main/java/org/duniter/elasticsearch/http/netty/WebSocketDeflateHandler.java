@@ -0,0 +1,375 @@
+package org.duniter.elasticsearch.http.netty;
+
+import org.duniter.elasticsearch.http.netty.websocket.WebSocketEndpointStats;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.*;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.CorruptedFrameException;
+import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Websocket 'permessage-deflate' extension (RFC 7692).
+ * Compress outgoing text/binary frames (if greater than a threshold), and decompress incoming compressed messages.
+ * Must be added just before the websocket handler, in the channel pipeline.
+ * Without context takeover, the zlib streams are borrowed from a shared pool for each message.
+ * With context takeover, each session has its own streams (created on first use), released when the channel closes.
+ */
+public class WebSocketDeflateHandler extends SimpleChannelHandler implements LifeCycleAwareChannelHandler {
+
+    public static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+    public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+    private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+    private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+    private static final int RSV1 = 0x04;
+    private static final byte[] TAIL = new byte[]{0x00, 0x00, (byte) 0xff, (byte) 0xff};
+    private static final int MAX_INFLATED_BYTES = 1024 * 1024; // 1MB
+
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    private static final Queue<Inflater> INFLATER_POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final Queue<Deflater>[] DEFLATER_POOLS = createDeflaterPools();
+
+    public static class Options {
+        public int level = Deflater.DEFAULT_COMPRESSION;
+        public int threshold = 512;
+        public boolean contextTakeover = false;
+    }
+
+    /**
+     * Negotiate the extension, from the client offers
+     * @return an handler, or null if client does not offer a compatible 'permessage-deflate' extension
+     */
+    public static WebSocketDeflateHandler negotiate(HttpRequest request, Options options, WebSocketEndpointStats stats) {
+        String header = request.headers().get(EXTENSIONS_HEADER);
+        if (header == null) return null;
+
+        // Use the first acceptable offer
+        for (String offer: header.split(",")) {
+            String[] params = offer.split(";");
+            if (!PERMESSAGE_DEFLATE.equalsIgnoreCase(params[0].trim())) continue;
+
+            boolean acceptable = true;
+            // Without context takeover, also ask the client to reset its context (allowed by RFC 7692 - 7.1.1.2)
+            boolean serverNoContextTakeover = !options.contextTakeover;
+            boolean clientNoContextTakeover = !options.contextTakeover;
+            for (int i = 1; i < params.length && acceptable; i++) {
+                String[] param = params[i].trim().split("=", 2);
+                String name = param[0].trim();
+                String value = param.length > 1 ? param[1].trim().replace("\"", "") : null;
+                if (SERVER_NO_CONTEXT_TAKEOVER.equalsIgnoreCase(name)) {
+                    serverNoContextTakeover = true;
+                }
+                else if (CLIENT_NO_CONTEXT_TAKEOVER.equalsIgnoreCase(name)) {
+                    clientNoContextTakeover = true;
+                }
+                else if (SERVER_MAX_WINDOW_BITS.equalsIgnoreCase(name)) {
+                    // java.util.zip always use a 32K window (15 bits)
+                    acceptable = "15".equals(value);
+                }
+                else if (!CLIENT_MAX_WINDOW_BITS.equalsIgnoreCase(name)) {
+                    acceptable = false; // Unknown parameter
+                }
+            }
+
+            if (acceptable) {
+                return new WebSocketDeflateHandler(options.level, options.threshold, !serverNoContextTakeover, !clientNoContextTakeover, stats);
+            }
+        }
+        return null;
+    }
+
+    private final int level;
+    private final int threshold;
+    private final boolean serverContextTakeover;
+    private final boolean clientContextTakeover;
+    private final WebSocketEndpointStats stats;
+    private final Object deflateLock = new Object();
+    private final Object inflateLock = new Object();
+    private Deflater deflater; // Only with server context takeover
+    private Inflater inflater; // Only with client context takeover
+    private ChannelBuffer fragments; // Compressed message, received in many frames
+    private boolean fragmentsText;
+    private volatile boolean closed = false;
+
+    protected WebSocketDeflateHandler(int level, int threshold, boolean serverContextTakeover, boolean clientContextTakeover,
+                                      WebSocketEndpointStats stats) {
+        this.level = level;
+        this.threshold = threshold;
+        this.serverContextTakeover = serverContextTakeover;
+        this.clientContextTakeover = clientContextTakeover;
+        this.stats = stats;
+    }
+
+    public String getResponseHeader() {
+        StringBuilder sb = new StringBuilder(PERMESSAGE_DEFLATE);
+        if (!serverContextTakeover) sb.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+        if (!clientContextTakeover) sb.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+        return sb.toString();
+    }
+
+    @Override
+    public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        Object msg = e.getMessage();
+
+        // Handshake response: accept the extension
+        if (msg instanceof HttpResponse) {
+            HttpResponse response = (HttpResponse) msg;
+            if (response.getStatus().getCode() == HttpResponseStatus.SWITCHING_PROTOCOLS.getCode()) {
+                response.headers().set(EXTENSIONS_HEADER, getResponseHeader());
+            }
+            super.writeRequested(ctx, e);
+            return;
+        }
+
+        // Compress data frames (only when not fragmented)
+        if ((msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame)
+                && ((WebSocketFrame) msg).isFinalFragment()
+                && ((WebSocketFrame) msg).getBinaryData().readableBytes() >= threshold) {
+            WebSocketFrame frame = (WebSocketFrame) msg;
+
+            // Keep the compression order = the write order (required by context takeover)
+            synchronized (deflateLock) {
+                if (closed) return;
+                ChannelBuffer payload = frame.getBinaryData();
+                int size = payload.readableBytes();
+                ChannelBuffer compressed = deflate(payload);
+                stats.onCompressed(size, compressed.readableBytes());
+
+                WebSocketFrame compressedFrame = (frame instanceof TextWebSocketFrame)
+                        ? new TextWebSocketFrame(true, frame.getRsv() | RSV1, compressed)
+                        : new BinaryWebSocketFrame(true, frame.getRsv() | RSV1, compressed);
+                Channels.write(ctx, e.getFuture(), compressedFrame, e.getRemoteAddress());
+            }
+            return;
+        }
+
+        super.writeRequested(ctx, e);
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+        Object msg = e.getMessage();
+        if (!(msg instanceof WebSocketFrame)) {
+            super.messageReceived(ctx, e);
+            return;
+        }
+        WebSocketFrame frame = (WebSocketFrame) msg;
+        boolean compressed = (frame.getRsv() & RSV1) != 0;
+        boolean dataFrame = frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame;
+
+        // RSV1 is only allowed on the first frame of a data message
+        if (compressed && !dataFrame) {
+            throw new CorruptedFrameException("RSV1 set on a control or continuation frame");
+        }
+
+        ChannelBuffer payload;
+        boolean text;
+        synchronized (inflateLock) {
+            if (compressed && !frame.isFinalFragment()) {
+                // First fragment of a compressed message: wait next fragments
+                if (fragments != null) throw new CorruptedFrameException("Previous fragmented message not finished");
+                fragments = ChannelBuffers.dynamicBuffer(Math.max(256, frame.getBinaryData().readableBytes() * 2));
+                fragments.writeBytes(frame.getBinaryData());
+                fragmentsText = frame instanceof TextWebSocketFrame;
+                return;
+            }
+            if (frame instanceof ContinuationWebSocketFrame && fragments != null) {
+                fragments.writeBytes(frame.getBinaryData());
+                if (fragments.readableBytes() > MAX_INFLATED_BYTES) {
+                    throw new CorruptedFrameException(String.format("Message too large (more than %s bytes)", MAX_INFLATED_BYTES));
+                }
+                if (!frame.isFinalFragment()) return;
+
+                // Last fragment: decompress the whole message
+                payload = inflate(fragments);
+                text = fragmentsText;
+                fragments = null;
+            }
+            else if (compressed) {
+                payload = inflate(frame.getBinaryData());
+                text = frame instanceof TextWebSocketFrame;
+            }
+            else {
+                // Not compressed
+                payload = null;
+                text = false;
+            }
+        }
+
+        if (payload == null) {
+            super.messageReceived(ctx, e);
+            return;
+        }
+
+        WebSocketFrame inflatedFrame = text
+                ? new TextWebSocketFrame(true, frame.getRsv() & ~RSV1, payload)
+                : new BinaryWebSocketFrame(true, frame.getRsv() & ~RSV1, payload);
+        Channels.fireMessageReceived(ctx, inflatedFrame, e.getRemoteAddress());
+    }
+
+    @Override
+    public void beforeAdd(ChannelHandlerContext ctx) throws Exception {
+    }
+
+    @Override
+    public void afterAdd(ChannelHandlerContext ctx) throws Exception {
+        // Release zlib streams on any close (including when the connection is lost)
+        Channel channel = ctx.getChannel();
+        if (channel != null) channel.getCloseFuture().addListener(future -> release());
+    }
+
+    @Override
+    public void beforeRemove(ChannelHandlerContext ctx) throws Exception {
+    }
+
+    @Override
+    public void afterRemove(ChannelHandlerContext ctx) throws Exception {
+        release();
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        release();
+        super.channelClosed(ctx, e);
+    }
+
+    /**
+     * Free zlib native memory (can be called many times)
+     */
+    public void release() {
+        synchronized (deflateLock) {
+            closed = true;
+            if (deflater != null) {
+                deflater.end();
+                deflater = null;
+            }
+        }
+        synchronized (inflateLock) {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+            fragments = null;
+        }
+    }
+
+    /* -- protected methods -- */
+
+    protected ChannelBuffer deflate(ChannelBuffer payload) {
+        byte[] input = new byte[payload.readableBytes()];
+        payload.getBytes(payload.readerIndex(), input);
+
+        Deflater deflater = serverContextTakeover ? getDeflater() : borrowDeflater(level);
+        ChannelBuffer out = ChannelBuffers.dynamicBuffer(Math.max(64, input.length / 2));
+        byte[] buffer = new byte[8192];
+        try {
+            deflater.setInput(input);
+            int count;
+            do {
+                count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                out.writeBytes(buffer, 0, count);
+            } while (count == buffer.length);
+        }
+        finally {
+            if (!serverContextTakeover) releaseDeflater(level, deflater);
+        }
+
+        // Remove the empty deflate block tail (0x00 0x00 0xff 0xff)
+        return out.slice(0, out.writerIndex() - TAIL.length);
+    }
+
+    protected ChannelBuffer inflate(ChannelBuffer payload) throws CorruptedFrameException {
+        synchronized (inflateLock) {
+            if (closed) return ChannelBuffers.EMPTY_BUFFER;
+            byte[] input = new byte[payload.readableBytes() + TAIL.length];
+            payload.getBytes(payload.readerIndex(), input, 0, payload.readableBytes());
+            System.arraycopy(TAIL, 0, input, input.length - TAIL.length, TAIL.length);
+
+            Inflater inflater = clientContextTakeover ? getInflater() : borrowInflater();
+            ChannelBuffer out = ChannelBuffers.dynamicBuffer(input.length * 2);
+            byte[] buf = new byte[8192];
+            try {
+                inflater.setInput(input);
+                int count;
+                while ((count = inflater.inflate(buf)) > 0 || !inflater.needsInput()) {
+                    if (count == 0 && (inflater.finished() || inflater.needsDictionary())) break;
+                    out.writeBytes(buf, 0, count);
+                    if (out.writerIndex() > MAX_INFLATED_BYTES) {
+                        throw new CorruptedFrameException(String.format("Message too large (more than %s bytes)", MAX_INFLATED_BYTES));
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new CorruptedFrameException("Invalid compressed message: " + e.getMessage());
+            }
+            finally {
+                if (!clientContextTakeover) releaseInflater(inflater);
+            }
+            return out;
+        }
+    }
+
+    protected boolean hasOwnStreams() {
+        synchronized (deflateLock) {
+            synchronized (inflateLock) {
+                return deflater != null || inflater != null;
+            }
+        }
+    }
+
+    /* -- internal methods -- */
+
+    private Deflater getDeflater() {
+        if (deflater == null) deflater = new Deflater(level, true);
+        return deflater;
+    }
+
+    private Inflater getInflater() {
+        if (inflater == null) inflater = new Inflater(true);
+        return inflater;
+    }
+
+    private static Deflater borrowDeflater(int level) {
+        Deflater deflater = DEFLATER_POOLS[level + 1].poll();
+        return deflater != null ? deflater : new Deflater(level, true);
+    }
+
+    private static void releaseDeflater(int level, Deflater deflater) {
+        deflater.reset();
+        if (!DEFLATER_POOLS[level + 1].offer(deflater)) deflater.end();
+    }
+
+    private static Inflater borrowInflater() {
+        Inflater inflater = INFLATER_POOL.poll();
+        return inflater != null ? inflater : new Inflater(true);
+    }
+
+    private static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (!INFLATER_POOL.offer(inflater)) inflater.end();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<Deflater>[] createDeflaterPools() {
+        // One pool by level (from -1 to 9)
+        Queue<Deflater>[] pools = new Queue[11];
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ArrayBlockingQueue<>(POOL_SIZE);
+        }
+        return pools;
+    }
+}
@@ -1,6 +1,7 @@
 package org.duniter.elasticsearch.http.netty;
 
 import org.duniter.elasticsearch.http.netty.websocket.NettyWebSocketSession;
+import org.duniter.elasticsearch.http.netty.websocket.WebSocketEndpointStats;
 import org.duniter.elasticsearch.http.netty.websocket.WebSocketEndpoint;
 import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
 import org.elasticsearch.http.netty.NettyHttpRequest;
@@ -9,16 +10,26 @@ import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.websocketx.*;
 
 import javax.websocket.CloseReason;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @ChannelHandler.Sharable
 public class WebSocketRequestHandler extends SimpleChannelHandler {
 
     private final WebSocketEndpoint endpoint;
+    private final WebSocketEndpointStats stats;
+    private final long maxQueuedBytes;
     private NettyWebSocketSession session;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
 
     public WebSocketRequestHandler(WebSocketEndpoint endpoint) {
+        this(endpoint, endpoint.getClass().getSimpleName(), NettyWebSocketSession.DEFAULT_MAX_QUEUED_BYTES);
+    }
+
+    public WebSocketRequestHandler(WebSocketEndpoint endpoint, String endpointName, long maxQueuedBytes) {
         super();
         this.endpoint = endpoint;
+        this.stats = WebSocketEndpointStats.get(endpointName);
+        this.maxQueuedBytes = maxQueuedBytes;
     }
 
     /* Do the handshaking for WebSocket request */
@@ -33,7 +44,7 @@ public class WebSocketRequestHandler extends SimpleChannelHandler {
         ChannelFuture future = handshaker.handshake(request.getChannel(), request.request());
         future.addListener(channelFuture -> {
             // Session is open
-            session = new NettyWebSocketSession(channelFuture.getChannel(), request.params());
+            session = new NettyWebSocketSession(channelFuture.getChannel(), request.params(), stats, maxQueuedBytes);
             endpoint.onOpen(session);
         });
         return future;
@@ -74,9 +85,11 @@ public class WebSocketRequestHandler extends SimpleChannelHandler {
 
             // Close
             else if (msg instanceof CloseWebSocketFrame) {
-                ctx.getChannel().close();
                 CloseWebSocketFrame frame = (CloseWebSocketFrame)msg;
-                endpoint.onClose(new CloseReason(getCloseCode(frame), frame.getReasonText()));
+                if (closed.compareAndSet(false, true)) {
+                    endpoint.onClose(new CloseReason(getCloseCode(frame), frame.getReasonText()));
+                }
+                ctx.getChannel().close();
             }
 
             // Unknown event
@@ -86,6 +99,30 @@ public class WebSocketRequestHandler extends SimpleChannelHandler {
         }
     }
 
+    @Override
+    public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        // Channel may be writable again: send queued frames
+        if (session != null && ctx.getChannel().isWritable()) {
+            session.flush();
+        }
+        super.channelInterestChanged(ctx, e);
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+        if (session != null) {
+            session.release();
+
+            // Notify the endpoint, if not already done (e.g. when closed by server, or connection lost)
+            if (closed.compareAndSet(false, true)) {
+                CloseReason reason = session.getCloseReason() != null ? session.getCloseReason() :
+                        new CloseReason(CloseReason.CloseCodes.CLOSED_ABNORMALLY, "Connection closed");
+                endpoint.onClose(reason);
+            }
+        }
+        super.channelClosed(ctx, e);
+    }
+
     protected String getWebSocketURL(NettyHttpRequest req) {
         return "ws://" + req.request().headers().get(HttpHeaders.Names.HOST) + req.rawPath() ;
     }
@@ -1,7 +1,6 @@
 package org.duniter.elasticsearch.http.netty.websocket;
 
 import org.elasticsearch.common.bytes.BytesReference;
-import org.elasticsearch.http.netty.NettyHttpRequest;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
@@ -9,22 +8,47 @@ import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import org.jboss.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.jboss.netty.handler.codec.http.websocketx.WebSocketFrame;
 
 import javax.websocket.CloseReason;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Map;
 
 public class NettyWebSocketSession {
 
-    private Channel channel;
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 4 * 1024 * 1024; // 4MB
+
+    private volatile Channel channel;
     private Map<String, String> pathParameters;
 
+    // Outbound queue, used when the channel is not writable (e.g. slow consumer)
+    private final long maxQueuedBytes;
+    private final WebSocketEndpointStats stats;
+    private final ArrayDeque<WebSocketFrame> queue = new ArrayDeque<>();
+    private long queuedBytes = 0;
+    private CloseReason closeReason;
+
     public NettyWebSocketSession(Channel channel, Map<String, String> pathParameters) {
+        this(channel, pathParameters, WebSocketEndpointStats.get("unknown"), DEFAULT_MAX_QUEUED_BYTES);
+    }
+
+    public NettyWebSocketSession(Channel channel, Map<String, String> pathParameters,
+                                 WebSocketEndpointStats stats, long maxQueuedBytes) {
         this.channel = channel;
         this.pathParameters = pathParameters;
+        this.stats = stats;
+        this.maxQueuedBytes = maxQueuedBytes;
+        stats.onSessionOpen();
     }
 
     public void close(CloseReason closeReason) throws IOException {
+        Channel channel;
+        synchronized (queue) {
+            if (this.closeReason == null) this.closeReason = closeReason;
+            channel = this.channel;
+        }
+        if (channel == null) return; // Already released
 
         CloseWebSocketFrame frame = new CloseWebSocketFrame(closeReason.getCloseCode().getCode(), closeReason.getReasonPhrase());
         ChannelFuture future = channel.write(frame);
@@ -33,15 +57,23 @@ public class NettyWebSocketSession {
     }
 
     public void sendText(String text) {
-        if (!channel.isOpen()) return; // Skip if channel is closed
-        channel.write(new TextWebSocketFrame(text));
+        if (channel == null || !channel.isOpen()) return; // Skip if channel is closed
+        send(new TextWebSocketFrame(text));
+    }
+
+    /**
+     * Send a text, already encoded in UTF-8. The buffer content should not be modified after this call.
+     */
+    public void sendText(ChannelBuffer utf8Text) {
+        if (channel == null || !channel.isOpen()) return; // Skip if channel is closed
+        send(new TextWebSocketFrame(utf8Text));
     }
 
     public void sendBinary(ChannelBuffer buffer) {
-        if (!channel.isOpen()) return; // Skip if channel is closed
+        if (channel == null || !channel.isOpen()) return; // Skip if channel is closed
         BinaryWebSocketFrame frame = new BinaryWebSocketFrame();
         frame.setBinaryData(buffer);
-        channel.write(frame);
+        send(frame);
     }
 
     public void sendBinary(BytesReference bytes) {
@@ -60,4 +92,91 @@ public class NettyWebSocketSession {
         return String.valueOf(this.hashCode());
     }
 
+    /**
+     * The reason given when the session was closed by the server (e.g. slow consumer), or null
+     */
+    public CloseReason getCloseReason() {
+        return closeReason;
+    }
+
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Write queued frames, while the channel is writable. Should be called when the channel writability changed.
+     */
+    public void flush() {
+        synchronized (queue) {
+            while (!queue.isEmpty() && channel != null && channel.isWritable()) {
+                WebSocketFrame frame = queue.pollFirst();
+                long size = frame.getBinaryData().readableBytes();
+                queuedBytes -= size;
+                stats.onDequeued(size);
+                write(frame, size);
+            }
+        }
+    }
+
+    /**
+     * Release resources, when channel has been closed
+     */
+    public void release() {
+        synchronized (queue) {
+            while (!queue.isEmpty()) {
+                stats.onDequeued(queue.pollFirst().getBinaryData().readableBytes());
+            }
+            queuedBytes = 0;
+            if (channel != null) {
+                stats.onSessionClose();
+                channel = null;
+            }
+        }
+    }
+
+    /* -- protected methods -- */
+
+    protected void send(WebSocketFrame frame) {
+        long size = frame.getBinaryData().readableBytes();
+        boolean tooSlow = false;
+        synchronized (queue) {
+            if (channel == null || closeReason != null) return; // Closed or closing
+
+            // Write directly, if possible
+            if (queue.isEmpty() && channel.isWritable()) {
+                write(frame, size);
+                return;
+            }
+
+            // Queue the frame, if budget allows it
+            if (queuedBytes + size <= maxQueuedBytes) {
+                queue.addLast(frame);
+                queuedBytes += size;
+                stats.onQueued(size);
+                return;
+            }
+
+            // Too slow consumer: drop queued frames
+            tooSlow = true;
+            while (!queue.isEmpty()) {
+                stats.onDequeued(queue.pollFirst().getBinaryData().readableBytes());
+            }
+            queuedBytes = 0;
+        }
+
+        if (tooSlow) {
+            stats.onSlowConsumer();
+            try {
+                close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER,
+                        String.format("Too slow consumer (more than %s bytes waiting)", maxQueuedBytes)));
+            } catch (IOException e) {
+                // Silent
+            }
+        }
+    }
+
+    protected void write(WebSocketFrame frame, long size) {
+        channel.write(frame);
+        stats.onSent(size);
+    }
 }
@@ -0,0 +1,100 @@
+package org.duniter.elasticsearch.http.netty.websocket;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of a websocket endpoint (all sessions)
+ */
+public class WebSocketEndpointStats {
+
+    private static final Map<String, WebSocketEndpointStats> STATS_BY_ENDPOINT = new ConcurrentHashMap<>();
+
+    public static WebSocketEndpointStats get(String endpoint) {
+        return STATS_BY_ENDPOINT.computeIfAbsent(endpoint, WebSocketEndpointStats::new);
+    }
+
+    public static Map<String, WebSocketEndpointStats> getAll() {
+        return Collections.unmodifiableMap(STATS_BY_ENDPOINT);
+    }
+
+    private final String endpoint;
+    private final LongAdder openSessions = new LongAdder();
+    private final LongAdder queuedBytes = new LongAdder();
+    private final LongAdder queuedFrames = new LongAdder();
+    private final LongAdder sentFrames = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder slowConsumers = new LongAdder();
+    private final LongAdder compressedFrames = new LongAdder();
+    private final LongAdder compressionBytesIn = new LongAdder();
+    private final LongAdder compressionBytesOut = new LongAdder();
+
+    private WebSocketEndpointStats(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void onSessionOpen() {
+        openSessions.increment();
+    }
+
+    public void onSessionClose() {
+        openSessions.decrement();
+    }
+
+    public void onQueued(long bytes) {
+        queuedFrames.increment();
+        queuedBytes.add(bytes);
+    }
+
+    public void onDequeued(long bytes) {
+        queuedFrames.decrement();
+        queuedBytes.add(-bytes);
+    }
+
+    public void onSent(long bytes) {
+        sentFrames.increment();
+        sentBytes.add(bytes);
+    }
+
+    public void onSlowConsumer() {
+        slowConsumers.increment();
+    }
+
+    public void onCompressed(long bytesIn, long bytesOut) {
+        compressedFrames.increment();
+        compressionBytesIn.add(bytesIn);
+        compressionBytesOut.add(bytesOut);
+    }
+
+    /**
+     * Compressed size, in percent of the original size (or 100 if nothing compressed)
+     */
+    public long getCompressionRatio() {
+        long bytesIn = compressionBytesIn.longValue();
+        if (bytesIn == 0) return 100;
+        return compressionBytesOut.longValue() * 100 / bytesIn;
+    }
+
+    public Map<String, Long> toMap() {
+        return ImmutableMap.<String, Long>builder()
+                .put("sessions", openSessions.longValue())
+                .put("queuedFrames", queuedFrames.longValue())
+                .put("queuedBytes", queuedBytes.longValue())
+                .put("sentFrames", sentFrames.longValue())
+                .put("sentBytes", sentBytes.longValue())
+                .put("slowConsumers", slowConsumers.longValue())
+                .put("compressedFrames", compressedFrames.longValue())
+                .put("compressionBytesIn", compressionBytesIn.longValue())
+                .put("compressionBytesOut", compressionBytesOut.longValue())
+                .put("compressionRatio", getCompressionRatio())
+                .build();
+    }
+}
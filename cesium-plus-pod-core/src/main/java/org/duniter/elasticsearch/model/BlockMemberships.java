@@ -0,0 +1,117 @@
+package org.duniter.elasticsearch.model;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.duniter.core.client.model.bma.BlockchainBlock;
+
+/**
+ * Membership fields of a block (other block fields are ignored when parsing)
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BlockMemberships {
+
+    public static final String[] PROPERTIES = {
+            BlockchainBlock.PROPERTY_NUMBER,
+            BlockchainBlock.PROPERTY_HASH,
+            BlockchainBlock.PROPERTY_MEDIAN_TIME,
+            BlockchainBlock.PROPERTY_JOINERS,
+            BlockchainBlock.PROPERTY_ACTIVES,
+            BlockchainBlock.PROPERTY_EXCLUDED,
+            BlockchainBlock.PROPERTY_LEAVERS,
+            BlockchainBlock.PROPERTY_REVOKED
+    };
+
+    private Integer number;
+    private String hash;
+    private Long medianTime;
+    private String[] joiners;
+    private String[] actives;
+    private String[] excluded;
+    private String[] leavers;
+    private String[] revoked;
+
+    public Integer getNumber() {
+        return number;
+    }
+
+    public void setNumber(Integer number) {
+        this.number = number;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public Long getMedianTime() {
+        return medianTime;
+    }
+
+    public void setMedianTime(Long medianTime) {
+        this.medianTime = medianTime;
+    }
+
+    public String[] getJoiners() {
+        return joiners;
+    }
+
+    public void setJoiners(String[] joiners) {
+        this.joiners = joiners;
+    }
+
+    public String[] getActives() {
+        return actives;
+    }
+
+    public void setActives(String[] actives) {
+        this.actives = actives;
+    }
+
+    public String[] getExcluded() {
+        return excluded;
+    }
+
+    public void setExcluded(String[] excluded) {
+        this.excluded = excluded;
+    }
+
+    public String[] getLeavers() {
+        return leavers;
+    }
+
+    public void setLeavers(String[] leavers) {
+        this.leavers = leavers;
+    }
+
+    public String[] getRevoked() {
+        return revoked;
+    }
+
+    public void setRevoked(String[] revoked) {
+        this.revoked = revoked;
+    }
+}
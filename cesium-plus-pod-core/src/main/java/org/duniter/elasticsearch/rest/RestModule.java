@@ -24,6 +24,7 @@ package org.duniter.elasticsearch.rest;
 
 import org.duniter.elasticsearch.rest.attachment.RestImageAttachmentAction;
 import org.duniter.elasticsearch.rest.blockchain.*;
+import org.duniter.elasticsearch.rest.docstat.RestDocStatLatestAction;
 import org.duniter.elasticsearch.rest.docstat.RestDocStatSearchAction;
 import org.duniter.elasticsearch.rest.network.*;
 import org.duniter.elasticsearch.rest.node.RestNodeModeratorsGetAction;
@@ -82,6 +83,7 @@ public class RestModule extends AbstractModule implements Module {
 
         // Doc stats backward compatibility
         bind(RestDocStatSearchAction.class).asEagerSingleton();
+        bind(RestDocStatLatestAction.class).asEagerSingleton();
 
 
     }
@@ -0,0 +1,196 @@
+package org.duniter.elasticsearch.rest.attachment;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import org.duniter.elasticsearch.service.changes.ChangeDispatcher;
+import org.duniter.elasticsearch.service.changes.ChangeEvent;
+import org.duniter.elasticsearch.service.changes.ChangeService;
+import org.duniter.elasticsearch.service.changes.ChangeSource;
+import org.duniter.elasticsearch.util.CacheUtils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoded images, by index/type/id/field (LRU, bounded by bytes).
+ * Entries are invalidated when the document changes. Changes of an index/type are listened
+ * before reading its first image (see watch()), so that no change is missed.
+ */
+public class ImageAttachmentCache implements ChangeService.ChangeListener {
+
+    public static class Image {
+        private final long version;
+        private final String contentType;
+        private final byte[] content;
+        private final String etag;
+
+        public Image(long version, String contentType, byte[] content, String etag) {
+            this.version = version;
+            this.contentType = contentType;
+            this.content = content;
+            this.etag = etag;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+
+    private final Cache<String, Image> images;
+    // index/type/id -> version of the last change (to avoid caching an image read before the change)
+    private final Cache<String, Long> changedVersions;
+    // index/type -> image fields
+    private final Map<String, Set<String>> fieldsByIndexType = new ConcurrentHashMap<>();
+
+    public ImageAttachmentCache(long maxBytes, long timeToLiveInSec) {
+        this.images = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, Image image) -> image.content.length + key.length())
+                .expireAfterWrite(timeToLiveInSec, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.changedVersions = CacheBuilder.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+    }
+
+    public Image get(String index, String type, String id, String field) {
+        return images.getIfPresent(computeKey(index, type, id, field));
+    }
+
+    /**
+     * Listen changes of the index/type. Must be called before reading the document
+     */
+    public void watch(String index, String type, String field) {
+        String indexType = index + '/' + type;
+        Set<String> fields = fieldsByIndexType.get(indexType);
+
+        // First image of this index/type: listen changes
+        if (fields == null) {
+            synchronized (fieldsByIndexType) {
+                fields = fieldsByIndexType.get(indexType);
+                if (fields == null) {
+                    fields = ConcurrentHashMap.newKeySet();
+                    fieldsByIndexType.put(indexType, fields);
+                    if (fieldsByIndexType.size() == 1) ChangeService.registerListener(this);
+                    else ChangeService.refreshListener(this);
+                }
+            }
+        }
+        fields.add(field);
+    }
+
+    public void put(String index, String type, String id, String field, Image image) {
+        // Should have been called before the read (here, changes before this call could be missed)
+        watch(index, type, field);
+
+        // Skip if read before the last change
+        Long changedVersion = changedVersions.getIfPresent(index + '/' + type + '/' + id);
+        if (changedVersion != null && image.getVersion() < changedVersion) return;
+
+        images.put(computeKey(index, type, id, field), image);
+    }
+
+    public void invalidate(String index, String type, String id) {
+        Set<String> fields = fieldsByIndexType.get(index + '/' + type);
+        if (fields == null) return;
+        for (String field : fields) {
+            images.invalidate(computeKey(index, type, id, field));
+        }
+    }
+
+    public void clear() {
+        images.invalidateAll();
+    }
+
+    public long size() {
+        return images.size();
+    }
+
+    public CacheStats stats() {
+        return images.stats();
+    }
+
+    public Map<String, Object> toMap() {
+        return CacheUtils.toStatsMap(images);
+    }
+
+    @Override
+    public String getId() {
+        return "duniter.image.cache";
+    }
+
+    @Override
+    public void onChange(ChangeEvent change) {
+        changedVersions.put(change.getIndex() + '/' + change.getType() + '/' + change.getId(), change.getVersion());
+        invalidate(change.getIndex(), change.getType(), change.getId());
+    }
+
+    @Override
+    public Collection<ChangeSource> getChangeSources() {
+        ImmutableList.Builder<ChangeSource> result = ImmutableList.builder();
+        for (String indexType : fieldsByIndexType.keySet()) {
+            int separatorIndex = indexType.indexOf('/');
+            result.add(new ChangeSource(indexType.substring(0, separatorIndex), indexType.substring(separatorIndex + 1)));
+        }
+        return result.build();
+    }
+
+    @Override
+    public ChangeDispatcher.OverflowPolicy getOverflowPolicy() {
+        // Only the last change of a document is useful
+        return ChangeDispatcher.OverflowPolicy.COALESCE;
+    }
+
+    @Override
+    public void onOverflow() {
+        // Some changes were lost
+        clear();
+    }
+
+    /* -- internal methods -- */
+
+    private String computeKey(String index, String type, String id, String field) {
+        return index + '/' + type + '/' + id + '/' + field;
+    }
+}
@@ -22,7 +22,10 @@ package org.duniter.elasticsearch.rest.attachment;
  * #L%
  */
 
+import com.google.common.hash.Hashing;
 import org.duniter.core.util.StringUtils;
+import org.duniter.elasticsearch.PluginSettings;
+import org.duniter.elasticsearch.rest.node.RestNodeStatsGetAction;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.client.Client;
@@ -35,6 +38,7 @@ import org.elasticsearch.rest.*;
 import org.elasticsearch.rest.action.support.RestResponseListener;
 import org.elasticsearch.search.fetch.source.FetchSourceContext;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Map;
 
@@ -42,17 +46,26 @@ import static org.elasticsearch.rest.RestStatus.OK;
 
 public class RestImageAttachmentAction extends BaseRestHandler {
 
+    private final ImageAttachmentCache cache;
+    private final String cacheControl;
+
     @Inject
-    public RestImageAttachmentAction(Settings settings, RestController controller, Client client) {
+    public RestImageAttachmentAction(Settings settings, RestController controller, Client client,
+                                     PluginSettings pluginSettings) {
         super(settings, controller, client);
+        this.cache = pluginSettings.getImageCacheMaxSize() > 0
+                ? new ImageAttachmentCache(pluginSettings.getImageCacheMaxSize(), pluginSettings.getImageCacheTimeToLive())
+                : null;
+        if (cache != null) RestNodeStatsGetAction.registerStats("imageCache", cache::toMap);
+        this.cacheControl = String.format("public, max-age=%s", pluginSettings.getImageHttpCacheMaxAge());
         controller.registerHandler(RestRequest.Method.GET, "/{index}/{type}/{id}/_image/{field}", this);
     }
 
     @Override
     protected void handleRequest(final RestRequest request, RestChannel channel, Client client) throws Exception {
-        String index = request.param("index");
-        String type = request.param("type");
-        String id = request.param("id");
+        final String index = request.param("index");
+        final String type = request.param("type");
+        final String id = request.param("id");
         String paramField = request.param("field");
         String[] fieldParts = paramField.split("\\.");
         String extension = null;
@@ -63,10 +76,20 @@ public class RestImageAttachmentAction extends BaseRestHandler {
 
         final String field = paramField;
         final String expectedContentType = extension != null ? "image/" + extension : null;
+        final String ifNoneMatch = request.header("If-None-Match");
+
+        // Listen changes before any read (a change between the GET and the cache put would be missed)
+        if (cache != null) cache.watch(index, type, field);
+
+        // Already in cache: no GET, no decode
+        ImageAttachmentCache.Image cachedImage = cache != null ? cache.get(index, type, id, field) : null;
+        if (cachedImage != null) {
+            channel.sendResponse(buildResponse(cachedImage, expectedContentType, ifNoneMatch));
+            return;
+        }
 
         GetRequest getRequest = new GetRequest(index, type, id)
-                .fields(field)
-                .fetchSourceContext(FetchSourceContext.FETCH_SOURCE)
+                .fetchSourceContext(new FetchSourceContext(field))
                 .realtime(true);
 
         client.get(getRequest, new RestResponseListener<GetResponse>(channel) {
@@ -85,17 +108,71 @@ public class RestImageAttachmentAction extends BaseRestHandler {
                     return new BytesRestResponse(RestStatus.BAD_REQUEST, String.format("Field [%s] not contains key [_content_type].", field));
                 }
 
-                if (expectedContentType != null && !expectedContentType.equals(contentType)) {
-                    return new BytesRestResponse(RestStatus.BAD_REQUEST, String.format("File extension not compatible with attachment content type [%s]", contentType));
+                String content = attachment.get("_content");
+                String etag = computeEtag(content);
+
+                // Not modified: skip decode (and cache)
+                if (isNotModified(ifNoneMatch, etag, expectedContentType, contentType)) {
+                    return createNotModifiedResponse(etag);
                 }
 
-                return new BytesRestResponse(OK,
-                        contentType,
-                        new BytesArray(Base64.decode(attachment.get("_content"))));
+                ImageAttachmentCache.Image image = new ImageAttachmentCache.Image(response.getVersion(), contentType,
+                        Base64.decode(content), etag);
+                if (cache != null) cache.put(index, type, id, field, image);
+
+                return RestImageAttachmentAction.this.buildResponse(image, expectedContentType, ifNoneMatch);
             }
         });
     }
 
+    /* -- internal methods -- */
+
+    protected RestResponse buildResponse(ImageAttachmentCache.Image image, String expectedContentType, String ifNoneMatch) {
+        if (expectedContentType != null && !expectedContentType.equals(image.getContentType())) {
+            return new BytesRestResponse(RestStatus.BAD_REQUEST, String.format("File extension not compatible with attachment content type [%s]", image.getContentType()));
+        }
+
+        if (matchEtag(ifNoneMatch, image.getEtag())) {
+            return createNotModifiedResponse(image.getEtag());
+        }
+
+        RestResponse response = new BytesRestResponse(OK,
+                image.getContentType(),
+                new BytesArray(image.getContent()));
+        response.addHeader("ETag", image.getEtag());
+        response.addHeader("Cache-Control", cacheControl);
+        return response;
+    }
+
+    protected RestResponse createNotModifiedResponse(String etag) {
+        RestResponse response = new BytesRestResponse(RestStatus.NOT_MODIFIED);
+        response.addHeader("ETag", etag);
+        response.addHeader("Cache-Control", cacheControl);
+        return response;
+    }
+
+    /**
+     * ETag from a digest of the content (not the version, that restarts when a document is deleted then created again)
+     */
+    protected static String computeEtag(String content) {
+        return '"' + Hashing.sha1().hashString(content != null ? content : "", StandardCharsets.UTF_8).toString() + '"';
+    }
+
+    protected static boolean isNotModified(String ifNoneMatch, String etag, String expectedContentType, String contentType) {
+        return (expectedContentType == null || expectedContentType.equals(contentType))
+                && matchEtag(ifNoneMatch, etag);
+    }
+
+    protected static boolean matchEtag(String ifNoneMatch, String etag) {
+        if (StringUtils.isBlank(ifNoneMatch)) return false;
+        for (String value : ifNoneMatch.split(",")) {
+            value = value.trim();
+            // Ignore weak validator prefix
+            if (value.startsWith("W/")) value = value.substring(2);
+            if (value.equals(etag) || value.equals("*")) return true;
+        }
+        return false;
+    }
 
     public static String computeImageUrl(String index,
                                          String type,
@@ -0,0 +1,102 @@
+package org.duniter.elasticsearch.rest.docstat;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.duniter.core.exception.TechnicalException;
+import org.duniter.elasticsearch.PluginSettings;
+import org.duniter.elasticsearch.dao.DocStatDao;
+import org.duniter.elasticsearch.model.DocStat;
+import org.duniter.elasticsearch.rest.RestXContentBuilder;
+import org.duniter.elasticsearch.rest.XContentRestResponse;
+import org.duniter.elasticsearch.rest.security.RestSecurityController;
+import org.duniter.elasticsearch.service.DocStatService;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.*;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+
+/**
+ * Last computed doc stats, from memory (no request to the index).
+ * Optional filters: 'index', 'type' and 'queryName'.
+ */
+public class RestDocStatLatestAction extends BaseRestHandler {
+
+    private final DocStatService docStatService;
+
+    @Inject
+    public RestDocStatLatestAction(Settings settings, RestController controller, Client client,
+                                   PluginSettings pluginSettings,
+                                   RestSecurityController securityController,
+                                   DocStatService docStatService) {
+        super(settings, controller, client);
+        this.docStatService = docStatService;
+
+        if (pluginSettings.enableDocStats()) {
+            String path = String.format("/%s/%s/_latest", DocStatDao.INDEX, DocStatDao.TYPE);
+            securityController.allow(GET, path);
+            controller.registerHandler(GET, path, this);
+
+            // Old path (backward compatibility)
+            String oldPath = String.format("/%s/%s/_latest", DocStatDao.OLD_INDEX, DocStatDao.OLD_TYPE);
+            securityController.allow(GET, oldPath);
+            controller.registerHandler(GET, oldPath, this);
+        }
+    }
+
+    @Override
+    protected void handleRequest(RestRequest request, RestChannel channel, Client client) throws Exception {
+        String index = request.param("index");
+        String type = request.param("type");
+        String queryName = request.param("queryName");
+
+        try {
+            XContentBuilder content = RestXContentBuilder.restContentBuilder(request).startObject()
+                    .startArray("stats");
+            for (DocStat stat: docStatService.getLastStats().values()) {
+                if (index != null && !Objects.equals(index, stat.getIndex())) continue;
+                if (type != null && !Objects.equals(type, stat.getType())) continue;
+                if (queryName != null && !Objects.equals(queryName, stat.getQueryName())) continue;
+
+                content.startObject()
+                        .field(DocStat.PROPERTY_INDEX, stat.getIndex())
+                        .field(DocStat.PROPERTY_TYPE, stat.getType())
+                        .field(DocStat.PROPERTY_QUERY_NAME, stat.getQueryName())
+                        .field(DocStat.PROPERTY_COUNT, stat.getCount())
+                        .field(DocStat.PROPERTY_TIME, stat.getTime())
+                        .endObject();
+            }
+            content.endArray().endObject();
+
+            channel.sendResponse(new XContentRestResponse(request, RestStatus.OK, content));
+        }
+        catch(IOException ioe) {
+            throw new TechnicalException(String.format("Error while generating JSON for [%s]: %s", request.path(), ioe.getMessage()), ioe);
+        }
+    }
+}
@@ -23,6 +23,7 @@ package org.duniter.elasticsearch.rest.node;
  */
 
 import org.duniter.core.exception.TechnicalException;
+import org.duniter.elasticsearch.http.netty.websocket.WebSocketEndpointStats;
 import org.duniter.elasticsearch.rest.RestXContentBuilder;
 import org.duniter.elasticsearch.rest.XContentRestResponse;
 import org.duniter.elasticsearch.rest.security.RestSecurityController;
@@ -37,6 +38,8 @@ import org.elasticsearch.rest.*;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * A rest to post a request to process a new currency/peer.
@@ -44,6 +47,13 @@ import java.util.Map;
  */
 public class RestNodeStatsGetAction extends BaseRestHandler {
 
+    // Stats added by other plugins (name -> stats supplier)
+    private static final Map<String, Supplier<Map<String, ?>>> STATS_PROVIDERS = new ConcurrentHashMap<>();
+
+    public static void registerStats(String name, Supplier<Map<String, ?>> provider) {
+        STATS_PROVIDERS.put(name, provider);
+    }
+
     private final ChangeService changeService;
 
     @Inject
@@ -82,6 +92,38 @@ public class RestNodeStatsGetAction extends BaseRestHandler {
                 mapping.endArray();
             }
 
+            // Change events dispatcher
+            if (request.paramAsBoolean("dispatcher", true)) {
+                Map<String, Long> dispatcherStats = changeService.getDispatcherStatistics();
+                if (dispatcherStats != null) {
+                    mapping.startObject("dispatcher");
+                    for (Map.Entry<String, Long> entry : dispatcherStats.entrySet()) {
+                        mapping.field(entry.getKey(), entry.getValue());
+                    }
+                    mapping.endObject();
+                }
+            }
+
+            // Websocket endpoints
+            if (request.paramAsBoolean("websocket", true)) {
+                mapping.startObject("websocket");
+                for (WebSocketEndpointStats endpointStats : WebSocketEndpointStats.getAll().values()) {
+                    mapping.startObject(endpointStats.getEndpoint());
+                    for (Map.Entry<String, Long> entry : endpointStats.toMap().entrySet()) {
+                        mapping.field(entry.getKey(), entry.getValue());
+                    }
+                    mapping.endObject();
+                }
+                mapping.endObject();
+            }
+
+            // Other plugins stats
+            for (Map.Entry<String, Supplier<Map<String, ?>>> provider : STATS_PROVIDERS.entrySet()) {
+                if (request.paramAsBoolean(provider.getKey(), true)) {
+                    mapping.field(provider.getKey(), provider.getValue().get());
+                }
+            }
+
             // Add cluster info
             if (request.paramAsBoolean("cluster", true)) {
                 ClusterStatsResponse response = client.admin().cluster().prepareClusterStats().execute().actionGet();
@@ -24,9 +24,11 @@ package org.duniter.elasticsearch.rest.node;
 
 import org.duniter.core.exception.TechnicalException;
 import org.duniter.elasticsearch.PluginSettings;
+import org.duniter.elasticsearch.model.DocStat;
 import org.duniter.elasticsearch.rest.RestXContentBuilder;
 import org.duniter.elasticsearch.rest.XContentRestResponse;
 import org.duniter.elasticsearch.rest.security.RestSecurityController;
+import org.duniter.elasticsearch.service.DocStatService;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
@@ -42,12 +44,15 @@ import java.io.IOException;
 public class RestNodeSummaryGetAction extends BaseRestHandler {
 
     private final PluginSettings pluginSettings;
+    private final DocStatService docStatService;
 
     @Inject
-    public RestNodeSummaryGetAction(PluginSettings pluginSettings, Settings settings, RestController controller, Client client, RestSecurityController securityController) {
+    public RestNodeSummaryGetAction(PluginSettings pluginSettings, Settings settings, RestController controller, Client client, RestSecurityController securityController,
+                                    DocStatService docStatService) {
         super(settings, controller, client);
 
         this.pluginSettings = pluginSettings;
+        this.docStatService = docStatService;
 
         securityController.allow(RestRequest.Method.GET, "/node/summary");
         controller.registerHandler(RestRequest.Method.GET, "/node/summary", this);
@@ -74,7 +79,19 @@ public class RestNodeSummaryGetAction extends BaseRestHandler {
                     // status
                     .field("status", RestStatus.OK.getStatus())
 
-                    .endObject().endObject();
+                    .endObject();
+
+            // doc stats (optional)
+            if (pluginSettings.enableDocStats() && request.paramAsBoolean("stats", false)) {
+                mapping.startObject("stats");
+                for (DocStat stat: docStatService.getLastStats().values()) {
+                    mapping.field(stat.getQueryName() != null ? stat.getQueryName() : stat.getIndex() + '/' + stat.getType(),
+                            stat.getCount());
+                }
+                mapping.endObject();
+            }
+
+            mapping.endObject();
 
             return mapping;
         }
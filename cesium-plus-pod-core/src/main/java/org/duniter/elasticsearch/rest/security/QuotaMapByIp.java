@@ -1,60 +1,128 @@
 package org.duniter.elasticsearch.rest.security;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
 import org.duniter.core.util.Preconditions;
 import org.duniter.core.util.StringUtils;
-import org.elasticsearch.common.logging.ESLogger;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
 
+/**
+ * Rate limit by IP, using a token bucket: allow max calls in burst, then one call every duration/max.
+ * The bucket of an IP is a single atomic value (the time when the bucket will be full again - see GCRA),
+ * updated without lock. Buckets are stored in striped LRU maps, to bound the memory.
+ */
 public class QuotaMapByIp {
 
+    private static final int STRIPE_COUNT = 16;
+
     private final String name;
     private final int maxCallCount;
-    private Cache<String, Integer> cacheCounterByIp;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier clock;
+    private final List<Map<String, AtomicLong>> stripes;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
 
-    public QuotaMapByIp(String name, int max, int duration, TimeUnit unit) {
-        this(name, max, duration, unit, null);
+    public QuotaMapByIp(String name, int max, int duration, TimeUnit unit, int maxIpCount) {
+        this(name, max, duration, unit, maxIpCount, System::nanoTime);
     }
 
-    public QuotaMapByIp(
-            String name,
-            int max, int duration, TimeUnit unit, ESLogger log) {
+    QuotaMapByIp(String name, int max, int duration, TimeUnit unit, int maxIpCount, LongSupplier clock) {
+        Preconditions.checkArgument(max > 0);
+        Preconditions.checkArgument(duration > 0);
+        Preconditions.checkArgument(maxIpCount > 0);
         this.name = name;
         this.maxCallCount = max;
-        CacheBuilder builder = CacheBuilder.newBuilder()
-                .expireAfterWrite(duration, unit)
-                .concurrencyLevel(4);
-        //if (log != null && log.isTraceEnabled()) {
-            builder.removalListener((removalNotification) -> {
-                // TODO trace
-                log.debug(String.format("Forget IP {%s} from quota {name: '%s', callCount: %s, cause: '%s'}",
-                        removalNotification.getKey(),
-                        name,
-                        removalNotification.getValue(),
-                        removalNotification.getCause().name()));
+        this.intervalNanos = Math.max(1, unit.toNanos(duration) / max);
+        this.burstNanos = intervalNanos * (max - 1);
+        this.clock = clock;
+
+        final int maxIpCountByStripe = Math.max(1, maxIpCount / STRIPE_COUNT);
+        this.stripes = new ArrayList<>(STRIPE_COUNT);
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            // Access order = LRU
+            stripes.add(new LinkedHashMap<String, AtomicLong>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, AtomicLong> eldest) {
+                    return size() > maxIpCountByStripe;
+                }
             });
-        //}
+        }
+    }
 
-        cacheCounterByIp = builder.build();
+    public String getName() {
+        return name;
     }
 
+    public int getMaxCallCount() {
+        return maxCallCount;
+    }
+
+    /**
+     * Consume a call
+     * @return false if quota exceeded
+     */
     boolean increment(String ip) {
         Preconditions.checkArgument(StringUtils.isNotEmpty(ip));
 
-        Integer counter = cacheCounterByIp.getIfPresent(ip);
-        if (counter == null) {
-            counter = 0;
+        AtomicLong bucket = getBucket(ip);
+        long now = clock.getAsLong();
+        while (true) {
+            long fullTime = bucket.get();
+            long start = Math.max(fullTime, now);
+
+            // Max reached: cannot increment
+            if (start - now > burstNanos) {
+                rejected.increment();
+                return false;
+            }
+
+            if (bucket.compareAndSet(fullTime, start + intervalNanos)) {
+                allowed.increment();
+                return true;
+            }
         }
+    }
+
+    public long getRejectedCount() {
+        return rejected.longValue();
+    }
 
-        // Max reached: cannot increment
-        if (counter >= maxCallCount) {
-            return false;
+    public int getIpCount() {
+        int result = 0;
+        for (Map<String, AtomicLong> stripe : stripes) {
+            synchronized (stripe) {
+                result += stripe.size();
+            }
         }
+        return result;
+    }
 
-        // Increment
-        cacheCounterByIp.put(ip, counter + 1);
-        return true;
+    public Map<String, Object> toMap() {
+        return ImmutableMap.<String, Object>builder()
+                .put("max", maxCallCount)
+                .put("ips", getIpCount())
+                .put("allowed", allowed.longValue())
+                .put("rejected", rejected.longValue())
+                .build();
+    }
+
+    /* -- internal methods -- */
+
+    private AtomicLong getBucket(String ip) {
+        Map<String, AtomicLong> stripe = stripes.get((ip.hashCode() & 0x7fffffff) % STRIPE_COUNT);
+        synchronized (stripe) {
+            // Long.MIN_VALUE = full bucket
+            return stripe.computeIfAbsent(ip, key -> new AtomicLong(Long.MIN_VALUE));
+        }
     }
 }
@@ -0,0 +1,198 @@
+package org.duniter.elasticsearch.rest.security;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.apache.lucene.util.automaton.Operations;
+import org.apache.lucene.util.automaton.RegExp;
+import org.apache.lucene.util.automaton.TooComplexToDeterminizeException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Match a path against many regular expressions (same semantics as String.matches()).
+ * All expressions are compiled into a single deterministic automaton, so a path is checked in one pass.
+ * Expressions that cannot be converted (e.g. with \d or lookahead) are kept as precompiled patterns.
+ */
+public class RestPathMatcher {
+
+    private static final Pattern REPEAT_PATTERN = Pattern.compile("\\{[0-9]+(,[0-9]*)?}");
+
+    private final CharacterRunAutomaton automaton;
+    private final List<Pattern> patterns;
+
+    public RestPathMatcher(Collection<String> regexps) {
+        List<Automaton> automata = new ArrayList<>(regexps.size());
+        List<Pattern> patterns = new ArrayList<>();
+        for (String regexp : regexps) {
+            Automaton automaton = toAutomaton(regexp);
+            if (automaton != null) {
+                automata.add(automaton);
+            }
+            else {
+                patterns.add(Pattern.compile(regexp));
+            }
+        }
+
+        CharacterRunAutomaton runAutomaton = null;
+        if (!automata.isEmpty()) {
+            try {
+                runAutomaton = new CharacterRunAutomaton(Operations.union(automata));
+            }
+            catch (TooComplexToDeterminizeException e) {
+                // Too many states: use patterns only
+                patterns.clear();
+                for (String regexp : regexps) {
+                    patterns.add(Pattern.compile(regexp));
+                }
+            }
+        }
+        this.automaton = runAutomaton;
+        this.patterns = patterns;
+    }
+
+    public boolean matches(String path) {
+        if (automaton != null && automaton.run(path)) return true;
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of expressions not compiled into the automaton
+     */
+    public int getPatternCount() {
+        return patterns.size();
+    }
+
+    /* -- internal methods -- */
+
+    static Automaton toAutomaton(String regexp) {
+        String luceneRegexp = toLuceneRegExp(regexp);
+        if (luceneRegexp == null) return null;
+        try {
+            return new RegExp(luceneRegexp, RegExp.NONE).toAutomaton();
+        }
+        catch (IllegalArgumentException | TooComplexToDeterminizeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Convert a Java regular expression into the Lucene syntax, or null if not supported.
+     * Supported: literals, '.', classes (with ranges and negation), groups, '|', '?', '*', '+', '{n,m}',
+     * escaped symbols, and '^' / '$' anchors at the bounds.
+     */
+    static String toLuceneRegExp(String regexp) {
+        int start = regexp.startsWith("^") ? 1 : 0;
+        int end = regexp.length();
+        if (end > start && regexp.charAt(end - 1) == '$' && (end < 2 || regexp.charAt(end - 2) != '\\')) end--;
+
+        StringBuilder result = new StringBuilder(regexp.length() + 8);
+        boolean inClass = false;
+        for (int i = start; i < end; i++) {
+            char c = regexp.charAt(i);
+
+            if (c == '\\') {
+                if (i + 1 >= end) return null;
+                char next = regexp.charAt(++i);
+                // Predefined classes (\d, \w...) or special escapes
+                if (Character.isLetterOrDigit(next)) return null;
+                result.append('\\').append(next);
+                continue;
+            }
+
+            if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                    result.append(c);
+                }
+                else if (c == '[' || (c == '&' && i + 1 < end && regexp.charAt(i + 1) == '&')) {
+                    return null; // Nested class, or intersection
+                }
+                else if (c == '-' && (regexp.charAt(i - 1) == '[' || regexp.charAt(i - 1) == '^' && regexp.charAt(i - 2) == '['
+                        || (i + 1 < end && regexp.charAt(i + 1) == ']'))) {
+                    result.append("\\-"); // Literal '-'
+                }
+                else if (Character.isLetterOrDigit(c) || c == '-' || c == '^' && regexp.charAt(i - 1) == '[') {
+                    result.append(c);
+                }
+                else {
+                    result.append('\\').append(c);
+                }
+                continue;
+            }
+
+            switch (c) {
+                case '[':
+                    inClass = true;
+                    result.append(c);
+                    // Java allows ']' as first char of a class
+                    if (i + 1 < end && regexp.charAt(i + 1) == ']') return null;
+                    break;
+                case '(':
+                    if (i + 1 < end && regexp.charAt(i + 1) == '?') return null; // Special group
+                    result.append(c);
+                    break;
+                case '^':
+                case '$':
+                    return null; // Anchor not at bounds
+                case '{':
+                    // Repetition: {n}, {n,} or {n,m}
+                    int closeIndex = regexp.indexOf('}', i);
+                    if (closeIndex == -1 || closeIndex >= end) return null;
+                    String repeat = regexp.substring(i, closeIndex + 1);
+                    if (!REPEAT_PATTERN.matcher(repeat).matches()) return null;
+                    result.append(repeat);
+                    i = closeIndex;
+                    break;
+                case '.':
+                case ')':
+                case '|':
+                case '?':
+                case '*':
+                case '+':
+                    result.append(c);
+                    break;
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        result.append(c);
+                    }
+                    else {
+                        // Escape other symbols ('/', '_', '"', '@'...), always literal in Java
+                        result.append('\\').append(c);
+                    }
+            }
+        }
+
+        // Unclosed class
+        if (inClass) return null;
+
+        return result.toString();
+    }
+}
@@ -25,6 +25,7 @@ package org.duniter.elasticsearch.rest.security;
 import com.google.common.collect.Sets;
 import org.apache.commons.lang3.StringUtils;
 import org.duniter.elasticsearch.PluginSettings;
+import org.duniter.elasticsearch.rest.node.RestNodeStatsGetAction;
 import org.duniter.elasticsearch.util.RestUtils;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
@@ -34,7 +35,10 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.rest.RestRequest;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 /**
  * Created by blavenie on 30/12/20.
@@ -48,7 +52,19 @@ public class RestQuotaController extends AbstractLifecycleComponent<RestQuotaCon
 
     private Set<String> ipWhiteList;
 
-    private Map<RestRequest.Method, Map<String, QuotaMapByIp>> quotasByMethod;
+    private int maxIpCount;
+
+    private Map<RestRequest.Method, List<Quota>> quotasByMethod;
+
+    private static class Quota {
+        final Pattern pathPattern;
+        final QuotaMapByIp counters;
+
+        Quota(String regexPath, QuotaMapByIp counters) {
+            this.pathPattern = Pattern.compile(regexPath);
+            this.counters = counters;
+        }
+    }
 
     @Inject
     public RestQuotaController(Settings settings, PluginSettings pluginSettings) {
@@ -56,19 +72,24 @@ public class RestQuotaController extends AbstractLifecycleComponent<RestQuotaCon
         this.log = Loggers.getLogger("duniter.security.quota", settings, new String[0]);
         this.trace = log.isTraceEnabled();
         this.enable = pluginSettings.enableQuota();
-        this.quotasByMethod = new HashMap<>();
+        this.quotasByMethod = new ConcurrentHashMap<>();
         this.ipWhiteList = Sets.newHashSet(pluginSettings.getIpWhiteList());
+        this.maxIpCount = pluginSettings.getQuotaMaxIpCount();
         if (!enable) {
             log.warn("/!\\ Security has been disable using option [duniter.security.quota.enable]. This is NOT recommended in production !");
         }
+        else {
+            // Expose counters in node stats
+            RestNodeStatsGetAction.registerStats("quotas", this::getStatistics);
+        }
     }
 
-    public RestQuotaController quota(RestRequest.Method method, String regexPath, int maxCount, int duration, TimeUnit unit) {
-        Map<String, QuotaMapByIp> quotaByRequest = quotasByMethod.computeIfAbsent(method, k -> new LinkedHashMap<>());
-
+    public synchronized RestQuotaController quota(RestRequest.Method method, String regexPath, int maxCount, int duration, TimeUnit unit) {
+        List<Quota> quotas = quotasByMethod.computeIfAbsent(method, k -> new CopyOnWriteArrayList<>());
 
-        if (!quotaByRequest.containsKey(regexPath)) {
-            quotaByRequest.put(regexPath, new QuotaMapByIp(regexPath, maxCount, duration, unit, log));
+        boolean exists = quotas.stream().anyMatch(quota -> quota.counters.getName().equals(regexPath));
+        if (!exists) {
+            quotas.add(new Quota(regexPath, new QuotaMapByIp(regexPath, maxCount, duration, unit, maxIpCount)));
         }
         else {
             log.warn(String.format("More than one quota defined for request %s (%s). Skipping new quota config", regexPath, method.toString()));
@@ -77,6 +98,16 @@ public class RestQuotaController extends AbstractLifecycleComponent<RestQuotaCon
         return this;
     }
 
+    /**
+     * Counters (allowed, rejected, IP count), by quota
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        quotasByMethod.forEach((method, quotas) -> quotas.forEach(quota ->
+                result.put(method.name() + " " + quota.counters.getName(), quota.counters.toMap())));
+        return result;
+    }
+
     public boolean isAllow(RestRequest request) {
         if (!this.enable) return true;
 
@@ -90,7 +121,7 @@ public class RestQuotaController extends AbstractLifecycleComponent<RestQuotaCon
             return true;
         }
 
-        Map<String, QuotaMapByIp> quotas = quotasByMethod.get(request.method());
+        List<Quota> quotas = quotasByMethod.get(request.method());
 
         if (trace) log.trace(String.format("Checking quota for %s request [%s]...", method, path));
         if (quotas == null) {
@@ -98,11 +129,12 @@ public class RestQuotaController extends AbstractLifecycleComponent<RestQuotaCon
             return true;
         }
         boolean found = false;
-        for (String pathRegexp : quotas.keySet()) {
+        for (Quota quota : quotas) {
+            String pathRegexp = quota.counters.getName();
             if (trace) log.trace(String.format(" - Trying against quota [%s] for %s requests", pathRegexp, method));
 
             // A quota exists for this path
-            if (path.matches(pathRegexp)) {
+            if (quota.pathPattern.matcher(path).matches()) {
                 if (trace) log.trace(String.format("Find matching quota [%s] for %s request [%s]", pathRegexp, method, path));
 
                 // NO IP not allow, because we cannot check
@@ -111,10 +143,9 @@ public class RestQuotaController extends AbstractLifecycleComponent<RestQuotaCon
                     return false;
                 }
 
-                QuotaMapByIp quota = quotas.get(pathRegexp);
-
                 // If cannot increment: NOT allow
-                if (!quota.increment(ip)) {
+                if (!quota.counters.increment(ip)) {
+                    if (trace) log.trace(String.format("Quota [%s] exceeded for %s request [%s]: reject", pathRegexp, method, path));
                     return false;
                 }
 
@@ -31,6 +31,7 @@ import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.rest.RestRequest;
 
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -48,6 +49,9 @@ public class RestSecurityController extends AbstractLifecycleComponent<RestSecur
 
     private Map<RestRequest.Method, Set<String>> allowRulesByMethod;
 
+    // Compiled allow rules (rebuilt after a rule is added)
+    private volatile Map<RestRequest.Method, RestPathMatcher> matchersByMethod;
+
     @Inject
     public RestSecurityController(Settings settings, PluginSettings pluginSettings) {
         super(settings);
@@ -85,11 +89,14 @@ public class RestSecurityController extends AbstractLifecycleComponent<RestSecur
         return this;
     }
 
-    public RestSecurityController allow(RestRequest.Method method, String regexPath) {
+    public synchronized RestSecurityController allow(RestRequest.Method method, String regexPath) {
         Set<String> allowRules = allowRulesByMethod.computeIfAbsent(method, k -> new TreeSet<>());
 
         if (!allowRules.contains(regexPath)) {
             allowRules.add(regexPath);
+
+            // Need to compile rules again
+            matchersByMethod = null;
         }
         return this;
     }
@@ -100,10 +107,9 @@ public class RestSecurityController extends AbstractLifecycleComponent<RestSecur
         RestRequest.Method method = request.method();
         String path = request.path();
 
-        Set<String> allowRules = allowRulesByMethod.get(request.method());
-
         // Trace mode
         if (trace) {
+            Set<String> allowRules = allowRulesByMethod.get(request.method());
             log.trace(String.format("Checking rules for %s request [%s]...", method, path));
             if (allowRules == null) {
                 log.trace(String.format("No matching rules for %s request [%s]: reject", method, path));
@@ -125,14 +131,8 @@ public class RestSecurityController extends AbstractLifecycleComponent<RestSecur
         }
 
         // Check if allow
-        if (allowRules != null) {
-            for (String allowRule : allowRules) {
-                if (path.matches(allowRule)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        RestPathMatcher matcher = getMatchers().get(method);
+        return matcher != null && matcher.matches(path);
     }
 
     @Override
@@ -152,4 +152,28 @@ public class RestSecurityController extends AbstractLifecycleComponent<RestSecur
 
     /* -- Internal method -- */
 
+    private Map<RestRequest.Method, RestPathMatcher> getMatchers() {
+        Map<RestRequest.Method, RestPathMatcher> matchers = matchersByMethod;
+        if (matchers != null) return matchers;
+
+        synchronized (this) {
+            if (matchersByMethod == null) {
+                long now = System.currentTimeMillis();
+                Map<RestRequest.Method, RestPathMatcher> result = new EnumMap<>(RestRequest.Method.class);
+                allowRulesByMethod.forEach((method, allowRules) -> {
+                    RestPathMatcher matcher = new RestPathMatcher(allowRules);
+                    if (matcher.getPatternCount() > 0) {
+                        log.debug(String.format("%s rules for %s requests could not be compiled into an automaton", matcher.getPatternCount(), method));
+                    }
+                    result.put(method, matcher);
+                });
+                matchersByMethod = result;
+                if (log.isDebugEnabled()) {
+                    log.debug(String.format("Allow rules compiled in %s ms", System.currentTimeMillis() - now));
+                }
+            }
+            return matchersByMethod;
+        }
+    }
+
 }
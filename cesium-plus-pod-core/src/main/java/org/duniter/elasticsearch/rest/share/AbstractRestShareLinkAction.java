@@ -8,14 +8,13 @@ import org.duniter.elasticsearch.PluginSettings;
 import org.duniter.elasticsearch.exception.DuniterElasticsearchException;
 import org.duniter.elasticsearch.rest.XContentThrowableRestResponse;
 import org.duniter.elasticsearch.util.opengraph.OGData;
-import org.duniter.elasticsearch.util.springtemplate.STUtils;
+import org.duniter.elasticsearch.util.springtemplate.STRenderer;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.rest.*;
 import org.nuiton.i18n.I18n;
 import org.stringtemplate.v4.ST;
-import org.stringtemplate.v4.STGroup;
 
 import java.util.Locale;
 
@@ -31,7 +30,8 @@ public abstract class AbstractRestShareLinkAction extends BaseRestHandler {
     }
 
     private OGDataResolver resolver;
-    private STGroup templates;
+    private STRenderer renderer;
+    private ShareHtmlCache cache;
     private String urlPattern;
 
     public AbstractRestShareLinkAction(PluginSettings pluginSettings,
@@ -61,9 +61,13 @@ public abstract class AbstractRestShareLinkAction extends BaseRestHandler {
         this.urlPattern = (clusterUrl != null ? clusterUrl : "") + pathPattern;
 
         // Configure springtemplate engine
-        this.templates = STUtils.newSTGroup("org/duniter/elasticsearch/templates");
-        Preconditions.checkNotNull(this.templates.getInstanceOf("html_share"), "Unable to load ST template for share page");
+        this.renderer = new STRenderer("org/duniter/elasticsearch/templates", "html_share");
         this.resolver = resolver;
+
+        // Rendered pages cache
+        if (pluginSettings.getShareCacheMaxSize() > 0) {
+            this.cache = new ShareHtmlCache(indexName, typeName, pluginSettings.getShareCacheMaxSize(), pluginSettings.getShareCacheTimeToLive());
+        }
     }
 
     @Override
@@ -71,31 +75,38 @@ public abstract class AbstractRestShareLinkAction extends BaseRestHandler {
         String id = request.param("id");
 
         try {
-
-            OGData data = resolver.resolve(id);
-            Preconditions.checkNotNull(data);
-            Preconditions.checkNotNull(data.title);
-
-            // Compute HTML content
-            ST template = templates.getInstanceOf("html_share");
-            template.add("type", data.type);
-            template.add("title", data.title);
-            template.add("summary", StringUtils.truncate(data.description, 500));
-            template.add("description", data.description);
-            template.add("siteName", data.siteName);
-            template.add("image", data.image);
-            template.add("url", String.format(urlPattern, id));
-            template.add("redirectUrl", data.url);
-            template.add("locale", data.locale);
-            template.add("imageHeight", data.imageHeight);
-            template.add("imageWidth", data.imageWidth);
-            if (StringUtils.isNotBlank(data.url)) {
-                Locale locale = data.locale != null ? new Locale(data.locale) : I18n.getDefaultLocale();
-                template.add("redirectMessage", I18n.l(locale, "duniter4j.share.redirection.help"));
+            String html = cache != null ? cache.get(id) : null;
+
+            if (html == null) {
+                long startTime = System.nanoTime();
+
+                OGData data = resolver.resolve(id);
+                Preconditions.checkNotNull(data);
+                Preconditions.checkNotNull(data.title);
+
+                // Compute HTML content
+                ST template = renderer.getInstanceOf("html_share");
+                template.add("type", data.type);
+                template.add("title", data.title);
+                template.add("summary", StringUtils.truncate(data.description, 500));
+                template.add("description", data.description);
+                template.add("siteName", data.siteName);
+                template.add("image", data.image);
+                template.add("url", String.format(urlPattern, id));
+                template.add("redirectUrl", data.url);
+                template.add("locale", data.locale);
+                template.add("imageHeight", data.imageHeight);
+                template.add("imageWidth", data.imageWidth);
+                if (StringUtils.isNotBlank(data.url)) {
+                    Locale locale = data.locale != null ? new Locale(data.locale) : I18n.getDefaultLocale();
+                    template.add("redirectMessage", I18n.l(locale, "duniter4j.share.redirection.help"));
+                }
+
+                html = STRenderer.render(template, Locale.getDefault());
+
+                if (cache != null) cache.put(id, html, startTime);
             }
 
-            String html = template.render();
-
             restChannel.sendResponse(new BytesRestResponse(OK, ContentType.TEXT_HTML.getMimeType(), html));
         }
         catch(DuniterElasticsearchException | BusinessException e) {
@@ -0,0 +1,117 @@
+package org.duniter.elasticsearch.rest.share;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import org.duniter.elasticsearch.service.changes.ChangeDispatcher;
+import org.duniter.elasticsearch.service.changes.ChangeEvent;
+import org.duniter.elasticsearch.service.changes.ChangeService;
+import org.duniter.elasticsearch.service.changes.ChangeSource;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendered share pages, by document id. Entries are invalidated when the document changes.
+ */
+public class ShareHtmlCache implements ChangeService.ChangeListener {
+
+    private final String index;
+    private final String type;
+    private final Cache<String, String> pages;
+    // id -> time of the last change (to avoid caching a page rendered before the change)
+    private final Cache<String, Long> changeTimes;
+    // time of the last clear (to avoid caching a page rendered before it)
+    private volatile long clearTime = System.nanoTime();
+
+    public ShareHtmlCache(String index, String type, long maxSize, long timeToLiveInSec) {
+        this.index = index;
+        this.type = type;
+        this.pages = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(timeToLiveInSec, TimeUnit.SECONDS)
+                .build();
+        this.changeTimes = CacheBuilder.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .build();
+        ChangeService.registerListener(this);
+    }
+
+    public String get(String id) {
+        return pages.getIfPresent(id);
+    }
+
+    /**
+     * @param renderStartTime value of System.nanoTime() before reading the document
+     */
+    public void put(String id, String html, long renderStartTime) {
+        Long changeTime = changeTimes.getIfPresent(id);
+        if (changeTime != null && changeTime - renderStartTime >= 0) return;
+        if (clearTime - renderStartTime >= 0) return;
+        pages.put(id, html);
+    }
+
+    public void invalidate(String id) {
+        pages.invalidate(id);
+    }
+
+    public void clear() {
+        clearTime = System.nanoTime();
+        pages.invalidateAll();
+    }
+
+    public long size() {
+        return pages.size();
+    }
+
+    @Override
+    public String getId() {
+        return String.format("duniter.share.cache.%s.%s", index, type);
+    }
+
+    @Override
+    public void onChange(ChangeEvent change) {
+        changeTimes.put(change.getId(), System.nanoTime());
+        invalidate(change.getId());
+    }
+
+    @Override
+    public Collection<ChangeSource> getChangeSources() {
+        return ImmutableList.of(new ChangeSource(index, type));
+    }
+
+    @Override
+    public ChangeDispatcher.OverflowPolicy getOverflowPolicy() {
+        // Only the last change of a document is useful
+        return ChangeDispatcher.OverflowPolicy.COALESCE;
+    }
+
+    @Override
+    public void onOverflow() {
+        // Some changes were lost
+        clear();
+    }
+}
@@ -30,6 +30,7 @@ import org.duniter.core.service.CryptoService;
 import org.duniter.core.util.Preconditions;
 import org.duniter.elasticsearch.PluginSettings;
 import org.duniter.elasticsearch.client.Duniter4jClient;
+import org.duniter.elasticsearch.service.changes.ChangeDispatcher;
 import org.duniter.elasticsearch.service.changes.ChangeEvent;
 import org.duniter.elasticsearch.service.changes.ChangeService;
 import org.duniter.elasticsearch.service.changes.ChangeSource;
@@ -118,6 +119,12 @@ public abstract class AbstractBlockchainListenerService extends AbstractService
         return CHANGE_LISTEN_SOURCES;
     }
 
+    @Override
+    public ChangeDispatcher.OverflowPolicy getOverflowPolicy() {
+        // Never skip a block (reloaded from the index, when the queue is full)
+        return ChangeDispatcher.OverflowPolicy.BLOCK;
+    }
+
     /* -- internal method -- */
 
 
@@ -39,6 +39,7 @@ import org.duniter.elasticsearch.client.Duniter4jClient;
 import org.duniter.elasticsearch.exception.InvalidFormatException;
 import org.duniter.elasticsearch.exception.InvalidSignatureException;
 import org.duniter.elasticsearch.exception.InvalidTimeException;
+import org.duniter.elasticsearch.rest.node.RestNodeStatsGetAction;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
@@ -64,11 +65,15 @@ public abstract class AbstractService implements Bean {
     protected CryptoService cryptoService;
     protected ObjectMapper objectMapper;
 
+    // Shared by all services (see getSignatureCache())
+    private static VerifiedSignatureCache signatureCache;
+
     private boolean ready = false;
     private final int retryCount;
     private final int retryWaitDuration;
     private final int documentTimeMaxPastDelta;
     private final int documentTimeMaxFutureDelta;
+    private final VerifiedSignatureCache verifiedSignatures;
 
     public AbstractService(String loggerName, Duniter4jClient client, PluginSettings pluginSettings) {
         this(loggerName, client, pluginSettings, null);
@@ -92,6 +97,7 @@ public abstract class AbstractService implements Bean {
         this.retryWaitDuration = pluginSettings.getNodeRetryWaitDuration();
         this.documentTimeMaxPastDelta = pluginSettings.getDocumentTimeMaxPastDelta();
         this.documentTimeMaxFutureDelta = pluginSettings.getDocumentTimeMaxFutureDelta();
+        this.verifiedSignatures = getSignatureCache(pluginSettings);
     }
 
     /* -- protected methods --*/
@@ -254,6 +260,16 @@ public abstract class AbstractService implements Bean {
 
     /* -- internal methods -- */
 
+    private static synchronized VerifiedSignatureCache getSignatureCache(PluginSettings pluginSettings) {
+        if (signatureCache == null && pluginSettings.getSignatureCacheMaxSize() > 0) {
+            signatureCache = new VerifiedSignatureCache(pluginSettings.getSignatureCacheMaxSize());
+
+            // Expose hit rate in node stats
+            RestNodeStatsGetAction.registerStats("signatureCache", signatureCache::toMap);
+        }
+        return signatureCache;
+    }
+
     protected void readAndVerifyIssuerSignature(String recordJson, JsonNode recordObj, String issuerFieldName) throws ElasticsearchException {
 
         Set<String> fieldNames = ImmutableSet.copyOf(recordObj.fieldNames());
@@ -281,7 +297,12 @@ public abstract class AbstractService implements Bean {
 
         // Doc version == 1
         if (version == 1) {
-            validSignature = cryptoService.verify(recordJson, signature, issuer);
+            final String signedJson = recordJson;
+            validSignature = verifiedSignatures == null ?
+                    cryptoService.verify(signedJson, signature, issuer) :
+                    // Signature is on the JSON (not on the hash field): use the content hash as key
+                    verifiedSignatures.verify(cryptoService.hash(signedJson), signature, issuer,
+                            () -> cryptoService.verify(signedJson, signature, issuer));
         }
 
         // Doc version > 1
@@ -293,7 +314,10 @@ public abstract class AbstractService implements Bean {
             }
 
             // Validate signature on hash
-            validSignature = cryptoService.verify(hash, signature, issuer);
+            validSignature = verifiedSignatures == null ?
+                    cryptoService.verify(hash, signature, issuer) :
+                    verifiedSignatures.verify(hash, signature, issuer,
+                            () -> cryptoService.verify(hash, signature, issuer));
         }
 
         if (!validSignature) {
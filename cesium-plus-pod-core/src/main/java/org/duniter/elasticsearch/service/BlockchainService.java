@@ -25,7 +25,7 @@ package org.duniter.elasticsearch.service;
 
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Lists;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.duniter.core.client.dao.CurrencyDao;
 import org.duniter.core.client.model.bma.BlockchainBlock;
@@ -34,6 +34,7 @@ import org.duniter.core.client.model.bma.BlockchainParameters;
 import org.duniter.core.client.model.bma.EndpointApi;
 import org.duniter.core.client.model.local.Currency;
 import org.duniter.core.client.model.local.Peer;
+import org.duniter.core.client.service.HttpService;
 import org.duniter.core.client.service.bma.BlockchainRemoteService;
 import org.duniter.core.client.service.bma.NetworkRemoteService;
 import org.duniter.core.client.service.exception.BlockNotFoundException;
@@ -56,6 +57,7 @@ import org.duniter.elasticsearch.dao.BlockDao;
 import org.duniter.elasticsearch.dao.CurrencyExtendDao;
 import org.duniter.elasticsearch.exception.DuplicateIndexIdException;
 import org.duniter.elasticsearch.threadpool.ThreadPool;
+import org.duniter.elasticsearch.util.bytes.BlockJsonSplitter;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
@@ -65,8 +67,13 @@ import org.nuiton.i18n.I18n;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -82,6 +89,7 @@ public class BlockchainService extends AbstractService {
     private final ProgressionModel nullProgressionModel = new NullProgressionModel();
 
     private BlockchainRemoteService blockchainRemoteService;
+    private HttpService httpService;
     private List<WebsocketClientEndpoint.ConnectionListener> connectionListeners = new ArrayList<>();
     private final WebsocketClientEndpoint.ConnectionListener dispatchConnectionListener;
 
@@ -96,6 +104,7 @@ public class BlockchainService extends AbstractService {
     private BlockDao blockDao;
     private CurrencyExtendDao currencyDao;
     private PeerService peerService;
+    private final ThreadPool threadPool;
 
     @Inject
     public BlockchainService(Duniter4jClient client,
@@ -110,8 +119,10 @@ public class BlockchainService extends AbstractService {
         this.blockDao = blockDao;
         this.currencyDao = (CurrencyExtendDao) currencyDao;
         this.peerService = peerService;
+        this.threadPool = threadPool;
         threadPool.scheduleOnStarted(() -> {
             blockchainRemoteService = serviceLocator.getBlockchainRemoteService();
+            httpService = serviceLocator.getHttpService();
             setIsReady(true);
         });
         dispatchConnectionListener = new WebsocketClientEndpoint.ConnectionListener() {
@@ -668,10 +679,15 @@ public class BlockchainService extends AbstractService {
                                                     boolean isLastCurrentNumber) {
         Set<String> missingBlockNumbers = new LinkedHashSet<>();
 
-        boolean debug = logger.isDebugEnabled();
-
         int batchSize = pluginSettings.getIndexBulkSize();
-        String currentBlockJson = null;
+
+        // Download many blocks ranges in parallel
+        int threads = pluginSettings.getBlockchainDownloadThreads();
+        if (threads > 1 && lastNumber - firstNumber > batchSize) {
+            return indexBlocksUsingParallelBulk(peer, currencyName, firstNumber, lastNumber, progressionModel, isLastCurrentNumber, threads);
+        }
+
+        AtomicReference<BytesReference> currentBlockJson = new AtomicReference<>();
 
         for (int batchFirstNumber = firstNumber; batchFirstNumber < lastNumber; ) {
             // Check if stop (e.g. ask by user)
@@ -683,10 +699,10 @@ public class BlockchainService extends AbstractService {
                 return missingBlockNumbers;
             }
 
-            String[] blocksAsJson = null;
+            List<BlockJsonSplitter.BlockBytes> blocks = null;
             try {
                 final int batchFirstNumberFinal = batchFirstNumber;
-                blocksAsJson = executeWithRetry(()->blockchainRemoteService.getBlocksAsJson(peer, batchSize, batchFirstNumberFinal));
+                blocks = executeWithRetry(()-> getBlocksAsBytes(peer, batchSize, batchFirstNumberFinal));
             } catch(BlockNotFoundException | TechnicalException e) {
                 if (logger.isDebugEnabled()) {
                     logger.debug(String.format("[%s] [%s] Error while getting blocks from #%s (count=%s): %s. Skipping blocks.",currencyName, peer, batchFirstNumber, batchSize, e.getMessage()));
@@ -694,7 +710,7 @@ public class BlockchainService extends AbstractService {
             }
 
             // Peer sendBlock no blocks
-            if (CollectionUtils.isEmpty(blocksAsJson)) {
+            if (CollectionUtils.isEmpty(blocks)) {
 
                 // Add range to missing blocks
                 missingBlockNumbers.add(batchFirstNumber + "-" + (batchFirstNumber+batchSize));
@@ -706,65 +722,259 @@ public class BlockchainService extends AbstractService {
             // Process received blocks
             else {
 
-                List<Integer> processedBlockNumbers = Lists.newArrayList();
-                BulkRequestBuilder bulkRequest = client.prepareBulk();
-                for (String blockAsJson : blocksAsJson) {
-                    Integer itemNumber = blockNumberParser.getValue(blockAsJson);
+                int maxNumber = indexBlocksBulk(currencyName, blocks, lastNumber, isLastCurrentNumber, currentBlockJson, missingBlockNumbers);
 
-                    // update curNumber with max number;
-                    if (itemNumber > batchFirstNumber) {
-                        batchFirstNumber = itemNumber;
-                    }
+                // update curNumber with max number;
+                if (maxNumber > batchFirstNumber) {
+                    batchFirstNumber = maxNumber;
+                }
+            }
 
-                    if (itemNumber != null && !processedBlockNumbers.contains(itemNumber)) {
-                        // Add to bulk
-                        bulkRequest.add(client.prepareIndex(currencyName, BLOCK_TYPE, itemNumber.toString())
-                                .setRefresh(false) // recommended for heavy indexing
-                                .setSource(blockAsJson)
-                        );
-                        processedBlockNumbers.add(itemNumber);
-                    }
+            // Report progress
+            reportIndexBlocksProgress(progressionModel, currencyName, peer, firstNumber, lastNumber, batchFirstNumber);
+            batchFirstNumber++; // increment for next loop
+        }
+
+        if (currentBlockJson.get() != null) {
+            indexCurrentBlockFromJson(currencyName, currentBlockJson.get().toUtf8(), true);
+        }
+
+        return missingBlockNumbers;
+    }
+
+    /**
+     * Download blocks ranges in parallel (from the given peer, and optionally from other known peers),
+     * while a single writer (the current thread) index them in order.
+     */
+    private Collection<String> indexBlocksUsingParallelBulk(Peer peer, String currencyName, int firstNumber, int lastNumber, ProgressionModel progressionModel,
+                                                            boolean isLastCurrentNumber, int threads) {
+        Set<String> missingBlockNumbers = new LinkedHashSet<>();
+        AtomicReference<BytesReference> currentBlockJson = new AtomicReference<>();
+
+        int batchSize = pluginSettings.getIndexBulkSize();
+        int maxRangesInFlight = threads * 2;
+
+        // Other peers are used only for old blocks (recent blocks can be on a fork)
+        List<Peer> otherPeers = getOtherDownloadPeers(peer, currencyName);
+        int otherPeersMaxNumber = lastNumber - pluginSettings.getNodeForkResyncWindow();
 
-                    // If last block : also update the current block
-                    if (isLastCurrentNumber && itemNumber == lastNumber) {
-                        currentBlockJson = blockAsJson;
+        ExecutorService executor = threadPool.executor("blockchain_download", threads);
+        Deque<BlocksRange> pendingRanges = new ArrayDeque<>(maxRangesInFlight);
+
+        try {
+            int nextFirstNumber = firstNumber;
+            int rangeCounter = 0;
+            String lastHash = null; // hash of the last indexed block (null if unknown)
+            while (nextFirstNumber <= lastNumber || !pendingRanges.isEmpty()) {
+
+                // Start downloading next ranges
+                while (nextFirstNumber <= lastNumber && pendingRanges.size() < maxRangesInFlight) {
+                    final int rangeFirstNumber = nextFirstNumber;
+                    final int count = Math.min(batchSize, lastNumber - rangeFirstNumber + 1);
+                    final int peerIndex = rangeCounter % (otherPeers.size() + 1);
+                    final Peer rangePeer = (peerIndex == 0 || rangeFirstNumber + count > otherPeersMaxNumber)
+                            ? peer
+                            : otherPeers.get(peerIndex - 1);
+                    pendingRanges.add(new BlocksRange(rangeFirstNumber, count, rangePeer,
+                            executor.submit(() -> downloadBlocks(peer, rangePeer, currencyName, rangeFirstNumber, count))));
+                    nextFirstNumber += count;
+                    rangeCounter++;
+                }
+
+                // Check if stop (e.g. ask by user)
+                if (progressionModel.isCancel()) {
+                    progressionModel.setStatus(ProgressionModel.Status.STOPPED);
+                    if (logger.isInfoEnabled()) {
+                        logger.info(I18n.t("duniter4j.blockIndexerService.indexLastBlocks.stopped", currencyName, peer.getUrl()));
                     }
+                    return missingBlockNumbers;
                 }
 
-                if (bulkRequest.numberOfActions() > 0) {
-
-                    // Flush the bulk if not empty
-                    BulkResponse bulkResponse = bulkRequest.get();
-
-                    // If failures, continue but save missing blocks
-                    if (bulkResponse.hasFailures()) {
-                        // process failures by iterating through each bulk response item
-                        for (BulkItemResponse itemResponse : bulkResponse) {
-                            boolean skip = !itemResponse.isFailed()
-                                    || Objects.equal(CURRENT_BLOCK_ID, itemResponse.getId())
-                                    || missingBlockNumbers.contains(Integer.parseInt(itemResponse.getId()));
-                            if (!skip) {
-                                int itemNumber = Integer.parseInt(itemResponse.getId());
-                                if (debug) {
-                                    logger.debug(String.format("Error while getting block #%s: %s. Skipping this block.", itemNumber, itemResponse.getFailureMessage()));
-                                }
-                                missingBlockNumbers.add(itemResponse.getId());
-                            }
+                // Index the oldest range
+                BlocksRange range = pendingRanges.poll();
+                List<BlockJsonSplitter.BlockBytes> blocks = range.get();
+
+                // Range must be linked to the previous one. If not, download it again from the main peer
+                if (CollectionUtils.isNotEmpty(blocks) && !BlockJsonSplitter.isChained(blocks, range.firstNumber, lastHash) && range.peer != peer) {
+                    logger.warn(String.format("[%s] [%s] Blocks from #%s are not linked to the previous block #%s. Downloading them again from the main peer.",
+                            currencyName, range.peer, range.firstNumber, range.firstNumber - 1));
+                    blocks = downloadBlocks(peer, peer, currencyName, range.firstNumber, range.count);
+                }
+                if (CollectionUtils.isNotEmpty(blocks) && !BlockJsonSplitter.isChained(blocks, range.firstNumber, lastHash)) {
+                    logger.warn(String.format("[%s] [%s] Blocks from #%s are not linked to the previous block #%s. Skipping blocks.",
+                            currencyName, peer, range.firstNumber, range.firstNumber - 1));
+                    blocks = null;
+                }
+
+                if (CollectionUtils.isEmpty(blocks)) {
+                    // Add range to missing blocks
+                    missingBlockNumbers.add(range.firstNumber + "-" + (range.firstNumber + range.count));
+                    lastHash = null;
+                }
+                else {
+                    indexBlocksBulk(currencyName, blocks, lastNumber, isLastCurrentNumber, currentBlockJson, missingBlockNumbers);
+                    lastHash = blocks.get(blocks.size() - 1).getHash();
+                }
+
+                // Report progress
+                reportIndexBlocksProgress(progressionModel, currencyName, peer, firstNumber, lastNumber, range.firstNumber + range.count - 1);
+            }
+        }
+        finally {
+            // Cancel remaining downloads (if stopped or failed)
+            pendingRanges.forEach(range -> range.future.cancel(true));
+        }
+
+        if (currentBlockJson.get() != null) {
+            indexCurrentBlockFromJson(currencyName, currentBlockJson.get().toUtf8(), true);
+        }
+
+        return missingBlockNumbers;
+    }
+
+    /**
+     * Download a blocks range. If failed on another peer, retry on the main peer.
+     * Blocks from another peer must be linked together, and their last hash must be known by the main peer.
+     * @return blocks, or null if failed
+     */
+    private List<BlockJsonSplitter.BlockBytes> downloadBlocks(Peer mainPeer, Peer peer, String currencyName, int firstNumber, int count) {
+        try {
+            List<BlockJsonSplitter.BlockBytes> blocks = executeWithRetry(() -> getBlocksAsBytes(peer, count, firstNumber));
+            if (peer != mainPeer && !isKnownByPeer(mainPeer, blocks, firstNumber)) {
+                logger.warn(String.format("[%s] [%s] Invalid blocks from #%s (count=%s): not linked to the main peer blockchain. Retrying on the main peer.",
+                        currencyName, peer, firstNumber, count));
+                return downloadBlocks(mainPeer, mainPeer, currencyName, firstNumber, count);
+            }
+            return blocks;
+        } catch(BlockNotFoundException | TechnicalException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(String.format("[%s] [%s] Error while getting blocks from #%s (count=%s): %s.", currencyName, peer, firstNumber, count, e.getMessage()));
+            }
+            if (peer != mainPeer) return downloadBlocks(mainPeer, mainPeer, currencyName, firstNumber, count);
+            return null;
+        }
+    }
+
+    /**
+     * Check blocks are linked together, and that the last block hash is the same on the given peer
+     */
+    private boolean isKnownByPeer(Peer peer, List<BlockJsonSplitter.BlockBytes> blocks, int firstNumber) {
+        if (CollectionUtils.isEmpty(blocks) || !BlockJsonSplitter.isChained(blocks, firstNumber, null)) return false;
+        BlockJsonSplitter.BlockBytes lastBlock = blocks.get(blocks.size() - 1);
+        BlockchainBlock peerBlock = blockchainRemoteService.getBlock(peer, lastBlock.getNumber());
+        return peerBlock != null && Objects.equal(peerBlock.getHash(), lastBlock.getHash());
+    }
+
+    private List<Peer> getOtherDownloadPeers(Peer peer, String currencyName) {
+        if (!pluginSettings.enableBlockchainDownloadFromPeers()) return Collections.emptyList();
+        try {
+            return peerService.getUpPeersByApis(currencyName, EndpointApi.BASIC_MERKLED_API, EndpointApi.BMAS)
+                    .stream()
+                    .filter(p -> !Objects.equal(p.getUrl(), peer.getUrl()))
+                    .collect(Collectors.toList());
+        }
+        catch(Exception e) {
+            logger.warn(String.format("[%s] Unable to get other peers, to download blocks: %s", currencyName, e.getMessage()));
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Get blocks, as raw bytes (one slice by block)
+     */
+    private List<BlockJsonSplitter.BlockBytes> getBlocksAsBytes(Peer peer, int count, int from) {
+        String path = String.format("/blockchain/blocks/%s/%s", count, from);
+        try (InputStream content = httpService.executeRequest(peer, path, InputStream.class)) {
+            return BlockJsonSplitter.split(IOUtils.toByteArray(content));
+        }
+        catch (IOException e) {
+            throw new TechnicalException(String.format("[%s] Unable to read blocks response [%s]: %s", peer, path, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Index some blocks, using a bulk request.
+     * @return the max block number found
+     */
+    private int indexBlocksBulk(String currencyName, List<BlockJsonSplitter.BlockBytes> blocks, int lastNumber, boolean isLastCurrentNumber,
+                                AtomicReference<BytesReference> currentBlockJson,
+                                Set<String> missingBlockNumbers) {
+        boolean debug = logger.isDebugEnabled();
+        int maxNumber = -1;
+
+        // Blocks are already deduplicated by number
+        BulkRequestBuilder bulkRequest = client.prepareBulk();
+        for (BlockJsonSplitter.BlockBytes block : blocks) {
+            int itemNumber = block.getNumber();
+
+            // update max number;
+            if (itemNumber > maxNumber) {
+                maxNumber = itemNumber;
+            }
+
+            // Add to bulk
+            bulkRequest.add(client.prepareIndex(currencyName, BLOCK_TYPE, String.valueOf(itemNumber))
+                    .setRefresh(false) // recommended for heavy indexing
+                    .setSource(block.getSource())
+            );
+
+            // If last block : also update the current block
+            if (isLastCurrentNumber && itemNumber == lastNumber) {
+                currentBlockJson.set(block.getSource());
+            }
+        }
+
+        if (bulkRequest.numberOfActions() > 0) {
+
+            // Flush the bulk if not empty
+            BulkResponse bulkResponse = bulkRequest.get();
+
+            // If failures, continue but save missing blocks
+            if (bulkResponse.hasFailures()) {
+                // process failures by iterating through each bulk response item
+                for (BulkItemResponse itemResponse : bulkResponse) {
+                    boolean skip = !itemResponse.isFailed()
+                            || Objects.equal(CURRENT_BLOCK_ID, itemResponse.getId())
+                            || missingBlockNumbers.contains(Integer.parseInt(itemResponse.getId()));
+                    if (!skip) {
+                        int itemNumber = Integer.parseInt(itemResponse.getId());
+                        if (debug) {
+                            logger.debug(String.format("Error while getting block #%s: %s. Skipping this block.", itemNumber, itemResponse.getFailureMessage()));
                         }
+                        missingBlockNumbers.add(itemResponse.getId());
                     }
                 }
             }
-
-            // Report progress
-            reportIndexBlocksProgress(progressionModel, currencyName, peer, firstNumber, lastNumber, batchFirstNumber);
-            batchFirstNumber++; // increment for next loop
         }
 
-        if (StringUtils.isNotBlank(currentBlockJson)) {
-            indexCurrentBlockFromJson(currencyName, currentBlockJson, true);
+        return maxNumber;
+    }
+
+    private static class BlocksRange {
+        final int firstNumber;
+        final int count;
+        final Peer peer;
+        final Future<List<BlockJsonSplitter.BlockBytes>> future;
+
+        BlocksRange(int firstNumber, int count, Peer peer, Future<List<BlockJsonSplitter.BlockBytes>> future) {
+            this.firstNumber = firstNumber;
+            this.count = count;
+            this.peer = peer;
+            this.future = future;
         }
 
-        return missingBlockNumbers;
+        List<BlockJsonSplitter.BlockBytes> get() {
+            try {
+                return future.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TechnicalException(e);
+            }
+            catch (ExecutionException e) {
+                return null;
+            }
+        }
     }
 
     /**
@@ -0,0 +1,193 @@
+package org.duniter.elasticsearch.service;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableList;
+import org.duniter.elasticsearch.service.changes.ChangeDispatcher;
+import org.duniter.elasticsearch.service.changes.ChangeEvent;
+import org.duniter.elasticsearch.service.changes.ChangeService;
+import org.duniter.elasticsearch.service.changes.ChangeSource;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Document counters by index/type, maintained from create/delete changes on primary shards.
+ * A counter is approximate until reconciled against a real count (see reconcile()).
+ * When changes were dropped, counters must be reconciled again (see clearOverflow()).
+ * A null type means all types of the index.
+ */
+public class DocStatCounters implements ChangeService.ChangeListener {
+
+    private static class Counter {
+        final String index;
+        final String type;
+        final AtomicLong count = new AtomicLong();
+        final AtomicBoolean changed = new AtomicBoolean();
+        volatile boolean reconciled;
+        long sequence; // Incremented on each count change (guarded by this)
+
+        Counter(String index, String type) {
+            this.index = index;
+            this.type = type;
+        }
+    }
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final AtomicBoolean overflow = new AtomicBoolean();
+
+    /**
+     * @return true if the index/type was not already counted (change sources need a refresh)
+     */
+    public boolean add(String index, String type) {
+        String key = computeKey(index, type);
+        if (counters.containsKey(key)) return false;
+        return counters.putIfAbsent(key, new Counter(index, type)) == null;
+    }
+
+    public boolean isEmpty() {
+        return counters.isEmpty();
+    }
+
+    /**
+     * @return the current count, or null if never reconciled
+     */
+    public Long get(String index, String type) {
+        Counter counter = counters.get(computeKey(index, type));
+        if (counter == null || !counter.reconciled) return null;
+        return counter.count.get();
+    }
+
+    /**
+     * Value to read before a real count, then to pass to reconcile()
+     */
+    public long getSequence(String index, String type) {
+        Counter counter = counters.get(computeKey(index, type));
+        if (counter == null) return 0;
+        synchronized (counter) {
+            return counter.sequence;
+        }
+    }
+
+    /**
+     * Apply a real count, only if the counter has not changed since the sequence was read
+     * @return false if the counter changed (the count may include, or miss, these changes)
+     */
+    public boolean reconcile(String index, String type, long count, long sequence) {
+        Counter counter = counters.get(computeKey(index, type));
+        if (counter == null) return false;
+        synchronized (counter) {
+            if (counter.sequence != sequence) return false;
+            counter.count.set(count);
+            counter.reconciled = true;
+            return true;
+        }
+    }
+
+    /**
+     * @return true if a document changed since the previous call
+     */
+    public boolean clearChanged(String index, String type) {
+        Counter counter = counters.get(computeKey(index, type));
+        return counter == null || counter.changed.getAndSet(false);
+    }
+
+    /**
+     * @return true if changes were dropped since the previous call (all counters need a reconciliation)
+     */
+    public boolean clearOverflow() {
+        return overflow.getAndSet(false);
+    }
+
+    @Override
+    public String getId() {
+        return "duniter.docstat.counters";
+    }
+
+    @Override
+    public void onChange(ChangeEvent change) {
+        // Skip replicas (already counted on the primary), and deletion of a missing document
+        if (!change.isPrimary() || (change.getOperation() == ChangeEvent.Operation.DELETE && !change.isFound())) return;
+
+        long delta = getDelta(change);
+        apply(counters.get(computeKey(change.getIndex(), change.getType())), delta);
+        apply(counters.get(computeKey(change.getIndex(), null)), delta);
+    }
+
+    @Override
+    public Collection<ChangeSource> getChangeSources() {
+        ImmutableList.Builder<ChangeSource> result = ImmutableList.builder();
+        for (Counter counter : counters.values()) {
+            result.add(new ChangeSource(counter.index, counter.type));
+        }
+        return result.build();
+    }
+
+    @Override
+    public ChangeDispatcher.OverflowPolicy getOverflowPolicy() {
+        // Never slow down indexing: dropped changes are fixed by a reconciliation (see onOverflow())
+        return ChangeDispatcher.OverflowPolicy.DROP_OLDEST;
+    }
+
+    @Override
+    public void onOverflow() {
+        for (Counter counter : counters.values()) {
+            synchronized (counter) {
+                counter.sequence++;
+                counter.reconciled = false;
+            }
+        }
+        overflow.set(true);
+    }
+
+    /* -- internal methods -- */
+
+    private void apply(Counter counter, long delta) {
+        if (counter == null) return;
+        if (delta != 0) {
+            synchronized (counter) {
+                counter.count.addAndGet(delta);
+                counter.sequence++;
+            }
+        }
+        counter.changed.set(true);
+    }
+
+    private long getDelta(ChangeEvent change) {
+        switch (change.getOperation()) {
+            case CREATE:
+                return 1;
+            case DELETE:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
+    private String computeKey(String index, String type) {
+        return index + '/' + (type == null ? "*" : type);
+    }
+}
@@ -23,6 +23,7 @@ package org.duniter.elasticsearch.service;
  */
 
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.MapUtils;
@@ -33,6 +34,7 @@ import org.duniter.elasticsearch.PluginSettings;
 import org.duniter.elasticsearch.client.Duniter4jClient;
 import org.duniter.elasticsearch.dao.DocStatDao;
 import org.duniter.elasticsearch.model.DocStat;
+import org.duniter.elasticsearch.service.changes.ChangeService;
 import org.duniter.elasticsearch.threadpool.ScheduledActionFuture;
 import org.duniter.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
@@ -47,6 +49,8 @@ import org.elasticsearch.search.SearchHit;
 import java.io.Closeable;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * Maintained stats on doc (count records)
@@ -54,9 +58,17 @@ import java.util.concurrent.TimeUnit;
  */
 public class DocStatService extends AbstractService  {
 
+    private static final int RECONCILE_MAX_ATTEMPTS = 3;
+    private static final long RECONCILE_DELIVERY_TIMEOUT_MS = 10000;
+
     private DocStatDao docStatDao;
     private ThreadPool threadPool;
     private List<StatDef> statDefs = Lists.newCopyOnWriteArrayList();
+    private volatile Map<String, DocStat> lastStats = Collections.emptyMap();
+    private final boolean incremental;
+    private final DocStatCounters counters = new DocStatCounters();
+    private volatile long lastReconcileTime;
+    private final AtomicBoolean firstComputationRequested = new AtomicBoolean();
 
     public interface ComputeListener {
        void onCompute(DocStat stat);
@@ -89,6 +101,19 @@ public class DocStatService extends AbstractService  {
                     Objects.equals(((StatDef)obj).queryName, queryName);
         }
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(index, type, queryName);
+        }
+
+        String getKey() {
+            return getIndexTypeKey() + '/' + (queryName == null ? "*" : queryName);
+        }
+
+        String getIndexTypeKey() {
+            return index + '/' + (type == null ? "*" : type);
+        }
+
         public void addListener(ComputeListener listener) {
             if (listeners == null) {
                 listeners = new ArrayList<>();
@@ -103,6 +128,7 @@ public class DocStatService extends AbstractService  {
         super("duniter.data.stats", client, settings);
         this.threadPool = threadPool;
         this.docStatDao = docStatDao;
+        this.incremental = settings.enableDocStatsIncremental();
         setIsReady(true);
     }
 
@@ -143,6 +169,15 @@ public class DocStatService extends AbstractService  {
                 logger.debug(String.format("Add stats on {%s/%s} with query {name:%s}", index, type, queryName));
             }
             statDefs.add(statDef);
+
+            // Listen changes on the index/type
+            if (incremental) {
+                boolean first = counters.isEmpty();
+                if (counters.add(index, type)) {
+                    if (first) ChangeService.registerListener(counters);
+                    else ChangeService.refreshListener(counters);
+                }
+            }
         }
         else {
             logger.debug(String.format("Stats on {%s/%s} already registered. Skipping", index, type));
@@ -206,26 +241,13 @@ public class DocStatService extends AbstractService  {
         logger.info("Computing document stats...");
 
         BulkRequestBuilder bulkRequest = client.prepareBulk();
-
-        DocStat stat = new DocStat();
-        stat.setTime(now);
-
         int counter = 0;
 
-        for (StatDef statDef: statDefs) {
+        Map<StatDef, DocStat> stats = refreshStats(now);
+        for (Map.Entry<StatDef, DocStat> entry: stats.entrySet()) {
+            StatDef statDef = entry.getKey();
+            DocStat stat = entry.getValue();
             try {
-                long count = docStatDao.countDoc(statDef.index, statDef.type, statDef.query);
-
-                // Update stat properties (reuse existing obj)
-                stat.setIndex(statDef.index);
-                stat.setType(statDef.type);
-                stat.setCount(count);
-
-                // Apply the query name, to be able to filter the doc stats later
-                if (StringUtils.isNotBlank(statDef.queryName)) {
-                    stat.setQueryName(statDef.queryName);
-                }
-
                 // Call compute listeners if any
                 if (CollectionUtils.isNotEmpty(statDef.listeners)) {
                     statDef.listeners.forEach(l -> l.onCompute(stat));
@@ -244,7 +266,7 @@ public class DocStatService extends AbstractService  {
             }
             catch(Exception e) {
                 logger.error(String.format("Failed to execute doc stats on {%s/%s} %s: %s.",
-                        statDef.index, statDef.type, statDef.index, statDef.queryName, e.getMessage()), e);
+                        statDef.index, statDef.type, statDef.queryName, e.getMessage()), e);
             }
         }
 
@@ -256,6 +278,36 @@ public class DocStatService extends AbstractService  {
         logger.info(String.format("Computing document stats [OK] %s insertions, in %s ms", counter, System.currentTimeMillis() - now*1000));
     }
 
+    /**
+     * Last computed stats, by index/type/queryName. Never send a request to the index:
+     * if stats were never computed, returns an empty map, and compute them in background (once, without saving).
+     * In incremental mode, index/type counts are the live counters.
+     */
+    public Map<String, DocStat> getLastStats() {
+        if (lastStats.isEmpty() && CollectionUtils.isNotEmpty(statDefs)
+                && firstComputationRequested.compareAndSet(false, true)) {
+            threadPool.schedule(() -> {
+                try {
+                    refreshStats(System.currentTimeMillis()/1000);
+                }
+                catch(Exception e) {
+                    logger.error("Error during doc stats computation: " + e.getMessage(), e);
+                }
+            });
+        }
+        if (!incremental) return lastStats;
+
+        long now = System.currentTimeMillis()/1000;
+        Map<String, DocStat> result = new LinkedHashMap<>(lastStats);
+        for (StatDef statDef: statDefs) {
+            if (statDef.query != null || !result.containsKey(statDef.getKey())) continue;
+            Long count = counters.get(statDef.index, statDef.type);
+            if (count != null) {
+                result.put(statDef.getKey(), createDocStat(statDef, count, now));
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
 
     public DocStatService startDataMigration() {
         if (!client.existsIndex(DocStatDao.OLD_INDEX)) return this; // Skip migration
@@ -353,4 +405,189 @@ public class DocStatService extends AbstractService  {
 
         return this;
     }
+
+    /* -- internal methods -- */
+
+    protected DocStatCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Compute stats, then update the snapshot (see getLastStats())
+     */
+    protected synchronized Map<StatDef, DocStat> refreshStats(long time) {
+        Map<StatDef, DocStat> stats = incremental ? computeIncrementalStats(time) : countStats(statDefs, time);
+        lastStats = toSnapshot(stats, lastStats);
+        return stats;
+    }
+
+    /**
+     * Stats from the change counters. Send a count request only for named queries on a changed index/type,
+     * for counters not reconciled, and for all stats when the reconciliation interval is reached
+     * (or when changes were dropped).
+     */
+    protected Map<StatDef, DocStat> computeIncrementalStats(long time) {
+        // Index/type changed since the last computation (cleared before any count)
+        Set<String> indexTypes = new HashSet<>();
+        Set<String> changedIndexTypes = new HashSet<>();
+        for (StatDef statDef: statDefs) {
+            String indexType = statDef.getIndexTypeKey();
+            if (indexTypes.add(indexType) && counters.clearChanged(statDef.index, statDef.type)) {
+                changedIndexTypes.add(indexType);
+            }
+        }
+
+        boolean overflow = counters.clearOverflow();
+        if (overflow || time - lastReconcileTime >= pluginSettings.getDocStatsReconcileInterval()) {
+            logger.debug(overflow ? "Reconciling document stats counters (changes were dropped)..." : "Reconciling document stats counters...");
+            lastReconcileTime = time;
+            return countStats(statDefs, time);
+        }
+
+        Map<StatDef, DocStat> result = new LinkedHashMap<>();
+        List<StatDef> statDefsToCount = Lists.newArrayList();
+        for (StatDef statDef: statDefs) {
+            Long count = null;
+            if (statDef.query == null) {
+                count = counters.get(statDef.index, statDef.type);
+            }
+            else if (!changedIndexTypes.contains(statDef.getIndexTypeKey())) {
+                DocStat previous = lastStats.get(statDef.getKey());
+                if (previous != null) count = previous.getCount();
+            }
+
+            if (count != null) {
+                result.put(statDef, createDocStat(statDef, count, time));
+            }
+            else {
+                result.put(statDef, null); // Keep the order
+                statDefsToCount.add(statDef);
+            }
+        }
+
+        if (!statDefsToCount.isEmpty()) {
+            result.putAll(countStats(statDefsToCount, time));
+        }
+        result.values().removeIf(Objects::isNull);
+
+        logger.debug(String.format("Document stats: %s/%s counted", statDefsToCount.size(), result.size()));
+        return result;
+    }
+
+    /**
+     * Count documents, using multi search (by page). In incremental mode, also reconcile the counters
+     */
+    protected synchronized Map<StatDef, DocStat> countStats(List<StatDef> statDefs, long time) {
+        int pageSize = pluginSettings.getIndexBulkSize();
+        Map<StatDef, DocStat> result = new LinkedHashMap<>();
+
+        for (List<StatDef> page: Lists.partition(ImmutableList.copyOf(statDefs), pageSize)) {
+            Long[] counts = incremental ? countAndReconcile(page) : countDocs(page);
+            if (counts == null) continue;
+
+            for (int i = 0; i < counts.length; i++) {
+                StatDef statDef = page.get(i);
+                if (counts[i] == null) {
+                    logger.error(String.format("Failed to execute doc stats on {%s/%s} %s.",
+                            statDef.index, statDef.type, statDef.queryName));
+                    continue;
+                }
+                result.put(statDef, createDocStat(statDef, counts[i], time));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Count documents, then reconcile the counters. A counter is reconciled only if it has not changed
+     * from before the count (done after an index refresh) until all pending changes have been delivered:
+     * otherwise a change could be counted twice, or missed. The count is then retried.
+     * @return counts (or the counter value, if reconciled), or null if failed
+     */
+    protected Long[] countAndReconcile(List<StatDef> page) {
+        String[] indices = page.stream().map(statDef -> statDef.index).distinct().toArray(String[]::new);
+        Long[] counts = null;
+        boolean stable = false;
+        for (int attempt = 0; attempt < RECONCILE_MAX_ATTEMPTS && !stable; attempt++) {
+            long[] sequences = new long[page.size()];
+            for (int i = 0; i < sequences.length; i++) {
+                sequences[i] = counters.getSequence(page.get(i).index, page.get(i).type);
+            }
+
+            // Make all indexed documents searchable, then count
+            try {
+                docStatDao.refreshIndices(indices);
+            }
+            catch(Exception e) {
+                logger.warn(String.format("Failed to refresh indices %s, before doc stats: %s", Arrays.toString(indices), e.getMessage()));
+            }
+            counts = countDocs(page);
+            if (counts == null) return null;
+
+            // Wait changes of counted documents to be applied
+            boolean delivered = ChangeService.awaitDelivered(counters, RECONCILE_DELIVERY_TIMEOUT_MS);
+            stable = true;
+            for (int i = 0; i < counts.length; i++) {
+                StatDef statDef = page.get(i);
+                if (statDef.query != null || counts[i] == null) continue;
+                if (!delivered || !counters.reconcile(statDef.index, statDef.type, counts[i], sequences[i])) {
+                    stable = false;
+                }
+            }
+        }
+        if (!stable) {
+            logger.debug("Document stats counters changed while counting: some of them will be reconciled next time");
+        }
+
+        // Use the counter value, when reconciled
+        for (int i = 0; i < counts.length; i++) {
+            StatDef statDef = page.get(i);
+            if (statDef.query != null || counts[i] == null) continue;
+            Long count = counters.get(statDef.index, statDef.type);
+            if (count != null) counts[i] = count;
+        }
+        return counts;
+    }
+
+    /**
+     * @return counts (same order as stats), or null if failed
+     */
+    protected Long[] countDocs(List<StatDef> page) {
+        try {
+            return docStatDao.countDocs(page.stream()
+                    .map(statDef -> docStatDao.prepareCountDoc(statDef.index, statDef.type, statDef.query))
+                    .collect(Collectors.toList()));
+        }
+        catch(Exception e) {
+            logger.error(String.format("Failed to execute doc stats: %s", e.getMessage()), e);
+            return null;
+        }
+    }
+
+    protected DocStat createDocStat(StatDef statDef, long count, long time) {
+        DocStat stat = new DocStat();
+        stat.setTime(time);
+        stat.setIndex(statDef.index);
+        stat.setType(statDef.type);
+        stat.setCount(count);
+
+        // Apply the query name, to be able to filter the doc stats later
+        if (StringUtils.isNotBlank(statDef.queryName)) {
+            stat.setQueryName(statDef.queryName);
+        }
+        return stat;
+    }
+
+    /**
+     * Stats by key, in the registration order. Keep the previous stat, if a count failed
+     */
+    protected Map<String, DocStat> toSnapshot(Map<StatDef, DocStat> stats, Map<String, DocStat> previousStats) {
+        Map<String, DocStat> result = new LinkedHashMap<>(statDefs.size());
+        for (StatDef statDef: statDefs) {
+            DocStat stat = stats.get(statDef);
+            if (stat == null) stat = previousStats.get(statDef.getKey());
+            if (stat != null) result.put(statDef.getKey(), stat);
+        }
+        return Collections.unmodifiableMap(result);
+    }
 }
@@ -0,0 +1,77 @@
+package org.duniter.elasticsearch.service;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.duniter.elasticsearch.util.CacheUtils;
+
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Signatures already verified, keyed by (hash, signature, issuer).
+ * The hash MUST be computed from the document content (not read from the document), so that a cache hit means
+ * the same signed content. Only valid signatures are cached.
+ */
+public class VerifiedSignatureCache {
+
+    private final Cache<String, Boolean> cache;
+
+    public VerifiedSignatureCache(long maxSize) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Check the signature, using the cache if already verified
+     * @param verifier the real verification, called on cache miss
+     */
+    public boolean verify(String contentHash, String signature, String issuer, BooleanSupplier verifier) {
+        String key = contentHash + ':' + signature + ':' + issuer;
+        if (cache.getIfPresent(key) != null) return true;
+
+        boolean valid = verifier.getAsBoolean();
+        if (valid) cache.put(key, Boolean.TRUE);
+        return valid;
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public Map<String, Object> toMap() {
+        return CacheUtils.toStatsMap(cache);
+    }
+}
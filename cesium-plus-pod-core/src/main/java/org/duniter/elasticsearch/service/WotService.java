@@ -24,13 +24,16 @@ package org.duniter.elasticsearch.service;
 
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import org.apache.commons.lang3.mutable.MutableInt;
+import com.google.common.collect.Sets;
 import org.duniter.core.client.dao.CurrencyDao;
+import org.duniter.core.client.model.bma.BlockchainBlock;
 import org.duniter.core.client.model.bma.BlockchainParameters;
 import org.duniter.core.client.model.bma.WotRequirements;
 import org.duniter.core.client.model.local.Member;
 import org.duniter.core.client.service.bma.WotRemoteService;
+import org.duniter.core.exception.TechnicalException;
 import org.duniter.core.util.CollectionUtils;
 import org.duniter.core.util.LockManager;
 import org.duniter.core.util.Preconditions;
@@ -41,9 +44,12 @@ import org.duniter.elasticsearch.dao.BlockDao;
 import org.duniter.elasticsearch.dao.CurrencyExtendDao;
 import org.duniter.elasticsearch.dao.MemberDao;
 import org.duniter.elasticsearch.dao.PendingMembershipDao;
+import org.duniter.elasticsearch.model.BlockMemberships;
+import org.duniter.elasticsearch.service.changes.ChangeDispatcher;
 import org.duniter.elasticsearch.service.changes.ChangeEvent;
 import org.duniter.elasticsearch.service.changes.ChangeService;
 import org.duniter.elasticsearch.service.changes.ChangeSource;
+import org.duniter.elasticsearch.service.wot.MembershipState;
 import org.duniter.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.inject.Inject;
@@ -51,10 +57,9 @@ import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 
 import java.io.Closeable;
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -74,6 +79,11 @@ public class WotService extends AbstractService {
     private ThreadPool threadPool;
     private final LockManager lockManager = new LockManager(1, 4);
     private final Map<String, ChangeService.ChangeListener> currentBlockListeners = Maps.newConcurrentMap();
+    private final Map<String, ChangeService.ChangeListener> blockListeners = Maps.newConcurrentMap();
+    private final Map<String, MembershipState> membershipStates = Maps.newConcurrentMap();
+    // Last indexed members (pubkey -> uid), by currency
+    private final Map<String, Map<String, String>> indexedMembers = Maps.newConcurrentMap();
+    private final Map<String, Long> snapshotVersions = Maps.newConcurrentMap();
 
     private final Map<String, Boolean> isBlockchainIndexationReady = Maps.newConcurrentMap();
 
@@ -162,6 +172,10 @@ public class WotService extends AbstractService {
         if (listener != null) {
             ChangeService.unregisterListener(listener);
         }
+        listener = blockListeners.remove(currency);
+        if (listener != null) {
+            ChangeService.unregisterListener(listener);
+        }
         return this;
     }
 
@@ -180,6 +194,11 @@ public class WotService extends AbstractService {
                 return ImmutableList.of(new ChangeSource(currency, BlockDao.TYPE, "current"));
             }
             @Override
+            public ChangeDispatcher.OverflowPolicy getOverflowPolicy() {
+                // Only the last current block is useful
+                return ChangeDispatcher.OverflowPolicy.COALESCE;
+            }
+            @Override
             public void onChange(ChangeEvent change) {
                 // If current block indexed
                 switch (change.getOperation()) {
@@ -219,6 +238,30 @@ public class WotService extends AbstractService {
 
         this.currentBlockListeners.put(currency, listener);
 
+        // Listen changes on all blocks, to update the membership state
+        ChangeService.ChangeListener blockListener =  ChangeService.registerListener(new ChangeService.ChangeListener() {
+            @Override
+            public String getId() {
+                return "duniter.wot.memberships." + currency;
+            }
+            @Override
+            public Collection<ChangeSource> getChangeSources() {
+                return ImmutableList.of(new ChangeSource(currency, BlockDao.TYPE));
+            }
+            @Override
+            public ChangeDispatcher.OverflowPolicy getOverflowPolicy() {
+                // Blocks must be applied in order, without any loss (reloaded from the index, when the queue is full)
+                return ChangeDispatcher.OverflowPolicy.BLOCK;
+            }
+            @Override
+            public void onChange(ChangeEvent change) {
+                if ("current".equals(change.getId())) return; // Skip current block
+                onBlockChange(currency, change);
+            }
+        });
+
+        this.blockListeners.put(currency, blockListener);
+
         // Return the tear down logic
         return () -> this.stopListenAndIndexMembers(currency);
     }
@@ -273,40 +316,70 @@ public class WotService extends AbstractService {
     protected List<Member> indexAndGetMembers(final String currencyId) {
 
         logger.info(String.format("[%s] Indexing WoT members...", currencyId));
+        long now = System.currentTimeMillis();
 
         final BlockchainParameters parameters = blockchainService.getParameters(currencyId);
 
+        // Compute the membership validity window, from the current block
+        Map<String, Object> currentBlock = client.getFieldsById(currencyId, BlockDao.TYPE, "current",
+                BlockchainBlock.PROPERTY_NUMBER,
+                BlockchainBlock.PROPERTY_HASH,
+                BlockchainBlock.PROPERTY_MEDIAN_TIME);
+        if (currentBlock == null || currentBlock.get(BlockchainBlock.PROPERTY_NUMBER) == null) {
+            throw new TechnicalException(String.format("[%s] Unable to index WoT members: no current block", currencyId));
+        }
+        int currentNumber = ((Number) currentBlock.get(BlockchainBlock.PROPERTY_NUMBER)).intValue();
+        String currentHash = (String) currentBlock.get(BlockchainBlock.PROPERTY_HASH);
+        long currentMedianTime = ((Number) currentBlock.get(BlockchainBlock.PROPERTY_MEDIAN_TIME)).longValue();
+        long startMedianTime = currentMedianTime - parameters.getMsValidity() - (parameters.getAvgGenTime() / 2);
+
+        // Update the membership state, then get members
+        final MembershipState state = getMembershipState(currencyId);
+        final Map<String, String> memberUids;
+        synchronized (state) {
+            updateMembershipState(state, currentNumber, currentHash, startMedianTime);
+            state.removeExpired(startMedianTime);
+            memberUids = state.getMembers(startMedianTime);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("[%s] WoT has {%s} members, computed in %s ms.", currencyId, memberUids.size(), System.currentTimeMillis() - now));
+        }
+
         // Retrieve previous members pubkeys. This list will be reduce later, to keep only excluded members
-        final Set<String> pubkeysToExclude = memberDao.getMemberPubkeys(currencyId);
+        Map<String, String> previousMembers = indexedMembers.get(currencyId);
+        final Set<String> pubkeysToExclude = previousMembers != null ?
+                Sets.newHashSet(previousMembers.keySet()) :
+                memberDao.getMemberPubkeys(currencyId);
         final long previousMembersCount = CollectionUtils.size(pubkeysToExclude);
 
-        final List<Member> members = blockDao.getMembers(parameters);
-
-        // Save members into index
-        final MutableInt becomesCount = new MutableInt(0);
-        if (CollectionUtils.isNotEmpty(members)) {
-            // Set currency
-            members.forEach(m -> {
-                // Remove from the list
-                boolean becomeMember = !pubkeysToExclude.remove(m.getPubkey());
-                // If not found in the previous list = new member
-                if(becomeMember) becomesCount.increment();
-                m.setCurrency(currencyId);
-            });
-        }
+        final List<Member> members = Lists.newArrayListWithCapacity(memberUids.size());
+        final List<Member> becomes = Lists.newArrayList();
+        memberUids.forEach((pubkey, uid) -> {
+            Member member = new Member();
+            member.setPubkey(pubkey);
+            member.setUid(uid);
+            member.setMember(true);
+            member.setCurrency(currencyId);
+            members.add(member);
+
+            // Remove from the list
+            boolean becomeMember = !pubkeysToExclude.remove(pubkey);
+            // If not found in the previous list = new member
+            if (becomeMember) becomes.add(member);
+        });
 
         int excludedCount = CollectionUtils.size(pubkeysToExclude);
         long deltaCount = CollectionUtils.size(members) - previousMembersCount;
-        boolean hasBecomes = becomesCount.getValue() > 0;
+        boolean hasBecomes = becomes.size() > 0;
         boolean hasExcluded = excludedCount > 0;
         boolean hasChanges = deltaCount != 0 || hasBecomes || hasExcluded;
 
         // Has changes
         if (hasChanges) {
 
-            // Save members
+            // Save new members (existing members are unchanged)
             if (hasBecomes) {
-                memberDao.save(currencyId, members);
+                memberDao.save(currencyId, becomes);
             }
 
             // Update old members as "was member"
@@ -323,7 +396,7 @@ public class WotService extends AbstractService {
                     CollectionUtils.size(members),
                     (deltaCount > 0) ? "\u21D1" : "\u21D3",
                     Math.abs(deltaCount),
-                    becomesCount.getValue(),
+                    becomes.size(),
                     excludedCount));
         }
 
@@ -332,9 +405,124 @@ public class WotService extends AbstractService {
             logger.info(String.format("[%s] Indexing WoT members [OK] - %s members (unchanged)", currencyId, CollectionUtils.size(members)));
         }
 
+        // Remember indexed members
+        indexedMembers.put(currencyId, memberUids);
+
+        // Save the state, if changed
+        writeMembershipSnapshot(state);
+
         return members;
     }
 
+    protected MembershipState getMembershipState(String currencyId) {
+        return membershipStates.computeIfAbsent(currencyId, id -> new MembershipState(id, pluginSettings.getNodeForkResyncWindow()));
+    }
+
+    protected void onBlockChange(String currencyId, ChangeEvent change) {
+        MembershipState state = membershipStates.get(currencyId);
+        if (state == null || state.isEmpty()) return; // Not loaded yet
+
+        try {
+            switch (change.getOperation()) {
+                case CREATE:
+                case INDEX:
+                    if (change.getSource() == null) return;
+                    BlockMemberships block = getObjectMapper().readValue(change.getSource().streamInput(), BlockMemberships.class);
+                    state.onBlockIndexed(block);
+                    break;
+                case DELETE:
+                    state.onBlockDeleted(Integer.parseInt(change.getId()));
+                    break;
+                default:
+                    break;
+            }
+        }
+        catch (Exception e) {
+            // Force a state update, at next members indexation
+            logger.warn(String.format("[%s] Unable to update WoT membership state, on block #%s: %s", currencyId, change.getId(), e.getMessage()));
+            state.clear();
+        }
+    }
+
+    /**
+     * Update the state until the current block, using the snapshot (if state is empty) and indexed blocks.
+     */
+    protected void updateMembershipState(MembershipState state, int currentNumber, String currentHash, long startMedianTime) {
+        String currencyId = state.getCurrency();
+
+        // Load from the snapshot
+        if (state.isEmpty()) {
+            readMembershipSnapshot(state);
+        }
+
+        // Check the state is still on the indexed blockchain (e.g. after a fork, or a blockchain reload)
+        if (!state.isEmpty()) {
+            String indexedHash = state.getNumber() == currentNumber ? currentHash :
+                    client.getTypedFieldById(currencyId, BlockDao.TYPE, String.valueOf(state.getNumber()), BlockchainBlock.PROPERTY_HASH);
+            if (state.getNumber() > currentNumber || !Objects.equals(indexedHash, state.getHash())) {
+                logger.debug(String.format("[%s] WoT membership state is not on the indexed blockchain (block #%s). Rebuilding state...", currencyId, state.getNumber()));
+                state.clear();
+            }
+        }
+
+        // Already up to date
+        if (!state.isEmpty() && !state.isBehind() && state.getNumber() == currentNumber) return;
+
+        // Full rebuild: only read blocks of the validity window
+        long blockCount;
+        int fromNumber = state.getNumber();
+        if (state.isEmpty()) {
+            blockCount = blockDao.forEachMembershipBlock(currencyId, startMedianTime, -1, currentNumber, state::applyIndexedBlock);
+        }
+        // Catch up missing blocks
+        else {
+            blockCount = blockDao.forEachMembershipBlock(currencyId, 0, fromNumber, currentNumber, state::applyIndexedBlock);
+        }
+        state.setIndexedUntil(currentNumber, currentHash);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("[%s] WoT membership state updated from block #%s to #%s (%s blocks with membership events)", currencyId, fromNumber, currentNumber, blockCount));
+        }
+    }
+
+    protected File getMembershipSnapshotFile(String currencyId) {
+        return new File(new File(pluginSettings.getDataDirectory(), "wot"), currencyId + "-memberships.json");
+    }
+
+    protected void readMembershipSnapshot(MembershipState state) {
+        if (!pluginSettings.enableWotMembersSnapshot()) return;
+
+        File file = getMembershipSnapshotFile(state.getCurrency());
+        if (!file.exists()) return;
+        try {
+            state.restore(MembershipState.readSnapshot(file, getObjectMapper()));
+            snapshotVersions.put(state.getCurrency(), state.getVersion());
+            logger.debug(String.format("[%s] WoT membership state loaded from snapshot (block #%s)", state.getCurrency(), state.getNumber()));
+        }
+        catch (Exception e) {
+            logger.warn(String.format("[%s] Unable to read WoT membership snapshot {%s}: %s", state.getCurrency(), file.getAbsolutePath(), e.getMessage()));
+            state.clear();
+        }
+    }
+
+    protected void writeMembershipSnapshot(MembershipState state) {
+        if (!pluginSettings.enableWotMembersSnapshot() || state.isEmpty()) return;
+
+        // Skip if unchanged since the last write
+        long version = state.getVersion();
+        Long snapshotVersion = snapshotVersions.get(state.getCurrency());
+        if (snapshotVersion != null && snapshotVersion == version) return;
+
+        File file = getMembershipSnapshotFile(state.getCurrency());
+        try {
+            state.writeSnapshot(file, getObjectMapper());
+            snapshotVersions.put(state.getCurrency(), version);
+        }
+        catch (IOException e) {
+            logger.warn(String.format("[%s] Unable to write WoT membership snapshot {%s}: %s", state.getCurrency(), file.getAbsolutePath(), e.getMessage()));
+        }
+    }
+
     /**
      * Return the given currency, or the default currency
      * @param currency
@@ -0,0 +1,381 @@
+package org.duniter.elasticsearch.service.changes;
+
+/*
+ * #%L
+ * Duniter4j :: ElasticSearch Plugin
+ * %%
+ * Copyright (C) 2014 - 2016 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableMap;
+import org.duniter.core.util.Preconditions;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Dispatch change events to listeners, outside the indexing thread.
+ * Each listener has a bounded queue, drained by a dedicated executor (events of a listener are delivered in order).
+ * When a queue is full, the listener's overflow policy apply. A queue never exceeds its size,
+ * except BLOCK queues, which then keep events without their source (reloaded from the index before delivery).
+ * The listener is notified when events are dropped (see ChangeListener.onOverflow()).
+ */
+public class ChangeDispatcher {
+
+    public enum OverflowPolicy {
+        /* Remove the oldest pending event */
+        DROP_OLDEST,
+        /* Replace the pending event on the same document (if any), or remove the oldest pending event */
+        COALESCE,
+        /* Wait (at most 'blockTimeout' ms) until the listener consumed an event, then keep the new event without its source.
+           Never drop an event (except on close) */
+        BLOCK
+    }
+
+    public static final String SETTING_ENABLE = "duniter.changes.dispatcher.enable";
+    public static final String SETTING_THREADS = "duniter.changes.dispatcher.threads";
+    public static final String SETTING_QUEUE_SIZE = "duniter.changes.dispatcher.queueSize";
+    public static final String SETTING_BLOCK_TIMEOUT = "duniter.changes.dispatcher.blockTimeout";
+
+    private static final int DRAIN_BATCH_SIZE = 100;
+
+    private static final ThreadLocal<Boolean> IS_DISPATCHER_THREAD = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final ESLogger logger;
+    private final ExecutorService executor;
+    private final int threads;
+    private final int queueSize;
+    private final long blockTimeoutMs;
+    private final Function<ChangeEvent, ChangeEvent> sourceLoader;
+
+    private final Map<String, ListenerQueue> queues = new ConcurrentHashMap<>();
+
+    private final LongAdder dispatchedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+    private final LongAdder blockedCount = new LongAdder();
+    private final LongAdder spilledCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+
+    public ChangeDispatcher(Settings settings) {
+        this(settings, null);
+    }
+
+    /**
+     * @param sourceLoader reload an event without source from the index (return null if the document not exists anymore).
+     *                     If null, these events are delivered without source.
+     */
+    public ChangeDispatcher(Settings settings, Function<ChangeEvent, ChangeEvent> sourceLoader) {
+        this.sourceLoader = sourceLoader;
+        this.logger = Loggers.getLogger("duniter.changes", settings, new String[0]);
+        this.threads = Math.max(1, settings.getAsInt(SETTING_THREADS, EsExecutors.boundedNumberOfProcessors(settings)));
+        this.queueSize = Math.max(1, settings.getAsInt(SETTING_QUEUE_SIZE, 1000));
+        this.blockTimeoutMs = settings.getAsLong(SETTING_BLOCK_TIMEOUT, 1000L);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), // Not bounded, but each listener queue is submitted once at a time
+                EsExecutors.daemonThreadFactory(settings, "cesium_plus_changes"));
+    }
+
+    public void register(ChangeService.ChangeListener listener) {
+        Preconditions.checkNotNull(listener);
+        Preconditions.checkNotNull(listener.getId());
+        queues.computeIfAbsent(listener.getId(), k -> new ListenerQueue(listener));
+    }
+
+    public void unregister(ChangeService.ChangeListener listener) {
+        Preconditions.checkNotNull(listener);
+        if (listener.getId() == null) return;
+        ListenerQueue queue = queues.remove(listener.getId());
+        if (queue != null) queue.close();
+    }
+
+    public void dispatch(Collection<ChangeService.ChangeListener> listeners, ChangeEvent change) {
+        for (ChangeService.ChangeListener listener: listeners) {
+            ListenerQueue queue = queues.get(listener.getId());
+            if (queue != null) {
+                queue.offer(change);
+            }
+        }
+    }
+
+    /**
+     * Wait until all events already dispatched to the listener have been delivered (or dropped).
+     * Must not be called from a dispatcher thread.
+     * @return false if timeout
+     */
+    public boolean awaitDelivered(ChangeService.ChangeListener listener, long timeoutMs) {
+        Preconditions.checkNotNull(listener);
+        ListenerQueue queue = queues.get(listener.getId());
+        return queue == null || queue.awaitDelivered(timeoutMs);
+    }
+
+    public Map<String, Long> getStatistics() {
+        long pending = 0;
+        for (ListenerQueue queue: queues.values()) {
+            pending += queue.size();
+        }
+        return ImmutableMap.<String, Long>builder()
+                .put("threads", (long)threads)
+                .put("queueSize", (long)queueSize)
+                .put("listeners", (long)queues.size())
+                .put("pending", pending)
+                .put("dispatched", dispatchedCount.longValue())
+                .put("dropped", droppedCount.longValue())
+                .put("coalesced", coalescedCount.longValue())
+                .put("blocked", blockedCount.longValue())
+                .put("spilled", spilledCount.longValue())
+                .put("errors", errorCount.longValue())
+                .build();
+    }
+
+    /**
+     * Drop pending events, and stop the executor (wait at most 'blockTimeout' ms for running listeners)
+     */
+    public void close() {
+        for (ListenerQueue queue: queues.values()) {
+            queue.close();
+        }
+        queues.clear();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(blockTimeoutMs, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isClosed() {
+        return executor.isShutdown();
+    }
+
+    /* -- internal methods -- */
+
+    private static boolean isSameDocument(ChangeEvent e1, ChangeEvent e2) {
+        return Objects.equals(e1.getId(), e2.getId())
+                && Objects.equals(e1.getType(), e2.getType())
+                && Objects.equals(e1.getIndex(), e2.getIndex());
+    }
+
+    private class ListenerQueue implements Runnable {
+
+        private final ChangeService.ChangeListener listener;
+        private final OverflowPolicy overflowPolicy;
+        private final ArrayDeque<ChangeEvent> events;
+        private final ArrayDeque<ChangeEvent> spilledEvents = new ArrayDeque<>(); // Without source (BLOCK only), after events
+        private boolean scheduled = false;
+        private boolean closed = false;
+        private long offeredCount = 0;
+        private final AtomicLong doneCount = new AtomicLong(); // Delivered or dropped
+        private volatile int deliveryWaiters = 0;
+
+        ListenerQueue(ChangeService.ChangeListener listener) {
+            this.listener = listener;
+            this.overflowPolicy = listener.getOverflowPolicy() != null ? listener.getOverflowPolicy() : OverflowPolicy.DROP_OLDEST;
+            this.events = new ArrayDeque<>(Math.min(queueSize, 16));
+        }
+
+        synchronized int size() {
+            return events.size() + spilledEvents.size();
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+                int size = size();
+                if (size == 0) return;
+                droppedCount.add(size);
+                doneCount.addAndGet(size);
+                logger.debug(String.format("Closing listener {%s}: %s pending change events dropped", listener.getId(), size));
+                events.clear();
+                spilledEvents.clear();
+            }
+            notifyOverflow();
+        }
+
+        void offer(ChangeEvent change) {
+            boolean dropped = false;
+            boolean spill = false;
+            boolean schedule;
+            synchronized (this) {
+                if (closed) return;
+
+                if (overflowPolicy == OverflowPolicy.COALESCE && events.removeIf(e -> isSameDocument(e, change))) {
+                    coalescedCount.increment();
+                    doneCount.incrementAndGet();
+                }
+                else if (!spilledEvents.isEmpty()) {
+                    // Keep the order
+                    spill = true;
+                }
+                else if (events.size() >= queueSize) {
+                    // Wait the listener, but never from a dispatcher thread (could be a deadlock)
+                    if (overflowPolicy == OverflowPolicy.BLOCK && !IS_DISPATCHER_THREAD.get()) {
+                        blockedCount.increment();
+                        waitNotFull();
+                        if (closed) return;
+                    }
+                    if (events.size() >= queueSize) {
+                        if (overflowPolicy == OverflowPolicy.BLOCK) {
+                            // Still full: keep the event without its source (no more wait, until the listener caught up)
+                            spill = true;
+                            logger.warn(String.format("Queue full for listener {%s}: next change events will be reloaded from the index",
+                                    listener.getId()));
+                        }
+                        else {
+                            droppedCount.increment();
+                            dropped = true;
+                            events.pollFirst();
+                            doneCount.incrementAndGet();
+                            if (logger.isTraceEnabled()) {
+                                logger.trace(String.format("Queue full for listener {%s}: oldest change event dropped", listener.getId()));
+                            }
+                        }
+                    }
+                }
+
+                if (spill) {
+                    spilledEvents.addLast(new ChangeEvent(change, false));
+                    spilledCount.increment();
+                }
+                else {
+                    events.addLast(change);
+                }
+                offeredCount++;
+                schedule = !scheduled;
+                scheduled = true;
+            }
+
+            if (dropped) notifyOverflow();
+            if (!schedule) return;
+
+            try {
+                executor.execute(this);
+            }
+            catch (RejectedExecutionException e) {
+                // Executor closed: skip
+                synchronized (this) {
+                    scheduled = false;
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            IS_DISPATCHER_THREAD.set(Boolean.TRUE);
+            for (int i = 0; i < DRAIN_BATCH_SIZE; i++) {
+                ChangeEvent change;
+                boolean spilled = false;
+                synchronized (this) {
+                    change = events.pollFirst();
+                    if (change == null) {
+                        change = spilledEvents.pollFirst();
+                        spilled = change != null;
+                    }
+                    if (change == null) {
+                        scheduled = false;
+                        return;
+                    }
+                    if (overflowPolicy == OverflowPolicy.BLOCK) notifyAll();
+                }
+                try {
+                    if (spilled && change.getOperation() != ChangeEvent.Operation.DELETE && sourceLoader != null) {
+                        change = sourceLoader.apply(change);
+                        if (change == null) continue; // Deleted since: the delete event follows
+                    }
+                    listener.onChange(change);
+                    dispatchedCount.increment();
+                } catch (Exception e) {
+                    errorCount.increment();
+                    logger.error("Failed to emit change event on listener: " + listener.getClass().getName(), e);
+                } finally {
+                    doneCount.incrementAndGet();
+                    if (deliveryWaiters > 0) {
+                        synchronized (this) {
+                            notifyAll();
+                        }
+                    }
+                }
+            }
+
+            // Let other listeners be processed, then continue
+            try {
+                executor.execute(this);
+            }
+            catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    scheduled = false;
+                }
+            }
+        }
+
+        synchronized boolean awaitDelivered(long timeoutMs) {
+            long target = offeredCount;
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            deliveryWaiters++;
+            try {
+                long remaining = timeoutMs;
+                while (!closed && doneCount.get() < target && remaining > 0) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                return closed || doneCount.get() >= target;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                deliveryWaiters--;
+            }
+        }
+
+        private void notifyOverflow() {
+            try {
+                listener.onOverflow();
+            } catch (Exception e) {
+                errorCount.increment();
+                logger.error("Failed to notify overflow on listener: " + listener.getClass().getName(), e);
+            }
+        }
+
+        private void waitNotFull() {
+            long deadline = System.currentTimeMillis() + blockTimeoutMs;
+            try {
+                long remaining = blockTimeoutMs;
+                while (!closed && events.size() >= queueSize && remaining > 0) {
+                    wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
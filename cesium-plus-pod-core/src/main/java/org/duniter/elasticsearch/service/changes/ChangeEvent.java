@@ -45,10 +45,14 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.joda.time.DateTime;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public class ChangeEvent {
     private final String id;
@@ -58,13 +62,26 @@ public class ChangeEvent {
     private final Operation operation;
     private final long version;
     private final BytesReference source;
+    private final boolean primary;
+    private final boolean found;
     private String sourceText; // cache
+    private volatile ChannelBuffer jsonBuffer; // cache (see ChangeEvents.toChannelBuffer())
+    private volatile Map<String, Object> computedValues; // cache (see getOrCompute())
 
     public enum Operation {
         INDEX,CREATE,DELETE
     }
 
     public ChangeEvent(String index, String type, String id, DateTime timestamp, Operation operation, long version, BytesReference source) {
+        this(index, type, id, timestamp, operation, version, source, true, true);
+    }
+
+    /**
+     * @param primary true if the change comes from a primary shard
+     * @param found false on a delete of a document that did not exist
+     */
+    public ChangeEvent(String index, String type, String id, DateTime timestamp, Operation operation, long version, BytesReference source,
+                       boolean primary, boolean found) {
         this.id = id;
         this.index = index;
         this.type = type;
@@ -72,6 +89,8 @@ public class ChangeEvent {
         this.operation = operation;
         this.version = version;
         this.source = source;
+        this.primary = primary;
+        this.found = found;
     }
 
     protected ChangeEvent(ChangeEvent event, boolean copySource) {
@@ -82,6 +101,8 @@ public class ChangeEvent {
         this.operation = event.getOperation();
         this.version = event.getVersion();
         this.source = copySource ? event.getSource() : null;
+        this.primary = event.isPrimary();
+        this.found = event.isFound();
     }
 
     public String getId() {
@@ -112,6 +133,16 @@ public class ChangeEvent {
         return source;
     }
 
+    @JsonIgnore
+    public boolean isPrimary() {
+        return primary;
+    }
+
+    @JsonIgnore
+    public boolean isFound() {
+        return found;
+    }
+
     @JsonIgnore
     public boolean hasSource() {
         return source != null;
@@ -129,4 +160,30 @@ public class ChangeEvent {
         }
     }
 
+    /**
+     * Compute a value from this event, only once (e.g. a payload shared by all websocket sessions).
+     * Values are stored by type and key, so the same key can be used with another type.
+     * @param key the value key
+     * @param valueType the value type
+     * @param function the function used to compute the value. Should not return null.
+     */
+    @JsonIgnore
+    public <T> T getOrCompute(String key, Class<T> valueType, Function<ChangeEvent, T> function) {
+        if (computedValues == null) {
+            synchronized (this) {
+                if (computedValues == null) computedValues = new ConcurrentHashMap<>();
+            }
+        }
+        return valueType.cast(computedValues.computeIfAbsent(valueType.getName() + '#' + key, k -> function.apply(this)));
+    }
+
+    /* -- protected methods -- */
+
+    protected ChannelBuffer getJsonBuffer() {
+        return jsonBuffer;
+    }
+
+    protected void setJsonBuffer(ChannelBuffer jsonBuffer) {
+        this.jsonBuffer = jsonBuffer;
+    }
 }
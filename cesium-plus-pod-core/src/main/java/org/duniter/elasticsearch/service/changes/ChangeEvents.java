@@ -47,6 +47,7 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.joda.time.DateTime;
 
 import java.io.IOException;
@@ -84,6 +85,24 @@ public class ChangeEvents {
     }
 
     public static String toJson(ChangeEvent event) {
+        return toJsonBytes(event).toUtf8();
+    }
+
+    /**
+     * Get the JSON representation, as an UTF-8 buffer.
+     * The JSON is generated once, then shared (without copy) by all callers: each call return a duplicate buffer
+     * (same content, but independent indexes).
+     */
+    public static ChannelBuffer toChannelBuffer(ChangeEvent event) {
+        ChannelBuffer buffer = event.getJsonBuffer();
+        if (buffer == null) {
+            buffer = toJsonBytes(event).toChannelBuffer();
+            event.setJsonBuffer(buffer);
+        }
+        return buffer.duplicate();
+    }
+
+    public static BytesReference toJsonBytes(ChangeEvent event) {
         try {
             XContentBuilder builder = new XContentBuilder(JsonXContent.jsonXContent, new BytesStreamOutput());
             builder.startObject()
@@ -98,7 +117,7 @@ public class ChangeEvents {
             }
             builder.endObject();
 
-            return builder.string();
+            return builder.bytes();
         } catch (IOException e) {
             throw new TechnicalException("Error while generating JSON from change event", e);
         }
@@ -0,0 +1,195 @@
+package org.duniter.elasticsearch.service.changes;
+
+/*
+ * #%L
+ * Duniter4j :: ElasticSearch Plugin
+ * %%
+ * Copyright (C) 2014 - 2016 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.duniter.core.util.CollectionUtils;
+import org.duniter.core.util.Preconditions;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Routing index of change listeners, by index, type and id.
+ * Each level has a wildcard bucket ('*'), so finding listeners of a change need at most 8 map lookups,
+ * whatever the number of registered listeners.
+ */
+public class ChangeRouter {
+
+    public static final String WILDCARD = "*";
+
+    private final Map<String, ChangeService.ChangeListener> listeners = new ConcurrentHashMap<>();
+
+    // index -> type -> id -> listener ids
+    private final Map<String, Map<String, Map<String, Set<String>>>> routes = new ConcurrentHashMap<>();
+
+    // listener id -> registered routes (and source keys), to be able to unregister even if the listener sources changed
+    private final Map<String, List<String[]>> routesByListener = new HashMap<>();
+    private final Map<String, Set<String>> sourceKeysByListener = new HashMap<>();
+    private final Map<String, LongAdder> sourcesUsageCount = new ConcurrentHashMap<>();
+
+    public synchronized void register(ChangeService.ChangeListener listener) {
+        Preconditions.checkNotNull(listener);
+        Preconditions.checkNotNull(listener.getId());
+        String listenerId = listener.getId();
+        if (listeners.containsKey(listenerId)) {
+            throw new IllegalArgumentException(String.format("Listener with id [%s] already registered. Id should be unique", listenerId));
+        }
+
+        listeners.put(listenerId, listener);
+
+        Collection<ChangeSource> sources = listener.getChangeSources();
+        if (CollectionUtils.isEmpty(sources)) return; // Listener without source will never be notified
+
+        List<String[]> listenerRoutes = new ArrayList<>();
+        Set<String> sourceKeys = new HashSet<>();
+        for (ChangeSource source: sources) {
+            for (String index: keys(source.getIndices())) {
+                for (String type: keys(source.getTypes())) {
+                    for (String id: keys(source.getIds())) {
+                        routes.computeIfAbsent(index, k -> new ConcurrentHashMap<>())
+                                .computeIfAbsent(type, k -> new ConcurrentHashMap<>())
+                                .computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet())
+                                .add(listenerId);
+                        listenerRoutes.add(new String[]{index, type, id});
+                    }
+                }
+            }
+
+            String sourceKey = source.toString();
+            if (sourceKeys.add(sourceKey)) {
+                sourcesUsageCount.computeIfAbsent(sourceKey, k -> new LongAdder()).increment();
+            }
+        }
+        routesByListener.put(listenerId, listenerRoutes);
+        sourceKeysByListener.put(listenerId, sourceKeys);
+    }
+
+    public synchronized void unregister(ChangeService.ChangeListener listener) {
+        Preconditions.checkNotNull(listener);
+        String listenerId = listener.getId();
+        if (listenerId == null || listeners.remove(listenerId) == null) return;
+
+        List<String[]> listenerRoutes = routesByListener.remove(listenerId);
+        if (listenerRoutes != null) {
+            for (String[] route : listenerRoutes) {
+                Map<String, Map<String, Set<String>>> types = routes.get(route[0]);
+                if (types == null) continue;
+                Map<String, Set<String>> ids = types.get(route[1]);
+                if (ids == null) continue;
+                Set<String> listenerIds = ids.get(route[2]);
+                if (listenerIds == null) continue;
+
+                listenerIds.remove(listenerId);
+
+                // Clean empty buckets
+                if (listenerIds.isEmpty()) {
+                    ids.remove(route[2]);
+                    if (ids.isEmpty()) {
+                        types.remove(route[1]);
+                        if (types.isEmpty()) routes.remove(route[0]);
+                    }
+                }
+            }
+        }
+
+        Set<String> sourceKeys = sourceKeysByListener.remove(listenerId);
+        if (sourceKeys != null) {
+            for (String sourceKey: sourceKeys) {
+                LongAdder usageCounter = sourcesUsageCount.get(sourceKey);
+                if (usageCounter == null) continue;
+                usageCounter.decrement();
+                if (usageCounter.longValue() <= 0) {
+                    sourcesUsageCount.remove(sourceKey);
+                }
+            }
+        }
+    }
+
+    public Collection<ChangeService.ChangeListener> getListeners() {
+        return listeners.values();
+    }
+
+    public boolean isEmpty() {
+        return routes.isEmpty();
+    }
+
+    /**
+     * Get listeners that match the given document
+     * @return matching listeners, or an empty collection (never null)
+     */
+    public Collection<ChangeService.ChangeListener> getListeners(String index, String type, String id) {
+        if (routes.isEmpty()) return Collections.emptyList();
+
+        Set<String> listenerIds = null;
+        listenerIds = collect(routes.get(index), type, id, listenerIds);
+        listenerIds = collect(routes.get(WILDCARD), type, id, listenerIds);
+        if (listenerIds == null) return Collections.emptyList();
+
+        List<ChangeService.ChangeListener> result = new ArrayList<>(listenerIds.size());
+        for (String listenerId: listenerIds) {
+            ChangeService.ChangeListener listener = listeners.get(listenerId);
+            if (listener != null) result.add(listener);
+        }
+        return result;
+    }
+
+    public Map<String, Long> getUsageStatistics() {
+        return sourcesUsageCount
+                .entrySet().stream()
+                .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        e -> e.getValue().longValue()
+                ));
+    }
+
+    /* -- internal methods -- */
+
+    private Set<String> collect(Map<String, Map<String, Set<String>>> types, String type, String id, Set<String> result) {
+        if (types == null) return result;
+        result = collect(types.get(type), id, result);
+        return collect(types.get(WILDCARD), id, result);
+    }
+
+    private Set<String> collect(Map<String, Set<String>> ids, String id, Set<String> result) {
+        if (ids == null) return result;
+        result = collect(ids.get(id), result);
+        return collect(ids.get(WILDCARD), result);
+    }
+
+    private Set<String> collect(Set<String> listenerIds, Set<String> result) {
+        if (listenerIds == null || listenerIds.isEmpty()) return result;
+        if (result == null) result = new LinkedHashSet<>();
+        result.addAll(listenerIds);
+        return result;
+    }
+
+    /**
+     * Null means all (wildcard). An empty set match nothing (same as ChangeSource.apply())
+     */
+    private Collection<String> keys(Set<String> values) {
+        if (values == null) return Collections.singleton(WILDCARD);
+        return values;
+    }
+}
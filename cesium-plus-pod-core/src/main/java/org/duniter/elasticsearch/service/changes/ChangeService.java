@@ -38,10 +38,10 @@ package org.duniter.elasticsearch.service.changes;
     limitations under the License.
 */
 
-import com.google.common.collect.ImmutableMap;
-import org.duniter.core.util.Preconditions;
-import org.duniter.core.util.CollectionUtils;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.client.Client;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
@@ -53,9 +53,6 @@ import org.elasticsearch.indices.IndicesService;
 import org.joda.time.DateTime;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.LongAdder;
-import java.util.stream.Collectors;
 
 public class ChangeService {
 
@@ -63,21 +60,40 @@ public class ChangeService {
         String getId();
         void onChange(ChangeEvent change);
         Collection<ChangeSource> getChangeSources();
+
+        /**
+         * Policy to apply when too many changes are waiting to be consumed by the listener
+         */
+        default ChangeDispatcher.OverflowPolicy getOverflowPolicy() {
+            return ChangeDispatcher.OverflowPolicy.DROP_OLDEST;
+        }
+
+        /**
+         * Called when pending changes of the listener were dropped (queue full, or dispatcher closed)
+         */
+        default void onOverflow() {
+        }
     }
 
     private static final String SETTING_PRIMARY_SHARD_ONLY = "duniter.changes.primaryShardOnly";
 
     private final ESLogger log = Loggers.getLogger(ChangeService.class);
 
-    private static final Map<String, ChangeListener> LISTENERS = new ConcurrentHashMap<>();
-
-    private static Map<String, ChangeSource> LISTENERS_SOURCES = new ConcurrentHashMap<>();
-    private static Map<String, LongAdder> LISTENERS_SOURCES_USAGE_COUNT = new ConcurrentHashMap<>();
+    private static final ChangeRouter ROUTER = new ChangeRouter();
+    private static volatile ChangeDispatcher DISPATCHER = null;
 
     @Inject
-    public ChangeService(final Settings settings, IndicesService indicesService) {
+    public ChangeService(final Settings settings, IndicesService indicesService, Provider<Client> clientProvider) {
         final boolean allShards = !settings.getAsBoolean(SETTING_PRIMARY_SHARD_ONLY, Boolean.FALSE);
 
+        // Dispatch changes asynchronously (outside the indexing thread)
+        if (settings.getAsBoolean(ChangeDispatcher.SETTING_ENABLE, Boolean.TRUE)) {
+            synchronized (ROUTER) {
+                if (DISPATCHER != null) DISPATCHER.close();
+                DISPATCHER = new ChangeDispatcher(settings, change -> loadSource(clientProvider.get(), change));
+                ROUTER.getListeners().forEach(DISPATCHER::register);
+            }
+        }
 
         indicesService.indicesLifecycle().addListener(new IndicesLifecycle.Listener() {
             @Override
@@ -88,7 +104,8 @@ public class ChangeService {
                     indexShard.indexingService().addListener(new IndexingOperationListener() {
                         @Override
                         public void postCreate(Engine.Create create) {
-                            if (!hasListener(indexName, create.type(), create.id())) {
+                            Collection<ChangeListener> listeners = ROUTER.getListeners(indexName, create.type(), create.id());
+                            if (listeners.isEmpty()) {
                                 return;
                             }
 
@@ -99,10 +116,12 @@ public class ChangeService {
                                     new DateTime(),
                                     ChangeEvent.Operation.CREATE,
                                     create.version(),
-                                    create.source()
+                                    create.source(),
+                                    indexShard.routingEntry().primary(),
+                                    true
                             );
 
-                            emitChange(change);
+                            emitChange(listeners, change);
                         }
 
                         @Override
@@ -113,7 +132,8 @@ public class ChangeService {
 
                         @Override
                         public void postDelete(Engine.Delete delete) {
-                            if (!hasListener(indexName, delete.type(), delete.id())) {
+                            Collection<ChangeListener> listeners = ROUTER.getListeners(indexName, delete.type(), delete.id());
+                            if (listeners.isEmpty()) {
                                 return;
                             }
 
@@ -124,15 +144,18 @@ public class ChangeService {
                                     new DateTime(),
                                     ChangeEvent.Operation.DELETE,
                                     delete.version(),
-                                    null
+                                    null,
+                                    indexShard.routingEntry().primary(),
+                                    delete.found()
                             );
 
-                            emitChange(change);
+                            emitChange(listeners, change);
                         }
 
                         @Override
                         public void postIndex(Engine.Index index, boolean created) {
-                            if (!hasListener(indexName, index.type(), index.id())) {
+                            Collection<ChangeListener> listeners = ROUTER.getListeners(indexName, index.type(), index.id());
+                            if (listeners.isEmpty()) {
                                 return;
                             }
 
@@ -143,42 +166,22 @@ public class ChangeService {
                                     new DateTime(),
                                     created ? ChangeEvent.Operation.CREATE : ChangeEvent.Operation.INDEX,
                                     index.version(),
-                                    index.source()
+                                    index.source(),
+                                    indexShard.routingEntry().primary(),
+                                    true
                             );
 
-                            emitChange(change);
-                        }
-
-                        private boolean hasListener(String index, String type, String id) {
-                            if (LISTENERS_SOURCES.isEmpty()) return false;
-
-                            for (ChangeSource source : LISTENERS_SOURCES.values()) {
-                                if (source.apply(index, type, id)) {
-                                    return true;
-                                }
-                            }
-
-                            return false;
+                            emitChange(listeners, change);
                         }
 
-                        private boolean apply(ChangeListener listener, ChangeEvent change) {
-                            Collection<ChangeSource> sources = listener.getChangeSources();
-
-                            // Exclude when no source defined
-                            if (CollectionUtils.isEmpty(sources)) return false;
-
-                            for (ChangeSource source : sources) {
-                                if (source.apply(change.getIndex(), change.getType(), change.getId())) {
-                                    return true;
-                                }
+                        private void emitChange(final Collection<ChangeListener> listeners, final ChangeEvent change) {
+                            final ChangeDispatcher dispatcher = DISPATCHER;
+                            if (dispatcher != null) {
+                                dispatcher.dispatch(listeners, change);
+                                return;
                             }
 
-                            return false;
-                        }
-
-                        private void emitChange(final ChangeEvent change) {
-                            LISTENERS.values().parallelStream()
-                                .filter(listener -> apply(listener, change))
+                            listeners.parallelStream()
                                 .forEach(listener -> {
                                     try {
                                         listener.onChange(change);
@@ -195,26 +198,9 @@ public class ChangeService {
     }
 
     public static ChangeListener registerListener(ChangeListener listener) {
-        Preconditions.checkNotNull(listener);
-        Preconditions.checkNotNull(listener.getId());
-        if (LISTENERS.containsKey(listener.getId())) {
-            throw new IllegalArgumentException("Listener with id [%s] already registered. Id should be unique");
-        }
-
-        // Add to list
-        LISTENERS.put(listener.getId(), listener);
-
-        // Update sources
-        if (CollectionUtils.isNotEmpty(listener.getChangeSources())) {
-            for (ChangeSource source: listener.getChangeSources()) {
-                String sourceKey = source.toString();
-                if (!LISTENERS_SOURCES.containsKey(sourceKey)) {
-                    LISTENERS_SOURCES.put(sourceKey, source);
-                }
-                LISTENERS_SOURCES_USAGE_COUNT
-                        .computeIfAbsent(sourceKey, k -> new LongAdder())
-                        .increment();
-            }
+        synchronized (ROUTER) {
+            ROUTER.register(listener);
+            if (DISPATCHER != null) DISPATCHER.register(listener);
         }
         return listener;
     }
@@ -224,40 +210,63 @@ public class ChangeService {
      * @param listener
      */
     public static ChangeListener refreshListener(ChangeListener listener) {
-        unregisterListener(listener);
-        registerListener(listener);
+        // Keep the dispatcher queue, to avoid losing pending changes
+        synchronized (ROUTER) {
+            ROUTER.unregister(listener);
+            ROUTER.register(listener);
+        }
         return listener;
     }
 
     public static void unregisterListener(ChangeListener listener) {
-        LISTENERS.remove(listener.getId());
-
-        // Update sources
-        if (CollectionUtils.isNotEmpty(listener.getChangeSources())) {
-            for (ChangeSource source: listener.getChangeSources()) {
-                String sourceKey = source.toString();
-                if (LISTENERS_SOURCES.containsKey(sourceKey)) {
-                    LongAdder usageCounter = LISTENERS_SOURCES_USAGE_COUNT.get(sourceKey);;
-                    long usageCount = usageCounter != null ? usageCounter.longValue() : 0;
-                    if (usageCount > 0) {
-                        usageCounter.decrement();
-                    }
-                    else {
-                        LISTENERS_SOURCES.remove(sourceKey);
-                        LISTENERS_SOURCES_USAGE_COUNT.remove(sourceKey);
-                    }
-                }
+        synchronized (ROUTER) {
+            ROUTER.unregister(listener);
+            if (DISPATCHER != null) DISPATCHER.unregister(listener);
+        }
+    }
+
+    /**
+     * Wait until changes already emitted to the listener have been delivered (immediate if no dispatcher)
+     * @return false if timeout
+     */
+    public static boolean awaitDelivered(ChangeListener listener, long timeoutMs) {
+        ChangeDispatcher dispatcher = DISPATCHER;
+        return dispatcher == null || dispatcher.awaitDelivered(listener, timeoutMs);
+    }
+
+    /**
+     * Stop the dispatcher (pending events are dropped). Changes are then emitted from the indexing thread.
+     */
+    public void close() {
+        synchronized (ROUTER) {
+            if (DISPATCHER != null) {
+                DISPATCHER.close();
+                DISPATCHER = null;
             }
         }
     }
 
     public Map<String, Long> getUsageStatistics() {
-        return LISTENERS_SOURCES_USAGE_COUNT
-                .entrySet().stream()
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        e -> e.getValue().longValue()
-                ));
+        return ROUTER.getUsageStatistics();
+    }
+
+    public Map<String, Long> getDispatcherStatistics() {
+        ChangeDispatcher dispatcher = DISPATCHER;
+        return dispatcher != null ? dispatcher.getStatistics() : null;
     }
 
+    /* -- internal methods -- */
+
+    /**
+     * Reload the current source of the document (null if not exists anymore)
+     */
+    private static ChangeEvent loadSource(Client client, ChangeEvent change) {
+        GetResponse response = client.prepareGet(change.getIndex(), change.getType(), change.getId())
+                .setFetchSource(true)
+                .get();
+        if (!response.isExists()) return null;
+        return new ChangeEvent(change.getIndex(), change.getType(), change.getId(), change.getTimestamp(),
+                change.getOperation(), response.getVersion(), response.getSourceAsBytesRef(),
+                change.isPrimary(), change.isFound());
+    }
 }
@@ -0,0 +1,304 @@
+package org.duniter.elasticsearch.service.wot;
+
+/*
+ * #%L
+ * Duniter4j :: ElasticSearch Plugin
+ * %%
+ * Copyright (C) 2014 - 2016 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.duniter.core.util.Preconditions;
+import org.duniter.elasticsearch.model.BlockMemberships;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * In-memory WoT membership state, updated block by block.
+ * Keep the last membership IN (join or renew) of each pubkey, removed by a membership OUT (exclusion, leave or revocation).
+ * A pubkey is a member if its last membership IN is in the membership validity window.
+ * The last applied blocks are kept in a journal, to be able to roll back a fork.
+ */
+public class MembershipState {
+
+    public static class Entry {
+        public String uid;
+        public long time;
+
+        public Entry() {
+        }
+
+        public Entry(String uid, long time) {
+            this.uid = uid;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Serializable state (see snapshot)
+     */
+    public static class Snapshot {
+        public String currency;
+        public int number = -1;
+        public String hash;
+        public Map<String, Entry> entries;
+    }
+
+    private static class BlockUndo {
+        final int number;
+        final String previousHash;
+        // pubkey -> previous entry (null if absent)
+        final Map<String, Entry> previousEntries = new HashMap<>();
+
+        BlockUndo(int number, String previousHash) {
+            this.number = number;
+            this.previousHash = previousHash;
+        }
+    }
+
+    private final String currency;
+    private final int journalSize;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Deque<BlockUndo> journal = new ArrayDeque<>();
+    private int number = -1;
+    private String hash;
+    private boolean behind = false;
+    private long version = 0;
+
+    public MembershipState(String currency, int journalSize) {
+        this.currency = currency;
+        this.journalSize = journalSize;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return the last applied block number, or -1 if the state is empty
+     */
+    public synchronized int getNumber() {
+        return number;
+    }
+
+    public synchronized String getHash() {
+        return hash;
+    }
+
+    public synchronized boolean isEmpty() {
+        return number == -1;
+    }
+
+    /**
+     * @return true if some blocks were skipped (the state should be updated using indexed blocks)
+     */
+    public synchronized boolean isBehind() {
+        return behind;
+    }
+
+    /**
+     * Version, incremented on each members change
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        journal.clear();
+        number = -1;
+        hash = null;
+        behind = false;
+        version++;
+    }
+
+    /**
+     * Apply a new indexed block.
+     * Blocks already applied are ignored. If some blocks are missing, the state is marked as behind, and the block is ignored.
+     */
+    public synchronized void onBlockIndexed(BlockMemberships block) {
+        Preconditions.checkNotNull(block);
+        Preconditions.checkNotNull(block.getNumber());
+        if (number == -1 || block.getNumber() <= number) return; // Empty, or already applied
+
+        if (behind || block.getNumber() != number + 1) {
+            behind = true;
+            return;
+        }
+
+        apply(block, true);
+    }
+
+    /**
+     * Roll back all blocks, from the given block number (e.g. after a fork).
+     * If the journal is too short, the state is cleared.
+     */
+    public synchronized void onBlockDeleted(int deletedNumber) {
+        if (number == -1 || deletedNumber > number) return;
+
+        while (!journal.isEmpty() && number >= deletedNumber) {
+            BlockUndo undo = journal.pollLast();
+            undo.previousEntries.forEach((pubkey, previous) -> {
+                if (previous == null) entries.remove(pubkey);
+                else entries.put(pubkey, previous);
+            });
+            number = undo.number - 1;
+            hash = undo.previousHash;
+            version++;
+        }
+
+        // Journal too short: need a full rebuild
+        if (number >= deletedNumber) {
+            clear();
+        }
+    }
+
+    /**
+     * Apply a block read from the index (e.g. when state is empty, or behind).
+     * Blocks without membership events can be skipped, so the journal is not used. Call {@link #setIndexedUntil(int, String)} once done.
+     */
+    public synchronized void applyIndexedBlock(BlockMemberships block) {
+        Preconditions.checkNotNull(block);
+        Preconditions.checkNotNull(block.getNumber());
+        if (block.getNumber() <= number) return; // Already applied
+
+        apply(block, false);
+    }
+
+    /**
+     * Mark the state as up to date, until the given block (after calls to {@link #applyIndexedBlock(BlockMemberships)})
+     */
+    public synchronized void setIndexedUntil(int lastNumber, String lastHash) {
+        // The journal cannot be used anymore (some blocks has been skipped)
+        journal.clear();
+        number = lastNumber;
+        hash = lastHash;
+        behind = false;
+    }
+
+    /**
+     * Remove pubkeys whose last membership IN is older than the given time (they can only become member again with a new membership IN)
+     * @return the number of removed pubkeys
+     */
+    public synchronized int removeExpired(long minTime) {
+        int size = entries.size();
+        entries.values().removeIf(entry -> entry.time < minTime);
+        return size - entries.size();
+    }
+
+    /**
+     * Get members (pubkey -> uid)
+     * @param minTime start time of the membership validity window
+     */
+    public synchronized Map<String, String> getMembers(long minTime) {
+        Map<String, String> result = new HashMap<>(entries.size());
+        entries.forEach((pubkey, entry) -> {
+            if (entry.time >= minTime) result.put(pubkey, entry.uid);
+        });
+        return result;
+    }
+
+    public synchronized Snapshot toSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        snapshot.currency = currency;
+        snapshot.number = number;
+        snapshot.hash = hash;
+        snapshot.entries = new HashMap<>(entries);
+        return snapshot;
+    }
+
+    public synchronized void restore(Snapshot snapshot) {
+        Preconditions.checkNotNull(snapshot);
+        Preconditions.checkArgument(Objects.equals(currency, snapshot.currency), "Invalid snapshot currency");
+        clear();
+        if (snapshot.entries != null) entries.putAll(snapshot.entries);
+        number = snapshot.number;
+        hash = snapshot.hash;
+    }
+
+    public void writeSnapshot(File file, ObjectMapper objectMapper) throws IOException {
+        Snapshot snapshot = toSnapshot();
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.createDirectories(file.getParentFile().toPath());
+        objectMapper.writeValue(tempFile, snapshot);
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Snapshot readSnapshot(File file, ObjectMapper objectMapper) throws IOException {
+        return objectMapper.readValue(file, Snapshot.class);
+    }
+
+    /* -- internal methods -- */
+
+    private void apply(BlockMemberships block, boolean withJournal) {
+        BlockUndo undo = withJournal ? new BlockUndo(block.getNumber(), hash) : null;
+        long time = block.getMedianTime() != null ? block.getMedianTime() : 0L;
+
+        // Membership IN
+        boolean changed = applyIn(block.getJoiners(), time, undo);
+        changed = applyIn(block.getActives(), time, undo) || changed;
+
+        // Membership OUT
+        changed = applyOut(block.getExcluded(), undo) || changed;
+        changed = applyOut(block.getLeavers(), undo) || changed;
+        changed = applyOut(block.getRevoked(), undo) || changed;
+
+        number = block.getNumber();
+        hash = block.getHash();
+        if (changed) version++;
+
+        if (undo != null) {
+            journal.addLast(undo);
+            while (journal.size() > journalSize) journal.pollFirst();
+        }
+    }
+
+    private boolean applyIn(String[] memberships, long time, BlockUndo undo) {
+        if (memberships == null || memberships.length == 0) return false;
+        for (String membership: memberships) {
+            // Format: PUBKEY:SIGNATURE:M_BLOCKSTAMP:IDTY_BLOCKSTAMP:UID
+            String[] parts = membership.split(":");
+            String pubkey = parts[0];
+            Entry previous = entries.put(pubkey, new Entry(parts[parts.length - 1], time));
+            if (undo != null) undo.previousEntries.putIfAbsent(pubkey, previous);
+        }
+        return true;
+    }
+
+    private boolean applyOut(String[] memberships, BlockUndo undo) {
+        if (memberships == null || memberships.length == 0) return false;
+        boolean changed = false;
+        for (String membership: memberships) {
+            String pubkey = membership.split(":")[0];
+            Entry previous = entries.remove(pubkey);
+            if (previous != null) {
+                changed = true;
+                if (undo != null) undo.previousEntries.putIfAbsent(pubkey, previous);
+            }
+        }
+        return changed;
+    }
+}
@@ -69,10 +69,19 @@ import org.elasticsearch.index.IndexNotFoundException;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 
-import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 public abstract class AbstractSynchroAction extends AbstractService implements SynchroAction {
 
@@ -82,8 +91,90 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
 
     private static final int SCROLL_MAX_RETRY = 5;
 
+    private static final String SCROLL_EXECUTOR_NAME = "synchro_scroll";
+
+    private static final String SIGNATURE_EXECUTOR_NAME = "synchro_signature";
+
+    private static final Object END_OF_SCROLL = new Object();
+
     private static SynchroActionResult NULL_ACTION_RESULT = new NullSynchroActionResult();
 
+    /**
+     * Result of a signature verification
+     */
+    protected static final class SignatureStatus {
+        public static final SignatureStatus UNCHECKED = new SignatureStatus(null);
+        public static final SignatureStatus VALID = new SignatureStatus(null);
+
+        public static SignatureStatus invalid(Exception error) {
+            return new SignatureStatus(Objects.requireNonNull(error));
+        }
+
+        private final Exception error;
+
+        private SignatureStatus(Exception error) {
+            this.error = error;
+        }
+
+        public boolean isChecked() {
+            return this != UNCHECKED;
+        }
+
+        /**
+         * @return the verification error, or null if valid (or not checked)
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Options of save(), shared by all documents of a page
+     */
+    protected static class SaveContext {
+        private final ObjectMapper objectMapper;
+        private final BulkRequestBuilder bulkRequest;
+        private final boolean allowOldDocuments;
+        private final SynchroActionResult actionResult;
+        private Map<String, Map<String, Object>> existingFieldsById;
+        private Set<String> failedIds;
+        private Map<String, SignatureStatus> signatureChecks;
+
+        /**
+         * @param bulkRequest if null, each document will be saved immediately
+         */
+        public SaveContext(ObjectMapper objectMapper,
+                           BulkRequestBuilder bulkRequest,
+                           boolean allowOldDocuments,
+                           SynchroActionResult actionResult) {
+            this.objectMapper = objectMapper;
+            this.bulkRequest = bulkRequest;
+            this.allowOldDocuments = allowOldDocuments;
+            this.actionResult = actionResult;
+        }
+
+        /**
+         * @param existingFieldsById existing fields (version and issuer) of the page documents, by id
+         * @param failedIds ids not found in existingFieldsById because the lookup failed (will be loaded one by one)
+         */
+        public SaveContext setExistingFields(Map<String, Map<String, Object>> existingFieldsById, Set<String> failedIds) {
+            this.existingFieldsById = existingFieldsById;
+            this.failedIds = failedIds;
+            return this;
+        }
+
+        /**
+         * @param signatureChecks signatures already verified (see verifySignatures()), by id
+         */
+        public SaveContext setSignatureChecks(Map<String, SignatureStatus> signatureChecks) {
+            this.signatureChecks = signatureChecks;
+            return this;
+        }
+    }
+
+    // Limit concurrent bulk requests, shared by all synchro actions
+    private static volatile Semaphore bulkPermits;
+
     private String fromIndex;
     private String fromType;
     private String toIndex;
@@ -95,6 +186,7 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
     private int executionOrder = SynchroAction.EXECUTION_ORDER_DEFAULT;
 
     private HttpService httpService;
+    private final ThreadPool threadPool;
 
     private boolean enableUpdate = false;
     private boolean enableSignatureValidation = true;
@@ -103,6 +195,10 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
     private List<SourceConsumer> updateListeners;
     private List<SourceConsumer> validationListeners;
     private int bulkSize;
+    private int prefetchPageCount;
+    private long pageTimeoutMs;
+    private int scrollThreads;
+    private int signatureThreads;
 
     private boolean trace = false;
 
@@ -130,6 +226,14 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
                 .addType(fromType);
         this.trace = logger.isTraceEnabled();
         this.bulkSize = pluginSettings.getSynchroBulkSize();
+        this.prefetchPageCount = pluginSettings.getSynchroScrollPrefetch();
+        // Max wait for a page: all retries of a scroll request
+        this.pageTimeoutMs = (long)pluginSettings.getNetworkTimeout() * (SCROLL_MAX_RETRY + 1);
+        this.threadPool = threadPool;
+        // One fetching thread by running action: each peer thread runs up to 'actionThreads' actions, or a single one inline
+        this.scrollThreads = pluginSettings.getSynchroPeerThreads() * (pluginSettings.getSynchroActionThreads() + 1);
+        this.signatureThreads = pluginSettings.getSynchroSignatureThreads();
+        initBulkPermits(pluginSettings.getSynchroMaxConcurrentBulk());
         threadPool.scheduleOnStarted(() -> httpService = ServiceLocator.instance().getHttpService());
     }
 
@@ -278,11 +382,28 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
                                     final boolean allowOldDocuments,
                                     final SynchroActionResult actionResult,
                                     final String logPrefix) throws Exception {
+        notifyValidation(id, source, SignatureStatus.UNCHECKED, allowOldDocuments, actionResult, logPrefix);
+    }
+
+    /**
+     * @param signatureStatus result of a signature verification already done. If unchecked, will be verified
+     */
+    protected void notifyValidation(final String id,
+                                    final JsonNode source,
+                                    final SignatureStatus signatureStatus,
+                                    final boolean allowOldDocuments,
+                                    final SynchroActionResult actionResult,
+                                    final String logPrefix) throws Exception {
 
         // Validate signature
         if (enableSignatureValidation) {
             try {
-                readAndVerifyIssuerSignature(source, issuerFieldName);
+                if (!signatureStatus.isChecked()) {
+                    readAndVerifyIssuerSignature(source, issuerFieldName);
+                }
+                else if (signatureStatus.getError() != null) {
+                    throw signatureStatus.getError();
+                }
             } catch (InvalidSignatureException e) {
                 // FIXME: some user/profile document failed ! - see issue #11
                 // Il semble que le format JSON ne soit pas le même que celui qui a été signé
@@ -404,53 +525,45 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
         String logPrefix = String.format("[%s] [%s] [%s/%s]", peer.getCurrency(), peer, toIndex, toType);
         ObjectMapper objectMapper = getObjectMapper();
 
-        int size = this.bulkSize;
-        long from = 0;
-        long total = -1;
+        // Fetch pages in another thread, while indexing the previous pages
+        // (the queue size limit the number of pages in flight)
+        final BlockingQueue<Object> pages = new ArrayBlockingQueue<>(prefetchPageCount);
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        final AtomicBoolean started = new AtomicBoolean(false);
+        try {
+            threadPool.executor(SCROLL_EXECUTOR_NAME, scrollThreads)
+                    .execute(() -> fetchPages(peer, query, pages, started, stopped, logPrefix));
+        }
+        catch (RejectedExecutionException e) {
+            throw new TechnicalException(String.format("%s Unable to start fetching pages: %s", logPrefix, e.getMessage()), e);
+        }
 
-        String currentScrollId = null;
-        String scrollKeepAliveTime = SCROLL_TIME_TO_LIVE_SHORT;
-        int scrollRetryCounter = 0;
+        try {
+            long from = 0;
+            while (true) {
+                Object page = pages.poll(pageTimeoutMs, TimeUnit.MILLISECONDS);
 
-        do {
-            SearchScrollResponse response = null;
+                // Fetching task still waiting in the executor queue: the timeout starts only when fetching starts
+                if (page == null && !started.get()) continue;
 
-            // If exists, reuse the previous scroll
-            if (currentScrollId != null) {
-                try {
-                    HttpUriRequest request = createNextScrollRequest(peer, currentScrollId, scrollKeepAliveTime);
-                    response = executeAndParseRequest(request, logPrefix);
-                    scrollRetryCounter = 0; // Reset the scroll retry count
+                // Fetching thread lost
+                if (page == null) {
+                    throw new TechnicalException(String.format("%s No page received after %sms. Skipping", logPrefix, pageTimeoutMs));
                 }
-                catch(HttpNotFoundException e) {
-                    scrollRetryCounter++;
-                    if (scrollRetryCounter >= SCROLL_MAX_RETRY) throw e;
-                    // Already 2 retry: retry but increase the scroll duration
-                    if (scrollRetryCounter >= 2) {
-                        scrollKeepAliveTime = SCROLL_TIME_TO_LIVE_LONG; // Increase the scroll time
-                    }
 
-                    // Reset the scroll id (will create a new scroll request)
-                    currentScrollId = null;
+                // End of scroll
+                if (page == END_OF_SCROLL) break;
 
-                    logger.warn(String.format("%s Scroll request closed (by remote pod). Retrying {%s/%s}...",
-                            logPrefix, scrollRetryCounter, SCROLL_MAX_RETRY));
-                }
-            }
+                // Error while fetching
+                if (page instanceof RuntimeException) throw (RuntimeException) page;
+                if (page instanceof Throwable) throw new TechnicalException(((Throwable) page).getMessage(), (Throwable) page);
 
-            // Create a new scroll request
-            if (currentScrollId == null){
-                HttpUriRequest request = createScrollRequest(peer, fromIndex, fromType, query, scrollKeepAliveTime, from, size);
-                response = executeAndParseRequest(request, logPrefix);
-                currentScrollId = (response != null) ? response.getScrollId() : null;
-            }
-
-            if (currentScrollId != null) {
+                SearchScrollResponse response = (SearchScrollResponse) page;
 
                 // Indexing
                 fetchAndSave(peer, response, objectMapper, result);
-                from += size;
-                if (total == -1 && response.getHits() != null) total = response.getHits().getTotalHits();
+                from += this.bulkSize;
+                long total = response.getHits() != null ? response.getHits().getTotalHits() : 0;
 
                 // Log progress
                 if (logger.isInfoEnabled() && from<total) {
@@ -459,30 +572,130 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
                 }
             }
         }
-        while(currentScrollId != null && from<total);
-
-        if (currentScrollId == null) {
-            logger.warn(String.format("%s Missing scroll id in the response. Skipping", logPrefix));
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TechnicalException(String.format("%s Synchronization interrupted", logPrefix), e);
         }
+        finally {
+            // Stop the fetching thread (if still running)
+            stopped.set(true);
+            pages.clear();
+        }
+    }
 
-        // Stop the scroll
-        else {
-            HttpDelete deleteRequest = createDeleteScrollRequest(peer, currentScrollId);
-            try {
-                httpService.executeRequest(deleteRequest, HttpResponse.class);
+    /**
+     * Fetch all scroll pages, and put them into the given queue (blocking when full).
+     * Always ends with END_OF_SCROLL, or with the error.
+     */
+    private void fetchPages(Peer peer,
+                            QueryBuilder query,
+                            BlockingQueue<Object> pages,
+                            AtomicBoolean started,
+                            AtomicBoolean stopped,
+                            String logPrefix) {
+        started.set(true);
+
+        // Indexing thread already stopped (e.g. timeout while this task was waiting in the executor queue)
+        if (stopped.get()) return;
+
+        int size = this.bulkSize;
+        long from = 0;
+        long total = -1;
+
+        String currentScrollId = null;
+        String scrollKeepAliveTime = SCROLL_TIME_TO_LIVE_SHORT;
+        int scrollRetryCounter = 0;
+        Object lastPage = END_OF_SCROLL;
+
+        try {
+            do {
+                SearchScrollResponse response = null;
+
+                // If exists, reuse the previous scroll
+                if (currentScrollId != null) {
+                    try {
+                        HttpUriRequest request = createNextScrollRequest(peer, currentScrollId, scrollKeepAliveTime);
+                        response = executeAndParseRequest(request, logPrefix);
+                        scrollRetryCounter = 0; // Reset the scroll retry count
+                    }
+                    catch(HttpNotFoundException e) {
+                        scrollRetryCounter++;
+                        if (scrollRetryCounter >= SCROLL_MAX_RETRY) throw e;
+                        // Already 2 retry: retry but increase the scroll duration
+                        if (scrollRetryCounter >= 2) {
+                            scrollKeepAliveTime = SCROLL_TIME_TO_LIVE_LONG; // Increase the scroll time
+                        }
+
+                        // Reset the scroll id (will create a new scroll request)
+                        currentScrollId = null;
+
+                        logger.warn(String.format("%s Scroll request closed (by remote pod). Retrying {%s/%s}...",
+                                logPrefix, scrollRetryCounter, SCROLL_MAX_RETRY));
+                    }
+                }
+
+                // Create a new scroll request
+                if (currentScrollId == null){
+                    HttpUriRequest request = createScrollRequest(peer, fromIndex, fromType, query, scrollKeepAliveTime, from, size);
+                    response = executeAndParseRequest(request, logPrefix);
+                    currentScrollId = (response != null) ? response.getScrollId() : null;
+                }
+
+                if (currentScrollId != null) {
+                    // Send to indexing
+                    if (!put(pages, response, stopped)) break;
+                    from += size;
+                    if (total == -1 && response.getHits() != null) total = response.getHits().getTotalHits();
+                }
             }
-            catch(HttpUnauthorizeException | HttpNotFoundException e) {
-                logger.debug(String.format("%s Unauthorized to delete scroll. Continue.", logPrefix));
+            while(currentScrollId != null && from<total && !stopped.get());
+
+            if (currentScrollId == null) {
+                logger.warn(String.format("%s Missing scroll id in the response. Skipping", logPrefix));
             }
-            catch(Exception e) {
-                // Log, and continue
-                if (logger.isDebugEnabled())
-                    logger.warn(String.format("%s Failed to delete scroll: ", logPrefix, e.getMessage()), e);
-                else
-                    logger.warn(String.format("%s Failed to delete scroll: ", logPrefix, e.getMessage()));
 
+            // Stop the scroll
+            else {
+                HttpDelete deleteRequest = createDeleteScrollRequest(peer, currentScrollId);
+                try {
+                    httpService.executeRequest(deleteRequest, HttpResponse.class);
+                }
+                catch(HttpUnauthorizeException | HttpNotFoundException e) {
+                    logger.debug(String.format("%s Unauthorized to delete scroll. Continue.", logPrefix));
+                }
+                catch(Exception e) {
+                    // Log, and continue
+                    if (logger.isDebugEnabled())
+                        logger.warn(String.format("%s Failed to delete scroll: ", logPrefix, e.getMessage()), e);
+                    else
+                        logger.warn(String.format("%s Failed to delete scroll: ", logPrefix, e.getMessage()));
+
+                }
             }
         }
+        catch(Throwable e) {
+            // Forward the error to the indexing thread
+            lastPage = e;
+        }
+        finally {
+            put(pages, lastPage, stopped);
+        }
+    }
+
+    /**
+     * Wait until the page can be added to the queue, or the synchronization stopped
+     * @return false if stopped
+     */
+    private boolean put(BlockingQueue<Object> pages, Object page, AtomicBoolean stopped) {
+        try {
+            while (!stopped.get()) {
+                if (pages.offer(page, 1, TimeUnit.SECONDS)) return true;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
     }
 
     private long fetchAndSave(final Peer peer,
@@ -498,6 +711,20 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
         BulkRequestBuilder bulkRequest = client.prepareBulk();
         bulkRequest.setRefresh(true);
 
+        // Get existing documents (version and issuer), for the whole page
+        Set<String> ids = Arrays.stream(response.getHits().getHits())
+                .filter(hit -> hit.getSource() != null)
+                .map(SearchHit::getId)
+                .collect(Collectors.toSet());
+        Set<String> failedIds = new HashSet<>();
+        Map<String, Map<String, Object>> existingFieldsById = client.getFieldsByIds(toIndex, toType, ids, failedIds, versionFieldName, issuerFieldName);
+
+        // Verify signatures of the whole page, in parallel
+        Map<String, SignatureStatus> signatureChecks = verifySignatures(peer, response.getHits().getHits(), existingFieldsById, failedIds);
+
+        SaveContext context = new SaveContext(objectMapper, bulkRequest, true /*allow old documents*/, actionResult)
+                .setExistingFields(existingFieldsById, failedIds)
+                .setSignatureChecks(signatureChecks);
 
         for (SearchHit hit: response.getHits().getHits()){
             //org.elasticsearch.search.SearchHits hit = hits.next();
@@ -512,19 +739,27 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
             }
             else {
                 // Save (create or update)
-                save(id, hit.getSource(),
-                     objectMapper,
-                     bulkRequest,
-                     true, // allow old documents
-                     actionResult,
-                     logPrefix);
+                save(id, new JsonNodeBytesReference(hit.getSource(), objectMapper), context, logPrefix);
             }
         }
 
         if (bulkRequest.numberOfActions() > 0) {
 
-            // Flush the bulk if not empty
-            BulkResponse bulkResponse = bulkRequest.get();
+            // Flush the bulk if not empty (wait for a free permit)
+            BulkResponse bulkResponse;
+            try {
+                bulkPermits.acquire();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TechnicalException(String.format("[%s] [%s] [%s/%s] Interrupted while waiting to execute bulk", peer.getCurrency(), peer, toIndex, toType), e);
+            }
+            try {
+                bulkResponse = bulkRequest.get();
+            }
+            finally {
+                bulkPermits.release();
+            }
             Set<String> missingDocIds = new LinkedHashSet<>();
 
             // If failures, continue but saveInBulk missing blocks
@@ -543,37 +778,108 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
             }
         }
 
-        // update result
-        result.addInserts(toIndex, toType, actionResult.getInserts());
-        result.addUpdates(toIndex, toType, actionResult.getUpdates());
-        result.addDeletes(toIndex, toType, actionResult.getDeletes());
-        result.addInvalidSignatures(toIndex, toType, actionResult.getInvalidSignatures());
-        result.addInvalidTimes(toIndex, toType, actionResult.getInvalidTimes());
+        // update result (shared by actions running in parallel)
+        synchronized (result) {
+            result.addInserts(toIndex, toType, actionResult.getInserts());
+            result.addUpdates(toIndex, toType, actionResult.getUpdates());
+            result.addDeletes(toIndex, toType, actionResult.getDeletes());
+            result.addInvalidSignatures(toIndex, toType, actionResult.getInvalidSignatures());
+            result.addInvalidTimes(toIndex, toType, actionResult.getInvalidTimes());
+        }
 
         return counter;
     }
 
-    protected void save(String id, BytesReference sourceRef, String logPrefix) throws IOException{
-        save(id, sourceRef, getObjectMapper(), null, false, NULL_ACTION_RESULT, logPrefix);
+    /**
+     * Verify signatures of documents that will be inserted or updated, using the signature thread pool.
+     * @return verification status by id, or null if not verified
+     */
+    private Map<String, SignatureStatus> verifySignatures(final Peer peer,
+                                                         final SearchHit[] hits,
+                                                         final Map<String, Map<String, Object>> existingFieldsById,
+                                                         final Set<String> failedIds) {
+        if (!enableSignatureValidation || signatureThreads <= 1 || hits.length <= 1) return null;
+
+        ExecutorService executor = threadPool.executor(SIGNATURE_EXECUTOR_NAME, signatureThreads);
+        Map<String, Future<SignatureStatus>> futures = new HashMap<>(hits.length);
+        for (SearchHit hit: hits) {
+            final JsonNode source = hit.getSource();
+            if (source == null || failedIds.contains(hit.getId())
+                    || !needValidation(source, existingFieldsById.get(hit.getId()))) continue;
+
+            futures.put(hit.getId(), executor.submit(() -> {
+                try {
+                    readAndVerifyIssuerSignature(source, issuerFieldName);
+                    return SignatureStatus.VALID;
+                }
+                catch (Exception e) {
+                    return SignatureStatus.invalid(e);
+                }
+            }));
+        }
+
+        Map<String, SignatureStatus> result = new HashMap<>(futures.size());
+        try {
+            for (Map.Entry<String, Future<SignatureStatus>> entry: futures.entrySet()) {
+                result.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+        catch (InterruptedException e) {
+            futures.values().forEach(future -> future.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new TechnicalException(String.format("[%s] [%s] [%s/%s] Interrupted while verifying signatures", peer.getCurrency(), peer, toIndex, toType), e);
+        }
+        catch (ExecutionException e) {
+            throw new TechnicalException(e.getCause());
+        }
+        return result;
     }
 
-    protected void save(String id,
-                        final JsonNode source,
-                        final ObjectMapper objectMapper,
-                        final BulkRequestBuilder bulkRequest,
-                        final boolean allowOldDocuments,
-                        final SynchroActionResult actionResult,
-                        final String logPrefix) {
-        save(id, new JsonNodeBytesReference(source, objectMapper), objectMapper, bulkRequest, allowOldDocuments, actionResult, logPrefix);
+    /**
+     * Same rules as save(): true for new documents, or for newer versions (if update enable)
+     */
+    private boolean needValidation(JsonNode source, Map<String, Object> existingFields) {
+        if (existingFields == null) return true;
+        if (!enableUpdate) return false;
+        try {
+            Number existingVersion = getExistingVersion(existingFields);
+            return existingVersion == null || source.path(versionFieldName).asLong(-1) > existingVersion.longValue();
+        }
+        catch (InvalidFormatException e) {
+            return false; // Will be skipped by save()
+        }
+    }
+
+    private Number getExistingVersion(Map<String, Object> existingFields) {
+        Object versionObj = existingFields.get(versionFieldName);
+        if (versionObj == null) return null;
+        if (versionObj instanceof String) {
+            return Long.parseLong((String) versionObj);
+        }
+        if (versionObj instanceof Number) {
+            return (Number) versionObj;
+        }
+        throw new InvalidFormatException(String.format("Invalid document: '%s' should be a long, but found: %s", versionFieldName, versionObj));
     }
 
+    protected void save(String id, BytesReference sourceRef, String logPrefix) {
+        save(id, sourceRef, new SaveContext(getObjectMapper(), null, false, NULL_ACTION_RESULT), logPrefix);
+    }
+
+    /**
+     * Save (insert or update) a document
+     */
     protected void save(final String id,
                         final BytesReference sourceRef,
-                        final ObjectMapper objectMapper,
-                        final BulkRequestBuilder bulkRequest,
-                        final boolean allowOldDocuments,
-                        final SynchroActionResult actionResult,
+                        final SaveContext context,
                         final String logPrefix) {
+        final ObjectMapper objectMapper = context.objectMapper;
+        final BulkRequestBuilder bulkRequest = context.bulkRequest;
+        final boolean allowOldDocuments = context.allowOldDocuments;
+        final SynchroActionResult actionResult = context.actionResult;
+        final SignatureStatus signatureStatus = context.signatureChecks != null && context.signatureChecks.containsKey(id)
+                ? context.signatureChecks.get(id)
+                : SignatureStatus.UNCHECKED;
 
         try {
             // Parse byte reference
@@ -590,7 +896,10 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
                 throw new InvalidFormatException(String.format("Invalid format: missing or null %s field.", versionFieldName));
             }
 
-            Map<String, Object> existingFields = client.getFieldsById(toIndex, toType, id, versionFieldName, issuerFieldName);
+            Map<String, Object> existingFields = context.existingFieldsById != null
+                    && (context.failedIds == null || !context.failedIds.contains(id))
+                    ? context.existingFieldsById.get(id)
+                    : client.getFieldsById(toIndex, toType, id, versionFieldName, issuerFieldName);
             boolean exists = existingFields != null;
 
             // Insert (new doc)
@@ -601,7 +910,7 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
                 }
 
                 // Validate doc
-                notifyValidation(id, source, allowOldDocuments, actionResult, logPrefix);
+                notifyValidation(id, source, signatureStatus, allowOldDocuments, actionResult, logPrefix);
 
                 // Execute insertion
                 IndexRequestBuilder request = client.prepareIndex(toIndex, toType, id)
@@ -626,17 +935,7 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
                 }
 
                 // Check version
-                Number existingVersion = null;
-                Object versionObj = existingFields.get(versionFieldName);
-                if (versionObj != null) {
-                    if (versionObj instanceof String) {
-                        existingVersion = Long.parseLong((String) versionObj);
-                    } else if (versionObj instanceof Number) {
-                        existingVersion = ((Number) versionObj);
-                    } else {
-                        throw new InvalidFormatException(String.format("Invalid document: '%s' should be a long, but found: %s", versionFieldName, versionObj));
-                    }
-                }
+                Number existingVersion = getExistingVersion(existingFields);
 
                 boolean doUpdate = (existingVersion == null || version > existingVersion.longValue());
 
@@ -646,7 +945,7 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
                     }
 
                     // Validate source
-                    notifyValidation(id, source, allowOldDocuments, actionResult, logPrefix);
+                    notifyValidation(id, source, signatureStatus, allowOldDocuments, actionResult, logPrefix);
 
                     // Execute update
                     UpdateRequestBuilder request = client.prepareUpdate(toIndex, toType, id);
@@ -675,6 +974,12 @@ public abstract class AbstractSynchroAction extends AbstractService implements S
         }
     }
 
+    private static synchronized void initBulkPermits(int permits) {
+        if (bulkPermits == null) {
+            bulkPermits = new Semaphore(permits, true);
+        }
+    }
+
     protected void setIssuerFieldName(String issuerFieldName) {
         this.issuerFieldName = issuerFieldName;
     }
@@ -24,7 +24,6 @@ package org.duniter.elasticsearch.synchro;
 
 import com.google.common.collect.*;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.mutable.MutableInt;
 import org.duniter.core.client.dao.CurrencyDao;
 import org.duniter.core.client.model.bma.EndpointApi;
 import org.duniter.core.client.model.local.Peer;
@@ -52,7 +51,11 @@ import org.elasticsearch.common.inject.Inject;
 
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
@@ -70,6 +73,8 @@ public class SynchroService extends AbstractService {
     private final CurrencyDao currencyDao;
     private final SynchroExecutionDao synchroExecutionDao;
     private final NetworkService networkService;
+    private final ExecutorService peersExecutor;
+    private final ExecutorService actionsExecutor;
 
     private boolean forceFullResync = false;
     private boolean synchronizing = false;
@@ -88,6 +93,8 @@ public class SynchroService extends AbstractService {
         this.currencyDao = currencyDao;
         this.synchroExecutionDao = synchroExecutionDao;
         this.networkService = networkService;
+        this.peersExecutor = threadPool.executor("synchro_peers", pluginSettings.getSynchroPeerThreads());
+        this.actionsExecutor = threadPool.executor("synchro_actions", pluginSettings.getSynchroPeerThreads() * pluginSettings.getSynchroActionThreads());
         threadPool.scheduleOnStarted(() -> {
             httpService = serviceLocator.getHttpService();
             setIsReady(true);
@@ -232,10 +239,10 @@ public class SynchroService extends AbstractService {
                 logger.info(String.format("%s Synchronization [OK] - no UP peer found", logPrefix));
             }
             else {
-                final MutableInt counter = new MutableInt(0);
+                final AtomicInteger counter = new AtomicInteger(0);
 
-                // Execute the synchronization, on each peer
-                peers.forEach(peer -> {
+                // Execute the synchronization, on each peer (in parallel)
+                invokeAll(peersExecutor, peers.stream().map(peer -> (Runnable) () -> {
                     // Check if peer alive and valid
                     boolean isAliveAndValid = networkService.isEsNodeAliveAndValid(peer);
                     if (!isAliveAndValid) {
@@ -257,15 +264,15 @@ public class SynchroService extends AbstractService {
                         }
                         try {
                             synchronizePeer(peer, enableSynchroWebsocket);
-                            counter.increment();
+                            counter.incrementAndGet();
                         } catch (Throwable t) {
                             logger.error(String.format("%s Failed to synchronize {%s}: %s", logPrefix, peer, t.getMessage()), t);
                         }
                     }
-                });
+                }).collect(Collectors.toList()));
 
                 logger.info(String.format("%s Synchronization [OK] - %s/%s peers in %s ms", logPrefix,
-                        counter.intValue(),
+                        counter.get(),
                         CollectionUtils.size(peers),
                         System.currentTimeMillis() - now));
             }
@@ -310,30 +317,32 @@ public class SynchroService extends AbstractService {
             }
         }
 
-        // Execute actions
-        MutableInt failureCounter = new MutableInt(0);
-        List<SynchroAction> executedActions = actions.stream()
+        // Execute actions, grouped by execution order (actions of the same group are executed in parallel)
+        final AtomicInteger failureCounter = new AtomicInteger(0);
+        final List<SynchroAction> executedActions = Lists.newArrayList();
+        actions.stream()
                 // Filter on the expected api
                 .filter(a -> a.getEndPointApi() != null && a.getEndPointApi().equals(peer.getApi()))
-                // Sort by execution order
-                .sorted(SynchroAction.EXECUTION_ORDER_COMPARATOR)
-                .map(a -> {
-                    try {
-                        a.handleSynchronize(peer, fromTime, result);
-                    } catch(Throwable e) {
-                        // Count, by continue
-                        failureCounter.increment();
-                    }
-                    return a;
-                })
-                .collect(Collectors.toList());
+                .collect(Collectors.groupingBy(SynchroAction::getExecutionOrder, TreeMap::new, Collectors.toList()))
+                .values()
+                .forEach(group -> {
+                    invokeAll(actionsExecutor, group.stream().map(a -> (Runnable) () -> {
+                        try {
+                            a.handleSynchronize(peer, fromTime, result);
+                        } catch(Throwable e) {
+                            // Count, by continue
+                            failureCounter.incrementAndGet();
+                        }
+                    }).collect(Collectors.toList()));
+                    executedActions.addAll(group);
+                });
 
         long executionTimeMs = System.currentTimeMillis() - startTimeMs;
         logger.info(String.format("[%s] [%s] Synchronizing [OK] - %s %s in %s ms",
                 peer.getCurrency(),
                 peer,
                 result.toString(),
-                (failureCounter.getValue() > 0 ? String.format("and %s actions in failure", failureCounter.getValue()) : ""),
+                (failureCounter.get() > 0 ? String.format("and %s actions in failure", failureCounter.get()) : ""),
                 executionTimeMs));
 
         // Save result
@@ -349,6 +358,34 @@ public class SynchroService extends AbstractService {
 
     /* -- protected methods -- */
 
+    /**
+     * Run all tasks, using the given executor, and wait for their end.
+     * A single task is run in the current thread.
+     */
+    protected void invokeAll(ExecutorService executor, List<Runnable> tasks) {
+        if (tasks.size() == 1) {
+            tasks.get(0).run();
+            return;
+        }
+
+        List<Future<?>> futures = tasks.stream()
+                .map(executor::submit)
+                .collect(Collectors.toList());
+        try {
+            for (Future<?> future: futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            futures.forEach(f -> f.cancel(true));
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            // Should never occur, because tasks already catch errors
+            logger.error(String.format("Failed to execute a synchronization task: %s", e.getCause().getMessage()), e.getCause());
+        }
+    }
+
     protected long getLastExecutionTime(Peer peer) {
         Preconditions.checkNotNull(peer);
 
@@ -47,6 +47,7 @@ import org.nuiton.i18n.I18n;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 
 /**
@@ -67,6 +68,8 @@ public class ThreadPool extends AbstractLifecycleComponent<ThreadPool> {
     private final MutableBoolean nodeStarted = new MutableBoolean(false);
     private final MutableBoolean isMaster = new MutableBoolean(false);
 
+    private final Map<String, ThreadPoolExecutor> executors = new ConcurrentHashMap<>();
+
     @Inject
     public ThreadPool(Settings settings,
                       Injector injector,
@@ -142,6 +145,8 @@ public class ThreadPool extends AbstractLifecycleComponent<ThreadPool> {
         if (!scheduler.isShutdown()) {
             scheduler.shutdown();
         }
+        executors.values().forEach(ThreadPoolExecutor::shutdown);
+        executors.clear();
         injector.getInstance(ClusterService.class)
                 .remove(isMasterListener);
         isMasterListener = null;
@@ -507,5 +512,24 @@ public class ThreadPool extends AbstractLifecycleComponent<ThreadPool> {
         return scheduler;
     }
 
+    /**
+     * Get (or create) a named executor, with a fixed number of threads. Idle threads are released after 1 min.
+     * Use it for long (or blocking) tasks, that should not hold the scheduler threads.
+     *
+     * @param name the executor name (used as thread name suffix)
+     * @param threads the max number of threads (only used at creation)
+     */
+    public ExecutorService executor(String name, int threads) {
+        Preconditions.checkNotNull(name);
+        Preconditions.checkArgument(threads > 0);
+        return executors.computeIfAbsent(name, key -> {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(),
+                    EsExecutors.daemonThreadFactory(settings, "cesium_plus_" + key));
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        });
+    }
+
 
 }
@@ -0,0 +1,50 @@
+package org.duniter.elasticsearch.util;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+public class CacheUtils {
+
+    protected CacheUtils() {
+        // Helper class
+    }
+
+    /**
+     * Size and hit statistics of a cache (built with recordStats()), as published in node stats
+     */
+    public static Map<String, Object> toStatsMap(Cache<?, ?> cache) {
+        CacheStats stats = cache.stats();
+        return ImmutableMap.<String, Object>builder()
+                .put("size", cache.size())
+                .put("hits", stats.hitCount())
+                .put("misses", stats.missCount())
+                .put("hitRate", stats.hitRate())
+                .build();
+    }
+}
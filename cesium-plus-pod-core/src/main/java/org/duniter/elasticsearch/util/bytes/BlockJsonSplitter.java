@@ -0,0 +1,156 @@
+package org.duniter.elasticsearch.util.bytes;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split a JSON array of blocks (e.g. a '/blockchain/blocks/{count}/{from}' response) in a single streaming pass.
+ * Each block source is a slice of the input bytes (no copy, no String). Blocks 'number', 'hash' and 'previousHash' are extracted on the fly.
+ */
+public class BlockJsonSplitter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String PROPERTY_NUMBER = "number";
+    private static final String PROPERTY_HASH = "hash";
+    private static final String PROPERTY_PREVIOUS_HASH = "previousHash";
+
+    public static class BlockBytes {
+        private final int number;
+        private final String hash;
+        private final String previousHash;
+        private final BytesReference source;
+
+        public BlockBytes(int number, String hash, BytesReference source) {
+            this(number, hash, null, source);
+        }
+
+        public BlockBytes(int number, String hash, String previousHash, BytesReference source) {
+            this.number = number;
+            this.hash = hash;
+            this.previousHash = previousHash;
+            this.source = source;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public String getPreviousHash() {
+            return previousHash;
+        }
+
+        public BytesReference getSource() {
+            return source;
+        }
+    }
+
+    private BlockJsonSplitter() {
+        // Helper class
+    }
+
+    /**
+     * Split the blocks array. Blocks without number are skipped, and duplicated blocks (same number) are returned once.
+     * @param bytes a JSON array of blocks (UTF-8)
+     * @return blocks, in the array order
+     * @throws IOException if not a valid JSON array
+     */
+    public static List<BlockBytes> split(byte[] bytes) throws IOException {
+        List<BlockBytes> result = new ArrayList<>();
+        IntHashSet numbers = new IntHashSet();
+
+        try (JsonParser parser = JSON_FACTORY.createParser(bytes)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException("Expected a JSON array of blocks", parser.getCurrentLocation());
+            }
+
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+                int start = (int) parser.getTokenLocation().getByteOffset();
+                Integer number = null;
+                String hash = null;
+                String previousHash = null;
+
+                // Read top level fields (skip nested values)
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.getCurrentName();
+                    JsonToken valueToken = parser.nextToken();
+                    if (PROPERTY_NUMBER.equals(fieldName) && valueToken == JsonToken.VALUE_NUMBER_INT) {
+                        number = parser.getIntValue();
+                    }
+                    else if (PROPERTY_HASH.equals(fieldName) && valueToken == JsonToken.VALUE_STRING) {
+                        hash = parser.getText();
+                    }
+                    else if (PROPERTY_PREVIOUS_HASH.equals(fieldName) && valueToken == JsonToken.VALUE_STRING) {
+                        previousHash = parser.getText();
+                    }
+                    else {
+                        parser.skipChildren();
+                    }
+                }
+
+                // Current token is the END_OBJECT
+                int end = (int) parser.getCurrentLocation().getByteOffset();
+                if (number != null && numbers.add(number)) {
+                    result.add(new BlockBytes(number, hash, previousHash, new BytesArray(bytes, start, end - start)));
+                }
+            }
+
+            if (token != JsonToken.END_ARRAY) {
+                throw new JsonParseException("Expected a JSON object (block), but found: " + token, parser.getCurrentLocation());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Check blocks numbers are consecutive (starting at firstNumber), and each 'previousHash' is the hash of the block before.
+     * @param previousHash hash of the block before the first one, or null if unknown
+     */
+    public static boolean isChained(List<BlockBytes> blocks, int firstNumber, String previousHash) {
+        int expectedNumber = firstNumber;
+        for (BlockBytes block : blocks) {
+            if (block.getNumber() != expectedNumber || block.getHash() == null) return false;
+            if (previousHash != null && !previousHash.equals(block.getPreviousHash())) return false;
+            previousHash = block.getHash();
+            expectedNumber++;
+        }
+        return true;
+    }
+}
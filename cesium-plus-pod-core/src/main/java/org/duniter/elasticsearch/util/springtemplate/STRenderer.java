@@ -0,0 +1,99 @@
+package org.duniter.elasticsearch.util.springtemplate;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.duniter.core.exception.TechnicalException;
+import org.duniter.core.util.Preconditions;
+import org.stringtemplate.v4.AutoIndentWriter;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Render templates of a group. Templates are compiled once (when the renderer is created),
+ * and each thread reuses the same output buffer.
+ */
+public class STRenderer {
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_BUFFER_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<StringWriter> BUFFERS = ThreadLocal.withInitial(() -> new StringWriter(INITIAL_BUFFER_SIZE));
+
+    private final STGroup group;
+
+    public STRenderer(String dirName, String... templateNames) {
+        this.group = STUtils.newSTGroup(dirName);
+
+        // Compile templates now (the group keeps compiled templates)
+        for (String templateName: templateNames) {
+            Preconditions.checkNotNull(group.getInstanceOf(templateName), String.format("Missing ST template {%s}", templateName));
+        }
+    }
+
+    public STGroup getGroup() {
+        return group;
+    }
+
+    public ST getInstanceOf(String templateName) {
+        return group.getInstanceOf(templateName);
+    }
+
+    public String render(String templateName, Map<String, Object> attributes, Locale locale) {
+        ST template = group.getInstanceOf(templateName);
+        Preconditions.checkNotNull(template, String.format("Missing ST template {%s}", templateName));
+        attributes.forEach(template::add);
+        return render(template, locale);
+    }
+
+    /**
+     * Same as template.render(locale), but without allocating a new buffer
+     */
+    public static String render(ST template, Locale locale) {
+        StringWriter out = BUFFERS.get();
+        StringBuffer buffer = out.getBuffer();
+        try {
+            STWriter writer = new AutoIndentWriter(out);
+            writer.setLineWidth(STWriter.NO_WRAP);
+            template.write(writer, locale);
+            return buffer.toString();
+        }
+        catch (IOException e) {
+            throw new TechnicalException(e);
+        }
+        finally {
+            // Do not keep too large buffers
+            if (buffer.capacity() > MAX_BUFFER_SIZE) {
+                BUFFERS.remove();
+            }
+            else {
+                buffer.setLength(0);
+            }
+        }
+    }
+}
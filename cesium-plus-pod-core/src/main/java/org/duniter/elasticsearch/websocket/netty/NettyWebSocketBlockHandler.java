@@ -61,6 +61,8 @@ public class NettyWebSocketBlockHandler extends NettyBaseWebSocketEndpoint imple
     private final static JsonAttributeParser<Long> numberAttributeParser = new JsonAttributeParser<>(BlockchainBlock.PROPERTY_NUMBER, Long.class);
     private final static JsonAttributeParser<String> hashAttributeParser = new JsonAttributeParser<>(BlockchainBlock.PROPERTY_HASH, String.class);
 
+    private final static String BLOCKSTAMP_KEY = "duniter.ws.block.blockstamp";
+
     private static ESLogger logger = null;
     private static BlockchainService blockchainService;
     private static CurrencyService currencyService;
@@ -187,18 +189,19 @@ public class NettyWebSocketBlockHandler extends NettyBaseWebSocketEndpoint imple
     protected void sendSourceIfNotNull(ChangeEvent event) {
 
         if (!event.hasSource()) return; // Skip
+        NettyWebSocketSession session = this.session;
+        if (session == null) return; // Closed
 
         try {
-            String sourceText = event.getSourceText();
-
-            Long number = numberAttributeParser.getValue(sourceText);
-            String hash = hashAttributeParser.getValue(sourceText);
+            // Computed once, for all sessions
+            String blockstamp = event.getOrCompute(BLOCKSTAMP_KEY, String.class, NettyWebSocketBlockHandler::getBlockstamp);
 
             // Check if not already sent
-            String blocktamp = String.format("%s-%s", number, hash);
-            if (!blocktamp.equals(this.lastBlockstampSent)) {
-                this.lastBlockstampSent = blocktamp;
-                session.sendText(sourceText);
+            if (!blockstamp.equals(this.lastBlockstampSent)) {
+                this.lastBlockstampSent = blockstamp;
+
+                // Send source bytes (without copy)
+                session.sendText(event.getSource().toChannelBuffer());
             }
 
         } catch(Throwable e) {
@@ -207,6 +210,14 @@ public class NettyWebSocketBlockHandler extends NettyBaseWebSocketEndpoint imple
 
     }
 
+    protected static String getBlockstamp(ChangeEvent event) {
+        String sourceText = event.getSourceText();
+
+        Long number = numberAttributeParser.getValue(sourceText);
+        String hash = hashAttributeParser.getValue(sourceText);
+        return String.format("%s-%s", number, hash);
+    }
+
     protected void sendJson(BytesReference bytes) {
         try {
             XContentBuilder builder = new XContentBuilder(JsonXContent.jsonXContent, new BytesStreamOutput());
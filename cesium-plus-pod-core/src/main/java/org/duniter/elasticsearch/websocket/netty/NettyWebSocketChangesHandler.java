@@ -113,7 +113,10 @@ public class NettyWebSocketChangesHandler extends NettyBaseWebSocketEndpoint imp
 
     @Override
     public void onChange(ChangeEvent changeEvent) {
-        session.sendText(ChangeEvents.toJson(changeEvent));
+        NettyWebSocketSession session = this.session;
+        if (session == null) return; // Closed
+        // JSON is computed once, and shared by all sessions
+        session.sendText(ChangeEvents.toChannelBuffer(changeEvent));
     }
 
     @Override
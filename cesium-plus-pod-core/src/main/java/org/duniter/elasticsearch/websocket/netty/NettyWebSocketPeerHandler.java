@@ -29,6 +29,7 @@ import org.duniter.core.client.model.bma.NetworkPeers;
 import org.duniter.core.client.model.bma.jackson.JacksonUtils;
 import org.duniter.core.client.model.local.Peer;
 import org.duniter.core.client.model.local.Peers;
+import org.duniter.core.exception.TechnicalException;
 import org.duniter.core.util.StringUtils;
 import org.duniter.elasticsearch.dao.PeerDao;
 import org.duniter.elasticsearch.http.netty.NettyWebSocketServer;
@@ -43,6 +44,8 @@ import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 
 import javax.websocket.CloseReason;
 import java.io.IOException;
@@ -53,6 +56,8 @@ public class NettyWebSocketPeerHandler extends NettyBaseWebSocketEndpoint implem
 
     private final static String PATH = WEBSOCKET_PATH + "/peer";
 
+    private final static String BMA_PEER_JSON_KEY = "duniter.ws.peer.json";
+
     private static ESLogger logger = null;
     private static CurrencyService currencyService;
     private static boolean isReady = false;
@@ -158,13 +163,14 @@ public class NettyWebSocketPeerHandler extends NettyBaseWebSocketEndpoint implem
     protected void sendSourceIfNotNull(ChangeEvent event) {
 
         if (!event.hasSource()) return; // Skip
+        NettyWebSocketSession session = this.session;
+        if (session == null) return; // Closed
 
         try {
-            ObjectMapper objectMapper = JacksonUtils.getThreadObjectMapper();
-            Peer peer = objectMapper.readValue(event.getSource().array(), Peer.class);
-            if (Peers.isReacheable(peer)) {
-                NetworkPeers.Peer bmaPeer = Peers.toBmaPeer(peer);
-                session.sendText(objectMapper.writeValueAsString(bmaPeer));
+            // Computed once, for all sessions
+            ChannelBuffer json = event.getOrCompute(BMA_PEER_JSON_KEY, ChannelBuffer.class, NettyWebSocketPeerHandler::toBmaPeerJson);
+            if (json.readable()) {
+                session.sendText(json.duplicate());
             }
 
         } catch(Exception e) {
@@ -173,4 +179,20 @@ public class NettyWebSocketPeerHandler extends NettyBaseWebSocketEndpoint implem
 
     }
 
+    /**
+     * Convert the peer into a BMA peer (JSON), or an empty buffer if peer is not reachable
+     */
+    protected static ChannelBuffer toBmaPeerJson(ChangeEvent event) {
+        try {
+            ObjectMapper objectMapper = JacksonUtils.getThreadObjectMapper();
+            Peer peer = objectMapper.readValue(event.getSource().streamInput(), Peer.class);
+            if (!Peers.isReacheable(peer)) return ChannelBuffers.EMPTY_BUFFER;
+
+            NetworkPeers.Peer bmaPeer = Peers.toBmaPeer(peer);
+            return ChannelBuffers.wrappedBuffer(objectMapper.writeValueAsBytes(bmaPeer));
+        } catch(IOException e) {
+            throw new TechnicalException(String.format("Unable to read peer {%s}", event.getId()), e);
+        }
+    }
+
 }
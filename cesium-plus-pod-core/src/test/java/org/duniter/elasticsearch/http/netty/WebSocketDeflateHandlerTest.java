@@ -0,0 +1,204 @@
+package org.duniter.elasticsearch.http.netty;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.duniter.elasticsearch.http.netty.websocket.WebSocketEndpointStats;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.embedder.CodecEmbedderException;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.handler.codec.http.websocketx.*;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+public class WebSocketDeflateHandlerTest {
+
+    private static final int RSV1 = 0x04;
+    private static final String TEXT = createText(10);
+
+    private final WebSocketEndpointStats stats = WebSocketEndpointStats.get("test");
+
+    @Test
+    public void negotiate() {
+        WebSocketDeflateHandler.Options options = new WebSocketDeflateHandler.Options();
+
+        Assert.assertNull(WebSocketDeflateHandler.negotiate(createRequest(null), options, stats));
+        Assert.assertNull(WebSocketDeflateHandler.negotiate(createRequest("x-webkit-deflate-frame"), options, stats));
+        Assert.assertNull(WebSocketDeflateHandler.negotiate(createRequest("permessage-deflate; unknown=1"), options, stats));
+
+        // Default: no context takeover, on both sides
+        WebSocketDeflateHandler handler = WebSocketDeflateHandler.negotiate(createRequest("permessage-deflate; client_max_window_bits"), options, stats);
+        Assert.assertNotNull(handler);
+        Assert.assertEquals("permessage-deflate; server_no_context_takeover; client_no_context_takeover", handler.getResponseHeader());
+
+        // Context takeover
+        options.contextTakeover = true;
+        handler = WebSocketDeflateHandler.negotiate(createRequest("permessage-deflate; client_max_window_bits"), options, stats);
+        Assert.assertEquals("permessage-deflate", handler.getResponseHeader());
+        handler = WebSocketDeflateHandler.negotiate(createRequest("permessage-deflate; client_no_context_takeover"), options, stats);
+        Assert.assertEquals("permessage-deflate; client_no_context_takeover", handler.getResponseHeader());
+
+        // First offer not acceptable (window bits): use the second
+        handler = WebSocketDeflateHandler.negotiate(createRequest("permessage-deflate; server_max_window_bits=10, permessage-deflate; server_max_window_bits=15"), options, stats);
+        Assert.assertEquals("permessage-deflate", handler.getResponseHeader());
+    }
+
+    @Test
+    public void roundTrip() {
+        roundTrip(false);
+        roundTrip(true);
+    }
+
+    @Test
+    public void skipSmallFrames() {
+        EncoderEmbedder<WebSocketFrame> server = new EncoderEmbedder<>(createHandler(false));
+        server.offer(new TextWebSocketFrame("small"));
+        WebSocketFrame frame = server.poll();
+        Assert.assertEquals(0, frame.getRsv() & RSV1);
+        Assert.assertEquals("small", ((TextWebSocketFrame) frame).getText());
+    }
+
+    @Test
+    public void fragmentedMessage() {
+        WebSocketDeflateHandler handler = createHandler(false);
+        ChannelBuffer compressed = handler.deflate(ChannelBuffers.copiedBuffer(TEXT, StandardCharsets.UTF_8));
+        int half = compressed.readableBytes() / 2;
+
+        DecoderEmbedder<WebSocketFrame> receiver = new DecoderEmbedder<>(createHandler(false));
+        receiver.offer(new TextWebSocketFrame(false, RSV1, compressed.slice(0, half)));
+        Assert.assertNull(receiver.poll());
+        receiver.offer(new ContinuationWebSocketFrame(false, 0, compressed.slice(half, 1)));
+        Assert.assertNull(receiver.poll());
+        receiver.offer(new ContinuationWebSocketFrame(true, 0, compressed.slice(half + 1, compressed.readableBytes() - half - 1)));
+
+        WebSocketFrame frame = receiver.poll();
+        Assert.assertTrue(frame instanceof TextWebSocketFrame);
+        Assert.assertTrue(frame.isFinalFragment());
+        Assert.assertEquals(0, frame.getRsv() & RSV1);
+        Assert.assertEquals(TEXT, ((TextWebSocketFrame) frame).getText());
+
+        // Not compressed fragments: unchanged
+        receiver.offer(new TextWebSocketFrame(false, 0, ChannelBuffers.copiedBuffer("abc", StandardCharsets.UTF_8)));
+        receiver.offer(new ContinuationWebSocketFrame(true, 0, ChannelBuffers.copiedBuffer("def", StandardCharsets.UTF_8)));
+        Assert.assertEquals("abc", ((TextWebSocketFrame) receiver.poll()).getText());
+        Assert.assertTrue(receiver.poll() instanceof ContinuationWebSocketFrame);
+    }
+
+    @Test
+    public void rejectCompressedControlFrames() {
+        assertCorrupted(new PingWebSocketFrame(true, RSV1, ChannelBuffers.EMPTY_BUFFER));
+        assertCorrupted(new CloseWebSocketFrame(true, RSV1, ChannelBuffers.EMPTY_BUFFER));
+        assertCorrupted(new ContinuationWebSocketFrame(true, RSV1, ChannelBuffers.EMPTY_BUFFER));
+
+        // Not compressed control frame: unchanged
+        DecoderEmbedder<WebSocketFrame> receiver = new DecoderEmbedder<>(createHandler(false));
+        receiver.offer(new PingWebSocketFrame(ChannelBuffers.EMPTY_BUFFER));
+        Assert.assertTrue(receiver.poll() instanceof PingWebSocketFrame);
+    }
+
+    @Test
+    public void releaseOnClose() {
+        // Without context takeover: no stream kept by the session
+        WebSocketDeflateHandler handler = createHandler(false);
+        EncoderEmbedder<WebSocketFrame> server = new EncoderEmbedder<>(handler);
+        server.offer(new TextWebSocketFrame(TEXT));
+        Assert.assertFalse(handler.hasOwnStreams());
+
+        // With context takeover: released when the channel is closed
+        handler = createHandler(true);
+        server = new EncoderEmbedder<>(handler);
+        server.offer(new TextWebSocketFrame(TEXT));
+        Assert.assertTrue(handler.hasOwnStreams());
+        server.finish();
+        Assert.assertFalse(handler.hasOwnStreams());
+
+        // Can be called again
+        handler.release();
+    }
+
+    /* -- internal methods -- */
+
+    private void roundTrip(boolean contextTakeover) {
+        EncoderEmbedder<WebSocketFrame> server = new EncoderEmbedder<>(createHandler(contextTakeover));
+        DecoderEmbedder<WebSocketFrame> client = new DecoderEmbedder<>(createHandler(contextTakeover));
+
+        for (int i = 0; i < 3; i++) {
+            server.offer(new TextWebSocketFrame(TEXT));
+            WebSocketFrame compressed = server.poll();
+            Assert.assertNotEquals(0, compressed.getRsv() & RSV1);
+            Assert.assertTrue(compressed.getBinaryData().readableBytes() < TEXT.length());
+
+            client.offer(compressed);
+            WebSocketFrame frame = client.poll();
+            Assert.assertTrue(frame instanceof TextWebSocketFrame);
+            Assert.assertEquals(0, frame.getRsv() & RSV1);
+            Assert.assertEquals(TEXT, ((TextWebSocketFrame) frame).getText());
+        }
+
+        // Binary frame
+        byte[] bytes = TEXT.getBytes(StandardCharsets.UTF_8);
+        server.offer(new BinaryWebSocketFrame(ChannelBuffers.wrappedBuffer(bytes)));
+        client.offer(server.poll());
+        WebSocketFrame frame = client.poll();
+        Assert.assertTrue(frame instanceof BinaryWebSocketFrame);
+        Assert.assertEquals(ChannelBuffers.wrappedBuffer(bytes), frame.getBinaryData());
+    }
+
+    private void assertCorrupted(WebSocketFrame frame) {
+        DecoderEmbedder<WebSocketFrame> receiver = new DecoderEmbedder<>(createHandler(false));
+        try {
+            receiver.offer(frame);
+            Assert.fail("Should reject the frame");
+        } catch (CodecEmbedderException e) {
+            Assert.assertTrue(e.getCause() instanceof CorruptedFrameException);
+        }
+    }
+
+    private WebSocketDeflateHandler createHandler(boolean contextTakeover) {
+        return new WebSocketDeflateHandler(Deflater.DEFAULT_COMPRESSION, 16, contextTakeover, contextTakeover, stats);
+    }
+
+    private static String createText(int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"number\":").append(12345 + i)
+                    .append(",\"issuer\":\"5ocqzyDMMWf1V8bsoNhWb1iNwax1e9M7VTUN6navs8of\"}");
+        }
+        return sb.append(']').toString();
+    }
+
+    private HttpRequest createRequest(String extensions) {
+        HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/ws/test");
+        if (extensions != null) request.headers().set(WebSocketDeflateHandler.EXTENSIONS_HEADER, extensions);
+        return request;
+    }
+}
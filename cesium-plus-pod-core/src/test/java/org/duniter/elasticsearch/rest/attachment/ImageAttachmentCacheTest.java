@@ -0,0 +1,87 @@
+package org.duniter.elasticsearch.rest.attachment;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.duniter.elasticsearch.service.changes.ChangeEvent;
+import org.duniter.elasticsearch.service.changes.ChangeService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImageAttachmentCacheTest {
+
+    private ImageAttachmentCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ImageAttachmentCache(1024, 3600);
+    }
+
+    @After
+    public void tearDown() {
+        ChangeService.unregisterListener(cache);
+    }
+
+    @Test
+    public void invalidateOnChange() {
+        cache.put("user", "profile", "pubkey1", "avatar", createImage(1, 100));
+        cache.put("user", "profile", "pubkey2", "avatar", createImage(1, 100));
+
+        cache.onChange(new ChangeEvent("user", "profile", "pubkey1", null, ChangeEvent.Operation.INDEX, 2, null));
+        Assert.assertNull(cache.get("user", "profile", "pubkey1", "avatar"));
+        Assert.assertNotNull(cache.get("user", "profile", "pubkey2", "avatar"));
+
+        // Image read before the change: not cached
+        cache.put("user", "profile", "pubkey1", "avatar", createImage(1, 100));
+        Assert.assertNull(cache.get("user", "profile", "pubkey1", "avatar"));
+
+        cache.put("user", "profile", "pubkey1", "avatar", createImage(2, 100));
+        Assert.assertNotNull(cache.get("user", "profile", "pubkey1", "avatar"));
+    }
+
+    @Test
+    public void watchBeforeFirstRead() {
+        // Listen changes before reading the first image of the index/type
+        cache.watch("user", "profile", "avatar");
+        Assert.assertEquals(1, cache.getChangeSources().size());
+
+        // Changed while reading: not cached
+        cache.onChange(new ChangeEvent("user", "profile", "pubkey1", null, ChangeEvent.Operation.INDEX, 2, null));
+        cache.put("user", "profile", "pubkey1", "avatar", createImage(1, 100));
+        Assert.assertNull(cache.get("user", "profile", "pubkey1", "avatar"));
+    }
+
+    @Test
+    public void clearOnOverflow() {
+        cache.put("user", "profile", "pubkey1", "avatar", createImage(1, 100));
+        cache.onOverflow();
+        Assert.assertNull(cache.get("user", "profile", "pubkey1", "avatar"));
+    }
+
+    /* -- internal methods -- */
+
+    private ImageAttachmentCache.Image createImage(long version, int length) {
+        return new ImageAttachmentCache.Image(version, "image/png", new byte[length], "\"" + version + "\"");
+    }
+}
@@ -0,0 +1,63 @@
+package org.duniter.elasticsearch.rest.attachment;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RestImageAttachmentActionTest {
+
+    private static final String CONTENT = "iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mNkYPhfDwAChwGA60e6kgAAAABJRU5ErkJggg==";
+
+    @Test
+    public void computeEtag() {
+        String etag = RestImageAttachmentAction.computeEtag(CONTENT);
+        Assert.assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+
+        // Same content (e.g. document deleted then created again): same ETag
+        Assert.assertEquals(etag, RestImageAttachmentAction.computeEtag(new String(CONTENT.toCharArray())));
+
+        // Another content: another ETag
+        Assert.assertNotEquals(etag, RestImageAttachmentAction.computeEtag(CONTENT.replace('A', 'B')));
+        Assert.assertNotNull(RestImageAttachmentAction.computeEtag(null));
+    }
+
+    @Test
+    public void notModified() {
+        String etag = RestImageAttachmentAction.computeEtag(CONTENT);
+
+        Assert.assertTrue(RestImageAttachmentAction.isNotModified(etag, etag, null, "image/png"));
+        Assert.assertTrue(RestImageAttachmentAction.isNotModified(etag, etag, "image/png", "image/png"));
+        Assert.assertTrue(RestImageAttachmentAction.isNotModified("W/" + etag, etag, null, "image/png"));
+        Assert.assertTrue(RestImageAttachmentAction.isNotModified("\"other\", " + etag, null, "image/png"));
+        Assert.assertTrue(RestImageAttachmentAction.isNotModified("*", etag, null, "image/png"));
+
+        // Modified, or no If-None-Match
+        Assert.assertFalse(RestImageAttachmentAction.isNotModified(null, etag, null, "image/png"));
+        Assert.assertFalse(RestImageAttachmentAction.isNotModified("\"other\"", etag, null, "image/png"));
+        Assert.assertFalse(RestImageAttachmentAction.isNotModified(RestImageAttachmentAction.computeEtag("other"), etag, null, "image/png"));
+
+        // Not the expected content type: never a 304 (should be an error)
+        Assert.assertFalse(RestImageAttachmentAction.isNotModified(etag, etag, "image/jpeg", "image/png"));
+    }
+}
@@ -0,0 +1,88 @@
+package org.duniter.elasticsearch.rest.security;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class QuotaMapByIpTest {
+
+    private AtomicLong now;
+    private QuotaMapByIp quota;
+
+    @Before
+    public void setUp() {
+        now = new AtomicLong(0);
+        // 5 calls per 10s
+        quota = new QuotaMapByIp("test", 5, 10, TimeUnit.SECONDS, 1000, now::get);
+    }
+
+    @Test
+    public void burstThenRefill() {
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(quota.increment("1.1.1.1"));
+        }
+        Assert.assertFalse(quota.increment("1.1.1.1"));
+        Assert.assertEquals(1, quota.getRejectedCount());
+
+        // Other IP: not limited
+        Assert.assertTrue(quota.increment("2.2.2.2"));
+
+        // One call every 2s
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        Assert.assertTrue(quota.increment("1.1.1.1"));
+        Assert.assertFalse(quota.increment("1.1.1.1"));
+
+        // Full bucket after 10s
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(quota.increment("1.1.1.1"));
+        }
+        Assert.assertFalse(quota.increment("1.1.1.1"));
+    }
+
+    @Test
+    public void rejectedCallsDoNotDelay() {
+        for (int i = 0; i < 5; i++) {
+            quota.increment("1.1.1.1");
+        }
+        for (int i = 0; i < 100; i++) {
+            Assert.assertFalse(quota.increment("1.1.1.1"));
+        }
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        Assert.assertTrue(quota.increment("1.1.1.1"));
+    }
+
+    @Test
+    public void boundedIpCount() {
+        QuotaMapByIp smallQuota = new QuotaMapByIp("test", 1, 10, TimeUnit.SECONDS, 16, now::get);
+        for (int i = 0; i < 1000; i++) {
+            smallQuota.increment("10.0.0." + i);
+        }
+        Assert.assertTrue(smallQuota.getIpCount() <= 16);
+    }
+}
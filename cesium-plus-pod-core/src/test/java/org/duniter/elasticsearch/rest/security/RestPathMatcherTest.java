@@ -0,0 +1,168 @@
+package org.duniter.elasticsearch.rest.security;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RestPathMatcherTest {
+
+    private static final Logger log = LoggerFactory.getLogger(RestPathMatcherTest.class);
+
+    private static final String CURRENCY_NAME_REGEXP = "[a-zA-Z0-9_-]+";
+
+    private static final List<String> RULES = createRules();
+
+    private static final List<String> PATHS = ImmutableList.of(
+            "/user/profile/_search",
+            "/user/profile/5ocqzyDMMWf1V8bsoNhWb1iNwax1e9M7VTUN6navs8of",
+            "/user/profile/5ocqzyDMMWf1V8bsoNhWb1iNwax1e9M7VTUN6navs8of/_image/avatar.png",
+            "/user/profile/5ocqzyDMMWf1V8bsoNhWb1iNwax1e9M7VTUN6navs8of/_update",
+            "/g1/blockchain/block/12345",
+            "/g1/blockchain/blocks/100/200",
+            "/g1/blockchain/blocks/100/abc",
+            "/g1-test/synchro/_search",
+            "/g1.test/synchro/_search",
+            "/_search/scroll",
+            "/_search/scroll/all",
+            "/node/stats",
+            "/node/stats/other",
+            "/market/record/_search",
+            "/unknown/index/_search",
+            "/",
+            "");
+
+    @Test
+    public void sameAsStringMatches() {
+        RestPathMatcher matcher = new RestPathMatcher(RULES);
+        Assert.assertEquals(0, matcher.getPatternCount());
+
+        for (String path : PATHS) {
+            boolean expected = RULES.stream().anyMatch(path::matches);
+            Assert.assertEquals("Path: " + path, expected, matcher.matches(path));
+        }
+    }
+
+    @Test
+    public void unsupportedExpressions() {
+        // Kept as patterns
+        RestPathMatcher matcher = new RestPathMatcher(ImmutableList.of("/block/\\d+", "/(?:a|b)/c", "/node/stats"));
+        Assert.assertEquals(2, matcher.getPatternCount());
+
+        Assert.assertTrue(matcher.matches("/block/123"));
+        Assert.assertFalse(matcher.matches("/block/abc"));
+        Assert.assertTrue(matcher.matches("/b/c"));
+        Assert.assertTrue(matcher.matches("/node/stats"));
+        Assert.assertFalse(matcher.matches("/node"));
+    }
+
+    @Test
+    public void toLuceneRegExp() {
+        Assert.assertEquals("\\/\\_search\\/scroll", RestPathMatcher.toLuceneRegExp("^/_search/scroll$"));
+        Assert.assertEquals("\\/[a-zA-Z0-9\\_\\-]+(\\/.*)?", RestPathMatcher.toLuceneRegExp("/" + CURRENCY_NAME_REGEXP + "(/.*)?"));
+        Assert.assertEquals("\\/a{2,3}", RestPathMatcher.toLuceneRegExp("/a{2,3}"));
+        Assert.assertNull(RestPathMatcher.toLuceneRegExp("/a\\d"));
+        Assert.assertNull(RestPathMatcher.toLuceneRegExp("/a$/b"));
+    }
+
+    /**
+     * Micro-benchmark: cost of a request check, using String.matches() on each rule vs the compiled matcher
+     */
+    @Test
+    @Ignore // Benchmark (too long)
+    public void benchmark() {
+        RestPathMatcher matcher = new RestPathMatcher(RULES);
+        int iterations = 200000;
+
+        // Warm up
+        runRegexps(iterations / 10);
+        runMatcher(matcher, iterations / 10);
+
+        long start = System.nanoTime();
+        int regexpCount = runRegexps(iterations);
+        long regexpNanos = (System.nanoTime() - start) / (iterations * PATHS.size());
+
+        start = System.nanoTime();
+        int matcherCount = runMatcher(matcher, iterations);
+        long matcherNanos = (System.nanoTime() - start) / (iterations * PATHS.size());
+
+        Assert.assertEquals(regexpCount, matcherCount);
+        log.info(String.format("%s rules - String.matches(): %s ns/request - compiled matcher: %s ns/request",
+                RULES.size(), regexpNanos, matcherNanos));
+    }
+
+    /* -- internal methods -- */
+
+    private int runRegexps(int iterations) {
+        int count = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (String path : PATHS) {
+                for (String rule : RULES) {
+                    if (path.matches(rule)) {
+                        count++;
+                        break;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private int runMatcher(RestPathMatcher matcher, int iterations) {
+        int count = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (String path : PATHS) {
+                if (matcher.matches(path)) count++;
+            }
+        }
+        return count;
+    }
+
+    private static List<String> createRules() {
+        List<String> rules = new ArrayList<>();
+        // Same rules as RestSecurityController.allowXXX()
+        for (String index : ImmutableList.of("user", "page", "group", "market", "message", "invitation", "history", "like")) {
+            for (String type : ImmutableList.of("profile", "settings", "record", "comment", "inbox", "outbox", "certification", "delete")) {
+                rules.add(String.format("/%s/%s(/.*)?", index, type));
+                rules.add(String.format("/%s/%s/_search", index, type));
+                rules.add(String.format("/%s/%s/[^/]+/_update", index, type));
+                rules.add(String.format("/%s/%s/[^/]+/_image/%s.*", index, type, "avatar"));
+            }
+        }
+        rules.add(String.format("/%s/synchro(/.*)?", CURRENCY_NAME_REGEXP));
+        rules.add("^/_search/scroll$");
+        rules.add("(/[^/]+)?/blockchain/block/[0-9]+");
+        rules.add("(/[^/]+)?/blockchain/blocks/[0-9]+/[0-9]+");
+        rules.add("(/[^/]+)?/wot/requirements/[^/]+");
+        rules.add("/node/stats");
+        rules.add("/node/summary");
+        return rules;
+    }
+}
@@ -0,0 +1,79 @@
+package org.duniter.elasticsearch.rest.share;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.duniter.elasticsearch.service.changes.ChangeEvent;
+import org.duniter.elasticsearch.service.changes.ChangeService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShareHtmlCacheTest {
+
+    private ShareHtmlCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ShareHtmlCache("user", "profile", 100, 3600);
+    }
+
+    @After
+    public void tearDown() {
+        ChangeService.unregisterListener(cache);
+    }
+
+    @Test
+    public void invalidateOnChange() {
+        long startTime = System.nanoTime();
+        cache.put("pubkey1", "<html>1</html>", startTime);
+        Assert.assertEquals("<html>1</html>", cache.get("pubkey1"));
+
+        cache.onChange(new ChangeEvent("user", "profile", "pubkey1", null, ChangeEvent.Operation.INDEX, 2, null));
+        Assert.assertNull(cache.get("pubkey1"));
+
+        // Rendered before the change: not cached
+        cache.put("pubkey1", "<html>1</html>", startTime);
+        Assert.assertNull(cache.get("pubkey1"));
+
+        // Rendered after the change
+        cache.put("pubkey1", "<html>2</html>", System.nanoTime());
+        Assert.assertEquals("<html>2</html>", cache.get("pubkey1"));
+    }
+
+    @Test
+    public void clearOnOverflow() {
+        long startTime = System.nanoTime();
+        cache.put("pubkey1", "<html>1</html>", startTime);
+
+        cache.onOverflow();
+        Assert.assertNull(cache.get("pubkey1"));
+
+        // Rendered before the overflow: not cached
+        cache.put("pubkey2", "<html>2</html>", startTime);
+        Assert.assertNull(cache.get("pubkey2"));
+
+        cache.put("pubkey2", "<html>2</html>", System.nanoTime());
+        Assert.assertEquals("<html>2</html>", cache.get("pubkey2"));
+    }
+}
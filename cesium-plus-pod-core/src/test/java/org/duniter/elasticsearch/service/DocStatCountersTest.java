@@ -0,0 +1,139 @@
+package org.duniter.elasticsearch.service;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.duniter.elasticsearch.service.changes.ChangeEvent;
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DocStatCountersTest {
+
+    private DocStatCounters counters;
+
+    @Before
+    public void setUp() {
+        counters = new DocStatCounters();
+        Assert.assertTrue(counters.add("user", "profile"));
+        Assert.assertFalse(counters.add("user", "profile"));
+        Assert.assertTrue(counters.add("market", null));
+        Assert.assertEquals(2, counters.getChangeSources().size());
+    }
+
+    @Test
+    public void countChanges() {
+        // Not reconciled yet
+        Assert.assertNull(counters.get("user", "profile"));
+        Assert.assertTrue(counters.reconcile("user", "profile", 10, counters.getSequence("user", "profile")));
+        Assert.assertEquals(Long.valueOf(10), counters.get("user", "profile"));
+
+        counters.onChange(change("user", "profile", "1", ChangeEvent.Operation.CREATE, 1));
+        Assert.assertEquals(Long.valueOf(11), counters.get("user", "profile"));
+
+        // Update (or index with an external version): no change
+        counters.onChange(change("user", "profile", "2", ChangeEvent.Operation.INDEX, 1));
+        counters.onChange(change("user", "profile", "2", ChangeEvent.Operation.INDEX, 2));
+        Assert.assertEquals(Long.valueOf(11), counters.get("user", "profile"));
+
+        counters.onChange(change("user", "profile", "1", ChangeEvent.Operation.DELETE, 2));
+        Assert.assertEquals(Long.valueOf(10), counters.get("user", "profile"));
+
+        // Delete a missing document: ignored
+        counters.onChange(change("user", "profile", "3", ChangeEvent.Operation.DELETE, 1, true, false));
+        Assert.assertEquals(Long.valueOf(10), counters.get("user", "profile"));
+
+        // Replica: ignored
+        counters.onChange(change("user", "profile", "4", ChangeEvent.Operation.CREATE, 1, false, true));
+        Assert.assertEquals(Long.valueOf(10), counters.get("user", "profile"));
+
+        // Another type: ignored
+        counters.onChange(change("user", "settings", "1", ChangeEvent.Operation.CREATE, 1));
+        Assert.assertEquals(Long.valueOf(10), counters.get("user", "profile"));
+    }
+
+    @Test
+    public void countAllTypes() {
+        Assert.assertTrue(counters.reconcile("market", null, 0, 0));
+        counters.onChange(change("market", "record", "1", ChangeEvent.Operation.CREATE, 1));
+        counters.onChange(change("market", "comment", "1", ChangeEvent.Operation.CREATE, 1));
+        Assert.assertEquals(Long.valueOf(2), counters.get("market", null));
+    }
+
+    @Test
+    public void rejectChangesDuringCount() {
+        long sequence = counters.getSequence("user", "profile");
+
+        // Created while counting (may be seen, or not, by the count)
+        counters.onChange(change("user", "profile", "1", ChangeEvent.Operation.CREATE, 1));
+        Assert.assertFalse(counters.reconcile("user", "profile", 5, sequence));
+        Assert.assertNull(counters.get("user", "profile"));
+
+        // Updates only: the count is still valid
+        sequence = counters.getSequence("user", "profile");
+        counters.onChange(change("user", "profile", "1", ChangeEvent.Operation.INDEX, 2));
+        Assert.assertTrue(counters.reconcile("user", "profile", 6, sequence));
+        Assert.assertEquals(Long.valueOf(6), counters.get("user", "profile"));
+    }
+
+    @Test
+    public void clearChanged() {
+        Assert.assertFalse(counters.clearChanged("user", "profile"));
+
+        counters.onChange(change("user", "profile", "1", ChangeEvent.Operation.INDEX, 2));
+        Assert.assertTrue(counters.clearChanged("user", "profile"));
+        Assert.assertFalse(counters.clearChanged("user", "profile"));
+
+        // Unknown index/type: always changed
+        Assert.assertTrue(counters.clearChanged("user", "unknown"));
+    }
+
+    @Test
+    public void overflow() {
+        Assert.assertTrue(counters.reconcile("user", "profile", 10, 0));
+        long sequence = counters.getSequence("user", "profile");
+        Assert.assertFalse(counters.clearOverflow());
+
+        // Changes dropped: counters not reliable, until reconciled
+        counters.onOverflow();
+        Assert.assertNull(counters.get("user", "profile"));
+        Assert.assertTrue(counters.clearOverflow());
+        Assert.assertFalse(counters.clearOverflow());
+
+        // Count started before the overflow: rejected
+        Assert.assertFalse(counters.reconcile("user", "profile", 11, sequence));
+        Assert.assertTrue(counters.reconcile("user", "profile", 12, counters.getSequence("user", "profile")));
+        Assert.assertEquals(Long.valueOf(12), counters.get("user", "profile"));
+    }
+
+    /* -- internal methods -- */
+
+    private ChangeEvent change(String index, String type, String id, ChangeEvent.Operation operation, long version) {
+        return change(index, type, id, operation, version, true, true);
+    }
+
+    private ChangeEvent change(String index, String type, String id, ChangeEvent.Operation operation, long version,
+                               boolean primary, boolean found) {
+        return new ChangeEvent(index, type, id, new DateTime(), operation, version, null, primary, found);
+    }
+}
@@ -0,0 +1,404 @@
+package org.duniter.elasticsearch.service;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.duniter.elasticsearch.PluginSettings;
+import org.duniter.elasticsearch.dao.DocStatDao;
+import org.duniter.elasticsearch.dao.handler.StringReaderHandler;
+import org.duniter.elasticsearch.model.DocStat;
+import org.duniter.elasticsearch.service.changes.ChangeEvent;
+import org.duniter.elasticsearch.service.changes.ChangeService;
+import org.duniter.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Doc stats computation, using a stubbed DAO (no index)
+ */
+public class DocStatServiceCountTest {
+
+    private static final QueryBuilder QUERY = QueryBuilders.termQuery("kind", "test");
+
+    private StubDocStatDao dao;
+    private DocStatService service;
+
+    @After
+    public void tearDown() {
+        if (service != null) ChangeService.unregisterListener(service.getCounters());
+    }
+
+    @Test
+    public void snapshotKeys() {
+        service = createService(false);
+        service.registerIndex("user", "profile");
+        service.registerIndex("market", null);
+        service.registerIndex("market", "record", "market_test", QUERY, null);
+        service.registerIndex("page", "record", null, QUERY, null);
+        dao.setCount("user", "profile", null, 10);
+        dao.setCount("market", null, null, 20);
+        dao.setCount("market", "record", QUERY, 5);
+        dao.setCount("page", "record", QUERY, 7);
+
+        service.refreshStats(1000);
+
+        // Same order as registration, no 'null' in keys
+        Map<String, DocStat> stats = service.getLastStats();
+        Assert.assertEquals(Arrays.asList("user/profile/user_profile", "market/*/market", "market/record/market_test", "page/record/*"),
+                new ArrayList<>(stats.keySet()));
+        Assert.assertEquals(10, stats.get("user/profile/user_profile").getCount());
+        Assert.assertEquals("user_profile", stats.get("user/profile/user_profile").getQueryName());
+        Assert.assertEquals(20, stats.get("market/*/market").getCount());
+        Assert.assertEquals(5, stats.get("market/record/market_test").getCount());
+        Assert.assertEquals(7, stats.get("page/record/*").getCount());
+        Assert.assertEquals(1000, stats.get("page/record/*").getTime());
+    }
+
+    @Test
+    public void partialCountFailure() {
+        service = createService(false);
+        service.registerIndex("user", "profile");
+        service.registerIndex("user", "settings");
+        dao.setCount("user", "profile", null, 10);
+
+        // Failed count on user/settings: not in the snapshot
+        service.refreshStats(1000);
+        Assert.assertEquals(Collections.singleton("user/profile/user_profile"), service.getLastStats().keySet());
+
+        dao.setCount("user", "settings", null, 3);
+        service.refreshStats(2000);
+        Assert.assertEquals(2, service.getLastStats().size());
+
+        // Failed again: keep the previous stat
+        dao.removeCount("user", "settings", null);
+        dao.setCount("user", "profile", null, 11);
+        service.refreshStats(3000);
+        Assert.assertEquals(11, service.getLastStats().get("user/profile/user_profile").getCount());
+        Assert.assertEquals(3, service.getLastStats().get("user/settings/user_settings").getCount());
+        Assert.assertEquals(2000, service.getLastStats().get("user/settings/user_settings").getTime());
+    }
+
+    @Test
+    public void neverCountOnRequest() throws Exception {
+        service = createService(false);
+        service.registerIndex("user", "profile");
+
+        // All counts fail
+        Assert.assertTrue(service.getLastStats().isEmpty());
+        waitUntil(() -> dao.countCalls.get() == 1);
+
+        // Not computed again by requests
+        Assert.assertTrue(service.getLastStats().isEmpty());
+        dao.setCount("user", "profile", null, 10);
+        Assert.assertTrue(service.getLastStats().isEmpty());
+        Thread.sleep(100);
+        Assert.assertEquals(1, dao.countCalls.get());
+
+        // Next computation
+        service.refreshStats(1000);
+        Assert.assertEquals(10, service.getLastStats().get("user/profile/user_profile").getCount());
+    }
+
+    @Test
+    public void incrementalCounts() {
+        service = createService(true);
+        service.registerIndex("user", "profile", "user_active", QUERY, null);
+        service.registerIndex("user", "profile");
+        dao.setCount("user", "profile", null, 10);
+        dao.setCount("user", "profile", QUERY, 4);
+
+        // First computation: count all
+        service.refreshStats(100000);
+        Assert.assertEquals(2, dao.countedKeys.size());
+        Assert.assertEquals(Arrays.asList("user/profile/user_active", "user/profile/user_profile"),
+                new ArrayList<>(service.getLastStats().keySet()));
+
+        // Changed: count the named query only
+        dao.countedKeys.clear();
+        createDocs(2);
+        dao.setCount("user", "profile", QUERY, 5);
+        Assert.assertEquals(12, service.getLastStats().get("user/profile/user_profile").getCount()); // live counter
+        service.refreshStats(100060);
+        Assert.assertEquals(Collections.singletonList(StubDocStatDao.computeKey("user", "profile", QUERY)), dao.countedKeys);
+        Assert.assertEquals(12, service.getLastStats().get("user/profile/user_profile").getCount());
+        Assert.assertEquals(5, service.getLastStats().get("user/profile/user_active").getCount());
+
+        // Not changed: no count
+        dao.countedKeys.clear();
+        service.refreshStats(100120);
+        Assert.assertTrue(dao.countedKeys.isEmpty());
+        Assert.assertEquals(Arrays.asList("user/profile/user_active", "user/profile/user_profile"),
+                new ArrayList<>(service.getLastStats().keySet()));
+    }
+
+    @Test
+    public void incrementalReconcile() {
+        service = createService(true);
+        service.registerIndex("user", "profile", "user_active", QUERY, null);
+        service.registerIndex("user", "profile");
+        dao.setCount("user", "profile", null, 10);
+        dao.setCount("user", "profile", QUERY, 4);
+        service.refreshStats(100000);
+
+        // Changed before the reconciliation: not counted again after it
+        createDocs(1);
+        dao.setCount("user", "profile", null, 11);
+        dao.setCount("user", "profile", QUERY, 5);
+        dao.countedKeys.clear();
+        service.refreshStats(103600);
+        Assert.assertEquals(2, dao.countedKeys.size());
+        dao.countedKeys.clear();
+        service.refreshStats(103660);
+        Assert.assertTrue(dao.countedKeys.isEmpty());
+
+        // Changed during the reconciliation: counted again, and the named query is counted next time
+        dao.onCount = () -> {
+            dao.onCount = null;
+            createDocs(1);
+            dao.setCount("user", "profile", null, 12);
+        };
+        dao.countCalls.set(0);
+        dao.refreshCalls.set(0);
+        service.refreshStats(107200);
+        Assert.assertEquals(2, dao.countCalls.get());
+        Assert.assertEquals(2, dao.refreshCalls.get());
+        Assert.assertEquals(12, service.getLastStats().get("user/profile/user_profile").getCount());
+        dao.countedKeys.clear();
+        service.refreshStats(107260);
+        Assert.assertEquals(Collections.singletonList(StubDocStatDao.computeKey("user", "profile", QUERY)), dao.countedKeys);
+        Assert.assertEquals(12, service.getLastStats().get("user/profile/user_profile").getCount());
+    }
+
+    @Test
+    public void incrementalReconcileNeverStable() {
+        service = createService(true);
+        service.registerIndex("user", "profile");
+        dao.setCount("user", "profile", null, 10);
+
+        // Always changed while counting: not reconciled, the count is used
+        dao.onCount = () -> createDocs(1);
+        service.refreshStats(100000);
+        Assert.assertEquals(3, dao.countCalls.get());
+        Assert.assertEquals(10, service.getLastStats().get("user/profile/user_profile").getCount());
+
+        // Counted again next time
+        dao.onCount = null;
+        dao.countedKeys.clear();
+        service.refreshStats(100060);
+        Assert.assertEquals(1, dao.countedKeys.size());
+        Assert.assertEquals(10, service.getLastStats().get("user/profile/user_profile").getCount());
+
+        // Reconciled: live counter
+        createDocs(1);
+        Assert.assertEquals(11, service.getLastStats().get("user/profile/user_profile").getCount());
+    }
+
+    @Test
+    public void incrementalOverflow() {
+        service = createService(true);
+        service.registerIndex("user", "profile", "user_active", QUERY, null);
+        service.registerIndex("user", "profile");
+        dao.setCount("user", "profile", null, 10);
+        dao.setCount("user", "profile", QUERY, 4);
+        service.refreshStats(100000);
+
+        // Changes dropped: live counter not used, then count all
+        createDocs(1);
+        service.getCounters().onOverflow();
+        Assert.assertEquals(10, service.getLastStats().get("user/profile/user_profile").getCount());
+
+        dao.setCount("user", "profile", null, 15);
+        dao.countedKeys.clear();
+        service.refreshStats(100060);
+        Assert.assertEquals(2, dao.countedKeys.size());
+        Assert.assertEquals(15, service.getLastStats().get("user/profile/user_profile").getCount());
+    }
+
+    /* -- internal methods -- */
+
+    protected void createDocs(int count) {
+        for (int i = 0; i < count; i++) {
+            service.getCounters().onChange(new ChangeEvent("user", "profile", UUID.randomUUID().toString(), new DateTime(),
+                    ChangeEvent.Operation.CREATE, 1, null));
+        }
+    }
+
+    protected DocStatService createService(boolean incremental) {
+        Settings settings = Settings.settingsBuilder()
+                .put("duniter.stats.incremental.enable", incremental)
+                .put("duniter.stats.incremental.reconcileIntervalInSec", 3600)
+                .build();
+        dao = new StubDocStatDao();
+        return new DocStatService(null, new PluginSettings(settings, null), new ThreadPool(settings, null, null), dao);
+    }
+
+    protected void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Timeout", System.currentTimeMillis() < timeout);
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    /**
+     * Return the configured counts (null if not configured, as a failed count)
+     */
+    protected static class StubDocStatDao implements DocStatDao {
+        private final Map<String, Long> counts = new ConcurrentHashMap<>();
+        private final List<String> preparedKeys = new ArrayList<>();
+        final AtomicInteger countCalls = new AtomicInteger();
+        final AtomicInteger refreshCalls = new AtomicInteger();
+        final List<String> countedKeys = new ArrayList<>();
+        Runnable onCount;
+
+        void setCount(String index, String type, QueryBuilder query, long count) {
+            counts.put(computeKey(index, type, query), count);
+        }
+
+        void removeCount(String index, String type, QueryBuilder query) {
+            counts.remove(computeKey(index, type, query));
+        }
+
+        @Override
+        public SearchRequestBuilder prepareCountDoc(String index, String type, QueryBuilder query) {
+            preparedKeys.add(computeKey(index, type, query));
+            return null;
+        }
+
+        @Override
+        public Long[] countDocs(List<SearchRequestBuilder> requests) {
+            Assert.assertEquals(preparedKeys.size(), requests.size());
+            countCalls.incrementAndGet();
+            countedKeys.addAll(preparedKeys);
+            if (onCount != null) onCount.run();
+            Long[] result = preparedKeys.stream().map(counts::get).toArray(Long[]::new);
+            preparedKeys.clear();
+            return result;
+        }
+
+        @Override
+        public void refreshIndices(String... indices) {
+            refreshCalls.incrementAndGet();
+        }
+
+        @Override
+        public long countDoc(String index, String type) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long countDoc(String index, String type, QueryBuilder queryBuilder) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IndexRequestBuilder prepareIndex(DocStat stat) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public DocStatDao createIndexIfNotExists() {
+            return this;
+        }
+
+        @Override
+        public DocStatDao deleteIndex() {
+            return this;
+        }
+
+        @Override
+        public String getIndex() {
+            return INDEX;
+        }
+
+        @Override
+        public boolean existsIndex() {
+            return true;
+        }
+
+        @Override
+        public XContentBuilder createTypeMapping() {
+            return null;
+        }
+
+        @Override
+        public String getType() {
+            return TYPE;
+        }
+
+        @Override
+        public boolean isExists(String docId) {
+            return false;
+        }
+
+        @Override
+        public Object getFieldById(String docId, String fieldName) {
+            return null;
+        }
+
+        @Override
+        public Map<String, Object> getFieldsById(String docId, String... fieldNames) {
+            return null;
+        }
+
+        @Override
+        public <B> B getTypedFieldById(String docId, String fieldName) {
+            return null;
+        }
+
+        @Override
+        public Map<String, Object> getMandatoryFieldsById(String docId, String... fieldNames) {
+            return null;
+        }
+
+        @Override
+        public void bulkFromClasspathFile(String classpathFile) {
+        }
+
+        @Override
+        public void bulkFromClasspathFile(String classpathFile, StringReaderHandler handler) {
+        }
+
+        @Override
+        public long count(QueryBuilder query) {
+            return 0;
+        }
+
+        static String computeKey(String index, String type, QueryBuilder query) {
+            return index + '/' + type + '/' + (query != null ? query.toString() : "*");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.duniter.elasticsearch.service;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.duniter.core.client.model.local.Peer;
+import org.duniter.core.client.service.HttpService;
+import org.duniter.core.client.service.HttpServiceImpl;
+import org.duniter.core.test.TestResource;
+import org.junit.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Check HttpService returns an open stream (not consumed, not closed) when asking for an InputStream,
+ * as used by BlockchainService to download blocks.
+ */
+public class HttpServiceStreamTest {
+
+    @ClassRule
+    public static TestResource testResource = org.duniter.elasticsearch.TestResource.create();
+
+    private static final String BODY = "[{\"number\":0,\"hash\":\"H0\"},{\"number\":1,\"previousHash\":\"H0\",\"hash\":\"H1\"}]";
+
+    private HttpService service;
+    private HttpServer server;
+    private Peer peer;
+
+    @Before
+    public void setUp() throws Exception {
+        service = ServiceLocator.instance().getBean(HttpService.class);
+        ((HttpServiceImpl)service).afterPropertiesSet();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/blockchain/blocks", exchange -> {
+            byte[] bytes = BODY.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        });
+        server.start();
+
+        peer = Peer.newBuilder().setHost("localhost").setPort(server.getAddress().getPort()).build();
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) server.stop(0);
+    }
+
+    @Test
+    public void executeRequestAsStream() throws IOException {
+        InputStream content = service.executeRequest(peer, "/blockchain/blocks/2/0", InputStream.class);
+        Assert.assertNotNull(content);
+
+        // Stream must be open, and not consumed
+        try (InputStream is = content) {
+            Assert.assertEquals(BODY, IOUtils.toString(is, StandardCharsets.UTF_8));
+        }
+
+        // Closing must release the connection: next requests should succeed
+        for (int i = 0; i < 5; i++) {
+            try (InputStream is = service.executeRequest(peer, "/blockchain/blocks/2/0", InputStream.class)) {
+                Assert.assertEquals(BODY, IOUtils.toString(is, StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.duniter.elasticsearch.service;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.hash.Hashing;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class VerifiedSignatureCacheTest {
+
+    private static final String ISSUER = "5ocqzyDMMWf1V8bsoNhWb1iNwax1e9M7VTUN6navs8of";
+    private static final String DOCUMENT = "{\"title\":\"Test\",\"issuer\":\"" + ISSUER + "\",\"time\":1500000000}";
+
+    private VerifiedSignatureCache cache;
+    private AtomicInteger verifyCount;
+
+    @Before
+    public void setUp() {
+        cache = new VerifiedSignatureCache(100);
+        verifyCount = new AtomicInteger();
+    }
+
+    @Test
+    public void resyncedDocument() {
+        String signature = sign(DOCUMENT);
+
+        // First received (e.g. from a client)
+        Assert.assertTrue(verify(DOCUMENT, signature, ISSUER));
+
+        // Same document, received again from peers: no crypto verification
+        Assert.assertTrue(verify(DOCUMENT, signature, ISSUER));
+        Assert.assertTrue(verify(new String(DOCUMENT.toCharArray()), signature, ISSUER));
+        Assert.assertEquals(1, verifyCount.get());
+    }
+
+    @Test
+    public void modifiedDocument() {
+        String signature = sign(DOCUMENT);
+        Assert.assertTrue(verify(DOCUMENT, signature, ISSUER));
+
+        // Same signature, on another content: verified again (and rejected)
+        String modified = DOCUMENT.replace("Test", "Modified");
+        Assert.assertFalse(verify(modified, signature, ISSUER));
+        Assert.assertFalse(verify(modified, signature, ISSUER));
+        Assert.assertEquals(3, verifyCount.get());
+
+        // Same content and signature, another issuer: verified again
+        Assert.assertFalse(verify(DOCUMENT, signature, "OTHER"));
+        Assert.assertEquals(4, verifyCount.get());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    /* -- internal methods -- */
+
+    private boolean verify(String document, String signature, String issuer) {
+        return cache.verify(hash(document), signature, issuer, () -> {
+            verifyCount.incrementAndGet();
+            return signature.equals(sign(document)) && ISSUER.equals(issuer);
+        });
+    }
+
+    private static String hash(String document) {
+        return Hashing.sha256().hashString(document, StandardCharsets.UTF_8).toString().toUpperCase();
+    }
+
+    // Fake signature, for test only
+    private static String sign(String document) {
+        return "SIG:" + hash(document);
+    }
+}
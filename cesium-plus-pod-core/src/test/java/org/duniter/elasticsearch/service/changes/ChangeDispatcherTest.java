@@ -0,0 +1,313 @@
+package org.duniter.elasticsearch.service.changes;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableList;
+import org.elasticsearch.common.settings.Settings;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+public class ChangeDispatcherTest {
+
+    /**
+     * Listener that hold the first event, until released
+     */
+    private static class TestListener implements ChangeService.ChangeListener {
+        private final String id;
+        private final ChangeDispatcher.OverflowPolicy policy;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final List<String> received = new CopyOnWriteArrayList<>();
+        private final AtomicInteger overflowCount = new AtomicInteger();
+        private Consumer<ChangeEvent> action;
+
+        TestListener(String id, ChangeDispatcher.OverflowPolicy policy) {
+            this.id = id;
+            this.policy = policy;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public void onChange(ChangeEvent change) {
+            started.countDown();
+            try {
+                released.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (action != null) action.accept(change);
+            received.add(change.getId() + ":" + change.getVersion());
+        }
+
+        @Override
+        public Collection<ChangeSource> getChangeSources() {
+            return ImmutableList.of(new ChangeSource("*", null));
+        }
+
+        @Override
+        public ChangeDispatcher.OverflowPolicy getOverflowPolicy() {
+            return policy;
+        }
+
+        @Override
+        public void onOverflow() {
+            overflowCount.incrementAndGet();
+        }
+
+        void awaitStarted() throws InterruptedException {
+            Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+
+    private static final long RELOADED_VERSION = 99;
+
+    private ChangeDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) dispatcher.close();
+    }
+
+    @Test
+    public void dropOldest() throws Exception {
+        dispatcher = createDispatcher(2, 1000);
+        TestListener listener = register(ChangeDispatcher.OverflowPolicy.DROP_OLDEST);
+
+        dispatch(listener, "A", 1);
+        listener.awaitStarted();
+        dispatch(listener, "B", 1);
+        dispatch(listener, "C", 1);
+        dispatch(listener, "D", 1); // B is dropped
+
+        listener.release();
+        waitUntil(() -> listener.received.size() == 3);
+        Assert.assertEquals(ImmutableList.of("A:1", "C:1", "D:1"), listener.received);
+        Assert.assertEquals(1L, (long)dispatcher.getStatistics().get("dropped"));
+        Assert.assertEquals(1, listener.overflowCount.get());
+    }
+
+    @Test
+    public void coalesce() throws Exception {
+        dispatcher = createDispatcher(2, 1000);
+        TestListener listener = register(ChangeDispatcher.OverflowPolicy.COALESCE);
+
+        dispatch(listener, "A", 1);
+        listener.awaitStarted();
+        dispatch(listener, "A", 2);
+        dispatch(listener, "B", 1);
+        dispatch(listener, "A", 3); // Replace A:2
+        dispatch(listener, "C", 1); // Queue full: B is dropped
+
+        listener.release();
+        waitUntil(() -> listener.received.size() == 3);
+        Assert.assertEquals(ImmutableList.of("A:1", "A:3", "C:1"), listener.received);
+        Assert.assertEquals(1L, (long)dispatcher.getStatistics().get("coalesced"));
+        Assert.assertEquals(1L, (long)dispatcher.getStatistics().get("dropped"));
+        Assert.assertEquals(1, listener.overflowCount.get());
+    }
+
+    @Test
+    public void blockThenSpill() throws Exception {
+        dispatcher = createDispatcher(1, 100);
+        TestListener listener = register(ChangeDispatcher.OverflowPolicy.BLOCK);
+
+        dispatch(listener, "A", 1);
+        listener.awaitStarted();
+        dispatch(listener, "B", 1);
+
+        // Queue still full after the timeout: the new event is kept without source
+        long start = System.currentTimeMillis();
+        dispatch(listener, "C", 1);
+        Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+
+        // Next events: no more wait, until the listener caught up
+        dispatch(listener, "D", 1);
+        dispatch(listener, "deleted", 1);
+        Assert.assertEquals(1L, (long)dispatcher.getStatistics().get("blocked"));
+        Assert.assertEquals(3L, (long)dispatcher.getStatistics().get("spilled"));
+        Assert.assertEquals(0L, (long)dispatcher.getStatistics().get("dropped"));
+        Assert.assertEquals(4L, (long)dispatcher.getStatistics().get("pending"));
+        Assert.assertEquals(0, listener.overflowCount.get());
+
+        // Reloaded (a deleted document is skipped)
+        listener.release();
+        waitUntil(() -> listener.received.size() == 4);
+        waitUntil(() -> dispatcher.getStatistics().get("pending") == 0L);
+        Assert.assertEquals(ImmutableList.of("A:1", "B:1", "C:" + RELOADED_VERSION, "D:" + RELOADED_VERSION), listener.received);
+    }
+
+    @Test
+    public void blockUntilConsumed() throws Exception {
+        dispatcher = createDispatcher(1, 10000);
+        TestListener listener = register(ChangeDispatcher.OverflowPolicy.BLOCK);
+
+        dispatch(listener, "A", 1);
+        listener.awaitStarted();
+        dispatch(listener, "B", 1);
+
+        // Release the listener while waiting
+        new Thread(() -> {
+            sleep(50);
+            listener.release();
+        }).start();
+        dispatch(listener, "C", 1);
+
+        waitUntil(() -> listener.received.size() == 3);
+        Assert.assertEquals(ImmutableList.of("A:1", "B:1", "C:1"), listener.received);
+        Assert.assertEquals(0L, (long)dispatcher.getStatistics().get("dropped"));
+    }
+
+    @Test
+    public void neverBlockDispatcherThread() throws Exception {
+        dispatcher = createDispatcher(1, 10000);
+        TestListener target = register(ChangeDispatcher.OverflowPolicy.BLOCK);
+        dispatch(target, "A", 1);
+        target.awaitStarted();
+        dispatch(target, "B", 1);
+
+        // A listener that emit changes to the full listener, from a dispatcher thread
+        TestListener relay = new TestListener("relay", ChangeDispatcher.OverflowPolicy.DROP_OLDEST);
+        relay.action = change -> dispatch(target, change.getId(), change.getVersion());
+        relay.release();
+        dispatcher.register(relay);
+
+        long start = System.currentTimeMillis();
+        dispatch(relay, "C", 1);
+        waitUntil(() -> relay.received.size() == 1);
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(1L, (long)dispatcher.getStatistics().get("spilled"));
+        Assert.assertEquals(0L, (long)dispatcher.getStatistics().get("dropped"));
+
+        target.release();
+        waitUntil(() -> target.received.size() == 3);
+        Assert.assertEquals(ImmutableList.of("A:1", "B:1", "C:" + RELOADED_VERSION), target.received);
+    }
+
+    @Test
+    public void awaitDelivered() throws Exception {
+        dispatcher = createDispatcher(10, 1000);
+        TestListener listener = register(ChangeDispatcher.OverflowPolicy.DROP_OLDEST);
+        Assert.assertTrue(dispatcher.awaitDelivered(listener, 10));
+
+        dispatch(listener, "A", 1);
+        listener.awaitStarted();
+        dispatch(listener, "B", 1);
+
+        // Still running
+        Assert.assertFalse(dispatcher.awaitDelivered(listener, 50));
+
+        new Thread(() -> {
+            sleep(50);
+            listener.release();
+        }).start();
+        Assert.assertTrue(dispatcher.awaitDelivered(listener, 10000));
+        Assert.assertEquals(ImmutableList.of("A:1", "B:1"), listener.received);
+    }
+
+    @Test
+    public void close() throws Exception {
+        dispatcher = createDispatcher(10, 1000);
+        TestListener listener = register(ChangeDispatcher.OverflowPolicy.DROP_OLDEST);
+
+        dispatch(listener, "A", 1);
+        listener.awaitStarted();
+        dispatch(listener, "B", 1);
+        dispatch(listener, "C", 1);
+
+        // Pending events are dropped, the running one is finished
+        new Thread(() -> {
+            sleep(50);
+            listener.release();
+        }).start();
+        dispatcher.close();
+        Assert.assertTrue(dispatcher.isClosed());
+
+        // Ignored after close
+        dispatch(listener, "D", 1);
+        Assert.assertEquals(0L, (long)dispatcher.getStatistics().get("pending"));
+        Assert.assertEquals(0L, (long)dispatcher.getStatistics().get("listeners"));
+        Assert.assertEquals(ImmutableList.of("A:1"), listener.received);
+        Assert.assertEquals(2L, (long)dispatcher.getStatistics().get("dropped"));
+        Assert.assertEquals(1, listener.overflowCount.get());
+    }
+
+    /* -- internal methods -- */
+
+    private ChangeDispatcher createDispatcher(int queueSize, long blockTimeout) {
+        return new ChangeDispatcher(Settings.settingsBuilder()
+                .put(ChangeDispatcher.SETTING_THREADS, 2)
+                .put(ChangeDispatcher.SETTING_QUEUE_SIZE, queueSize)
+                .put(ChangeDispatcher.SETTING_BLOCK_TIMEOUT, blockTimeout)
+                .build(),
+                // Simulate a reload from the index
+                change -> "deleted".equals(change.getId()) ? null :
+                        new ChangeEvent(change.getIndex(), change.getType(), change.getId(), change.getTimestamp(),
+                                change.getOperation(), RELOADED_VERSION, null));
+    }
+
+    private TestListener register(ChangeDispatcher.OverflowPolicy policy) {
+        TestListener listener = new TestListener(policy.name(), policy);
+        dispatcher.register(listener);
+        return listener;
+    }
+
+    private void dispatch(TestListener listener, String id, long version) {
+        dispatcher.dispatch(ImmutableList.of(listener),
+                new ChangeEvent("index", "type", id, new DateTime(), ChangeEvent.Operation.INDEX, version, null));
+    }
+
+    private void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Timeout", System.currentTimeMillis() < timeout);
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
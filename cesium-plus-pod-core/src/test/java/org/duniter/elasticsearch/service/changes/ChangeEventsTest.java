@@ -0,0 +1,84 @@
+package org.duniter.elasticsearch.service.changes;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ChangeEventsTest {
+
+    private ChangeEvent event;
+
+    @Before
+    public void setUp() {
+        event = new ChangeEvent("user", "profile", "ABC", new DateTime(0), ChangeEvent.Operation.INDEX, 2,
+                new BytesArray("{\"title\":\"Test\"}"));
+    }
+
+    @Test
+    public void toChannelBufferOnce() {
+        ChannelBuffer buffer1 = ChangeEvents.toChannelBuffer(event);
+        ChannelBuffer buffer2 = ChangeEvents.toChannelBuffer(event);
+
+        // Same content, same JSON as toJson()
+        Assert.assertEquals(ChangeEvents.toJson(event), buffer1.toString(StandardCharsets.UTF_8));
+        Assert.assertEquals(buffer1, buffer2);
+
+        // Independent indexes
+        buffer1.skipBytes(buffer1.readableBytes());
+        Assert.assertFalse(buffer1.readable());
+        Assert.assertTrue(buffer2.readable());
+        Assert.assertTrue(ChangeEvents.toChannelBuffer(event).readable());
+    }
+
+    @Test
+    public void getOrCompute() {
+        AtomicInteger computeCount = new AtomicInteger();
+
+        Assert.assertEquals("ABC-2", event.getOrCompute("key", String.class, e -> {
+            computeCount.incrementAndGet();
+            return e.getId() + "-" + e.getVersion();
+        }));
+        Assert.assertEquals("ABC-2", event.getOrCompute("key", String.class, e -> {
+            computeCount.incrementAndGet();
+            return "other";
+        }));
+        Assert.assertEquals(1, computeCount.get());
+
+        // Same key, another type: not shared
+        Assert.assertEquals(Long.valueOf(2), event.getOrCompute("key", Long.class, ChangeEvent::getVersion));
+    }
+
+    @Test
+    public void getSourceText() {
+        Assert.assertEquals("{\"title\":\"Test\"}", event.getSourceText());
+        Assert.assertSame(event.getSourceText(), event.getSourceText());
+    }
+}
@@ -0,0 +1,111 @@
+package org.duniter.elasticsearch.service.changes;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class ChangeRouterTest {
+
+    private static class TestListener implements ChangeService.ChangeListener {
+        private final String id;
+        private List<ChangeSource> sources;
+
+        TestListener(String id, String... sources) {
+            this.id = id;
+            setSources(sources);
+        }
+
+        void setSources(String... sources) {
+            this.sources = new ArrayList<>();
+            for (String source: sources) {
+                this.sources.add(new ChangeSource(source));
+            }
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public void onChange(ChangeEvent change) {
+        }
+
+        @Override
+        public Collection<ChangeSource> getChangeSources() {
+            return sources;
+        }
+    }
+
+    @Test
+    public void getListeners() {
+        ChangeRouter router = new ChangeRouter();
+        TestListener all = new TestListener("all", "*");
+        TestListener blocks = new TestListener("blocks", "*/block");
+        TestListener profile = new TestListener("profile", "user/profile/ABC");
+        TestListener users = new TestListener("users", "user,page/profile,record");
+
+        router.register(all);
+        router.register(blocks);
+        router.register(profile);
+        router.register(users);
+
+        Assert.assertEquals(ImmutableList.of(all), ImmutableList.copyOf(router.getListeners("g1", "peer", "1")));
+        Assert.assertEquals(2, router.getListeners("g1", "block", "1").size());
+        Assert.assertEquals(3, router.getListeners("user", "profile", "ABC").size());
+        Assert.assertEquals(2, router.getListeners("user", "profile", "DEF").size());
+        Assert.assertEquals(2, router.getListeners("page", "record", "1").size());
+        Assert.assertEquals(1, router.getListeners("page", "comment", "1").size());
+
+        router.unregister(all);
+        Assert.assertTrue(router.getListeners("g1", "peer", "1").isEmpty());
+        Assert.assertEquals(ImmutableList.of(blocks), ImmutableList.copyOf(router.getListeners("g1", "block", "1")));
+    }
+
+    @Test
+    public void refreshWithChangedSources() {
+        ChangeRouter router = new ChangeRouter();
+        TestListener listener = new TestListener("listener", "user/profile");
+        router.register(listener);
+        Assert.assertEquals(1, router.getListeners("user", "profile", "ABC").size());
+
+        // Sources changed before refresh: old routes must be removed anyway
+        listener.setSources("page/record");
+        router.unregister(listener);
+        router.register(listener);
+
+        Assert.assertTrue(router.getListeners("user", "profile", "ABC").isEmpty());
+        Assert.assertEquals(1, router.getListeners("page", "record", "1").size());
+        Assert.assertEquals(1, router.getUsageStatistics().size());
+
+        router.unregister(listener);
+        Assert.assertTrue(router.isEmpty());
+        Assert.assertTrue(router.getUsageStatistics().isEmpty());
+    }
+}
@@ -0,0 +1,163 @@
+package org.duniter.elasticsearch.service.wot;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.duniter.elasticsearch.model.BlockMemberships;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+public class MembershipStateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MembershipState state;
+
+    @Before
+    public void setUp() {
+        state = new MembershipState("test", 2);
+
+        // Initial state, from indexed blocks
+        state.applyIndexedBlock(block(1, 100, new String[]{membership("A", "alice"), membership("B", "bob")}, null, null));
+        state.setIndexedUntil(3, "H3");
+    }
+
+    @Test
+    public void getMembers() {
+        Map<String, String> members = state.getMembers(0);
+        Assert.assertEquals(2, members.size());
+        Assert.assertEquals("alice", members.get("A"));
+        Assert.assertEquals("bob", members.get("B"));
+
+        // Outside the validity window
+        Assert.assertTrue(state.getMembers(101).isEmpty());
+    }
+
+    @Test
+    public void onBlockIndexed() {
+        // Renew A, exclude B
+        state.onBlockIndexed(block(4, 200, null, new String[]{membership("A", "alice")}, new String[]{"B"}));
+
+        Assert.assertEquals(4, state.getNumber());
+        Assert.assertEquals("H4", state.getHash());
+        Map<String, String> members = state.getMembers(150);
+        Assert.assertEquals(1, members.size());
+        Assert.assertEquals("alice", members.get("A"));
+
+        // Already applied: ignored
+        state.onBlockIndexed(block(3, 300, new String[]{membership("C", "carol")}, null, null));
+        Assert.assertNull(state.getMembers(0).get("C"));
+        Assert.assertFalse(state.isBehind());
+    }
+
+    @Test
+    public void onBlockIndexedWithGap() {
+        state.onBlockIndexed(block(5, 200, new String[]{membership("C", "carol")}, null, null));
+
+        Assert.assertTrue(state.isBehind());
+        Assert.assertEquals(3, state.getNumber());
+        Assert.assertNull(state.getMembers(0).get("C"));
+
+        // Catch up
+        state.applyIndexedBlock(block(5, 200, new String[]{membership("C", "carol")}, null, null));
+        state.setIndexedUntil(5, "H5");
+        Assert.assertFalse(state.isBehind());
+        Assert.assertEquals("carol", state.getMembers(0).get("C"));
+    }
+
+    @Test
+    public void onBlockDeleted() {
+        state.onBlockIndexed(block(4, 200, new String[]{membership("C", "carol")}, null, new String[]{"A"}));
+        state.onBlockIndexed(block(5, 300, new String[]{membership("D", "dave")}, null, null));
+
+        // Rollback the fork
+        state.onBlockDeleted(4);
+
+        Assert.assertFalse(state.isEmpty());
+        Assert.assertEquals(3, state.getNumber());
+        Assert.assertEquals("H3", state.getHash());
+        Map<String, String> members = state.getMembers(0);
+        Assert.assertEquals(2, members.size());
+        Assert.assertEquals("alice", members.get("A"));
+        Assert.assertEquals("bob", members.get("B"));
+    }
+
+    @Test
+    public void onBlockDeletedOutsideJournal() {
+        state.onBlockIndexed(block(4, 200, null, null, null));
+        state.onBlockIndexed(block(5, 200, null, null, null));
+        state.onBlockIndexed(block(6, 200, null, null, null));
+
+        // Journal only keep 2 blocks: need a full rebuild
+        state.onBlockDeleted(4);
+        Assert.assertTrue(state.isEmpty());
+    }
+
+    @Test
+    public void removeExpired() {
+        state.onBlockIndexed(block(4, 200, new String[]{membership("C", "carol")}, null, null));
+
+        Assert.assertEquals(2, state.removeExpired(150));
+        Assert.assertEquals(1, state.size());
+    }
+
+    @Test
+    public void snapshot() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = new File(folder.getRoot(), "wot/test-memberships.json");
+
+        state.writeSnapshot(file, objectMapper);
+        Assert.assertTrue(file.exists());
+
+        MembershipState restored = new MembershipState("test", 2);
+        restored.restore(MembershipState.readSnapshot(file, objectMapper));
+        Assert.assertEquals(3, restored.getNumber());
+        Assert.assertEquals("H3", restored.getHash());
+        Assert.assertEquals(state.getMembers(0), restored.getMembers(0));
+    }
+
+    /* -- internal methods -- */
+
+    private static String membership(String pubkey, String uid) {
+        return pubkey + ":SIGNATURE:1-BLOCKHASH:0-IDTYHASH:" + uid;
+    }
+
+    private static BlockMemberships block(int number, long medianTime, String[] joiners, String[] actives, String[] excluded) {
+        BlockMemberships block = new BlockMemberships();
+        block.setNumber(number);
+        block.setHash("H" + number);
+        block.setMedianTime(medianTime);
+        block.setJoiners(joiners);
+        block.setActives(actives);
+        block.setExcluded(excluded);
+        return block;
+    }
+}
@@ -0,0 +1,106 @@
+package org.duniter.elasticsearch.util.bytes;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class BlockJsonSplitterTest {
+
+    @Test
+    public void split() throws IOException {
+        String block0 = "{\"number\":0,\"hash\":\"H0\",\"issuer\":\"é\",\"transactions\":[{\"number\":99,\"hash\":\"TX\"}]}";
+        String block1 = "{\"joiners\":[],\"parameters\":{\"c\":0.0488},\"number\":1,\"hash\":\"H1\"}";
+        String json = "[ " + block0 + ",\n" + block1 + " ]";
+
+        List<BlockJsonSplitter.BlockBytes> blocks = BlockJsonSplitter.split(json.getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(2, blocks.size());
+        Assert.assertEquals(0, blocks.get(0).getNumber());
+        Assert.assertEquals("H0", blocks.get(0).getHash());
+        Assert.assertEquals(block0, blocks.get(0).getSource().toUtf8());
+        Assert.assertEquals(1, blocks.get(1).getNumber());
+        Assert.assertEquals("H1", blocks.get(1).getHash());
+        Assert.assertEquals(block1, blocks.get(1).getSource().toUtf8());
+    }
+
+    @Test
+    public void splitSkipDuplicatesAndMissingNumber() throws IOException {
+        String json = "[{\"number\":5,\"hash\":\"A\"},{\"hash\":\"no number\"},{\"number\":5,\"hash\":\"B\"},{\"number\":6}]";
+
+        List<BlockJsonSplitter.BlockBytes> blocks = BlockJsonSplitter.split(json.getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(2, blocks.size());
+        Assert.assertEquals("A", blocks.get(0).getHash());
+        Assert.assertEquals(6, blocks.get(1).getNumber());
+        Assert.assertNull(blocks.get(1).getHash());
+    }
+
+    @Test
+    public void splitPreviousHash() throws IOException {
+        String json = "[{\"number\":0,\"hash\":\"H0\"},{\"number\":1,\"previousHash\":\"H0\",\"hash\":\"H1\"}]";
+
+        List<BlockJsonSplitter.BlockBytes> blocks = BlockJsonSplitter.split(json.getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertNull(blocks.get(0).getPreviousHash());
+        Assert.assertEquals("H0", blocks.get(1).getPreviousHash());
+    }
+
+    @Test
+    public void isChained() throws IOException {
+        String json = "[{\"number\":5,\"previousHash\":\"H4\",\"hash\":\"H5\"},{\"number\":6,\"previousHash\":\"H5\",\"hash\":\"H6\"}]";
+        List<BlockJsonSplitter.BlockBytes> blocks = BlockJsonSplitter.split(json.getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertTrue(BlockJsonSplitter.isChained(blocks, 5, null));
+        Assert.assertTrue(BlockJsonSplitter.isChained(blocks, 5, "H4"));
+
+        // Not linked to the previous range
+        Assert.assertFalse(BlockJsonSplitter.isChained(blocks, 5, "OTHER"));
+        // Not the expected numbers
+        Assert.assertFalse(BlockJsonSplitter.isChained(blocks, 4, null));
+
+        // Broken link inside the range
+        json = "[{\"number\":5,\"previousHash\":\"H4\",\"hash\":\"H5\"},{\"number\":6,\"previousHash\":\"FAKE\",\"hash\":\"H6\"}]";
+        blocks = BlockJsonSplitter.split(json.getBytes(StandardCharsets.UTF_8));
+        Assert.assertFalse(BlockJsonSplitter.isChained(blocks, 5, "H4"));
+
+        // Missing block
+        json = "[{\"number\":5,\"previousHash\":\"H4\",\"hash\":\"H5\"},{\"number\":7,\"previousHash\":\"H6\",\"hash\":\"H7\"}]";
+        blocks = BlockJsonSplitter.split(json.getBytes(StandardCharsets.UTF_8));
+        Assert.assertFalse(BlockJsonSplitter.isChained(blocks, 5, "H4"));
+    }
+
+    @Test
+    public void splitEmpty() throws IOException {
+        Assert.assertTrue(BlockJsonSplitter.split("[]".getBytes(StandardCharsets.UTF_8)).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void splitNotAnArray() throws IOException {
+        BlockJsonSplitter.split("{\"number\":1}".getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,56 @@
+package org.duniter.elasticsearch.util.springtemplate;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch Core plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.stringtemplate.v4.ST;
+
+import java.util.Locale;
+import java.util.Map;
+
+public class STRendererTest {
+
+    private static final Map<String, Object> ATTRIBUTES = ImmutableMap.<String, Object>builder()
+            .put("type", "website")
+            .put("title", "My title")
+            .put("summary", "My summary")
+            .put("description", "My description")
+            .put("siteName", "Cesium")
+            .put("url", "https://domain.com/user/profile/abc/_share")
+            .build();
+
+    @Test
+    public void sameAsRender() {
+        STRenderer renderer = new STRenderer("org/duniter/elasticsearch/templates", "html_share");
+
+        ST template = renderer.getInstanceOf("html_share");
+        ATTRIBUTES.forEach(template::add);
+        String expected = template.render(Locale.ENGLISH);
+
+        // Render twice, to check the buffer is reset
+        Assert.assertEquals(expected, renderer.render("html_share", ATTRIBUTES, Locale.ENGLISH));
+        Assert.assertEquals(expected, renderer.render("html_share", ATTRIBUTES, Locale.ENGLISH));
+    }
+}
@@ -28,6 +28,7 @@ import org.duniter.core.util.StringUtils;
 import org.duniter.core.util.crypto.KeyPair;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 
 import java.util.Set;
 
@@ -147,6 +148,30 @@ public class PluginSettings extends AbstractLifecycleComponent<PluginSettings> {
         return settings.getAsInt("duniter.subscription.email.hourOfDay", 3);
     }
 
+    /**
+     * Number of email subscriptions processed by batch (one multi search, one bulk) (default: 100)
+     * @return
+     */
+    public int getEmailSubscriptionsBatchSize() {
+        return Math.max(1, settings.getAsInt("duniter.subscription.email.batchSize", 100));
+    }
+
+    /**
+     * Number of threads used to decrypt and render email subscriptions (default: number of processors)
+     * @return
+     */
+    public int getEmailSubscriptionsThreads() {
+        return Math.max(1, settings.getAsInt("duniter.subscription.email.threads", EsExecutors.boundedNumberOfProcessors(settings)));
+    }
+
+    /**
+     * Max time (in seconds) between two batches of email subscriptions, before the subscriptions scroll expires (default: 600)
+     * @return
+     */
+    public int getEmailSubscriptionsScrollKeepAlive() {
+        return Math.max(60, settings.getAsInt("duniter.subscription.email.scrollKeepAliveInSec", 600));
+    }
+
     /* -- delegate methods -- */
 
 
@@ -26,7 +26,9 @@ import org.duniter.elasticsearch.subscription.dao.SubscriptionIndexTypeDao;
 import org.duniter.elasticsearch.subscription.model.SubscriptionExecution;
 import org.duniter.elasticsearch.subscription.model.SubscriptionRecord;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by blavenie on 03/04/17.
@@ -39,6 +41,12 @@ public interface SubscriptionExecutionDao<T extends SubscriptionIndexTypeDao> ex
 
     SubscriptionExecution getLastExecution(String recipient, String subscriptionType, String recordId);
 
+    /**
+     * Get last executions of many subscriptions, in one round trip
+     * @return last executions, by record id (missing if never executed)
+     */
+    Map<String, SubscriptionExecution> getLastExecutions(Collection<? extends SubscriptionRecord> records);
+
     Long getLastExecutionTime(String recipient, String subscriptionType, String recordId);
 
     Long getLastExecutionTime(SubscriptionRecord record);
@@ -23,6 +23,7 @@ package org.duniter.elasticsearch.subscription.dao.execution;
  */
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.collect.ImmutableMap;
 import org.duniter.core.client.model.bma.BlockchainBlock;
 import org.duniter.core.exception.TechnicalException;
 import org.duniter.core.util.CollectionUtils;
@@ -35,6 +36,9 @@ import org.duniter.elasticsearch.subscription.model.SubscriptionExecution;
 import org.duniter.elasticsearch.subscription.model.SubscriptionRecord;
 import org.duniter.elasticsearch.subscription.model.email.EmailSubscription;
 import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.action.update.UpdateRequestBuilder;
@@ -47,9 +51,7 @@ import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.sort.SortOrder;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 import java.util.stream.Collectors;
 
 /**
@@ -77,24 +79,37 @@ public class SubscriptionExecutionDaoImpl extends AbstractSubscriptionIndexTypeD
     @Override
     public SubscriptionExecution getLastExecution(String recipient, String recordType, String recordId) {
 
-        BoolQueryBuilder query = QueryBuilders.boolQuery()
-                .must(QueryBuilders.termQuery(SubscriptionExecution.PROPERTY_RECIPIENT, recipient))
-                .must(QueryBuilders.termsQuery(SubscriptionExecution.PROPERTY_RECORD_TYPE, recordType))
-                .must(QueryBuilders.termQuery(SubscriptionExecution.PROPERTY_RECORD_ID, recordId));
+        SearchResponse response = prepareLastExecutionSearch(recipient, recordType, recordId).get();
 
-        SearchResponse response = client.prepareSearch(SubscriptionIndexDao.INDEX)
-                .setTypes(SubscriptionExecutionDao.TYPE)
-                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
-                .setQuery(query)
-                .setFetchSource(true)
-                .setFrom(0).setSize(1)
-                .addSort(SubscriptionExecution.PROPERTY_TIME, SortOrder.DESC)
-                .get();
+        return readLastExecution(response);
+    }
 
-        if (response.getHits().getTotalHits() == 0) return null;
+    @Override
+    public Map<String, SubscriptionExecution> getLastExecutions(Collection<? extends SubscriptionRecord> records) {
+        Preconditions.checkNotNull(records);
+        if (records.isEmpty()) return ImmutableMap.of();
+
+        // One search by record, in one round trip
+        MultiSearchRequestBuilder multiSearch = client.prepareMultiSearch();
+        List<String> recordIds = new ArrayList<>(records.size());
+        for (SubscriptionRecord record: records) {
+            Preconditions.checkNotNull(record.getIssuer());
+            Preconditions.checkNotNull(record.getType());
+            Preconditions.checkNotNull(record.getId());
+            multiSearch.add(prepareLastExecutionSearch(record.getIssuer(), record.getType(), record.getId()));
+            recordIds.add(record.getId());
+        }
 
-        SearchHit hit = response.getHits().getHits()[0];
-        return client.readSourceOrNull(hit, SubscriptionExecution.class);
+        MultiSearchResponse.Item[] items = client.safeExecuteRequest(multiSearch).actionGet().getResponses();
+        Map<String, SubscriptionExecution> result = new HashMap<>(items.length);
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].isFailure()) {
+                throw new TechnicalException(String.format("Unable to get last execution of subscription [%s]: %s", recordIds.get(i), items[i].getFailureMessage()));
+            }
+            SubscriptionExecution execution = readLastExecution(items[i].getResponse());
+            if (execution != null) result.put(recordIds.get(i), execution);
+        }
+        return result;
     }
 
     @Override
@@ -187,4 +202,27 @@ public class SubscriptionExecutionDaoImpl extends AbstractSubscriptionIndexTypeD
         }
     }
 
+    /* -- internal methods -- */
+
+    protected SearchRequestBuilder prepareLastExecutionSearch(String recipient, String recordType, String recordId) {
+        BoolQueryBuilder query = QueryBuilders.boolQuery()
+                .must(QueryBuilders.termQuery(SubscriptionExecution.PROPERTY_RECIPIENT, recipient))
+                .must(QueryBuilders.termsQuery(SubscriptionExecution.PROPERTY_RECORD_TYPE, recordType))
+                .must(QueryBuilders.termQuery(SubscriptionExecution.PROPERTY_RECORD_ID, recordId));
+
+        return client.prepareSearch(SubscriptionIndexDao.INDEX)
+                .setTypes(SubscriptionExecutionDao.TYPE)
+                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
+                .setQuery(query)
+                .setFetchSource(true)
+                .setFrom(0).setSize(1)
+                .addSort(SubscriptionExecution.PROPERTY_TIME, SortOrder.DESC);
+    }
+
+    protected SubscriptionExecution readLastExecution(SearchResponse response) {
+        if (response.getHits().getTotalHits() == 0) return null;
+
+        SearchHit hit = response.getHits().getHits()[0];
+        return client.readSourceOrNull(hit, SubscriptionExecution.class);
+    }
 }
@@ -24,8 +24,10 @@ package org.duniter.elasticsearch.subscription.dao.record;
 
 import org.duniter.elasticsearch.subscription.dao.SubscriptionIndexTypeDao;
 import org.duniter.elasticsearch.subscription.model.SubscriptionRecord;
+import org.elasticsearch.common.unit.TimeValue;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Created by blavenie on 03/04/17.
@@ -35,4 +37,10 @@ public interface SubscriptionRecordDao<T extends SubscriptionIndexTypeDao> exten
     String TYPE = "record";
 
     List<SubscriptionRecord> getSubscriptions(int from, int size, String recipient, String... types);
+
+    /**
+     * Stream all subscriptions (using a scroll). The stream should be closed after use.
+     * @param keepAlive max time between two pages read
+     */
+    Stream<SubscriptionRecord> streamSubscriptions(int pageSize, TimeValue keepAlive, String recipient, String... types);
 }
@@ -30,20 +30,25 @@ import org.duniter.elasticsearch.subscription.dao.AbstractSubscriptionIndexTypeD
 import org.duniter.elasticsearch.subscription.dao.SubscriptionIndexDao;
 import org.duniter.elasticsearch.subscription.model.SubscriptionRecord;
 import org.duniter.elasticsearch.subscription.model.email.EmailSubscription;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortOrder;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Created by blavenie on 03/04/17.
@@ -60,16 +65,10 @@ public class SubscriptionRecordDaoImpl extends AbstractSubscriptionIndexTypeDao<
     @Override
     public List<SubscriptionRecord> getSubscriptions(int from, int size, String recipient, String... types) {
 
-        BoolQueryBuilder query = QueryBuilders.boolQuery()
-                .must(QueryBuilders.termQuery(SubscriptionRecord.PROPERTY_RECIPIENT, recipient));
-        if (CollectionUtils.isNotEmpty(types)) {
-            query.must(QueryBuilders.termsQuery(SubscriptionRecord.PROPERTY_TYPE, types));
-        }
-
         SearchResponse response = client.prepareSearch(SubscriptionIndexDao.INDEX)
                 .setTypes(SubscriptionRecordDao.TYPE)
                 .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
-                .setQuery(query)
+                .setQuery(createSubscriptionsQuery(recipient, types))
                 .setFetchSource(true)
                 .setFrom(from).setSize(size)
                 .get();
@@ -80,6 +79,20 @@ public class SubscriptionRecordDaoImpl extends AbstractSubscriptionIndexTypeDao<
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public Stream<SubscriptionRecord> streamSubscriptions(int pageSize, TimeValue keepAlive, String recipient, String... types) {
+
+        SearchRequestBuilder request = client.prepareSearch(SubscriptionIndexDao.INDEX)
+                .setTypes(SubscriptionRecordDao.TYPE)
+                .setQuery(createSubscriptionsQuery(recipient, types))
+                .setFetchSource(true)
+                .addSort("_doc", SortOrder.ASC);
+
+        return client.scan(request, pageSize, keepAlive)
+                .map(this::toSubscription)
+                .filter(Objects::nonNull);
+    }
+
     @Override
     public XContentBuilder createTypeMapping() {
         try {
@@ -155,6 +168,15 @@ public class SubscriptionRecordDaoImpl extends AbstractSubscriptionIndexTypeDao<
         }
     }
 
+    protected QueryBuilder createSubscriptionsQuery(String recipient, String... types) {
+        BoolQueryBuilder query = QueryBuilders.boolQuery()
+                .must(QueryBuilders.termQuery(SubscriptionRecord.PROPERTY_RECIPIENT, recipient));
+        if (CollectionUtils.isNotEmpty(types)) {
+            query.must(QueryBuilders.termsQuery(SubscriptionRecord.PROPERTY_TYPE, types));
+        }
+        return query;
+    }
+
     protected SubscriptionRecord toSubscription(SearchHit searchHit) {
 
         SubscriptionRecord record = null;
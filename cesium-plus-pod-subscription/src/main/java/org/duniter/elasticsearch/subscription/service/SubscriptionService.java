@@ -25,7 +25,9 @@ package org.duniter.elasticsearch.subscription.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import org.duniter.core.client.model.ModelUtils;
 import org.duniter.core.client.model.elasticsearch.Record;
 import org.duniter.core.exception.TechnicalException;
@@ -37,6 +39,7 @@ import org.duniter.core.util.StringUtils;
 import org.duniter.core.util.crypto.CryptoUtils;
 import org.duniter.elasticsearch.client.Duniter4jClient;
 import org.duniter.elasticsearch.subscription.PluginSettings;
+import org.duniter.elasticsearch.subscription.dao.SubscriptionIndexDao;
 import org.duniter.elasticsearch.subscription.dao.execution.SubscriptionExecutionDao;
 import org.duniter.elasticsearch.subscription.dao.record.SubscriptionRecordDao;
 import org.duniter.elasticsearch.subscription.model.SubscriptionExecution;
@@ -49,7 +52,10 @@ import org.duniter.elasticsearch.user.service.AdminService;
 import org.duniter.elasticsearch.user.service.MailService;
 import org.duniter.elasticsearch.user.service.UserEventService;
 import org.duniter.elasticsearch.user.service.UserService;
-import org.duniter.elasticsearch.util.springtemplate.STUtils;
+import org.duniter.elasticsearch.util.springtemplate.STRenderer;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.unit.TimeValue;
 import org.nuiton.i18n.I18n;
@@ -58,14 +64,22 @@ import org.stringtemplate.v4.STGroup;
 
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Created by Benoit on 30/03/2015.
  */
 public class SubscriptionService extends AbstractService {
 
+    private static final String EMAIL_EXECUTOR_NAME = "subscription_email";
+
     private SubscriptionRecordDao subscriptionRecordDao;
     private SubscriptionExecutionDao subscriptionExecutionDao;
     private ThreadPool threadPool;
@@ -75,7 +89,7 @@ public class SubscriptionService extends AbstractService {
     private UserService userService;
     private String emailSubjectPrefix;
     private String emailLinkName;
-    private STGroup templates;
+    private STRenderer templates;
     private boolean debug;
 
     @Inject
@@ -106,9 +120,7 @@ public class SubscriptionService extends AbstractService {
 
         // Configure springtemplate engine
         STGroup.verbose = debug;
-        templates = STUtils.newSTGroup("org/duniter/elasticsearch/subscription/templates");
-        Preconditions.checkNotNull(templates.getInstanceOf("text_email"), "Missing ST template {text_email}");
-        Preconditions.checkNotNull(templates.getInstanceOf("html_email_content"), "Missing ST template {html_email_content}");
+        templates = new STRenderer("org/duniter/elasticsearch/subscription/templates", "text_email", "html_email_content");
     }
 
     public String create(String json) {
@@ -192,43 +204,120 @@ public class SubscriptionService extends AbstractService {
         logger.info(String.format("Executing %s email subscription...", frequency.name()));
 
         final String senderPubkey = pluginSettings.getNodePubkey();
+        final int batchSize = pluginSettings.getEmailSubscriptionsBatchSize();
+        final ExecutorService executor = threadPool.executor(EMAIL_EXECUTOR_NAME, pluginSettings.getEmailSubscriptionsThreads());
+        final PipelineStats stats = new PipelineStats();
+        final TimeValue keepAlive = TimeValue.timeValueSeconds(pluginSettings.getEmailSubscriptionsScrollKeepAlive());
 
-        int from = 0;
-        int size = 10;
-        boolean hasMore = true;
         long executionCount=0;
-        while (hasMore) {
-            List<SubscriptionRecord> subscriptions = subscriptionRecordDao.getSubscriptions(from, size, senderPubkey, EmailSubscription.TYPE);
-
-            // Get profiles titles, for issuers and the sender
-            Set<String> issuers =  subscriptions.stream()
-                    .map(SubscriptionRecord::getIssuer)
-                    .distinct()
-                    .collect(Collectors.toSet());
-            final Map<String, String> profileTitles = userService.getProfileTitles(
-                    ImmutableSet.<String>builder().addAll(issuers).add(senderPubkey).build());
-            final String senderName = (profileTitles != null && profileTitles.containsKey(senderPubkey)) ? profileTitles.get(senderPubkey) :
-                ModelUtils.minifyPubkey(senderPubkey);
-
-            executionCount += subscriptions.stream()
-                    .map(record -> decryptEmailSubscription((EmailSubscription)record))
-                    .filter(record -> (record != null && record.getContent().getFrequency() == frequency))
-                    .map(record -> processEmailSubscription(record, senderPubkey, senderName, profileTitles))
-                    .filter(Objects::nonNull)
-                    .map(this::saveExecution)
-                    .count();
-
-            hasMore = CollectionUtils.size(subscriptions) >= size;
-            from += size;
+        try (Stream<SubscriptionRecord> records = subscriptionRecordDao.streamSubscriptions(batchSize, keepAlive, senderPubkey, EmailSubscription.TYPE)) {
+            Iterator<List<SubscriptionRecord>> batches = Iterators.partition(records.iterator(), batchSize);
+            while (batches.hasNext()) {
+                List<SubscriptionRecord> batch = batches.next();
+
+                // Wait for the mail queue, so that sending the batch never blocks (and the scroll does not expire)
+                if (!mailService.awaitCapacity(batch.size(), keepAlive.millis() / 2)) {
+                    logger.warn("Mail queue still full: some email subscriptions may be delayed to the next execution");
+                }
+                try {
+                    executionCount += executeEmailSubscriptions(batch, frequency, senderPubkey, executor, stats);
+                }
+                catch (Exception e) {
+                    // Continue with the next batch
+                    logger.error(String.format("Could not execute a batch of %s email subscriptions: %s", batch.size(), e.getMessage()), e);
+                }
+            }
         }
 
-        logger.info(String.format("Executing %s email subscription... [OK] emails sent [%s] (in %s ms)",
-                frequency.name(), executionCount, System.currentTimeMillis()-now));
+        logger.info(String.format("Executing %s email subscription... [OK] emails sent [%s] (in %s ms) - %s",
+                frequency.name(), executionCount, System.currentTimeMillis()-now, stats));
 
     }
 
     /* -- protected methods -- */
 
+    /**
+     * Execute a batch of subscriptions: decrypt and render in parallel, read and write executions in bulk.
+     * Executions are saved once the emails of the batch are queued: an email finally abandoned by the mail queue
+     * (after retries) is not sent again.
+     * @return the number of saved executions
+     */
+    protected int executeEmailSubscriptions(final List<SubscriptionRecord> records,
+                                            final EmailSubscription.Frequency frequency,
+                                            final String senderPubkey,
+                                            final ExecutorService executor,
+                                            final PipelineStats stats) {
+
+        // Decrypt content
+        long start = System.nanoTime();
+        final List<EmailSubscription> subscriptions = invokeAll(executor, records,
+                record -> decryptEmailSubscription((EmailSubscription)record))
+                .stream()
+                .filter(subscription -> subscription != null && subscription.getContent().getFrequency() == frequency)
+                .filter(this::hasEmail)
+                .collect(Collectors.toList());
+        stats.add("decrypt", records.size(), start);
+        if (subscriptions.isEmpty()) return 0;
+
+        // Get profiles titles, for issuers and the sender
+        start = System.nanoTime();
+        Set<String> issuers = subscriptions.stream()
+                .map(SubscriptionRecord::getIssuer)
+                .collect(Collectors.toSet());
+        final Map<String, String> profileTitles = userService.getProfileTitles(
+                ImmutableSet.<String>builder().addAll(issuers).add(senderPubkey).build());
+        final String senderName = (profileTitles != null && profileTitles.containsKey(senderPubkey)) ? profileTitles.get(senderPubkey) :
+                ModelUtils.minifyPubkey(senderPubkey);
+        stats.add("profiles", issuers.size(), start);
+
+        // Get last executions
+        start = System.nanoTime();
+        final Map<String, SubscriptionExecution> lastExecutions = subscriptionExecutionDao.getLastExecutions(subscriptions);
+        stats.add("executions", subscriptions.size(), start);
+
+        // Get user events, since the last executions
+        start = System.nanoTime();
+        final long defaultLastExecutionTime = getDefaultLastExecutionTime();
+        final List<List<UserEvent>> userEvents = userEventService.getUserEvents(subscriptions.stream()
+                .map(subscription -> {
+                    SubscriptionExecution lastExecution = lastExecutions.get(subscription.getId());
+                    return userEventService.prepareUserEventsSearch(subscription.getIssuer(),
+                            lastExecution != null ? lastExecution.getTime() : defaultLastExecutionTime,
+                            subscription.getContent().getIncludes(),
+                            subscription.getContent().getExcludes());
+                })
+                .collect(Collectors.toList()));
+        stats.add("events", subscriptions.size(), start);
+
+        // Render and send emails
+        start = System.nanoTime();
+        final List<Integer> indexes = IntStream.range(0, subscriptions.size()).boxed().collect(Collectors.toList());
+        List<SubscriptionExecution> executions = invokeAll(executor, indexes, i -> {
+                    EmailSubscription subscription = subscriptions.get(i);
+                    try {
+                        return processEmailSubscription(subscription,
+                                lastExecutions.get(subscription.getId()),
+                                userEvents.get(i),
+                                senderPubkey, senderName, profileTitles);
+                    }
+                    catch (Exception e) {
+                        logger.error(String.format("Could not process email subscription [%s]: %s", subscription.getId(), e.getMessage()), e);
+                        return null;
+                    }
+                })
+                .stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        stats.add("render", subscriptions.size(), start);
+
+        // Save executions
+        start = System.nanoTime();
+        int savedCount = saveExecutions(executions);
+        stats.add("save", savedCount, start);
+
+        return savedCount;
+    }
+
     protected EmailSubscription decryptEmailSubscription(EmailSubscription subscription) {
         Preconditions.checkNotNull(subscription);
         Preconditions.checkNotNull(subscription.getId());
@@ -262,66 +351,47 @@ public class SubscriptionService extends AbstractService {
         return subscription;
     }
 
+    protected boolean hasEmail(EmailSubscription subscription) {
+        if (subscription.getContent() == null || subscription.getContent().getEmail() == null) {
+            logger.warn(String.format("Processing email subscription {id=%s}: no email found in content. Skipping", subscription.getId()));
+            return false;
+        }
+        return true;
+    }
+
     protected SubscriptionExecution processEmailSubscription(final EmailSubscription subscription,
-                                                         final String senderPubkey,
-                                                         final String senderName,
-                                                         final Map<String, String> profileTitles) {
+                                                             SubscriptionExecution lastExecution,
+                                                             final List<UserEvent> userEvents,
+                                                             final String senderPubkey,
+                                                             final String senderName,
+                                                             final Map<String, String> profileTitles) {
         Preconditions.checkNotNull(subscription);
+        Preconditions.checkNotNull(subscription.getContent());
 
         boolean debug = pluginSettings.isEmailSubscriptionsDebug();
-        if (subscription.getContent() != null && subscription.getContent().getEmail() != null) {
-            if (debug) {
-                logger.info(String.format("Processing email subscription from {%s} to {%s} (pubkey: %s)",
-                        senderName,
-                        subscription.getContent().getEmail(),
-                        ModelUtils.minifyPubkey(subscription.getIssuer())));
-            }
-            else {
-                logger.info(String.format("Processing email subscription to {%s} (pubkey: %s)",
-                        subscription.getId(),
-                        ModelUtils.minifyPubkey(subscription.getIssuer())));
-            }
+        if (debug) {
+            logger.info(String.format("Processing email subscription from {%s} to {%s} (pubkey: %s)",
+                    senderName,
+                    subscription.getContent().getEmail(),
+                    ModelUtils.minifyPubkey(subscription.getIssuer())));
         }
         else {
-            logger.warn(String.format("Processing email subscription {id=%s}: no email found in content. Skipping", subscription.getId()));
-            return null;
-        }
-
-        SubscriptionExecution lastExecution = subscriptionExecutionDao.getLastExecution(subscription);
-        Long lastExecutionTime;
-
-        if (lastExecution != null) {
-            lastExecutionTime = lastExecution.getTime();
-        }
-        // If first email execution: only sendBlock event from the last 7 days.
-        else  {
-            Calendar defaultDateLimit = new GregorianCalendar();
-            defaultDateLimit.setTimeInMillis(System.currentTimeMillis());
-            defaultDateLimit.add(Calendar.DAY_OF_YEAR, - 7);
-            defaultDateLimit.set(Calendar.HOUR_OF_DAY, 0);
-            defaultDateLimit.set(Calendar.MINUTE, 0);
-            defaultDateLimit.set(Calendar.SECOND, 0);
-            defaultDateLimit.set(Calendar.MILLISECOND, 0);
-            lastExecutionTime = defaultDateLimit.getTimeInMillis() / 1000;
+            logger.info(String.format("Processing email subscription to {%s} (pubkey: %s)",
+                    subscription.getId(),
+                    ModelUtils.minifyPubkey(subscription.getIssuer())));
         }
 
-        // Get last user events
-        String[] includes = subscription.getContent() == null ? null : subscription.getContent().getIncludes();
-        String[] excludes = subscription.getContent() == null ? null : subscription.getContent().getExcludes();
-        List<UserEvent> userEvents = userEventService.getUserEvents(subscription.getIssuer(), lastExecutionTime, includes, excludes);
-
         if (CollectionUtils.isEmpty(userEvents)) return null; // no events: stop here
 
         // Get user locale
-        String[] localParts = subscription.getContent() != null && subscription.getContent().getLocale() != null ?
+        String[] localParts = subscription.getContent().getLocale() != null ?
                 subscription.getContent().getLocale().split("-") : new String[]{"en", "GB"};
         Locale userLocale = localParts.length >= 2 ? new Locale(localParts[0].toLowerCase(), localParts[1].toUpperCase()) : new Locale(localParts[0].toLowerCase());
 
         final String title = emailSubjectPrefix + I18n.t("duniter4j.es.subscription.email.subject", userEvents.size());
 
-        // Compute text content
-        final String text = fillTemplate(
-                templates.getInstanceOf("text_email"),
+        // Compute template attributes (once, for text and HTML)
+        final Map<String, Object> attributes = createTemplateAttributes(
                 title,
                 subscription,
                 senderPubkey,
@@ -330,36 +400,32 @@ public class SubscriptionService extends AbstractService {
                 userEvents,
                 userLocale,
                 pluginSettings.getEmailLinkUrl(),
-                emailLinkName)
-                .render(userLocale);
+                emailLinkName);
 
-        // Compute HTML content
-        final String html = fillTemplate(
-                templates.getInstanceOf("html_email_content"),
-                title,
-                subscription,
-                senderPubkey,
-                senderName,
-                profileTitles,
-                userEvents,
-                userLocale,
-                pluginSettings.getEmailLinkUrl(),
-                emailLinkName)
-                .render(userLocale);
+        // Compute text and HTML content
+        final String text = templates.render("text_email", attributes, userLocale);
+        final String html = templates.render("html_email_content", attributes, userLocale);
 
-        if (pluginSettings.isEmailSubscriptionsDebug()) {
+        if (debug) {
             logger.info(String.format("---- Email to sendBlock (debug mode) ------\nTo:%s\nObject: %s\nText content:\n%s",
                     subscription.getContent().getEmail(),
                     title,
                     text));
         }
         else {
-            // Schedule email sending
-            threadPool.schedule(() -> mailService.sendHtmlEmailWithText(
+            // Send email (queued by the mail service)
+            boolean sent = mailService.sendHtmlEmailWithText(
                     title,
                     text,
                     html,
-                    subscription.getContent().getEmail()));
+                    subscription.getContent().getEmail());
+
+            // Not queued: no execution, so that events will be sent next time.
+            // Once queued, the execution is saved, even if the email is later abandoned (see MailQueue retries)
+            if (!sent) {
+                logger.warn(String.format("Could not send email subscription [%s]. Will retry next time.", subscription.getId()));
+                return null;
+            }
         }
 
         // Compute last time (should be the first one, as events are sorted in DESC order)
@@ -387,6 +453,21 @@ public class SubscriptionService extends AbstractService {
                                   final Locale issuerLocale,
                                   String linkUrl,
                                   String linkName) {
+        createTemplateAttributes(title, subscription, senderPubkey, senderName, issuerProfilNames, userEvents,
+                issuerLocale, linkUrl, linkName)
+                .forEach(template::add);
+        return template;
+    }
+
+    public static Map<String, Object> createTemplateAttributes(String title,
+                                                               EmailSubscription subscription,
+                                                               String senderPubkey,
+                                                               String senderName,
+                                                               Map<String, String> issuerProfilNames,
+                                                               List<UserEvent> userEvents,
+                                                               final Locale issuerLocale,
+                                                               String linkUrl,
+                                                               String linkName) {
         String issuerName = issuerProfilNames != null && issuerProfilNames.containsKey(subscription.getIssuer()) ?
                 issuerProfilNames.get(subscription.getIssuer()) :
                 ModelUtils.minifyPubkey(subscription.getIssuer());
@@ -397,21 +478,22 @@ public class SubscriptionService extends AbstractService {
 
         try {
             // Compute body
-            template.add("title", title);
-            template.add("issuerPubkey", subscription.getIssuer());
-            template.add("issuerName", issuerName);
-            template.add("senderPubkey", senderPubkey);
-            template.add("senderName", senderName);
-            template.add("url", linkUrl);
-            template.add("linkName", linkName);
-            if (issuerLocale != null) template.add("locale", issuerLocale.getLanguage());
-            userEvents.forEach(userEvent -> {
-                template.addAggr("events.{description, time}",
-                        getUserEventDescription(issuerLocale, userEvent),
-                        new Date(userEvent.getTime() * 1000));
-            });
-
-            return template;
+            Map<String, Object> attributes = new HashMap<>();
+            attributes.put("title", title);
+            attributes.put("issuerPubkey", subscription.getIssuer());
+            attributes.put("issuerName", issuerName);
+            attributes.put("senderPubkey", senderPubkey);
+            attributes.put("senderName", senderName);
+            attributes.put("url", linkUrl);
+            attributes.put("linkName", linkName);
+            if (issuerLocale != null) attributes.put("locale", issuerLocale.getLanguage());
+            attributes.put("events", userEvents.stream()
+                    .map(userEvent -> ImmutableMap.of(
+                            "description", getUserEventDescription(issuerLocale, userEvent),
+                            "time", new Date(userEvent.getTime() * 1000)))
+                    .collect(Collectors.toList()));
+
+            return attributes;
 
         }
         catch (Exception e) {
@@ -419,27 +501,87 @@ public class SubscriptionService extends AbstractService {
         }
     }
 
-    protected SubscriptionExecution saveExecution(SubscriptionExecution execution) {
-        Preconditions.checkNotNull(execution);
-        Preconditions.checkNotNull(execution.getRecipient());
-        Preconditions.checkNotNull(execution.getRecordType());
-        Preconditions.checkNotNull(execution.getRecordId());
+    /**
+     * @return the number of saved executions (failures are logged)
+     */
+    protected int saveExecutions(List<SubscriptionExecution> executions) {
+        if (CollectionUtils.isEmpty(executions)) return 0;
+
+        BulkRequestBuilder bulkRequest = client.prepareBulk();
+        for (SubscriptionExecution execution: executions) {
+            Preconditions.checkNotNull(execution.getRecipient());
+            Preconditions.checkNotNull(execution.getRecordType());
+            Preconditions.checkNotNull(execution.getRecordId());
+
+            // Update issuer
+            execution.setIssuer(pluginSettings.getNodePubkey());
+
+            // Fill hash + signature
+            String json = toJson(execution, true/*skip hash and signature*/);
+            execution.setHash(cryptoService.hash(json));
+            execution.setSignature(cryptoService.sign(json, pluginSettings.getNodeKeypair().getSecKey()));
+
+            if (execution.getId() == null) {
+                bulkRequest.add(client.prepareIndex(SubscriptionIndexDao.INDEX, SubscriptionExecutionDao.TYPE)
+                        .setSource(toJson(execution)));
+            }
+            else {
+                bulkRequest.add(client.prepareUpdate(SubscriptionIndexDao.INDEX, SubscriptionExecutionDao.TYPE, execution.getId())
+                        .setDoc(toJson(execution)));
+            }
+        }
+        BulkResponse bulkResponse = bulkRequest.get();
+        if (!bulkResponse.hasFailures()) return executions.size();
+
+        int failureCount = 0;
+        for (BulkItemResponse itemResponse : bulkResponse) {
+            if (!itemResponse.isFailed()) continue;
+            failureCount++;
+            SubscriptionExecution execution = executions.get(itemResponse.getItemId());
+            logger.error(String.format("Could not save execution of subscription [%s]: %s. Events could be sent again.",
+                    execution.getRecordId(), itemResponse.getFailureMessage()));
+        }
+        return executions.size() - failureCount;
+    }
 
-        // Update issuer
-        execution.setIssuer(pluginSettings.getNodePubkey());
+    protected long getDefaultLastExecutionTime() {
+        // If first email execution: only sendBlock event from the last 7 days.
+        Calendar defaultDateLimit = new GregorianCalendar();
+        defaultDateLimit.setTimeInMillis(System.currentTimeMillis());
+        defaultDateLimit.add(Calendar.DAY_OF_YEAR, - 7);
+        defaultDateLimit.set(Calendar.HOUR_OF_DAY, 0);
+        defaultDateLimit.set(Calendar.MINUTE, 0);
+        defaultDateLimit.set(Calendar.SECOND, 0);
+        defaultDateLimit.set(Calendar.MILLISECOND, 0);
+        return defaultDateLimit.getTimeInMillis() / 1000;
+    }
 
-        // Fill hash + signature
-        String json = toJson(execution, true/*skip hash and signature*/);
-        execution.setHash(cryptoService.hash(json));
-        execution.setSignature(cryptoService.sign(json, pluginSettings.getNodeKeypair().getSecKey()));
+    /**
+     * Apply the function on each item, using the executor, and wait for all results (same order as items)
+     */
+    protected <T, R> List<R> invokeAll(ExecutorService executor, List<T> items, Function<T, R> function) {
+        if (items.size() <= 1) {
+            return items.stream().map(function).collect(Collectors.toList());
+        }
 
-        if (execution.getId() == null) {
-            subscriptionExecutionDao.create(toJson(execution), false/*not wait*/);
+        List<Future<R>> futures = items.stream()
+                .map(item -> executor.submit(() -> function.apply(item)))
+                .collect(Collectors.toList());
+        List<R> result = new ArrayList<>(futures.size());
+        try {
+            for (Future<R> future: futures) {
+                result.add(future.get());
+            }
         }
-        else {
-            subscriptionExecutionDao.update(execution.getId(), toJson(execution), false/*not wait*/);
+        catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new TechnicalException("Interrupted while executing email subscriptions", e);
         }
-        return execution;
+        catch (ExecutionException e) {
+            throw new TechnicalException(e.getCause());
+        }
+        return result;
     }
 
     private String toJson(Record record) {
@@ -498,4 +640,29 @@ public class SubscriptionService extends AbstractService {
         }
         return result;
     }
+
+    /**
+     * Items count and duration, by pipeline stage (used to log throughput)
+     */
+    protected static class PipelineStats {
+        private final Map<String, long[]> stages = new LinkedHashMap<>();
+
+        public void add(String stage, int count, long startNanos) {
+            long[] values = stages.computeIfAbsent(stage, key -> new long[2]);
+            values[0] += count;
+            values[1] += System.nanoTime() - startNanos;
+        }
+
+        @Override
+        public String toString() {
+            return stages.entrySet().stream()
+                    .map(entry -> {
+                        long count = entry.getValue()[0];
+                        long millis = TimeUnit.NANOSECONDS.toMillis(entry.getValue()[1]);
+                        return String.format("%s: %s in %s ms (%s/s)", entry.getKey(), count, millis,
+                                millis > 0 ? count * 1000 / millis : count);
+                    })
+                    .collect(Collectors.joining(", "));
+        }
+    }
 }
@@ -106,7 +106,7 @@ public class PluginInit extends AbstractLifecycleComponent<PluginInit> {
 
     @Override
     protected void doClose() {
-
+        injector.getInstance(MailService.class).close();
     }
 
     protected void configPeeringEndpointApi() {
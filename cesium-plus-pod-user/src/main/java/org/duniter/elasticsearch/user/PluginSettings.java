@@ -161,6 +161,14 @@ public class PluginSettings extends AbstractLifecycleComponent<PluginSettings> {
         return settings.getAsBoolean("duniter.mail.smtp.ssl", false);
     }
 
+    public boolean getMailQueueEnable()  {
+        return settings.getAsBoolean("duniter.mail.queue.enable", Boolean.TRUE);
+    }
+
+    public String getMailTransport()  {
+        return settings.get("duniter.mail.transport", "smtp");
+    }
+
     public String getMailAdmin()  {
         return settings.get("duniter.mail.admin");
     }
@@ -181,6 +189,37 @@ public class PluginSettings extends AbstractLifecycleComponent<PluginSettings> {
         return settings.getAsArray("duniter.user.document.like.issuer.requirements", new String[]{});
     }
 
+    public boolean enableLikeCache()  {
+        return settings.getAsBoolean("duniter.user.document.like.cache.enable", true);
+    }
+
+    public int getLikeCacheMaxSize()  {
+        return settings.getAsInt("duniter.user.document.like.cache.maxSize", 10000);
+    }
+
+    public int getLikeCacheTimeToLive()  {
+        return settings.getAsInt("duniter.user.document.like.cache.timeToLiveInSec", 3600 /*1h*/);
+    }
+
+    /**
+     * Time (in ms) after a like change, during which loaded counts are not cached (should be greater than the index refresh interval)
+     */
+    public int getLikeCacheRefreshDelay()  {
+        return settings.getAsInt("duniter.user.document.like.cache.refreshDelayInMs", 2000);
+    }
+
+    public int getLikeCountsMaxDocuments()  {
+        return settings.getAsInt("duniter.user.document.like.counts.maxDocuments", 100);
+    }
+
+    public int getProfileCacheMaxSize()  {
+        return settings.getAsInt("duniter.user.profile.cache.maxSize", 10000);
+    }
+
+    public int getProfileCacheTimeToLive()  {
+        return settings.getAsInt("duniter.user.profile.cache.timeToLiveInSec", 3600 /*1h*/);
+    }
+
     /* -- delegate methods -- */
 
     public String getClusterName() {
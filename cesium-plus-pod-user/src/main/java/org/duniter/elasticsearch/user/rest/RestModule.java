@@ -25,6 +25,7 @@ package org.duniter.elasticsearch.user.rest;
 import org.duniter.elasticsearch.user.rest.group.*;
 import org.duniter.elasticsearch.user.rest.history.RestHistoryDeleteIndexAction;
 import org.duniter.elasticsearch.user.rest.invitation.RestInvitationCertificationIndexAction;
+import org.duniter.elasticsearch.user.rest.like.RestLikeCountsAction;
 import org.duniter.elasticsearch.user.rest.like.RestLikeGetAction;
 import org.duniter.elasticsearch.user.rest.like.RestLikePostAction;
 import org.duniter.elasticsearch.user.rest.like.RestLikeSearchAction;
@@ -87,6 +88,7 @@ public class RestModule extends AbstractModule implements Module {
 
         // Like
         bind(RestLikeGetAction.class).asEagerSingleton();
+        bind(RestLikeCountsAction.class).asEagerSingleton();
         bind(RestLikePostAction.class).asEagerSingleton();
         bind(RestLikeSearchAction.class).asEagerSingleton();
 
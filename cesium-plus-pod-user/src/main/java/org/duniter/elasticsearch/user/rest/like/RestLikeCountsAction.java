@@ -0,0 +1,130 @@
+package org.duniter.elasticsearch.user.rest.like;
+
+/*
+ * #%L
+ * duniter4j-elasticsearch-plugin
+ * %%
+ * Copyright (C) 2014 - 2016 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.duniter.core.client.model.bma.jackson.JacksonUtils;
+import org.duniter.core.util.StringUtils;
+import org.duniter.elasticsearch.exception.InvalidFormatException;
+import org.duniter.elasticsearch.rest.JacksonJsonRestResponse;
+import org.duniter.elasticsearch.rest.XContentThrowableRestResponse;
+import org.duniter.elasticsearch.rest.security.RestSecurityController;
+import org.duniter.elasticsearch.user.PluginSettings;
+import org.duniter.elasticsearch.user.model.DocumentReference;
+import org.duniter.elasticsearch.user.model.LikeRecord;
+import org.duniter.elasticsearch.user.service.LikeService;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.rest.*;
+
+import java.util.*;
+
+/**
+ * Count likes of many documents, in one call.
+ * Request body: <code>{"kinds": ["LIKE", "ABUSE"], "docs": [{"index": "page", "type": "record", "id": "..."}, ...]}</code>
+ * Response: <code>[{"index": "page", "type": "record", "id": "...", "counts": {"LIKE": 2, "ABUSE": 0}}, ...]</code>
+ */
+public class RestLikeCountsAction extends BaseRestHandler {
+
+    public static final String PATH = "/like/record/_counts";
+
+    private final LikeService service;
+    private final int maxDocuments;
+
+    @Inject
+    public RestLikeCountsAction(Settings settings, PluginSettings pluginSettings, RestController controller,
+                                RestSecurityController securityController,
+                                Client client,
+                                LikeService service) {
+        super(settings, controller, client);
+        this.service = service;
+        this.maxDocuments = pluginSettings.getLikeCountsMaxDocuments();
+
+        securityController.allow(RestRequest.Method.POST, PATH);
+        controller.registerHandler(RestRequest.Method.POST, PATH, this);
+    }
+
+    @Override
+    protected void handleRequest(final RestRequest request, RestChannel channel, Client client) throws Exception {
+        try {
+            JsonNode content = JacksonUtils.getThreadObjectMapper().readTree(request.content().toUtf8());
+
+            // Read kinds (default: LIKE)
+            Set<LikeRecord.Kind> kinds = EnumSet.noneOf(LikeRecord.Kind.class);
+            JsonNode kindsNode = content.get("kinds");
+            if (kindsNode != null && kindsNode.isArray()) {
+                for (JsonNode kindNode : kindsNode) {
+                    try {
+                        kinds.add(LikeRecord.Kind.valueOf(kindNode.asText().toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        throw new InvalidFormatException(String.format("Like kind {%s} not exists. Expected: %s", kindNode.asText(), Arrays.toString(LikeRecord.Kind.values())));
+                    }
+                }
+            }
+            if (kinds.isEmpty()) kinds.add(LikeRecord.Kind.LIKE);
+
+            // Read documents
+            JsonNode docsNode = content.get("docs");
+            if (docsNode == null || !docsNode.isArray()) {
+                throw new InvalidFormatException("Missing 'docs' array");
+            }
+            if (docsNode.size() > maxDocuments) {
+                throw new InvalidFormatException(String.format("Too many documents (max: %s)", maxDocuments));
+            }
+            List<DocumentReference> documents = Lists.newArrayListWithCapacity(docsNode.size());
+            for (JsonNode docNode : docsNode) {
+                String index = docNode.path(LikeRecord.PROPERTY_INDEX).asText(null);
+                String type = docNode.path(LikeRecord.PROPERTY_TYPE).asText(null);
+                String id = docNode.path(LikeRecord.PROPERTY_ID).asText(null);
+                if (StringUtils.isBlank(index) || StringUtils.isBlank(type) || StringUtils.isBlank(id)) {
+                    throw new InvalidFormatException("Invalid document: 'index', 'type' and 'id' are required");
+                }
+                documents.add(new DocumentReference(index, type, id));
+            }
+
+            List<Map<LikeRecord.Kind, Long>> counts = service.countByDocumentsAndKinds(documents, kinds);
+
+            // Build the response
+            List<Map<String, Object>> result = Lists.newArrayListWithCapacity(documents.size());
+            for (int i = 0; i < documents.size(); i++) {
+                DocumentReference document = documents.get(i);
+                Map<String, Object> item = Maps.newLinkedHashMap();
+                item.put(LikeRecord.PROPERTY_INDEX, document.getIndex());
+                item.put(LikeRecord.PROPERTY_TYPE, document.getType());
+                item.put(LikeRecord.PROPERTY_ID, document.getId());
+                item.put("counts", counts.get(i));
+                result.add(item);
+            }
+
+            channel.sendResponse(new JacksonJsonRestResponse(request, RestStatus.OK, result));
+        }
+        catch(Exception e) {
+            logger.debug("Error while counting likes: " + e.getMessage());
+            channel.sendResponse(new XContentThrowableRestResponse(request, e));
+        }
+    }
+
+}
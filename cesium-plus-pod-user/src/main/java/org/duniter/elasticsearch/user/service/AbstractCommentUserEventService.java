@@ -35,6 +35,7 @@ import org.duniter.core.service.CryptoService;
 import org.duniter.core.util.CollectionUtils;
 import org.duniter.core.util.StringUtils;
 import org.duniter.elasticsearch.client.Duniter4jClient;
+import org.duniter.elasticsearch.service.changes.ChangeDispatcher;
 import org.duniter.elasticsearch.service.changes.ChangeEvent;
 import org.duniter.elasticsearch.service.changes.ChangeService;
 import org.duniter.elasticsearch.user.PluginSettings;
@@ -78,6 +79,12 @@ public abstract class  AbstractCommentUserEventService extends AbstractService i
         this.recordType = RecordDao.TYPE;
     }
 
+    @Override
+    public ChangeDispatcher.OverflowPolicy getOverflowPolicy() {
+        // Never skip a comment event (reloaded from the index, when the queue is full)
+        return ChangeDispatcher.OverflowPolicy.BLOCK;
+    }
+
     @Override
     public void onChange(ChangeEvent change) {
 
@@ -222,52 +222,55 @@ public class BlockchainUserEventService extends AbstractBlockchainListenerServic
             flushBulk();
         }
 
+        // Load all profiles (title and locale) of the block, in one call
+        Map<String, UserProfile> profiles = userService.getProfileTitlesAndLocales(collectPubkeys(block));
+
         // Joiners
         if (CollectionUtils.isNotEmpty(block.getJoiners())) {
             for (BlockchainBlock.Joiner joiner: block.getJoiners()) {
-                notifyUserEvent(block, joiner.getPublicKey(), UserEventCodes.MEMBER_JOIN, I18n.n("duniter.user.event.MEMBER_JOIN"), block.getCurrency());
+                notifyUserEvent(block, joiner.getPublicKey(), profiles, UserEventCodes.MEMBER_JOIN, I18n.n("duniter.user.event.MEMBER_JOIN"), block.getCurrency());
             }
         }
 
         // Actives
         if (CollectionUtils.isNotEmpty(block.getActives())) {
             for (BlockchainBlock.Joiner active: block.getActives()) {
-                notifyUserEvent(block, active.getPublicKey(), UserEventCodes.MEMBER_ACTIVE, I18n.n("duniter.user.event.MEMBER_ACTIVE"), block.getCurrency());
+                notifyUserEvent(block, active.getPublicKey(), profiles, UserEventCodes.MEMBER_ACTIVE, I18n.n("duniter.user.event.MEMBER_ACTIVE"), block.getCurrency());
             }
         }
 
         // Leavers
         if (CollectionUtils.isNotEmpty(block.getLeavers())) {
-            for (BlockchainBlock.Joiner leaver: block.getJoiners()) {
-                notifyUserEvent(block, leaver.getPublicKey(), UserEventCodes.MEMBER_LEAVE, I18n.n("duniter.user.event.MEMBER_LEAVE"), block.getCurrency());
+            for (BlockchainBlock.Joiner leaver: block.getLeavers()) {
+                notifyUserEvent(block, leaver.getPublicKey(), profiles, UserEventCodes.MEMBER_LEAVE, I18n.n("duniter.user.event.MEMBER_LEAVE"), block.getCurrency());
             }
         }
 
         // Revoked
         if (CollectionUtils.isNotEmpty(block.getRevoked())) {
             for (BlockchainBlock.Revoked revoked: block.getRevoked()) {
-                notifyUserEvent(block, revoked.getPubkey(), UserEventCodes.MEMBER_REVOKE, I18n.n("duniter.user.event.MEMBER_REVOKE"), block.getCurrency());
+                notifyUserEvent(block, revoked.getPubkey(), profiles, UserEventCodes.MEMBER_REVOKE, I18n.n("duniter.user.event.MEMBER_REVOKE"), block.getCurrency());
             }
         }
 
         // Excluded
         if (CollectionUtils.isNotEmpty(block.getExcluded())) {
             for (String excluded: block.getExcluded()) {
-                notifyUserEvent(block, excluded, UserEventCodes.MEMBER_EXCLUDE, I18n.n("duniter.user.event.MEMBER_EXCLUDE"), block.getCurrency());
+                notifyUserEvent(block, excluded, profiles, UserEventCodes.MEMBER_EXCLUDE, I18n.n("duniter.user.event.MEMBER_EXCLUDE"), block.getCurrency());
             }
         }
 
         // Certifications
         if (CollectionUtils.isNotEmpty(block.getCertifications())) {
             for (BlockchainBlock.Certification cert: block.getCertifications()) {
-                processCertification(block, cert);
+                processCertification(block, cert, profiles);
             }
         }
 
         // Tx
         if (CollectionUtils.isNotEmpty(block.getTransactions())) {
             for (BlockchainBlock.Transaction tx: block.getTransactions()) {
-                processTx(block, tx);
+                processTx(block, tx, profiles);
             }
         }
 
@@ -275,58 +278,85 @@ public class BlockchainUserEventService extends AbstractBlockchainListenerServic
         flushBulkRequestOrSchedule();
     }
 
-    private void processTx(BlockchainBlock block, BlockchainBlock.Transaction tx) {
-        Set<String> issuers = ImmutableSet.copyOf(tx.getIssuers());
-
+    private Set<String> collectPubkeys(BlockchainBlock block) {
+        Set<String> pubkeys = new HashSet<>();
+        if (CollectionUtils.isNotEmpty(block.getJoiners())) {
+            for (BlockchainBlock.Joiner joiner: block.getJoiners()) pubkeys.add(joiner.getPublicKey());
+        }
+        if (CollectionUtils.isNotEmpty(block.getActives())) {
+            for (BlockchainBlock.Joiner active: block.getActives()) pubkeys.add(active.getPublicKey());
+        }
+        if (CollectionUtils.isNotEmpty(block.getLeavers())) {
+            for (BlockchainBlock.Joiner leaver: block.getLeavers()) pubkeys.add(leaver.getPublicKey());
+        }
+        if (CollectionUtils.isNotEmpty(block.getRevoked())) {
+            for (BlockchainBlock.Revoked revoked: block.getRevoked()) pubkeys.add(revoked.getPubkey());
+        }
+        if (CollectionUtils.isNotEmpty(block.getExcluded())) {
+            pubkeys.addAll(Arrays.asList(block.getExcluded()));
+        }
+        if (CollectionUtils.isNotEmpty(block.getCertifications())) {
+            for (BlockchainBlock.Certification cert: block.getCertifications()) {
+                pubkeys.add(cert.getFromPubkey());
+                pubkeys.add(cert.getToPubkey());
+            }
+        }
+        if (CollectionUtils.isNotEmpty(block.getTransactions())) {
+            for (BlockchainBlock.Transaction tx: block.getTransactions()) {
+                pubkeys.addAll(Arrays.asList(tx.getIssuers()));
+                pubkeys.addAll(getTxReceivers(tx, ImmutableSet.copyOf(tx.getIssuers())));
+            }
+        }
+        pubkeys.remove(null);
+        return pubkeys;
+    }
 
-        // Collect receivers
+    private Set<String> getTxReceivers(BlockchainBlock.Transaction tx, Set<String> issuers) {
         Set<String> receivers = new HashSet<>();
         for (String output : tx.getOutputs()) {
             String[] parts = output.split(":");
             if (parts.length >= 3 && parts[2].startsWith("SIG(")) {
                 String receiver = parts[2].substring(4, parts[2].length() - 1);
-                if (!issuers.contains(receiver) && !receivers.contains(receiver)) {
+                if (!issuers.contains(receiver)) {
                     receivers.add(receiver);
                 }
             }
         }
+        return receivers;
+    }
 
-        Map<String, UserProfile> issuerProfiles = userService.getProfilesByPubkey(issuers, UserProfile.PROPERTY_TITLE, UserProfile.PROPERTY_LOCALE);
-        Map<String, UserProfile> receiverProfiles = userService.getProfilesByPubkey(receivers, UserProfile.PROPERTY_TITLE, UserProfile.PROPERTY_LOCALE);
+    private void processTx(BlockchainBlock block, BlockchainBlock.Transaction tx, Map<String, UserProfile> profiles) {
+        Set<String> issuers = ImmutableSet.copyOf(tx.getIssuers());
+
+        // Collect receivers
+        Set<String> receivers = getTxReceivers(tx, issuers);
 
         // Emit TX_RECEIVED events
         if (CollectionUtils.isNotEmpty(issuers)) {
-            String issuerNames = userService.joinNamesFromProfiles(issuers, issuerProfiles, DEFAULT_PUBKEYS_SEPARATOR, true);
+            String issuerNames = userService.joinNamesFromProfiles(issuers, profiles, DEFAULT_PUBKEYS_SEPARATOR, true);
             String issuersAsString = ModelUtils.joinPubkeys(issuers, DEFAULT_PUBKEYS_SEPARATOR, false);
             for (String receiver : receivers) {
-                UserProfile receiverProfile = receiverProfiles.get(receiver);
-                String receiverLocale = receiverProfile != null ? receiverProfile.getLocale() : null;
-                notifyUserEvent(block, receiver, receiverLocale, UserEventCodes.TX_RECEIVED, I18n.n("duniter.user.event.TX_RECEIVED"), issuersAsString, issuerNames);
+                notifyUserEvent(block, receiver, profiles, UserEventCodes.TX_RECEIVED, I18n.n("duniter.user.event.TX_RECEIVED"), issuersAsString, issuerNames);
             }
         }
 
 
         // Emit TX_SENT events
         if (CollectionUtils.isNotEmpty(receivers)) {
-            String receiverNames = userService.joinNamesFromProfiles(receivers, receiverProfiles, DEFAULT_PUBKEYS_SEPARATOR, true);
+            String receiverNames = userService.joinNamesFromProfiles(receivers, profiles, DEFAULT_PUBKEYS_SEPARATOR, true);
             String receiversAsString = ModelUtils.joinPubkeys(receivers, DEFAULT_PUBKEYS_SEPARATOR, false);
             for (String issuer : issuers) {
-                UserProfile issuerProfile = issuerProfiles.get(issuer);
-                String issuerLocale = issuerProfile != null ? issuerProfile.getLocale() : null;
-                notifyUserEvent(block, issuer, issuerLocale, UserEventCodes.TX_SENT, I18n.n("duniter.user.event.TX_SENT"), receiversAsString, receiverNames);
+                notifyUserEvent(block, issuer, profiles, UserEventCodes.TX_SENT, I18n.n("duniter.user.event.TX_SENT"), receiversAsString, receiverNames);
             }
         }
-
-
-
     }
 
-    private void processCertification(BlockchainBlock block, BlockchainBlock.Certification certification) {
+    private void processCertification(BlockchainBlock block, BlockchainBlock.Certification certification, Map<String, UserProfile> profiles) {
         String issuer = certification.getFromPubkey();
-        UserProfile issuerProfile = userService.getProfileByPubkey(issuer).orElse(EMPTY_PROFILE);
+        UserProfile issuerProfile = profiles.getOrDefault(issuer, EMPTY_PROFILE);
 
         String receiver = certification.getToPubkey();
-        UserProfile receiverProfile = userService.getProfileByPubkey(receiver).orElse(EMPTY_PROFILE);
+        UserProfile receiverProfile = profiles.getOrDefault(receiver, EMPTY_PROFILE);
 
         // Received
         String issuerName = StringUtils.isNotBlank(issuerProfile.getTitle()) ? issuerProfile.getTitle() : ModelUtils.minifyPubkey(issuer);
@@ -339,11 +369,14 @@ public class BlockchainUserEventService extends AbstractBlockchainListenerServic
                 I18n.n("duniter.user.event.CERT_SENT"),
                 receiver, receiverName);
     }
+
     private void notifyUserEvent(BlockchainBlock block, String pubkey,
+                                 Map<String, UserProfile> profiles,
                                  UserEventCodes code,
                                  String message,
                                  String... params) {
-        notifyUserEvent(block, pubkey, null/*will read the locale from the profile, if any*/, code, message, params);
+        UserProfile profile = profiles.get(pubkey);
+        notifyUserEvent(block, pubkey, profile != null ? profile.getLocale() : null, code, message, params);
     }
 
     private void notifyUserEvent(BlockchainBlock block, String pubkey,
@@ -364,7 +397,8 @@ public class BlockchainUserEventService extends AbstractBlockchainListenerServic
                 .setReferenceHash(block.getHash())
                 .build();
 
-        event = locale == null ? userEventService.fillUserEvent(event) : userEventService.fillUserEvent(new Locale(locale), event) ;
+        // Locale already resolved from the profiles (null if no profile, or no locale)
+        event = userEventService.fillUserEvent(locale != null ? new Locale(locale) : null, event);
 
         try {
             bulkRequest.add(client.prepareIndex(UserEventService.INDEX, UserEventService.EVENT_TYPE)
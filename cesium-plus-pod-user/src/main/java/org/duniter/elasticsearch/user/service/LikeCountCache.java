@@ -0,0 +1,244 @@
+package org.duniter.elasticsearch.user.service;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch User plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+import org.duniter.core.exception.TechnicalException;
+import org.duniter.elasticsearch.user.model.LikeRecord;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Like counters and issuers, by document and kind.
+ * Entries are loaded on demand, then invalidated on like records changes (see {@link LikeService}).
+ * A change is never applied to a cached count: the count may already include it.
+ * After a change, loaded values are not kept during 'refreshDelay' ms (the change may not be visible yet by searches).
+ */
+public class LikeCountCache {
+
+    public static class Key {
+        private final String index;
+        private final String type;
+        private final String id;
+        private final LikeRecord.Kind kind;
+
+        public Key(String index, String type, String id, LikeRecord.Kind kind) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+            this.kind = kind;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return kind == key.kind &&
+                    Objects.equals(id, key.id) &&
+                    Objects.equals(type, key.type) &&
+                    Objects.equals(index, key.index);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(index, type, id, kind);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s/%s/%s/%s", index, type, id, kind);
+        }
+    }
+
+    private static class Entry {
+        long count = -1; // -1 = not loaded
+        Set<String> issuers; // null = not loaded
+    }
+
+    // document -> counters
+    private final Cache<Key, Entry> entries;
+    // like record id -> document (used on deletion)
+    private final Cache<String, Key> recordKeys;
+    // document -> time (in ms) until which loaded values are not kept
+    private final Cache<Key, Long> dirtyKeys;
+    // Same, for all documents (e.g. after the deletion of an unknown record)
+    private volatile long dirtyUntil;
+    // Incremented on each invalidation (see putCount())
+    private final AtomicLong generation = new AtomicLong();
+    private final long refreshDelayMs;
+
+    public LikeCountCache(long maxSize, long timeToLiveInSec, long refreshDelayMs) {
+        this.refreshDelayMs = refreshDelayMs;
+        this.entries = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(timeToLiveInSec, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.recordKeys = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(timeToLiveInSec, TimeUnit.SECONDS)
+                .build();
+        this.dirtyKeys = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(refreshDelayMs + 60000, TimeUnit.MILLISECONDS) // Keep it longer than any load
+                .build();
+    }
+
+    public long getCount(Key key, Supplier<Long> loader) {
+        Entry entry = getEntry(key);
+        synchronized (entry) {
+            if (entry.count != -1) return entry.count;
+            long startTime = System.currentTimeMillis();
+            long count = loader.get();
+            if (!isDirty(key, startTime)) entry.count = count;
+            return count;
+        }
+    }
+
+    /**
+     * @return the cached count, or null if not loaded
+     */
+    public Long getCountIfPresent(Key key) {
+        Entry entry = entries.getIfPresent(key);
+        if (entry == null) return null;
+        synchronized (entry) {
+            return entry.count != -1 ? entry.count : null;
+        }
+    }
+
+    /**
+     * Value to read before loading counts, then to pass to putCount()
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Set a count loaded from the index (ignored if already loaded, if an entry was invalidated since the given generation,
+     * or if the document changed just before the load)
+     * @param startTime time (in ms) when the load started
+     */
+    public void putCount(Key key, long count, long generation, long startTime) {
+        if (this.generation.get() != generation || isDirty(key, startTime)) return;
+        Entry entry = getEntry(key);
+        synchronized (entry) {
+            if (entry.count == -1) entry.count = count;
+        }
+    }
+
+    public Set<String> getIssuers(Key key, Supplier<Set<String>> loader) {
+        Entry entry = getEntry(key);
+        synchronized (entry) {
+            if (entry.issuers != null) return entry.issuers;
+            long startTime = System.currentTimeMillis();
+            Set<String> issuers = ImmutableSet.copyOf(loader.get());
+            if (!isDirty(key, startTime)) entry.issuers = issuers;
+            return issuers;
+        }
+    }
+
+    /**
+     * Remember the document of a like record, read from the index (so that its deletion invalidates only this document)
+     */
+    public void putRecordKey(String recordId, Key key) {
+        recordKeys.put(recordId, key);
+    }
+
+    /**
+     * A like record has been indexed (created or updated)
+     */
+    public void onLikeIndexed(String recordId, Key key) {
+        Key previousKey = recordKeys.getIfPresent(recordId);
+        recordKeys.put(recordId, key);
+
+        if (previousKey != null && !previousKey.equals(key)) invalidate(previousKey);
+        invalidate(key);
+    }
+
+    /**
+     * A like record has been deleted
+     */
+    public void onLikeDeleted(String recordId) {
+        Key key = recordKeys.getIfPresent(recordId);
+
+        // Unknown record (no source on deletion): invalidate all documents
+        if (key == null) {
+            clear();
+            return;
+        }
+
+        recordKeys.invalidate(recordId);
+        invalidate(key);
+    }
+
+    public void clear() {
+        dirtyUntil = System.currentTimeMillis() + refreshDelayMs;
+        generation.incrementAndGet();
+        entries.invalidateAll();
+        recordKeys.invalidateAll();
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    public CacheStats stats() {
+        return entries.stats();
+    }
+
+    /* -- internal methods -- */
+
+    private void invalidate(Key key) {
+        if (refreshDelayMs > 0) dirtyKeys.put(key, System.currentTimeMillis() + refreshDelayMs);
+        generation.incrementAndGet();
+        entries.invalidate(key);
+    }
+
+    /**
+     * @return true if a load started at the given time may not see the last change of the document
+     */
+    private boolean isDirty(Key key, long startTime) {
+        if (refreshDelayMs <= 0) return false;
+        if (startTime < dirtyUntil) return true;
+        Long keyDirtyUntil = dirtyKeys.getIfPresent(key);
+        return keyDirtyUntil != null && startTime < keyDirtyUntil;
+    }
+
+    private Entry getEntry(Key key) {
+        try {
+            return entries.get(key, Entry::new);
+        }
+        catch (ExecutionException e) {
+            throw new TechnicalException(e.getCause());
+        }
+    }
+}
@@ -25,12 +25,16 @@ package org.duniter.elasticsearch.user.service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import org.duniter.core.client.model.ModelUtils;
 import org.duniter.core.client.model.elasticsearch.Record;
 import org.duniter.core.exception.TechnicalException;
 import org.duniter.core.service.CryptoService;
+import org.duniter.core.util.CollectionUtils;
 import org.duniter.core.util.Preconditions;
 import org.duniter.core.util.StringUtils;
 import org.duniter.elasticsearch.client.Duniter4jClient;
@@ -39,12 +43,17 @@ import org.duniter.elasticsearch.exception.DuplicatedDocumentException;
 import org.duniter.elasticsearch.exception.InvalidFormatException;
 import org.duniter.elasticsearch.exception.NotFoundException;
 import org.duniter.elasticsearch.service.WotService;
+import org.duniter.elasticsearch.service.changes.ChangeEvent;
+import org.duniter.elasticsearch.service.changes.ChangeService;
+import org.duniter.elasticsearch.service.changes.ChangeSource;
 import org.duniter.elasticsearch.user.PluginSettings;
 import org.duniter.elasticsearch.user.dao.profile.UserProfileDao;
 import org.duniter.elasticsearch.user.model.*;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
@@ -57,13 +66,13 @@ import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.sort.SortOrder;
 import org.nuiton.i18n.I18n;
 
 import java.io.IOException;
-import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Created by Benoit on 30/03/2015.
@@ -91,6 +100,7 @@ public class LikeService extends AbstractService {
     private final Set<String> reportAbuseIssuerRequirements;
     private final Set<String> likeIssuerRequirements;
     private final Set<String> adminAndModeratorPubkeys;
+    private final LikeCountCache countCache;
 
     @Inject
     public LikeService(Duniter4jClient client, PluginSettings settings, CryptoService cryptoService,
@@ -108,6 +118,34 @@ public class LikeService extends AbstractService {
                 .filter(StringUtils::isNotBlank)
                 .map(String::toLowerCase).collect(Collectors.toSet());
         this.adminAndModeratorPubkeys = pluginSettings.getDocumentAdminAndModeratorsPubkeys();
+
+        // Like counters cache, updated from like records changes
+        if (pluginSettings.enableLikeCache()) {
+            this.countCache = new LikeCountCache(pluginSettings.getLikeCacheMaxSize(), pluginSettings.getLikeCacheTimeToLive(),
+                    pluginSettings.getLikeCacheRefreshDelay());
+            ChangeService.registerListener(new ChangeService.ChangeListener() {
+                @Override
+                public String getId() {
+                    return "duniter.like.cache";
+                }
+                @Override
+                public Collection<ChangeSource> getChangeSources() {
+                    return ImmutableList.of(new ChangeSource(INDEX, RECORD_TYPE));
+                }
+                @Override
+                public void onChange(ChangeEvent change) {
+                    onLikeChange(change);
+                }
+                @Override
+                public void onOverflow() {
+                    // Some changes were lost
+                    countCache.clear();
+                }
+            });
+        }
+        else {
+            this.countCache = null;
+        }
     }
 
     /**
@@ -439,27 +477,68 @@ public class LikeService extends AbstractService {
         Preconditions.checkNotNull(StringUtils.isNotBlank(docId));
         Preconditions.checkNotNull(kind);
 
-        // Prepare search request
-        SearchRequestBuilder searchRequest = client
-                .prepareSearch(LikeService.INDEX)
-                .setTypes(LikeService.RECORD_TYPE)
-                .setFetchSource(false)
-                .setSearchType(SearchType.QUERY_AND_FETCH);
+        if (countCache != null) {
+            return countCache.getCount(new LikeCountCache.Key(index, type, docId, kind),
+                    () -> client.safeExecuteRequest(createCountRequest(index, type, docId, kind)).actionGet().getHits().getTotalHits());
+        }
 
-        // Query = filter on index/type/id
-        BoolQueryBuilder boolQuery = QueryBuilders.boolQuery()
-                .filter(QueryBuilders.termQuery(LikeRecord.PROPERTY_INDEX, index))
-                .filter(QueryBuilders.termQuery(LikeRecord.PROPERTY_TYPE, type))
-                .filter(QueryBuilders.termQuery(LikeRecord.PROPERTY_ID, docId))
-                .filter(QueryBuilders.termQuery(LikeRecord.PROPERTY_KIND, kind.toString()));
+        return client.safeExecuteRequest(createCountRequest(index, type, docId, kind)).actionGet().getHits().getTotalHits();
+    }
 
-        searchRequest.setQuery(QueryBuilders.constantScoreQuery(boolQuery));
+    /**
+     * Count likes of many documents, using the cache then a multi search (for not cached documents)
+     * @return counts, by document and kind (same order as the given documents)
+     */
+    public List<Map<LikeRecord.Kind, Long>> countByDocumentsAndKinds(List<DocumentReference> documents, Collection<LikeRecord.Kind> kinds) {
+        Preconditions.checkNotNull(documents);
+        Preconditions.checkArgument(CollectionUtils.isNotEmpty(kinds));
+
+        List<Map<LikeRecord.Kind, Long>> result = Lists.newArrayListWithCapacity(documents.size());
+        List<LikeCountCache.Key> missingKeys = Lists.newArrayList();
+        MultiSearchRequestBuilder multiSearch = client.prepareMultiSearch();
+
+        for (DocumentReference document: documents) {
+            Map<LikeRecord.Kind, Long> counts = new EnumMap<>(LikeRecord.Kind.class);
+            for (LikeRecord.Kind kind: kinds) {
+                LikeCountCache.Key key = new LikeCountCache.Key(document.getIndex(), document.getType(), document.getId(), kind);
+                Long count = countCache != null ? countCache.getCountIfPresent(key) : null;
+                if (count != null) {
+                    counts.put(kind, count);
+                }
+                else {
+                    missingKeys.add(key);
+                    multiSearch.add(createCountRequest(document.getIndex(), document.getType(), document.getId(), kind));
+                }
+            }
+            result.add(counts);
+        }
 
-        SearchResponse response = searchRequest
-                .setSize(0)
-                .get();
+        // Load missing counts (one round trip)
+        if (!missingKeys.isEmpty()) {
+            long generation = countCache != null ? countCache.getGeneration() : 0;
+            long startTime = System.currentTimeMillis();
+            MultiSearchResponse.Item[] items = client.safeExecuteRequest(multiSearch).actionGet().getResponses();
+            Map<LikeCountCache.Key, Long> loadedCounts = Maps.newHashMap();
+            for (int i = 0; i < items.length; i++) {
+                if (items[i].isFailure()) {
+                    throw new TechnicalException(String.format("Unable to count likes on {%s}: %s", missingKeys.get(i), items[i].getFailureMessage()));
+                }
+                long count = items[i].getResponse().getHits().getTotalHits();
+                loadedCounts.put(missingKeys.get(i), count);
+                if (countCache != null) countCache.putCount(missingKeys.get(i), count, generation, startTime);
+            }
 
-        return response.getHits().getTotalHits();
+            int docIndex = 0;
+            for (DocumentReference document: documents) {
+                Map<LikeRecord.Kind, Long> counts = result.get(docIndex++);
+                for (LikeRecord.Kind kind: kinds) {
+                    if (counts.containsKey(kind)) continue;
+                    counts.put(kind, loadedCounts.get(new LikeCountCache.Key(document.getIndex(), document.getType(), document.getId(), kind)));
+                }
+            }
+        }
+
+        return result;
     }
 
     public Set<String> getIssuersByDocumentAndKind(String index, String type, String docId, LikeRecord.Kind kind) {
@@ -468,6 +547,22 @@ public class LikeService extends AbstractService {
         Preconditions.checkArgument(StringUtils.isNotBlank(docId));
         Preconditions.checkNotNull(kind);
 
+        if (countCache != null) {
+            return countCache.getIssuers(new LikeCountCache.Key(index, type, docId, kind),
+                    () -> getIssuersByDocumentAndKindFromIndex(index, type, docId, kind));
+        }
+
+        return getIssuersByDocumentAndKindFromIndex(index, type, docId, kind);
+    }
+
+    public void deleteAllByReference(final DocumentReference reference) {
+        Preconditions.checkNotNull(reference);
+        addDeletesByReferenceToBulk(reference, client.prepareBulk(), pluginSettings.getIndexBulkSize(), true);
+    }
+
+    /* -- Internal methods -- */
+
+    protected Set<String> getIssuersByDocumentAndKindFromIndex(String index, String type, String docId, LikeRecord.Kind kind) {
         int size = pluginSettings.getIndexBulkSize();
 
         // Prepare search request
@@ -476,8 +571,7 @@ public class LikeService extends AbstractService {
                 .setTypes(LikeService.RECORD_TYPE)
                 .setFetchSource(false)
                 .addFields(LikeRecord.PROPERTY_ISSUER)
-                .setSearchType(SearchType.QUERY_AND_FETCH)
-                .setSize(size);
+                .addSort("_doc", SortOrder.ASC);
 
         // Query = filter on index/type/id
         BoolQueryBuilder boolQuery = QueryBuilders.boolQuery()
@@ -490,36 +584,69 @@ public class LikeService extends AbstractService {
 
 
         // Execute query
-        long total = -1;
-        int from = 0;
         Set<String> result = Sets.newHashSet();
-        do {
-            SearchResponse response = client.safeExecuteRequest(request).actionGet();
-
-            // Read query result
-            SearchHit[] searchHits = response.getHits().getHits();
-            for (SearchHit searchHit : searchHits) {
-                Map<String, SearchHitField> hitFields = searchHit.getFields();
-                SearchHitField issuerField = hitFields.get(LikeRecord.PROPERTY_ISSUER);
+        LikeCountCache.Key key = new LikeCountCache.Key(index, type, docId, kind);
+        try (Stream<SearchHit> hits = client.scan(request, size)) {
+            hits.forEach(searchHit -> {
+                SearchHitField issuerField = searchHit.getFields().get(LikeRecord.PROPERTY_ISSUER);
                 if (issuerField != null) {
                     result.add(issuerField.getValue());
                 }
-            }
-            from += size;
-            request.setFrom(from);
-            if (total == -1) total = (response.getHits() != null) ? response.getHits().getTotalHits() : 0;
-        } while (from < total);
+                // Remember the record document (used on deletion)
+                if (countCache != null) countCache.putRecordKey(searchHit.getId(), key);
+            });
+        }
 
         return result;
     }
 
-    public void deleteAllByReference(final DocumentReference reference) {
-        Preconditions.checkNotNull(reference);
-        addDeletesByReferenceToBulk(reference, client.prepareBulk(), pluginSettings.getIndexBulkSize(), true);
-    }
+    protected SearchRequestBuilder createCountRequest(String index, String type, String docId, LikeRecord.Kind kind) {
+        // Query = filter on index/type/id
+        BoolQueryBuilder boolQuery = QueryBuilders.boolQuery()
+                .filter(QueryBuilders.termQuery(LikeRecord.PROPERTY_INDEX, index))
+                .filter(QueryBuilders.termQuery(LikeRecord.PROPERTY_TYPE, type))
+                .filter(QueryBuilders.termQuery(LikeRecord.PROPERTY_ID, docId))
+                .filter(QueryBuilders.termQuery(LikeRecord.PROPERTY_KIND, kind.toString()));
 
-    /* -- Internal methods -- */
+        return client
+                .prepareSearch(LikeService.INDEX)
+                .setTypes(LikeService.RECORD_TYPE)
+                .setFetchSource(false)
+                .setSearchType(SearchType.QUERY_AND_FETCH)
+                .setQuery(QueryBuilders.constantScoreQuery(boolQuery))
+                .setSize(0);
+    }
 
+    protected void onLikeChange(ChangeEvent change) {
+        try {
+            switch (change.getOperation()) {
+                case CREATE:
+                case INDEX:
+                    if (!change.hasSource()) {
+                        countCache.clear();
+                        return;
+                    }
+                    JsonNode source = getObjectMapper().readTree(change.getSource().streamInput());
+                    LikeRecord.Kind kind = LikeRecord.Kind.valueOf(source.get(LikeRecord.PROPERTY_KIND).asText());
+                    LikeCountCache.Key key = new LikeCountCache.Key(
+                            source.get(LikeRecord.PROPERTY_INDEX).asText(),
+                            source.get(LikeRecord.PROPERTY_TYPE).asText(),
+                            source.get(LikeRecord.PROPERTY_ID).asText(),
+                            kind);
+                    countCache.onLikeIndexed(change.getId(), key);
+                    break;
+                case DELETE:
+                    countCache.onLikeDeleted(change.getId());
+                    break;
+                default:
+                    break;
+            }
+        }
+        catch (Exception e) {
+            logger.warn(String.format("Unable to update like counters, on like {%s}: %s", change.getId(), e.getMessage()));
+            countCache.clear();
+        }
+    }
 
     protected XContentBuilder createRecordType() {
         try {
@@ -27,9 +27,16 @@ import org.duniter.core.exception.TechnicalException;
 import org.duniter.core.model.SmtpConfig;
 import org.duniter.core.service.CryptoService;
 import org.duniter.elasticsearch.client.Duniter4jClient;
+import org.duniter.elasticsearch.rest.node.RestNodeStatsGetAction;
 import org.duniter.elasticsearch.user.PluginSettings;
+import org.duniter.elasticsearch.user.service.mail.MailQueue;
+import org.duniter.elasticsearch.user.service.mail.MailTransport;
+import org.duniter.elasticsearch.user.service.mail.MemoryMailTransport;
+import org.duniter.elasticsearch.user.service.mail.SmtpMailTransport;
 import org.elasticsearch.common.inject.Inject;
 
+import java.util.function.Supplier;
+
 /**
  * Created by Benoit on 30/03/2015.
  */
@@ -39,6 +46,8 @@ public class MailService extends AbstractService {
 
     private final boolean enable;
 
+    private final MailQueue queue;
+
     @Inject
     public MailService(final Duniter4jClient client,
                        final PluginSettings pluginSettings,
@@ -51,16 +60,32 @@ public class MailService extends AbstractService {
         if (this.enable) {
             delegate.setSmtpConfig(createConfig(pluginSettings));
         }
+
+        // Init the queue
+        if (this.enable && pluginSettings.getMailQueueEnable()) {
+            this.queue = new MailQueue(pluginSettings.getSettings(), createTransportFactory(pluginSettings));
+            RestNodeStatsGetAction.registerStats("mailQueue", queue::getStatistics);
+        }
+        else {
+            this.queue = null;
+        }
     }
 
     /**
      * Send email
+     * @return false if the email could not be sent (or queued)
      */
-    public void sendTextEmail(String subject, String textContent, String... recipients) {
-        if (!this.enable) return;
+    public boolean sendTextEmail(String subject, String textContent, String... recipients) {
+        if (!this.enable) return false;
+
+        // Send asynchronously
+        if (queue != null) {
+            return queue.offer(new MailQueue.Mail(subject, textContent, null, recipients));
+        }
 
         try {
             delegate.sendTextEmail(subject, textContent, recipients);
+            return true;
         }
         catch(TechnicalException e) {
             if (logger.isDebugEnabled()) {
@@ -69,17 +94,25 @@ public class MailService extends AbstractService {
             else {
                 logger.error(e.getMessage());
             }
+            return false;
         }
     }
 
     /**
      * Send email
+     * @return false if the email could not be sent (or queued)
      */
-    public void sendHtmlEmail(String subject, String htmlContent, String... recipients) {
-        if (!this.enable) return;
+    public boolean sendHtmlEmail(String subject, String htmlContent, String... recipients) {
+        if (!this.enable) return false;
+
+        // Send asynchronously
+        if (queue != null) {
+            return queue.offer(new MailQueue.Mail(subject, null, htmlContent, recipients));
+        }
 
         try {
             delegate.sendHtmlEmail(subject, htmlContent, recipients);
+            return true;
         }
         catch(TechnicalException e) {
             if (logger.isDebugEnabled()) {
@@ -88,17 +121,25 @@ public class MailService extends AbstractService {
             else {
                 logger.error(e.getMessage());
             }
+            return false;
         }
     }
 
     /**
      * Send email
+     * @return false if the email could not be sent (or queued)
      */
-    public void sendHtmlEmailWithText(String subject, String textContent, String htmlContent, String... recipients) {
-        if (!this.enable) return;
+    public boolean sendHtmlEmailWithText(String subject, String textContent, String htmlContent, String... recipients) {
+        if (!this.enable) return false;
+
+        // Send asynchronously
+        if (queue != null) {
+            return queue.offer(new MailQueue.Mail(subject, textContent, htmlContent, recipients));
+        }
 
         try {
             delegate.sendHtmlEmailWithText(subject, textContent, htmlContent, recipients);
+            return true;
         }
         catch(TechnicalException e) {
             if (logger.isDebugEnabled()) {
@@ -107,11 +148,34 @@ public class MailService extends AbstractService {
             else {
                 logger.error(e.getMessage());
             }
+            return false;
         }
     }
 
+    /**
+     * Wait (at most 'timeoutMs') until some emails can be queued without waiting
+     * @return false if the queue is still too full
+     */
+    public boolean awaitCapacity(int count, long timeoutMs) {
+        return queue == null || queue.awaitCapacity(count, timeoutMs);
+    }
+
+    public void close() {
+        if (queue != null) queue.close();
+    }
+
     /* -- internal methods -- */
 
+    protected Supplier<MailTransport> createTransportFactory(PluginSettings pluginSettings) {
+        // Memory transport (for load tests, without a SMTP server)
+        if ("memory".equalsIgnoreCase(pluginSettings.getMailTransport())) {
+            logger.warn("Mail transport is 'memory': emails will NOT be sent");
+            final MemoryMailTransport.Inbox inbox = new MemoryMailTransport.Inbox(100, 0);
+            return () -> new MemoryMailTransport(inbox);
+        }
+        return () -> new SmtpMailTransport(pluginSettings);
+    }
+
     protected SmtpConfig createConfig(PluginSettings pluginSettings) {
         SmtpConfig config = new SmtpConfig();
         config.setSmtpHost(pluginSettings.getMailSmtpHost());
@@ -0,0 +1,108 @@
+package org.duniter.elasticsearch.user.service;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch User plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * User event listeners, indexed by pubkey (then by listener id).
+ * Used to deliver an event only to the sessions of its recipient.
+ */
+public class UserEventListenerRegistry {
+
+    private final Map<String, Map<String, UserEventService.UserEventListener>> listenersByPubkey = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public void register(UserEventService.UserEventListener listener) {
+        String id = listener.getId();
+        String pubkey = listener.getPubkey();
+        if (id == null || pubkey == null) return;
+
+        listenersByPubkey.compute(pubkey, (key, listeners) -> {
+            if (listeners == null) listeners = new ConcurrentHashMap<>();
+            if (listeners.put(id, listener) == null) size.incrementAndGet();
+            return listeners;
+        });
+    }
+
+    public void unregister(UserEventService.UserEventListener listener) {
+        String id = listener.getId();
+        String pubkey = listener.getPubkey();
+        if (id == null || pubkey == null) return;
+
+        listenersByPubkey.computeIfPresent(pubkey, (key, listeners) -> {
+            if (listeners.remove(id) != null) size.decrementAndGet();
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+    /**
+     * @return listeners of the given pubkey (empty if none)
+     */
+    public Collection<UserEventService.UserEventListener> getListeners(String pubkey) {
+        if (pubkey == null) return ImmutableList.of();
+        Map<String, UserEventService.UserEventListener> listeners = listenersByPubkey.get(pubkey);
+        return listeners == null ? ImmutableList.of() : ImmutableList.copyOf(listeners.values());
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    /**
+     * @return the number of listeners (sessions)
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public int getPubkeyCount() {
+        return listenersByPubkey.size();
+    }
+
+    /**
+     * @return the max number of sessions of a pubkey
+     */
+    public int getMaxSessionCount() {
+        return listenersByPubkey.values().stream()
+                .mapToInt(Map::size)
+                .max().orElse(0);
+    }
+
+    /**
+     * Aggregated statistics (no pubkey, as published on the public node stats)
+     */
+    public Map<String, Object> toMap() {
+        return ImmutableMap.<String, Object>builder()
+                .put("sessions", size())
+                .put("pubkeys", getPubkeyCount())
+                .put("maxSessionsByPubkey", getMaxSessionCount())
+                .build();
+    }
+}
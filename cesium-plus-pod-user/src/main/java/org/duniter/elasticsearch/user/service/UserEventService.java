@@ -33,7 +33,9 @@ import org.duniter.core.util.Preconditions;
 import org.duniter.core.util.StringUtils;
 import org.duniter.elasticsearch.client.Duniter4jClient;
 import org.duniter.elasticsearch.exception.InvalidSignatureException;
+import org.duniter.elasticsearch.rest.node.RestNodeStatsGetAction;
 import org.duniter.elasticsearch.service.BlockchainService;
+import org.duniter.elasticsearch.service.changes.ChangeDispatcher;
 import org.duniter.elasticsearch.service.changes.ChangeEvent;
 import org.duniter.elasticsearch.service.changes.ChangeService;
 import org.duniter.elasticsearch.service.changes.ChangeSource;
@@ -45,6 +47,8 @@ import org.duniter.elasticsearch.user.model.UserProfile;
 import org.elasticsearch.action.ActionFuture;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
@@ -60,7 +64,6 @@ import org.elasticsearch.search.sort.SortOrder;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -78,16 +81,20 @@ public class UserEventService extends AbstractService implements ChangeService.C
     public static final String INDEX = "user";
     public static final String EVENT_TYPE = "event";
 
-    private static final Map<String, UserEventListener> LISTENERS = new ConcurrentHashMap<>();
+    private static final UserEventListenerRegistry LISTENERS = new UserEventListenerRegistry();
 
     private static final List<ChangeSource> CHANGE_LISTEN_SOURCES = ImmutableList.of(new ChangeSource(INDEX, EVENT_TYPE));
 
     public static void registerListener(UserEventListener listener) {
-        LISTENERS.put(listener.getId(), listener);
+        LISTENERS.register(listener);
     }
 
-    public static synchronized void unregisterListener(UserEventListener listener) {
-        LISTENERS.remove(listener.getId());
+    public static void unregisterListener(UserEventListener listener) {
+        LISTENERS.unregister(listener);
+    }
+
+    public static UserEventListenerRegistry getListeners() {
+        return LISTENERS;
     }
 
     private final ThreadPool threadPool;
@@ -107,6 +114,8 @@ public class UserEventService extends AbstractService implements ChangeService.C
 
         ChangeService.registerListener(this);
 
+        // Expose listeners (websocket sessions) in node stats
+        RestNodeStatsGetAction.registerStats("userEventListeners", LISTENERS::toMap);
     }
 
     /**
@@ -278,6 +287,36 @@ public class UserEventService extends AbstractService implements ChangeService.C
 
     public List<UserEvent> getUserEvents(String pubkey, Long lastTime, String[] includesCodes, String[] excludesCodes) {
 
+        SearchResponse response = prepareUserEventsSearch(pubkey, lastTime, includesCodes, excludesCodes).get();
+
+        return readUserEvents(response);
+    }
+
+    /**
+     * Same as getUserEvents(), for many recipients, in one round trip (multi search)
+     * @param requests requests created by prepareUserEventsSearch()
+     * @return user events, in the same order as requests
+     */
+    public List<List<UserEvent>> getUserEvents(List<SearchRequestBuilder> requests) {
+        Preconditions.checkNotNull(requests);
+        if (requests.isEmpty()) return ImmutableList.of();
+
+        MultiSearchRequestBuilder multiSearch = client.prepareMultiSearch();
+        requests.forEach(multiSearch::add);
+
+        MultiSearchResponse.Item[] items = client.safeExecuteRequest(multiSearch).actionGet().getResponses();
+        List<List<UserEvent>> result = new ArrayList<>(items.length);
+        for (int i = 0; i < items.length; i++) {
+            if (items[i].isFailure()) {
+                throw new TechnicalException(String.format("Unable to get user events: %s", items[i].getFailureMessage()));
+            }
+            result.add(readUserEvents(items[i].getResponse()));
+        }
+        return result;
+    }
+
+    public SearchRequestBuilder prepareUserEventsSearch(String pubkey, Long lastTime, String[] includesCodes, String[] excludesCodes) {
+
         BoolQueryBuilder query = QueryBuilders.boolQuery()
                 .must(QueryBuilders.termQuery(UserEvent.PROPERTY_RECIPIENT, pubkey));
         if (lastTime != null) {
@@ -291,19 +330,12 @@ public class UserEventService extends AbstractService implements ChangeService.C
             query.mustNot(QueryBuilders.termsQuery(UserEvent.PROPERTY_CODE, excludesCodes));
         }
 
-        SearchResponse response = client.prepareSearch(INDEX)
+        return client.prepareSearch(INDEX)
                 .setTypes(EVENT_TYPE)
                 .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
                 .setFetchSource(true)
                 .setQuery(query)
-                .addSort(UserEvent.PROPERTY_TIME, SortOrder.DESC)
-                .get();
-
-
-        return Arrays.asList(response.getHits().getHits()).stream()
-                .map(searchHit -> client.readSourceOrNull(searchHit, UserEvent.class))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+                .addSort(UserEvent.PROPERTY_TIME, SortOrder.DESC);
     }
 
     public String toJson(UserEvent userEvent) {
@@ -312,6 +344,13 @@ public class UserEventService extends AbstractService implements ChangeService.C
 
     /* -- Internal methods -- */
 
+    protected List<UserEvent> readUserEvents(SearchResponse response) {
+        return Arrays.asList(response.getHits().getHits()).stream()
+                .map(searchHit -> client.readSourceOrNull(searchHit, UserEvent.class))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
 
 
 
@@ -462,6 +501,12 @@ public class UserEventService extends AbstractService implements ChangeService.C
         return CHANGE_LISTEN_SOURCES;
     }
 
+    @Override
+    public ChangeDispatcher.OverflowPolicy getOverflowPolicy() {
+        // Never skip a user event (reloaded from the index, when the queue is full)
+        return ChangeDispatcher.OverflowPolicy.BLOCK;
+    }
+
     @Override
     public void onChange(ChangeEvent change) {
 
@@ -502,14 +547,12 @@ public class UserEventService extends AbstractService implements ChangeService.C
 
         event.setId(eventId);
 
-        if (LISTENERS.size() > 0 && event.getRecipient() != null) {
-            // Notify listeners
-            threadPool.schedule(() -> {
-                LISTENERS.values()
-                        .parallelStream()
-                        .filter(listener -> event.getRecipient().equals(listener.getPubkey()))
-                        .forEach(listener -> listener.onEvent(event));
-            });
+        if (!LISTENERS.isEmpty() && event.getRecipient() != null) {
+            // Notify recipient's listeners
+            Collection<UserEventListener> listeners = LISTENERS.getListeners(event.getRecipient());
+            if (!listeners.isEmpty()) {
+                threadPool.schedule(() -> listeners.forEach(listener -> listener.onEvent(event)));
+            }
         }
 
     }
@@ -24,7 +24,12 @@ package org.duniter.elasticsearch.user.service;
 
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import org.duniter.core.util.CollectionUtils;
 import org.duniter.core.util.Preconditions;
 import org.apache.commons.collections4.MapUtils;
@@ -40,6 +45,9 @@ import org.duniter.elasticsearch.rest.share.AbstractRestShareLinkAction;
 import org.duniter.elasticsearch.user.PluginSettings;
 import org.duniter.elasticsearch.exception.AccessDeniedException;
 import org.duniter.elasticsearch.service.AbstractService;
+import org.duniter.elasticsearch.service.changes.ChangeEvent;
+import org.duniter.elasticsearch.service.changes.ChangeService;
+import org.duniter.elasticsearch.service.changes.ChangeSource;
 import org.duniter.elasticsearch.user.dao.profile.UserIndexDao;
 import org.duniter.elasticsearch.user.dao.profile.UserProfileDao;
 import org.duniter.elasticsearch.user.dao.profile.UserSettingsDao;
@@ -49,6 +57,8 @@ import org.elasticsearch.rest.BytesRestResponse;
 import org.elasticsearch.rest.RestStatus;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 /**
@@ -65,6 +75,14 @@ public class UserService extends AbstractService {
     public static final String PROFILE_TYPE = "profile";
     public static final String SETTINGS_TYPE = "settings";
 
+    // Cached value, when a pubkey has no profile
+    private static final UserProfile NO_PROFILE = new UserProfile();
+
+    // pubkey -> profile (only title and locale)
+    private final Cache<String, UserProfile> profileCache;
+    // Incremented on each invalidation (to avoid caching a profile read before a change)
+    private final AtomicLong profileCacheGeneration = new AtomicLong();
+
     @Inject
     public UserService(Duniter4jClient client,
                        PluginSettings settings,
@@ -76,6 +94,38 @@ public class UserService extends AbstractService {
         this.indexDao = indexDao;
         this.profileDao = profileDao;
         this.settingsDao = settingsDao;
+
+        // Profile cache, invalidated on each profile change
+        if (settings.getProfileCacheMaxSize() > 0) {
+            this.profileCache = CacheBuilder.newBuilder()
+                    .maximumSize(settings.getProfileCacheMaxSize())
+                    .expireAfterWrite(settings.getProfileCacheTimeToLive(), TimeUnit.SECONDS)
+                    .build();
+            ChangeService.registerListener(new ChangeService.ChangeListener() {
+                @Override
+                public String getId() {
+                    return "duniter.user.profile.cache";
+                }
+                @Override
+                public Collection<ChangeSource> getChangeSources() {
+                    return ImmutableList.of(new ChangeSource(INDEX, PROFILE_TYPE));
+                }
+                @Override
+                public void onChange(ChangeEvent change) {
+                    profileCacheGeneration.incrementAndGet();
+                    profileCache.invalidate(change.getId());
+                }
+                @Override
+                public void onOverflow() {
+                    // Some changes were lost
+                    profileCacheGeneration.incrementAndGet();
+                    profileCache.invalidateAll();
+                }
+            });
+        }
+        else {
+            this.profileCache = null;
+        }
     }
 
     /**
@@ -214,20 +264,81 @@ public class UserService extends AbstractService {
         return result;
     }
 
+    /**
+     * Get profiles title and locale (using the cache)
+     * @return profiles, by pubkey (pubkeys without profile are excluded)
+     */
+    public Map<String, UserProfile> getProfileTitlesAndLocales(Set<String> pubkeys) {
+        if (CollectionUtils.isEmpty(pubkeys)) return Maps.newHashMap();
+
+        // No cache
+        if (profileCache == null) {
+            return getProfilesByPubkey(pubkeys, UserProfile.PROPERTY_TITLE, UserProfile.PROPERTY_LOCALE);
+        }
+
+        Map<String, UserProfile> result = Maps.newHashMap();
+        Set<String> missingPubkeys = Sets.newHashSet();
+        for (String pubkey: pubkeys) {
+            UserProfile profile = profileCache.getIfPresent(pubkey);
+            if (profile == null) {
+                missingPubkeys.add(pubkey);
+            }
+            else if (profile != NO_PROFILE) {
+                result.put(pubkey, copyTitleAndLocale(profile));
+            }
+        }
+
+        // Load missing profiles (in one request)
+        if (!missingPubkeys.isEmpty()) {
+            long generation = profileCacheGeneration.get();
+            Map<String, UserProfile> profiles = getProfilesByPubkey(missingPubkeys, UserProfile.PROPERTY_TITLE, UserProfile.PROPERTY_LOCALE);
+
+            for (String pubkey: missingPubkeys) {
+                UserProfile profile = profiles.get(pubkey);
+                if (profile == null) {
+                    profileCache.put(pubkey, NO_PROFILE);
+                }
+                else {
+                    profileCache.put(pubkey, copyTitleAndLocale(profile));
+                    result.put(pubkey, copyTitleAndLocale(profile));
+                }
+            }
+
+            // A profile changed during the load: loaded values could be old
+            if (profileCacheGeneration.get() != generation) {
+                profileCache.invalidateAll(missingPubkeys);
+            }
+        }
+
+        return result;
+    }
+
     public Optional<String> getProfileTitle(String pubkey) {
-        Object title = client.getFieldById(INDEX, PROFILE_TYPE, pubkey, UserProfile.PROPERTY_TITLE);
+        Object title = profileCache != null ?
+                getCachedProfile(pubkey).map(UserProfile::getTitle).orElse(null) :
+                client.getFieldById(INDEX, PROFILE_TYPE, pubkey, UserProfile.PROPERTY_TITLE);
         if (title == null) return Optional.empty();
         return Optional.of(title.toString().trim());
     }
 
     public Optional<Locale> getProfileLocale(String pubkey) {
-        Object locale = client.getFieldById(INDEX, PROFILE_TYPE, pubkey, UserProfile.PROPERTY_LOCALE);
+        Object locale = profileCache != null ?
+                getCachedProfile(pubkey).map(UserProfile::getLocale).orElse(null) :
+                client.getFieldById(INDEX, PROFILE_TYPE, pubkey, UserProfile.PROPERTY_LOCALE);
         if (locale == null) return Optional.empty();
         return Optional.of(new Locale(locale.toString()));
     }
 
     public Map<String, String> getProfileTitles(Set<String> pubkeys) {
 
+        if (profileCache != null) {
+            Map<String, String> result = new HashMap<>();
+            getProfileTitlesAndLocales(pubkeys).forEach((pubkey, profile) -> {
+                if (profile.getTitle() != null) result.put(pubkey, profile.getTitle());
+            });
+            return result.isEmpty() ? null : result;
+        }
+
         Map<String, Object> titles = client.getFieldByIds(INDEX, PROFILE_TYPE, pubkeys, UserProfile.PROPERTY_TITLE);
         if (MapUtils.isEmpty(titles)) return null;
         Map<String, String> result = new HashMap<>();
@@ -276,4 +387,15 @@ public class UserService extends AbstractService {
 
     /* -- Internal methods -- */
 
+    protected Optional<UserProfile> getCachedProfile(String pubkey) {
+        if (StringUtils.isBlank(pubkey)) return Optional.empty();
+        return Optional.ofNullable(getProfileTitlesAndLocales(ImmutableSet.of(pubkey)).get(pubkey));
+    }
+
+    protected UserProfile copyTitleAndLocale(UserProfile source) {
+        UserProfile target = new UserProfile();
+        target.setTitle(source.getTitle());
+        target.setLocale(source.getLocale());
+        return target;
+    }
 }
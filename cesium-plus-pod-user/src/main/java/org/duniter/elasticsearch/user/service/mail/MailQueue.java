@@ -0,0 +1,316 @@
+package org.duniter.elasticsearch.user.service.mail;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch User plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.RateLimiter;
+import org.duniter.core.util.Preconditions;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Send emails asynchronously, using a bounded number of persistent connections (one by worker thread).
+ * The send rate is limited, and failed emails are retried later (with an exponential backoff).
+ */
+public class MailQueue {
+
+    public static final String SETTING_QUEUE_SIZE = "duniter.mail.queue.size";
+    public static final String SETTING_BLOCK_TIMEOUT = "duniter.mail.queue.blockTimeout";
+    public static final String SETTING_CLOSE_TIMEOUT = "duniter.mail.queue.closeTimeout";
+    public static final String SETTING_CONNECTIONS = "duniter.mail.smtp.connections";
+    public static final String SETTING_MESSAGES_PER_CONNECTION = "duniter.mail.smtp.messagesPerConnection";
+    public static final String SETTING_IDLE_TIMEOUT = "duniter.mail.smtp.idleTimeout";
+    public static final String SETTING_RATE = "duniter.mail.rate";
+    public static final String SETTING_RETRY_MAX = "duniter.mail.retry.max";
+    public static final String SETTING_RETRY_DELAY = "duniter.mail.retry.delay";
+
+    public static class Mail implements Delayed {
+        private final String subject;
+        private final String textContent;
+        private final String htmlContent;
+        private final String[] recipients;
+        private int attempts = 0;
+        private long notBeforeNanos = 0;
+
+        public Mail(String subject, String textContent, String htmlContent, String... recipients) {
+            this.subject = subject;
+            this.textContent = textContent;
+            this.htmlContent = htmlContent;
+            this.recipients = recipients;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getTextContent() {
+            return textContent;
+        }
+
+        public String getHtmlContent() {
+            return htmlContent;
+        }
+
+        public String[] getRecipients() {
+            return recipients;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(notBeforeNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(notBeforeNanos, ((Mail) o).notBeforeNanos);
+        }
+    }
+
+    private final ESLogger logger;
+    private final Supplier<MailTransport> transportFactory;
+    private final int connections;
+    private final int messagesPerConnection;
+    private final long idleTimeoutMs;
+    private final long blockTimeoutMs;
+    private final long closeTimeoutMs;
+    private final int maxRetries;
+    private final long retryDelayMs;
+    private final RateLimiter rateLimiter;
+
+    private final DelayQueue<Mail> queue = new DelayQueue<>();
+    // Free places in the queue (a place is released when the mail is sent, or abandoned)
+    private final Semaphore places;
+    private final int queueSize;
+    private final ExecutorService executor;
+    private volatile boolean closed = false;
+
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder connectionCount = new LongAdder();
+
+    public MailQueue(Settings settings, Supplier<MailTransport> transportFactory) {
+        Preconditions.checkNotNull(transportFactory);
+        this.logger = Loggers.getLogger("duniter.mail", settings, new String[0]);
+        this.transportFactory = transportFactory;
+        this.queueSize = Math.max(1, settings.getAsInt(SETTING_QUEUE_SIZE, 10000));
+        this.blockTimeoutMs = settings.getAsLong(SETTING_BLOCK_TIMEOUT, 5000L);
+        this.closeTimeoutMs = settings.getAsLong(SETTING_CLOSE_TIMEOUT, 10000L);
+        this.connections = Math.max(1, settings.getAsInt(SETTING_CONNECTIONS, 2));
+        this.messagesPerConnection = Math.max(1, settings.getAsInt(SETTING_MESSAGES_PER_CONNECTION, 100));
+        this.idleTimeoutMs = settings.getAsLong(SETTING_IDLE_TIMEOUT, 30000L);
+        this.maxRetries = Math.max(0, settings.getAsInt(SETTING_RETRY_MAX, 3));
+        this.retryDelayMs = settings.getAsLong(SETTING_RETRY_DELAY, 5000L);
+        double rate = settings.getAsDouble(SETTING_RATE, 10d);
+        this.rateLimiter = rate > 0 ? RateLimiter.create(rate) : null;
+
+        this.places = new Semaphore(queueSize);
+        this.executor = Executors.newFixedThreadPool(connections,
+                EsExecutors.daemonThreadFactory(settings, "cesium_plus_mail"));
+        for (int i = 0; i < connections; i++) {
+            executor.execute(this::run);
+        }
+    }
+
+    /**
+     * Add an email to the queue. If the queue is full, wait (at most 'blockTimeout' ms) for a free place.
+     * @return false if the queue is full (or closed)
+     */
+    public boolean offer(Mail mail) {
+        Preconditions.checkNotNull(mail);
+        if (closed) return false;
+        try {
+            if (!places.tryAcquire(blockTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejectedCount.increment();
+                logger.error(String.format("Mail queue full (%s emails): email {%s} not sent", queueSize, mail.getSubject()));
+                return false;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        mail.notBeforeNanos = System.nanoTime(); // Keep order
+        queue.add(mail);
+        return true;
+    }
+
+    public int size() {
+        return queueSize - places.availablePermits();
+    }
+
+    /**
+     * Wait (at most 'timeoutMs') until the queue has room for some emails
+     * @return false if the queue is still too full
+     */
+    public boolean awaitCapacity(int count, long timeoutMs) {
+        int expected = Math.min(count, queueSize);
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            while (!closed && places.availablePermits() < expected) {
+                if (System.currentTimeMillis() >= deadline) return false;
+                Thread.sleep(100);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    public Map<String, Long> getStatistics() {
+        return ImmutableMap.<String, Long>builder()
+                .put("connections", (long)connections)
+                .put("queueSize", (long)queueSize)
+                .put("pending", (long)size())
+                .put("sent", sentCount.longValue())
+                .put("retries", retryCount.longValue())
+                .put("failed", failedCount.longValue())
+                .put("rejected", rejectedCount.longValue())
+                .put("opened", connectionCount.longValue())
+                .build();
+    }
+
+    /**
+     * Stop accepting emails, then wait (at most 'closeTimeout' ms) for pending emails to be sent
+     */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        executor.shutdown();
+
+        long deadline = System.currentTimeMillis() + closeTimeoutMs;
+        try {
+            while (size() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Interrupt idle workers (and those still retrying)
+        executor.shutdownNow();
+
+        int dropped = size();
+        if (dropped > 0) {
+            logger.warn(String.format("Mail queue closed: %s pending emails not sent", dropped));
+        }
+    }
+
+    /* -- internal methods -- */
+
+    private void run() {
+        MailTransport transport = null;
+        int sentOnTransport = 0;
+        try {
+            // When closed: continue until all pending emails are sent
+            while (!closed || size() > 0) {
+                Mail mail = queue.poll(idleTimeoutMs, TimeUnit.MILLISECONDS);
+
+                // Idle: release the connection
+                if (mail == null) {
+                    transport = close(transport);
+                    continue;
+                }
+
+                if (rateLimiter != null) rateLimiter.acquire();
+
+                try {
+                    if (transport == null || !transport.isConnected()) {
+                        close(transport);
+                        transport = transportFactory.get();
+                        transport.connect();
+                        connectionCount.increment();
+                        sentOnTransport = 0;
+                    }
+
+                    transport.send(mail);
+                    places.release();
+                    sentCount.increment();
+
+                    // Renew the connection, as servers often limit messages by session
+                    if (++sentOnTransport >= messagesPerConnection) {
+                        transport = close(transport);
+                    }
+                }
+                catch (Exception e) {
+                    transport = close(transport);
+                    retryLater(mail, e);
+
+                    // Interrupted while sending (e.g. closed): stop
+                    if (e instanceof InterruptedException) throw (InterruptedException) e;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            close(transport);
+        }
+    }
+
+    private void retryLater(Mail mail, Exception e) {
+        mail.attempts++;
+        if (mail.attempts > maxRetries) {
+            places.release();
+            failedCount.increment();
+            logger.error(String.format("Could not send email {%s} after %s attempts: %s", mail.getSubject(), mail.attempts, e.getMessage()));
+            return;
+        }
+
+        long delayMs = retryDelayMs << Math.min(mail.attempts - 1, 10);
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("Could not send email {%s}: %s. Retrying in %s ms", mail.getSubject(), e.getMessage(), delayMs));
+        }
+        retryCount.increment();
+        mail.notBeforeNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        queue.add(mail);
+    }
+
+    private MailTransport close(MailTransport transport) {
+        if (transport != null) {
+            try {
+                transport.close();
+            }
+            catch (Exception e) {
+                // Silent
+            }
+        }
+        return null;
+    }
+}
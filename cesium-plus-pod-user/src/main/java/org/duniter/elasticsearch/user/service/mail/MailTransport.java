@@ -0,0 +1,37 @@
+package org.duniter.elasticsearch.user.service.mail;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch User plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+/**
+ * A connection to a mail server, kept open to send many messages
+ */
+public interface MailTransport {
+
+    void connect() throws Exception;
+
+    boolean isConnected();
+
+    void send(MailQueue.Mail mail) throws Exception;
+
+    void close();
+}
@@ -0,0 +1,116 @@
+package org.duniter.elasticsearch.user.service.mail;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch User plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keep emails in memory, instead of sending them (for tests and load tests, without a SMTP server).
+ * All transports created with the same inbox share it.
+ */
+public class MemoryMailTransport implements MailTransport {
+
+    public static class Inbox {
+        private final int maxSize;
+        private final long latencyMs;
+        private final Deque<MailQueue.Mail> mails = new ConcurrentLinkedDeque<>();
+        private final LongAdder count = new LongAdder();
+        private final LongAdder connectionCount = new LongAdder();
+        private final AtomicInteger failuresToSimulate = new AtomicInteger();
+
+        /**
+         * @param maxSize number of last emails kept
+         * @param latencyMs simulated latency, by email
+         */
+        public Inbox(int maxSize, long latencyMs) {
+            this.maxSize = maxSize;
+            this.latencyMs = latencyMs;
+        }
+
+        public long getCount() {
+            return count.longValue();
+        }
+
+        public long getConnectionCount() {
+            return connectionCount.longValue();
+        }
+
+        public List<MailQueue.Mail> getMails() {
+            return ImmutableList.copyOf(mails);
+        }
+
+        /**
+         * Make the next sends fail
+         */
+        public void simulateFailures(int count) {
+            failuresToSimulate.set(count);
+        }
+
+        private void add(MailQueue.Mail mail) {
+            mails.addLast(mail);
+            while (mails.size() > maxSize) mails.pollFirst();
+            count.increment();
+        }
+    }
+
+    private final Inbox inbox;
+    private boolean connected = false;
+
+    public MemoryMailTransport(Inbox inbox) {
+        this.inbox = inbox;
+    }
+
+    @Override
+    public void connect() {
+        inbox.connectionCount.increment();
+        connected = true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public void send(MailQueue.Mail mail) throws Exception {
+        if (inbox.failuresToSimulate.getAndUpdate(value -> Math.max(0, value - 1)) > 0) {
+            throw new IllegalStateException("Simulated failure");
+        }
+        if (inbox.latencyMs > 0) {
+            TimeUnit.MILLISECONDS.sleep(inbox.latencyMs);
+        }
+        inbox.add(mail);
+    }
+
+    @Override
+    public void close() {
+        connected = false;
+    }
+}
@@ -0,0 +1,115 @@
+package org.duniter.elasticsearch.user.service.mail;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch User plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.duniter.core.util.StringUtils;
+import org.duniter.elasticsearch.user.PluginSettings;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+import java.util.Properties;
+
+/**
+ * Send emails to a SMTP server (the connection is kept open between messages)
+ */
+public class SmtpMailTransport implements MailTransport {
+
+    private static final String CHARSET = "UTF-8";
+
+    private final PluginSettings pluginSettings;
+    private final Session session;
+    private Transport transport;
+
+    public SmtpMailTransport(PluginSettings pluginSettings) {
+        this.pluginSettings = pluginSettings;
+
+        Properties props = new Properties();
+        props.put("mail.smtp.host", pluginSettings.getMailSmtpHost());
+        props.put("mail.smtp.port", String.valueOf(pluginSettings.getMailSmtpPort()));
+        props.put("mail.smtp.auth", String.valueOf(StringUtils.isNotBlank(pluginSettings.getMailSmtpUsername())));
+        props.put("mail.smtp.starttls.enable", String.valueOf(pluginSettings.isMailSmtpStartTLS()));
+        props.put("mail.smtp.ssl.enable", String.valueOf(pluginSettings.isMailSmtpUseSSL()));
+        this.session = Session.getInstance(props);
+    }
+
+    @Override
+    public void connect() throws MessagingException {
+        transport = session.getTransport("smtp");
+        transport.connect(pluginSettings.getMailSmtpHost(),
+                pluginSettings.getMailSmtpPort(),
+                pluginSettings.getMailSmtpUsername(),
+                pluginSettings.getMailSmtpPassword());
+    }
+
+    @Override
+    public boolean isConnected() {
+        return transport != null && transport.isConnected();
+    }
+
+    @Override
+    public void send(MailQueue.Mail mail) throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress(pluginSettings.getMailFrom()));
+        for (String recipient: mail.getRecipients()) {
+            message.addRecipient(Message.RecipientType.TO, new InternetAddress(recipient));
+        }
+        message.setSubject(mail.getSubject(), CHARSET);
+
+        if (mail.getHtmlContent() == null) {
+            message.setText(mail.getTextContent(), CHARSET);
+        }
+        else {
+            MimeMultipart content = new MimeMultipart("alternative");
+            if (mail.getTextContent() != null) {
+                MimeBodyPart textPart = new MimeBodyPart();
+                textPart.setText(mail.getTextContent(), CHARSET);
+                content.addBodyPart(textPart);
+            }
+            MimeBodyPart htmlPart = new MimeBodyPart();
+            htmlPart.setContent(mail.getHtmlContent(), "text/html; charset=" + CHARSET);
+            content.addBodyPart(htmlPart);
+            message.setContent(content);
+        }
+        message.saveChanges();
+
+        transport.sendMessage(message, message.getAllRecipients());
+    }
+
+    @Override
+    public void close() {
+        if (transport == null) return;
+        try {
+            transport.close();
+        }
+        catch (MessagingException e) {
+            // Silent
+        }
+        transport = null;
+    }
+}
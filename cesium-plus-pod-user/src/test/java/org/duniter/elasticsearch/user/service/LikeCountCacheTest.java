@@ -0,0 +1,148 @@
+package org.duniter.elasticsearch.user.service;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch User plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import com.google.common.collect.ImmutableSet;
+import org.duniter.elasticsearch.user.model.LikeRecord;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LikeCountCacheTest {
+
+    private LikeCountCache cache;
+    private LikeCountCache.Key key;
+    private AtomicLong indexCount;
+
+    @Before
+    public void setUp() {
+        cache = new LikeCountCache(100, 3600, 0);
+        key = new LikeCountCache.Key("page", "record", "DOC1", LikeRecord.Kind.LIKE);
+        indexCount = new AtomicLong(2);
+    }
+
+    @Test
+    public void likeEventAfterLoad() {
+        // The count is loaded after the like was indexed, but before its change event
+        indexCount.incrementAndGet();
+        Assert.assertEquals(3L, cache.getCount(key, indexCount::get));
+
+        cache.onLikeIndexed("LIKE3", key);
+        Assert.assertEquals(3L, cache.getCount(key, indexCount::get));
+    }
+
+    @Test
+    public void likeEventDuringLoad() {
+        Assert.assertEquals(3L, cache.getCount(key, () -> {
+            indexCount.incrementAndGet();
+            cache.onLikeIndexed("LIKE3", key);
+            return indexCount.get();
+        }));
+
+        // Not kept: reloaded
+        Assert.assertNull(cache.getCountIfPresent(key));
+        Assert.assertEquals(3L, cache.getCount(key, indexCount::get));
+    }
+
+    @Test
+    public void likeEventDuringMultiLoad() {
+        long generation = cache.getGeneration();
+        long count = indexCount.get();
+
+        // Like indexed while counting
+        indexCount.incrementAndGet();
+        cache.onLikeIndexed("LIKE3", key);
+
+        cache.putCount(key, count, generation, System.currentTimeMillis());
+        Assert.assertNull(cache.getCountIfPresent(key));
+
+        cache.putCount(key, indexCount.get(), cache.getGeneration(), System.currentTimeMillis());
+        Assert.assertEquals(Long.valueOf(3), cache.getCountIfPresent(key));
+    }
+
+    @Test
+    public void likeMoved() {
+        LikeCountCache.Key otherKey = new LikeCountCache.Key("page", "record", "DOC2", LikeRecord.Kind.LIKE);
+        cache.onLikeIndexed("LIKE1", key);
+        cache.putCount(key, 2, cache.getGeneration(), System.currentTimeMillis());
+        cache.putCount(otherKey, 5, cache.getGeneration(), System.currentTimeMillis());
+
+        // Same record, now on another document: both are invalidated
+        cache.onLikeIndexed("LIKE1", otherKey);
+        Assert.assertNull(cache.getCountIfPresent(key));
+        Assert.assertNull(cache.getCountIfPresent(otherKey));
+    }
+
+    @Test
+    public void likeDeleted() {
+        LikeCountCache.Key otherKey = new LikeCountCache.Key("page", "record", "DOC2", LikeRecord.Kind.LIKE);
+        cache.onLikeIndexed("LIKE2", key);
+        cache.putCount(key, 2, cache.getGeneration(), System.currentTimeMillis());
+        cache.putCount(otherKey, 5, cache.getGeneration(), System.currentTimeMillis());
+
+        // Known record: only its document is invalidated
+        cache.onLikeDeleted("LIKE2");
+        Assert.assertNull(cache.getCountIfPresent(key));
+        Assert.assertEquals(Long.valueOf(5), cache.getCountIfPresent(otherKey));
+
+        // Unknown record: all documents are invalidated
+        cache.putCount(key, 1, cache.getGeneration(), System.currentTimeMillis());
+        cache.onLikeDeleted("UNKNOWN");
+        Assert.assertNull(cache.getCountIfPresent(key));
+        Assert.assertNull(cache.getCountIfPresent(otherKey));
+    }
+
+    @Test
+    public void likeDeletedKnownFromIssuers() {
+        cache.getIssuers(key, () -> {
+            cache.putRecordKey("LIKE1", key);
+            return ImmutableSet.of("ISSUER1");
+        });
+        LikeCountCache.Key otherKey = new LikeCountCache.Key("page", "record", "DOC2", LikeRecord.Kind.LIKE);
+        cache.putCount(otherKey, 5, cache.getGeneration(), System.currentTimeMillis());
+
+        cache.onLikeDeleted("LIKE1");
+        Assert.assertEquals(Long.valueOf(5), cache.getCountIfPresent(otherKey));
+        Assert.assertEquals(ImmutableSet.of(), cache.getIssuers(key, ImmutableSet::of));
+    }
+
+    @Test
+    public void notCachedBeforeRefresh() throws InterruptedException {
+        cache = new LikeCountCache(100, 3600, 200);
+        cache.onLikeIndexed("LIKE3", key);
+
+        // Loaded just after the change: the index may not be refreshed yet
+        Assert.assertEquals(2L, cache.getCount(key, indexCount::get));
+        Assert.assertNull(cache.getCountIfPresent(key));
+        cache.putCount(key, 2, cache.getGeneration(), System.currentTimeMillis());
+        Assert.assertNull(cache.getCountIfPresent(key));
+
+        // Refreshed
+        Thread.sleep(250);
+        indexCount.incrementAndGet();
+        Assert.assertEquals(3L, cache.getCount(key, indexCount::get));
+        Assert.assertEquals(Long.valueOf(3), cache.getCountIfPresent(key));
+    }
+}
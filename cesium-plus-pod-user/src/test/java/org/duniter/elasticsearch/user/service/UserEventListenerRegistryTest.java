@@ -0,0 +1,116 @@
+package org.duniter.elasticsearch.user.service;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch User plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.duniter.elasticsearch.user.model.UserEvent;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+public class UserEventListenerRegistryTest {
+
+    private UserEventListenerRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new UserEventListenerRegistry();
+    }
+
+    @Test
+    public void registerAndUnregister() {
+        TestListener a1 = new TestListener("1", "A");
+        TestListener a2 = new TestListener("2", "A");
+        TestListener b1 = new TestListener("3", "B");
+        registry.register(a1);
+        registry.register(a2);
+        registry.register(b1);
+        registry.register(a1); // Already registered
+
+        Assert.assertEquals(3, registry.size());
+        Assert.assertEquals(2, registry.getPubkeyCount());
+        Assert.assertEquals(2, registry.getListeners("A").size());
+        Assert.assertEquals(1, registry.getListeners("B").size());
+        Assert.assertTrue(registry.getListeners("C").isEmpty());
+        Assert.assertTrue(registry.getListeners(null).isEmpty());
+
+        registry.unregister(a1);
+        registry.unregister(a1); // Already unregistered
+        Assert.assertEquals(2, registry.size());
+        Assert.assertEquals(1, registry.getListeners("A").size());
+
+        registry.unregister(a2);
+        registry.unregister(b1);
+        Assert.assertTrue(registry.isEmpty());
+        Assert.assertEquals(0, registry.getPubkeyCount());
+    }
+
+    @Test
+    public void ignoreClosedListener() {
+        registry.register(new TestListener(null, "A"));
+        registry.register(new TestListener("1", null));
+        Assert.assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    public void toMap() {
+        registry.register(new TestListener("1", "A"));
+        registry.register(new TestListener("2", "B"));
+        registry.register(new TestListener("3", "B"));
+        registry.register(new TestListener("4", "C"));
+
+        Assert.assertEquals(2, registry.getMaxSessionCount());
+
+        // Aggregates only: no pubkey
+        Map<String, Object> stats = registry.toMap();
+        Assert.assertEquals(3, stats.size());
+        Assert.assertEquals(4, stats.get("sessions"));
+        Assert.assertEquals(3, stats.get("pubkeys"));
+        Assert.assertEquals(2, stats.get("maxSessionsByPubkey"));
+    }
+
+    private static class TestListener implements UserEventService.UserEventListener {
+        private final String id;
+        private final String pubkey;
+
+        TestListener(String id, String pubkey) {
+            this.id = id;
+            this.pubkey = pubkey;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getPubkey() {
+            return pubkey;
+        }
+
+        @Override
+        public void onEvent(UserEvent event) {
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.duniter.elasticsearch.user.service.mail;
+
+/*-
+ * #%L
+ * Duniter4j :: ElasticSearch User plugin
+ * %%
+ * Copyright (C) 2014 - 2017 EIS
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+
+import org.elasticsearch.common.settings.Settings;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+public class MailQueueTest {
+
+    private MailQueue queue;
+
+    @After
+    public void tearDown() {
+        if (queue != null) queue.close();
+    }
+
+    @Test
+    public void sendWithPersistentConnections() throws Exception {
+        MemoryMailTransport.Inbox inbox = new MemoryMailTransport.Inbox(1000, 0);
+        queue = new MailQueue(Settings.settingsBuilder()
+                .put(MailQueue.SETTING_CONNECTIONS, 2)
+                .put(MailQueue.SETTING_MESSAGES_PER_CONNECTION, 50)
+                .put(MailQueue.SETTING_RATE, 0)
+                .build(), () -> new MemoryMailTransport(inbox));
+
+        for (int i = 0; i < 200; i++) {
+            Assert.assertTrue(queue.offer(new MailQueue.Mail("subject " + i, "text", "<p>html</p>", "user@domain.com")));
+        }
+
+        waitUntil(() -> queue.size() == 0);
+        Assert.assertEquals(200, inbox.getCount());
+        // 200 emails, 50 by connection
+        Assert.assertTrue(inbox.getConnectionCount() >= 4);
+        Assert.assertTrue(inbox.getConnectionCount() <= 6);
+    }
+
+    @Test
+    public void retryOnFailure() throws Exception {
+        MemoryMailTransport.Inbox inbox = new MemoryMailTransport.Inbox(10, 0);
+        inbox.simulateFailures(2);
+        queue = new MailQueue(Settings.settingsBuilder()
+                .put(MailQueue.SETTING_CONNECTIONS, 1)
+                .put(MailQueue.SETTING_RETRY_MAX, 3)
+                .put(MailQueue.SETTING_RETRY_DELAY, 10)
+                .build(), () -> new MemoryMailTransport(inbox));
+
+        queue.offer(new MailQueue.Mail("subject", "text", null, "user@domain.com"));
+
+        waitUntil(() -> queue.size() == 0);
+        Assert.assertEquals(1, inbox.getCount());
+        Assert.assertEquals(2, inbox.getMails().get(0).getAttempts());
+        Assert.assertEquals(2L, (long)queue.getStatistics().get("retries"));
+        Assert.assertEquals(0L, (long)queue.getStatistics().get("failed"));
+    }
+
+    @Test
+    public void abandonAfterMaxRetries() throws Exception {
+        MemoryMailTransport.Inbox inbox = new MemoryMailTransport.Inbox(10, 0);
+        inbox.simulateFailures(10);
+        queue = new MailQueue(Settings.settingsBuilder()
+                .put(MailQueue.SETTING_CONNECTIONS, 1)
+                .put(MailQueue.SETTING_RETRY_MAX, 1)
+                .put(MailQueue.SETTING_RETRY_DELAY, 10)
+                .build(), () -> new MemoryMailTransport(inbox));
+
+        queue.offer(new MailQueue.Mail("subject", "text", null, "user@domain.com"));
+
+        waitUntil(() -> queue.size() == 0);
+        Assert.assertEquals(1L, (long)queue.getStatistics().get("failed"));
+        Assert.assertEquals(0, inbox.getCount());
+    }
+
+    @Test
+    public void rejectWhenFull() {
+        MemoryMailTransport.Inbox inbox = new MemoryMailTransport.Inbox(10, 1000);
+        queue = new MailQueue(Settings.settingsBuilder()
+                .put(MailQueue.SETTING_CONNECTIONS, 1)
+                .put(MailQueue.SETTING_QUEUE_SIZE, 2)
+                .put(MailQueue.SETTING_BLOCK_TIMEOUT, 10)
+                .put(MailQueue.SETTING_CLOSE_TIMEOUT, 10)
+                .build(), () -> new MemoryMailTransport(inbox));
+
+        Assert.assertTrue(queue.offer(new MailQueue.Mail("subject 1", "text", null, "user@domain.com")));
+        Assert.assertTrue(queue.offer(new MailQueue.Mail("subject 2", "text", null, "user@domain.com")));
+        Assert.assertFalse(queue.offer(new MailQueue.Mail("subject 3", "text", null, "user@domain.com")));
+        Assert.assertEquals(1L, (long)queue.getStatistics().get("rejected"));
+    }
+
+    @Test
+    public void sendPendingOnClose() {
+        MemoryMailTransport.Inbox inbox = new MemoryMailTransport.Inbox(10, 20);
+        queue = new MailQueue(Settings.settingsBuilder()
+                .put(MailQueue.SETTING_CONNECTIONS, 1)
+                .put(MailQueue.SETTING_RATE, 0)
+                .put(MailQueue.SETTING_CLOSE_TIMEOUT, 5000)
+                .build(), () -> new MemoryMailTransport(inbox));
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(queue.offer(new MailQueue.Mail("subject " + i, "text", null, "user@domain.com")));
+        }
+        queue.close();
+
+        Assert.assertEquals(5, inbox.getCount());
+        Assert.assertEquals(0, queue.size());
+
+        // Closed: rejected
+        Assert.assertFalse(queue.offer(new MailQueue.Mail("subject", "text", null, "user@domain.com")));
+    }
+
+    @Test
+    public void closeTimeout() {
+        MemoryMailTransport.Inbox inbox = new MemoryMailTransport.Inbox(10, 1000);
+        queue = new MailQueue(Settings.settingsBuilder()
+                .put(MailQueue.SETTING_CONNECTIONS, 1)
+                .put(MailQueue.SETTING_RATE, 0)
+                .put(MailQueue.SETTING_CLOSE_TIMEOUT, 100)
+                .build(), () -> new MemoryMailTransport(inbox));
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(queue.offer(new MailQueue.Mail("subject " + i, "text", null, "user@domain.com")));
+        }
+
+        long start = System.currentTimeMillis();
+        queue.close();
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        Assert.assertEquals(0, inbox.getCount());
+        Assert.assertEquals(5, queue.size());
+    }
+
+    /* -- internal methods -- */
+
+    private void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("Timeout", System.currentTimeMillis() < timeout);
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}